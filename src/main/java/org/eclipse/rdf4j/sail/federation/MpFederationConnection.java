@@ -25,6 +25,7 @@ import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.IterationWrapper;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
@@ -57,6 +58,7 @@ import org.eclipse.rdf4j.sail.federation.optimizers.QueryModelPruner;
 import org.researchspace.federation.repository.MpFederation;
 import org.researchspace.federation.repository.evaluation.MpFederationStrategy;
 import org.researchspace.federation.repository.evaluation.RemoteClosingExceptionConvertingIteration;
+import org.researchspace.federation.repository.optimizers.MpEvaluationStatistics;
 import org.researchspace.federation.repository.optimizers.MpFederationJoinOptimizer;
 import org.researchspace.federation.repository.optimizers.MpFederationJoinOptimizerWithHints;
 import org.researchspace.federation.repository.optimizers.MpFederationServiceClauseOptimizer;
@@ -149,8 +151,21 @@ public class MpFederationConnection extends AbstractFederationConnection {
         }
         TupleExpr qry = optimize(query, dataset, bindings, inf, strategy);
         try {
-            return strategy.evaluate(qry, EmptyBindingSet.getInstance());
+            CloseableIteration<BindingSet, QueryEvaluationException> result = strategy.evaluate(qry,
+                    EmptyBindingSet.getInstance());
+            return new IterationWrapper<BindingSet, QueryEvaluationException>(result) {
+                @Override
+                protected void handleClose() throws QueryEvaluationException {
+                    try {
+                        super.handleClose();
+                    } finally {
+                        // stop all remaining tasks, e.g. if the result was not consumed completely
+                        strategy.getTaskScope().cancel();
+                    }
+                }
+            };
         } catch (QueryEvaluationException e) {
+            strategy.getTaskScope().cancel();
             throw new SailException(e);
         }
     }
@@ -208,7 +223,7 @@ public class MpFederationConnection extends AbstractFederationConnection {
         } else {
             // Legacy workflow: we transform all nested binary joins to n-ary joins
             // AND reorder the join operands
-            new MpQueryMultiJoinOptimizer().optimize(query, dataset, bindings);
+            new MpQueryMultiJoinOptimizer(new MpEvaluationStatistics(mpFederation)).optimize(query, dataset, bindings);
         }
         // new FilterOptimizer().optimize(query, dataset, bindings);
 
@@ -244,13 +259,14 @@ public class MpFederationConnection extends AbstractFederationConnection {
         if (queryHintsEnabled) {
             // We reorder the join operands taking into account the query hints
             new MpQueryHintsSyncOptimizer(hintsSetup).optimize(query, dataset, bindings);
-            new MpQueryJoinOrderOptimizer(hintsSetup).optimize(query, dataset, bindings);
+            new MpQueryJoinOrderOptimizer(new MpEvaluationStatistics(mpFederation), hintsSetup).optimize(query,
+                    dataset, bindings);
             new MpPostJoinReorderingLocalJoinOptimizer().optimize(query, dataset, bindings);
         } else {
             // Legacy workflow: we reorder the join operands once again
             // (taking into account the changes in
             // the query tree made by preceding optimizers)
-            new MpQueryMultiJoinOptimizer().optimize(query, dataset, bindings);
+            new MpQueryMultiJoinOptimizer(new MpEvaluationStatistics(mpFederation)).optimize(query, dataset, bindings);
         }
 
         new MpPrepareOwnedTupleExpr().optimize(query, dataset, bindings);
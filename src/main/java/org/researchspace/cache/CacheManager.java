@@ -22,27 +22,44 @@ package org.researchspace.cache;
 import static java.util.stream.Collectors.toList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.IRI;
+import org.researchspace.config.Configuration;
+import org.researchspace.config.groups.EnvironmentConfiguration;
 
-import com.google.common.cache.CacheBuilder;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
 
 /**
+ * Registry of all {@link PlatformCache}s and factory for the underlying
+ * Caffeine caches. The default configuration of a cache can be overridden per
+ * cache ID, see {@link EnvironmentConfiguration#getCacheSpec(String)}.
+ * 
  * @author Michael Schmidt <ms@metaphacts.com>
  */
 @Singleton
 public class CacheManager {
     private static final Logger logger = LogManager.getLogger(CacheManager.class);
     private final Map<String, PlatformCache> instances = new ConcurrentHashMap<>();
+    private final Map<String, PlatformCacheStatsCounter> statsCounters = new ConcurrentHashMap<>();
+
+    // provider to break the dependency cycle with the configuration groups
+    @Inject(optional = true)
+    private Provider<Configuration> configurationProvider;
 
     public void register(PlatformCache cache) {
         String cacheId = cache.getId();
@@ -102,16 +119,37 @@ public class CacheManager {
         }
     }
 
+    /**
+     * @param hotKeysLimit maximum number of most frequently used keys to include
+     *                     per cache
+     * @return statistics of all registered caches which record statistics,
+     *         ordered by cache ID
+     */
+    public List<PlatformCacheStatistics> getStatistics(int hotKeysLimit) {
+        return instances.values().stream().map(cache -> cache.getStatistics(hotKeysLimit)).filter(Objects::nonNull)
+                .sorted(Comparator.comparing(PlatformCacheStatistics::getCacheId)).collect(toList());
+    }
+
+    /**
+     * Returns the statistics counter shared by all caches built with
+     * {@link #newBuilder(String)} for the specified cache ID.
+     * 
+     * @param cacheId id of the cache
+     */
+    public PlatformCacheStatsCounter getStatsCounter(String cacheId) {
+        return statsCounters.computeIfAbsent(cacheId, id -> new PlatformCacheStatsCounter());
+    }
+
     /**
      * Create a cache builder with default configuration for the named cache. If
      * there is a user-defined configuration for the specified cacheId it is applied
      * before returning the builder.
      * 
      * @param cacheId id of the cache
-     * @returns the configured {@link CacheBuilder}
+     * @returns the configured {@link Caffeine} builder
      */
-    public CacheBuilder<Object, Object> newBuilder(String cacheId) {
-        return newBuilder(cacheId, (Consumer<CacheBuilder<Object, Object>>) null);
+    public Caffeine<Object, Object> newBuilder(String cacheId) {
+        return newBuilder(cacheId, (Consumer<Caffeine<Object, Object>>) null);
     }
 
     /**
@@ -121,14 +159,14 @@ public class CacheManager {
      * 
      * @param cacheId    id of the cache
      * @param configurer : default configuration provided by as Consumer
-     * @returns the configured {@link CacheBuilder}
+     * @returns the configured {@link Caffeine} builder
      */
-    public CacheBuilder<Object, Object> newBuilder(String cacheId, Consumer<CacheBuilder<Object, Object>> configurer) {
+    public Caffeine<Object, Object> newBuilder(String cacheId, Consumer<Caffeine<Object, Object>> configurer) {
         String cacheSpec = getCacheSpec(cacheId);
         if (cacheSpec != null && !cacheSpec.isEmpty()) {
-            return CacheBuilder.from(cacheSpec);
+            return fromSpec(cacheId, cacheSpec);
         } else {
-            CacheBuilder<Object, Object> newBuilder = CacheBuilder.newBuilder();
+            Caffeine<Object, Object> newBuilder = withStats(cacheId, Caffeine.newBuilder());
             if (configurer != null) {
                 configurer.accept(newBuilder);
             }
@@ -143,28 +181,44 @@ public class CacheManager {
      * 
      * @param cacheId   id of the cache
      * @param cacheSpec default configuration spec (e.g. "expireAfterWrite=30m")
-     * @returns the configured {@link CacheBuilder}
+     * @returns the configured {@link Caffeine} builder
      */
-    public CacheBuilder<Object, Object> newBuilder(String cacheId, String cacheSpec) {
+    public Caffeine<Object, Object> newBuilder(String cacheId, String cacheSpec) {
         String configCacheSpec = getCacheSpec(cacheId);
         if (configCacheSpec != null && !configCacheSpec.isEmpty()) {
-            return CacheBuilder.from(configCacheSpec);
+            return fromSpec(cacheId, configCacheSpec);
         } else if (cacheSpec != null) {
-            return CacheBuilder.from(cacheSpec);
+            return withStats(cacheId, Caffeine.from(cacheSpec));
         }
-        return CacheBuilder.newBuilder();
+        return withStats(cacheId, Caffeine.newBuilder());
+    }
+
+    private Caffeine<Object, Object> fromSpec(String cacheId, String cacheSpec) {
+        logger.debug("Using cache specification '{}' for cache '{}'.", cacheSpec, cacheId);
+        // statistics are always recorded with the shared counter and can be
+        // enabled only once
+        String specWithoutStats = Arrays.stream(cacheSpec.split(",")).map(String::trim)
+                .filter(option -> !option.equals("recordStats")).collect(Collectors.joining(","));
+        return withStats(cacheId, Caffeine.from(specWithoutStats));
+    }
+
+    private Caffeine<Object, Object> withStats(String cacheId, Caffeine<Object, Object> builder) {
+        PlatformCacheStatsCounter counter = getStatsCounter(cacheId);
+        return builder.recordStats(() -> counter);
     }
 
     /**
+     * Returns the user-defined cache specification, see
+     * {@link EnvironmentConfiguration#getCacheSpec(String)}.
      * 
      * @param cacheId the cache id
      * @return the cache spec for the given key or <code>null</code>
      */
-    protected String getCacheSpec(String cacheId) {
-        // TODO this should make use of a configuration mechanism
-        if (org.researchspace.security.PlatformSecurityManager.AUTH_CACHE_NAME.equals(cacheId)) {
-            return "expireAfterWrite=30m";
+    public String getCacheSpec(String cacheId) {
+        Configuration config = configurationProvider != null ? configurationProvider.get() : null;
+        if (config == null) {
+            return null;
         }
-        return null;
+        return config.getEnvironmentConfig().getCacheSpec(cacheId);
     }
 }
@@ -26,8 +26,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -44,9 +42,8 @@ import org.researchspace.config.PropertyPattern;
 import org.researchspace.config.groups.UIConfiguration;
 import org.researchspace.config.groups.UIConfiguration.LabelsResolutionStrategy;
 
-import com.google.common.cache.CacheBuilder;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -72,6 +69,9 @@ public class LabelCache {
     private Configuration config;
     private NamespaceRegistry namespaceRegistry;
     private final CacheManager cacheManager;
+    private final LabelResolutionExecutor resolutionExecutor;
+
+    private static final long BATCH_RESOLUTION_TIMEOUT_SECONDS = 30;
 
     private static class CacheKey {
         public final IRI iri;
@@ -96,6 +96,11 @@ public class LabelCache {
         public int hashCode() {
             return Objects.hash(iri, languageTag);
         }
+
+        @Override
+        public String toString() {
+            return iri.stringValue() + "@" + languageTag;
+        }
     }
 
     private ResourcePropertyCache<CacheKey, Literal> cache = new ResourcePropertyCache<CacheKey, Literal>(CACHE_ID) {
@@ -104,15 +109,30 @@ public class LabelCache {
             return key.iri;
         }
 
+        @Override
+        protected Optional<CacheManager> cacheManager() {
+            return Optional.of(cacheManager);
+        }
+
         /**
          * Provide customized cache specification for label cache
          */
         @Override
-        protected CacheBuilder<Object, Object> createCacheBuilder() {
+        protected Caffeine<Object, Object> createCacheBuilder() {
             return cacheManager.newBuilder(CACHE_ID,
                     cacheBuilder -> cacheBuilder.maximumSize(config.getEnvironmentConfig().getLabelsCacheSize()));
         };
 
+        @Override
+        protected long getCoalescingWindowMillis() {
+            return config.getEnvironmentConfig().getLabelsCoalescingWindowMillis();
+        }
+
+        @Override
+        protected int getCoalescingMaxKeys() {
+            return config.getEnvironmentConfig().getLabelsBatchSize();
+        }
+
         /**
          * Extracts the preferred labels for a given IRI according to the specs in
          * {@link UIConfiguration#getPreferredLabels()} and
@@ -134,35 +154,14 @@ public class LabelCache {
             }
 
             int batchSize = config.getEnvironmentConfig().getLabelsBatchSize();
-            int numberOfThreads = 5;
 
             // if less than batch size items are requested, immediately execute
             if (keys instanceof Collection<?> && ((Collection<?>) keys).size() <= batchSize) {
                 return queryAllBatched(repository, keys);
             }
 
-            Map<CacheKey, Optional<Literal>> res = Maps.newConcurrentMap();
-            ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
-            try {
-                StreamSupport.stream(Iterables.partition(keys, batchSize).spliterator(), false).forEach(batch -> {
-                    executorService.execute(() -> res.putAll(queryAllBatched(repository, batch)));
-                });
-            } finally {
-                executorService.shutdown();
-                try {
-                    if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
-                        executorService.shutdownNow();
-                        // Handle the case where tasks did not terminate in time
-                        throw new RuntimeException("Timeout while querying repository for labels");
-                    }
-                } catch (InterruptedException e1) {
-                    logger.warn("Failed to wait for label computation: " + e1.getMessage());
-                    executorService.shutdownNow();
-                    throw new RuntimeException("Timeout while querying repository for labels", e1);
-                }
-            }
-
-            return res;
+            return resolutionExecutor.invokeAll(repository, Iterables.partition(keys, batchSize),
+                    batch -> queryAllBatched(repository, batch), BATCH_RESOLUTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         }
 
         /**
@@ -209,10 +208,12 @@ public class LabelCache {
     };
 
     @Inject
-    public LabelCache(Configuration config, NamespaceRegistry namespaceRegistry, CacheManager cacheManager) {
+    public LabelCache(Configuration config, NamespaceRegistry namespaceRegistry, CacheManager cacheManager,
+            LabelResolutionExecutor resolutionExecutor) {
         this.config = config;
         this.namespaceRegistry = namespaceRegistry;
         this.cacheManager = cacheManager;
+        this.resolutionExecutor = resolutionExecutor;
         cacheManager.register(cache);
     }
 
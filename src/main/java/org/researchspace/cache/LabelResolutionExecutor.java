@@ -0,0 +1,285 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.repository.Repository;
+import org.researchspace.config.Configuration;
+import org.researchspace.config.groups.EnvironmentConfiguration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Platform-wide, size-bounded executor used to resolve batches of labels (and
+ * other resource properties) in parallel.
+ *
+ * <p>
+ * All callers share a single thread pool of
+ * {@link EnvironmentConfiguration#getLabelsResolutionThreads()} threads. In
+ * addition, the number of batches that may be in flight against a single
+ * repository is limited to
+ * {@link EnvironmentConfiguration#getLabelsResolutionMaxConcurrencyPerRepository()}.
+ * Permits for a repository are handed out by a fair semaphore, i.e. concurrent
+ * requests are served batch by batch in arrival order and a request asking for
+ * thousands of labels cannot monopolize the pool.
+ * </p>
+ *
+ * <p>
+ * Pool size and per-repository limits are read once on startup. The metrics of
+ * the executor are exposed through {@link #getStatistics()}.
+ * </p>
+ *
+ * @see LabelCache
+ */
+@Singleton
+public class LabelResolutionExecutor {
+    private static final Logger logger = LogManager.getLogger(LabelResolutionExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    private final int maxConcurrencyPerRepository;
+
+    // weak keys, i.e. permits of repositories which have been re-initialized are
+    // discarded together with the repository instance
+    private final Cache<Repository, Semaphore> repositoryPermits = Caffeine.newBuilder().weakKeys().build();
+
+    private final AtomicLong completedBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong totalBatchLatencyNanos = new AtomicLong();
+    private final AtomicLong maxBatchLatencyNanos = new AtomicLong();
+
+    @Inject
+    public LabelResolutionExecutor(Configuration config) {
+        EnvironmentConfiguration envConfig = config.getEnvironmentConfig();
+        int numberOfThreads = Math.max(1, envConfig.getLabelsResolutionThreads());
+        this.maxConcurrencyPerRepository = Math.max(1, envConfig.getLabelsResolutionMaxConcurrencyPerRepository());
+
+        this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("label-resolution-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Evaluates all batches against the repository and merges the results into a
+     * single map. The calling thread blocks until all batches are computed or the
+     * timeout is exceeded.
+     *
+     * @param repository the repository the batches are evaluated against
+     * @param batches    the batches to evaluate
+     * @param query      function evaluating a single batch
+     * @param timeout    the overall timeout for all batches
+     * @param unit       unit of the timeout
+     * @return the merged results of all batches
+     */
+    public <K, V> Map<K, V> invokeAll(Repository repository, Iterable<? extends List<? extends K>> batches,
+            Function<List<? extends K>, Map<K, V>> query, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Semaphore permits = repositoryPermits.get(repository, repo -> new Semaphore(maxConcurrencyPerRepository, true));
+
+        Map<K, V> result = Maps.newConcurrentMap();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (List<? extends K> batch : batches) {
+                if (!permits.tryAcquire(remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                    throw new TimeoutException();
+                }
+                BatchTask task = new BatchTask(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        result.putAll(query.apply(batch));
+                        recordBatch(System.nanoTime() - start);
+                    } catch (RuntimeException e) {
+                        failedBatches.incrementAndGet();
+                        throw e;
+                    }
+                    return null;
+                }, permits);
+                try {
+                    executor.execute(task);
+                    futures.add(task);
+                } catch (RuntimeException e) {
+                    task.releasePermit();
+                    throw e;
+                }
+            }
+
+            for (Future<?> future : futures) {
+                future.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            cancelAll(futures);
+            throw new RuntimeException("Timeout while querying repository for labels", e);
+        } catch (InterruptedException e) {
+            logger.warn("Failed to wait for label computation: " + e.getMessage());
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while querying repository for labels", e);
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Resolved {} batches, queue depth: {}, average batch latency: {} ms", futures.size(),
+                    getQueueDepth(), getAverageBatchLatencyMillis());
+        }
+        return result;
+    }
+
+    /**
+     * Batch holding a permit of the repository until it has finished running. A
+     * running batch keeps its permit after it has been cancelled, since it may
+     * still use the repository until it notices the interruption.
+     */
+    private static class BatchTask extends FutureTask<Void> {
+        private final Semaphore permits;
+        private final AtomicBoolean permitHeld = new AtomicBoolean(true);
+        private volatile boolean started;
+
+        BatchTask(Callable<Void> callable, Semaphore permits) {
+            super(callable);
+            this.permits = permits;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            try {
+                super.run();
+            } finally {
+                releasePermit();
+            }
+        }
+
+        @Override
+        protected void done() {
+            // batches cancelled before they have been started do not need to run
+            if (!started) {
+                releasePermit();
+            }
+        }
+
+        void releasePermit() {
+            if (permitHeld.compareAndSet(true, false)) {
+                permits.release();
+            }
+        }
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private static void cancelAll(List<Future<?>> futures) {
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    private void recordBatch(long latencyNanos) {
+        completedBatches.incrementAndGet();
+        totalBatchLatencyNanos.addAndGet(latencyNanos);
+        maxBatchLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    /**
+     * @return number of batches waiting for a free thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return number of batches currently being evaluated
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return number of further batches which may be evaluated concurrently
+     *         against the repository
+     */
+    int getAvailablePermits(Repository repository) {
+        Semaphore permits = repositoryPermits.getIfPresent(repository);
+        return permits != null ? permits.availablePermits() : maxConcurrencyPerRepository;
+    }
+
+    public long getCompletedBatchCount() {
+        return completedBatches.get();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.get();
+    }
+
+    public double getAverageBatchLatencyMillis() {
+        long completed = completedBatches.get();
+        if (completed == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(totalBatchLatencyNanos.get()) / 1000.0 / completed;
+    }
+
+    public double getMaxBatchLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMicros(maxBatchLatencyNanos.get()) / 1000.0;
+    }
+
+    /**
+     * @return snapshot of the metrics of the executor
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("activeCount", getActiveCount());
+        statistics.put("queueDepth", getQueueDepth());
+        statistics.put("completedBatchCount", getCompletedBatchCount());
+        statistics.put("failedBatchCount", getFailedBatchCount());
+        statistics.put("averageBatchLatencyMillis", getAverageBatchLatencyMillis());
+        statistics.put("maxBatchLatencyMillis", getMaxBatchLatencyMillis());
+        return statistics;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
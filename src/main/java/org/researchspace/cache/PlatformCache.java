@@ -23,6 +23,8 @@ import org.eclipse.rdf4j.model.IRI;
 
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 /**
  * @author Michael Schmidt <ms@metaphacts.com>
  * @author Alexey Morozov
@@ -33,4 +35,16 @@ public interface PlatformCache {
     void invalidate(Set<IRI> iris);
 
     String getId();
+
+    /**
+     * Returns a snapshot of the usage statistics of this cache.
+     * 
+     * @param hotKeysLimit maximum number of most frequently used keys to include
+     * @return the statistics or <code>null</code> if the cache does not record
+     *         statistics
+     */
+    @Nullable
+    default PlatformCacheStatistics getStatistics(int hotKeysLimit) {
+        return null;
+    }
 }
@@ -0,0 +1,189 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy.Eviction;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Snapshot of the usage statistics of a {@link PlatformCache}.
+ *
+ * @see PlatformCache#getStatistics(int)
+ */
+public class PlatformCacheStatistics {
+    private final String cacheId;
+    private final long size;
+    private final long hitCount;
+    private final long missCount;
+    private final double hitRate;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final double averageLoadPenaltyMillis;
+    private final long loadLatencyP50Millis;
+    private final long loadLatencyP90Millis;
+    private final long loadLatencyP99Millis;
+    private final long evictionCount;
+    private final List<String> hotKeys;
+
+    private PlatformCacheStatistics(String cacheId, long size, CacheStats stats,
+            @Nullable PlatformCacheStatsCounter counter, List<String> hotKeys) {
+        this.cacheId = cacheId;
+        this.size = size;
+        this.hitCount = stats.hitCount();
+        this.missCount = stats.missCount();
+        this.hitRate = stats.hitRate();
+        this.loadSuccessCount = stats.loadSuccessCount();
+        this.loadFailureCount = stats.loadFailureCount();
+        this.averageLoadPenaltyMillis = stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1);
+        this.loadLatencyP50Millis = counter != null ? counter.getLoadLatencyPercentileMillis(0.5) : -1;
+        this.loadLatencyP90Millis = counter != null ? counter.getLoadLatencyPercentileMillis(0.9) : -1;
+        this.loadLatencyP99Millis = counter != null ? counter.getLoadLatencyPercentileMillis(0.99) : -1;
+        this.evictionCount = stats.evictionCount();
+        this.hotKeys = hotKeys;
+    }
+
+    /**
+     * Creates the statistics for a platform cache backed by one or more Caffeine
+     * caches sharing the same statistics counter.
+     *
+     * @param cacheId      ID of the platform cache
+     * @param counter      the shared statistics counter or <code>null</code> to use
+     *                     the statistics recorded by the Caffeine caches
+     * @param caches       the underlying caches
+     * @param hotKeysLimit maximum number of most frequently used keys to include
+     */
+    public static PlatformCacheStatistics of(String cacheId, @Nullable PlatformCacheStatsCounter counter,
+            Collection<? extends Cache<?, ?>> caches, int hotKeysLimit) {
+        long size = 0;
+        CacheStats stats = counter != null ? counter.snapshot() : CacheStats.empty();
+        List<Iterator<String>> hotKeysPerCache = new ArrayList<>();
+        for (Cache<?, ?> cache : caches) {
+            size += cache.estimatedSize();
+            if (counter == null) {
+                stats = stats.plus(cache.stats());
+            }
+            hotKeysPerCache.add(hottest(cache, hotKeysLimit).iterator());
+        }
+        return new PlatformCacheStatistics(cacheId, size, stats, counter, mergeHotKeys(hotKeysPerCache, hotKeysLimit));
+    }
+
+    private static <K> List<String> hottest(Cache<K, ?> cache, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        return cache.policy().eviction().map(eviction -> hottest(eviction, limit)).orElse(Collections.emptyList());
+    }
+
+    private static <K> List<String> hottest(Eviction<K, ?> eviction, int limit) {
+        return eviction.hottest(limit).keySet().stream().map(String::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * Merges the hot keys of all caches by their rank, i.e. the hottest keys of
+     * all caches come first.
+     */
+    private static List<String> mergeHotKeys(List<Iterator<String>> hotKeysPerCache, int limit) {
+        Set<String> hotKeys = new LinkedHashSet<>();
+        boolean remaining = true;
+        while (remaining && hotKeys.size() < limit) {
+            remaining = false;
+            for (Iterator<String> keys : hotKeysPerCache) {
+                if (keys.hasNext() && hotKeys.size() < limit) {
+                    hotKeys.add(keys.next());
+                    remaining = true;
+                }
+            }
+        }
+        return new ArrayList<>(hotKeys);
+    }
+
+    public String getCacheId() {
+        return cacheId;
+    }
+
+    /**
+     * @return estimated number of entries
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public double getAverageLoadPenaltyMillis() {
+        return averageLoadPenaltyMillis;
+    }
+
+    /**
+     * @return estimated median load latency or <code>-1</code> if unknown
+     */
+    public long getLoadLatencyP50Millis() {
+        return loadLatencyP50Millis;
+    }
+
+    public long getLoadLatencyP90Millis() {
+        return loadLatencyP90Millis;
+    }
+
+    public long getLoadLatencyP99Millis() {
+        return loadLatencyP99Millis;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the most frequently used keys of size-bounded caches
+     */
+    public List<String> getHotKeys() {
+        return hotKeys;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+/**
+ * {@link StatsCounter} shared by all Caffeine caches created for the same cache
+ * ID (e.g. the per-repository caches of a {@link ResourcePropertyCache}).
+ *
+ * <p>
+ * In addition to the standard Caffeine statistics it keeps a histogram of load
+ * latencies, which is used to estimate latency percentiles.
+ * </p>
+ *
+ * @see CacheManager#getStatsCounter(String)
+ */
+public class PlatformCacheStatsCounter implements StatsCounter {
+
+    /**
+     * Upper bounds (in milliseconds) of the load latency histogram buckets, the
+     * last bucket is unbounded.
+     */
+    private static final long[] LATENCY_BUCKET_BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000,
+            5000, 10000 };
+
+    private final StatsCounter delegate = new ConcurrentStatsCounter();
+
+    private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKET_BOUNDS_MILLIS.length + 1];
+
+    public PlatformCacheStatsCounter() {
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void recordHits(int count) {
+        delegate.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        delegate.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        delegate.recordLoadSuccess(loadTime);
+        recordLatency(loadTime);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        delegate.recordLoadFailure(loadTime);
+        recordLatency(loadTime);
+    }
+
+    @SuppressWarnings("deprecation")
+    public void recordEviction() {
+        delegate.recordEviction();
+    }
+
+    public void recordEviction(int weight) {
+        delegate.recordEviction(weight);
+    }
+
+    public void recordEviction(int weight, RemovalCause cause) {
+        delegate.recordEviction(weight, cause);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return delegate.snapshot();
+    }
+
+    private void recordLatency(long loadTimeNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(loadTimeNanos);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_BOUNDS_MILLIS.length && millis >= LATENCY_BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets[bucket].increment();
+    }
+
+    /**
+     * Estimates the load latency percentile from the histogram.
+     *
+     * @param percentile the percentile in the range (0, 1], e.g. 0.99
+     * @return upper bound of the histogram bucket containing the percentile in
+     *         milliseconds, <code>-1</code> if no loads have been recorded and
+     *         {@link Long#MAX_VALUE} if the percentile is beyond the largest
+     *         bucket bound
+     */
+    public long getLoadLatencyPercentileMillis(double percentile) {
+        long[] counts = new long[latencyBuckets.length];
+        long total = 0;
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            counts[i] = latencyBuckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+
+        long rank = (long) Math.ceil(percentile * total);
+        long cumulative = 0;
+        for (int i = 0; i < LATENCY_BUCKET_BOUNDS_MILLIS.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return LATENCY_BUCKET_BOUNDS_MILLIS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
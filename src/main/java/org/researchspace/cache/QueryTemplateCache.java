@@ -19,6 +19,7 @@
 
 package org.researchspace.cache;
 
+import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -41,7 +42,7 @@ import org.researchspace.data.rdf.container.LocalLDPAPIClient;
 import org.researchspace.data.rdf.container.QueryTemplateContainer;
 import org.researchspace.repository.RepositoryManager;
 
-import com.google.common.cache.Cache;
+import com.github.benmanes.caffeine.cache.Cache;
 
 @Singleton
 public class QueryTemplateCache implements PlatformCache {
@@ -50,6 +51,7 @@ public class QueryTemplateCache implements PlatformCache {
 
     private static final Logger logger = LogManager.getLogger(QueryTemplateCache.class);
     protected final Cache<IRI, QueryTemplate<?>> queryTemplateCache;
+    private final PlatformCacheStatsCounter statsCounter;
 
     protected LDPApiInternalRegistry ldpCache;
     protected NamespaceRegistry namespaceRegistry;
@@ -61,6 +63,7 @@ public class QueryTemplateCache implements PlatformCache {
         this.namespaceRegistry = namespaceRegistry;
         queryTemplateCache = cacheManager.newBuilder(CACHE_ID,
                 cacheBuilder -> cacheBuilder.maximumSize(5).expireAfterAccess(5, TimeUnit.MINUTES)).build();
+        statsCounter = cacheManager.getStatsCounter(CACHE_ID);
         cacheManager.register(this);
     }
 
@@ -100,6 +103,12 @@ public class QueryTemplateCache implements PlatformCache {
         return new QueryTemplateCatalogAPIClientImpl(ldpAPIClient, queryCatalogApi);
     }
 
+    @Override
+    public PlatformCacheStatistics getStatistics(int hotKeysLimit) {
+        return PlatformCacheStatistics.of(getId(), statsCounter, Collections.singletonList(queryTemplateCache),
+                hotKeysLimit);
+    }
+
     @Override
     public void invalidate() {
         queryTemplateCache.invalidateAll();
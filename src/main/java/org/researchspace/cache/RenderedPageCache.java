@@ -0,0 +1,205 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.researchspace.security.SecurityService;
+import org.researchspace.services.storage.api.ObjectKind;
+import org.researchspace.services.storage.api.PlatformStorage;
+import org.researchspace.services.storage.api.StorageChangeListener;
+import org.researchspace.services.storage.api.StoragePath;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+
+/**
+ * Cache for server-side rendered resource pages.
+ *
+ * <p>
+ * Caching is opt-in: pages are only cached if a cache specification is
+ * configured for {@link #CACHE_ID} (e.g.
+ * <code>cacheSpec.platform.RenderedPageCache=maximumSize=1000,expireAfterWrite=10m</code>),
+ * since updates of the repositories do not invalidate rendered pages.
+ * </p>
+ *
+ * <p>
+ * Pages are cached per resource, repository, request parameters (including
+ * the preferred language) and user, since templates may depend on the
+ * permissions and the IRI of the current user. Only pages whose dependencies
+ * are fully known are cached, i.e. pages which did not evaluate any SPARQL
+ * helper queries, as results of queries may change with any update (see
+ * {@link org.researchspace.templates.TemplateContext#isCacheable()}). Each
+ * entry records the resources the rendering depended on, i.e. the page
+ * resource and the template context, and is removed when one of these
+ * resources is invalidated with {@link CacheManager#invalidateResources(Set)}.
+ * All entries are removed whenever a template is changed in the platform
+ * storage. Pages rendered while the cache has been invalidated are not cached
+ * (see {@link #getGeneration()}).
+ * </p>
+ */
+public class RenderedPageCache implements PlatformCache {
+
+    public static final String CACHE_ID = "platform.RenderedPageCache";
+
+    private static final Logger logger = LogManager.getLogger(RenderedPageCache.class);
+
+    private final Cache<List<Object>, RenderedPage> cache;
+    private final PlatformCacheStatsCounter statsCounter;
+    private final boolean enabled;
+    // guarded by cache, incremented on each invalidation
+    private volatile long generation;
+
+    private static class RenderedPage {
+        final String html;
+        final Set<IRI> dependencies;
+
+        RenderedPage(String html, Set<IRI> dependencies) {
+            this.html = html;
+            this.dependencies = dependencies;
+        }
+
+        boolean dependsOnAny(Set<IRI> iris) {
+            return !Collections.disjoint(dependencies, iris);
+        }
+    }
+
+    @Inject
+    public RenderedPageCache(CacheManager cacheManager, PlatformStorage platformStorage) {
+        String cacheSpec = cacheManager.getCacheSpec(CACHE_ID);
+        this.enabled = cacheSpec != null && !cacheSpec.isEmpty();
+        this.cache = cacheManager.newBuilder(CACHE_ID, cacheBuilder -> cacheBuilder.maximumSize(0)).build();
+        this.statsCounter = cacheManager.getStatsCounter(CACHE_ID);
+        cacheManager.register(this);
+        platformStorage.addChangeListener(new StorageChangeListener() {
+            @Override
+            public void objectChanged(String appId, StoragePath path) {
+                // templates may be included by any page, e.g. as partials
+                if (ObjectKind.TEMPLATE.isPrefixOf(path)) {
+                    logger.trace("Template {} changed, invalidating rendered pages", path);
+                    invalidate();
+                }
+            }
+
+            @Override
+            public void allObjectsChanged() {
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * Creates the key of a rendered page for the current user.
+     *
+     * @param iri             the resource the page is rendered for
+     * @param contextIri      the resource used as template context
+     * @param repositoryId    ID of the repository the templates are evaluated on
+     * @param queryParameters all request parameters, since they are accessible in
+     *                        templates
+     */
+    public static List<Object> createKey(IRI iri, IRI contextIri, String repositoryId,
+            @Nullable Map<String, List<String>> queryParameters) {
+        Map<String, List<String>> sortedParameters = queryParameters != null ? new TreeMap<>(queryParameters)
+                : Collections.emptyMap();
+        return Arrays.asList(iri, contextIri, repositoryId, sortedParameters, SecurityService.getUserName());
+    }
+
+    /**
+     * @return <code>true</code> if a cache specification is configured for
+     *         {@link #CACHE_ID}
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<String> getIfPresent(List<Object> key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.getIfPresent(key)).map(page -> page.html);
+    }
+
+    /**
+     * @return the current generation of the cache, to be obtained before
+     *         rendering a page and passed to {@link #put}
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches the rendered page unless the cache has been invalidated since the
+     * given generation, as the page may have been rendered from outdated data.
+     *
+     * @param key          key created with {@link #createKey}
+     * @param html         the rendered page
+     * @param dependencies resources the rendered page depends on
+     * @param generation   generation obtained before rendering the page
+     */
+    public void put(List<Object> key, String html, Set<IRI> dependencies, long generation) {
+        if (!enabled) {
+            return;
+        }
+        RenderedPage page = new RenderedPage(html, ImmutableSet.copyOf(dependencies));
+        synchronized (cache) {
+            if (generation == this.generation) {
+                cache.put(key, page);
+            }
+        }
+    }
+
+    @Override
+    public PlatformCacheStatistics getStatistics(int hotKeysLimit) {
+        return PlatformCacheStatistics.of(getId(), statsCounter, Collections.singletonList(cache), hotKeysLimit);
+    }
+
+    @Override
+    public void invalidate() {
+        synchronized (cache) {
+            generation++;
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void invalidate(Set<IRI> iris) {
+        synchronized (cache) {
+            generation++;
+            cache.asMap().values().removeIf(page -> page.dependsOnAny(iris));
+        }
+    }
+
+    @Override
+    public String getId() {
+        return CACHE_ID;
+    }
+}
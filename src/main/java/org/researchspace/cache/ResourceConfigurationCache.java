@@ -37,66 +37,10 @@ public class ResourceConfigurationCache {
 
     private final Configuration config;
     private final NamespaceRegistry namespaceRegistry;
-    private final CacheManager cacheManager;
 
     private static final Logger logger = LogManager.getLogger(ResourceConfigurationCache.class);
 
-    private final ResourcePropertyCache<IRI, Value> cache = new ResourcePropertyCache<IRI, Value>(CACHE_ID) {
-        @Override
-        protected IRI keyToIri(IRI iri) {
-            return iri;
-        }
-
-        @Override
-        protected Optional<CacheManager> cacheManager() {
-            return Optional.of(cacheManager);
-        }
-
-        @Override
-        protected Map<IRI, Optional<Value>> queryAll(Repository repository, Iterable<? extends IRI> iris) {
-            if (Iterables.isEmpty(iris)) {
-                return Collections.emptyMap();
-            }
-
-            List<String> resourceConfigurations = config.getUiConfig().getResourceConfigurations();
-            try {
-                List<PropertyPattern> resourceConfigurationsPatterns = resourceConfigurations.stream()
-                        .map(pattern -> PropertyPattern.parse(pattern, namespaceRegistry))
-                        .collect(Collectors.toList());
-    
-                String query = constructPropertyQuery(iris, resourceConfigurationsPatterns);
-                logger.info("query "+query);
-
-                Map<IRI, List<List<Value>>> iriToPredicateToConfiguration = queryAndExtractProperties(
-                        repository,
-                        query,
-                        resourceConfigurationsPatterns.size(),
-                        value -> Optional.ofNullable(value)
-                );
-
-                Map<IRI, Optional<Value>> configurations = new HashMap<>();
-                for (IRI iri : iris) {
-                    try {
-                        Optional<Value> configuration = flattenProperties(iriToPredicateToConfiguration.get(iri)).stream()
-                            .findFirst();
-                        logger.info(iri+" "+configuration.get().stringValue());
-                        configurations.put(iri, configuration);
-                    }
-                    catch (NoSuchElementException noSuchElementEx) {                        
-                        SimpleValueFactory vf = SimpleValueFactory.getInstance();
-                        IRI exampleIri = vf.createIRI("http://www.researchspace.org/resource/system/resource_configurations_container/data/Entity");
-
-                        Optional<Value> defaultConfigurationonValue = Optional.of(exampleIri);
-                        configurations.put(iri,defaultConfigurationonValue);
-                    }
-                }
-
-                return configurations;
-            } catch (Exception ex) {
-                throw new RuntimeException("Failed to query for resource configurations of IRI(s).", ex);
-            }
-        }
-    };
+    private final ResourcePropertyCache<IRI, Value> cache;
 
     @Inject
     public ResourceConfigurationCache(Configuration config,
@@ -104,10 +48,64 @@ public class ResourceConfigurationCache {
                                       CacheManager cacheManager) {
         this.config = config;
         this.namespaceRegistry = namespaceRegistry;
-        this.cacheManager = cacheManager;
+        this.cache = createCache(cacheManager);
         cacheManager.register(cache);
     }
 
+    private ResourcePropertyCache<IRI, Value> createCache(CacheManager cacheManager) {
+        return new ResourcePropertyCache<IRI, Value>(CACHE_ID, cacheManager) {
+            @Override
+            protected IRI keyToIri(IRI iri) {
+                return iri;
+            }
+
+            @Override
+            protected Map<IRI, Optional<Value>> queryAll(Repository repository, Iterable<? extends IRI> iris) {
+                if (Iterables.isEmpty(iris)) {
+                    return Collections.emptyMap();
+                }
+
+                List<String> resourceConfigurations = config.getUiConfig().getResourceConfigurations();
+                try {
+                    List<PropertyPattern> resourceConfigurationsPatterns = resourceConfigurations.stream()
+                            .map(pattern -> PropertyPattern.parse(pattern, namespaceRegistry))
+                            .collect(Collectors.toList());
+    
+                    String query = constructPropertyQuery(iris, resourceConfigurationsPatterns);
+                    logger.info("query "+query);
+
+                    Map<IRI, List<List<Value>>> iriToPredicateToConfiguration = queryAndExtractProperties(
+                            repository,
+                            query,
+                            resourceConfigurationsPatterns.size(),
+                            value -> Optional.ofNullable(value)
+                    );
+
+                    Map<IRI, Optional<Value>> configurations = new HashMap<>();
+                    for (IRI iri : iris) {
+                        try {
+                            Optional<Value> configuration = flattenProperties(iriToPredicateToConfiguration.get(iri)).stream()
+                                .findFirst();
+                            logger.info(iri+" "+configuration.get().stringValue());
+                            configurations.put(iri, configuration);
+                        }
+                        catch (NoSuchElementException noSuchElementEx) {                        
+                            SimpleValueFactory vf = SimpleValueFactory.getInstance();
+                            IRI exampleIri = vf.createIRI("http://www.researchspace.org/resource/system/resource_configurations_container/data/Entity");
+
+                            Optional<Value> defaultConfigurationonValue = Optional.of(exampleIri);
+                            configurations.put(iri,defaultConfigurationonValue);
+                        }
+                    }
+
+                    return configurations;
+                } catch (Exception ex) {
+                    throw new RuntimeException("Failed to query for resource configurations of IRI(s).", ex);
+                }
+            }
+        };
+    }
+
     public Optional<Literal> getResourceConfiguration(IRI resourceIri, Repository repository) {
         logger.info("datatype"+getResourceConfigurations(Collections.singletonList(resourceIri), repository)
                 .get(resourceIri));
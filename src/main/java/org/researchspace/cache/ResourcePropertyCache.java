@@ -22,15 +22,20 @@ package org.researchspace.cache;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.IRI;
@@ -43,13 +48,15 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.researchspace.api.sparql.SparqlOperationBuilder;
 import org.researchspace.config.PropertyPattern;
 
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
 import com.google.common.base.Throwables;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * Cache with extraction logic for batched access to some property of a
@@ -64,12 +71,37 @@ import com.google.common.collect.Maps;
 public abstract class ResourcePropertyCache<Key, Property> implements PlatformCache {
     protected final Logger logger = LogManager.getLogger(this);
 
-    private final Map<Repository, LoadingCache<Key, Optional<Property>>> repositoryMap = Maps.newConcurrentMap();
+    /**
+     * Default time window in which missing keys of concurrent callers are
+     * collected into a single query.
+     */
+    public static final long DEFAULT_COALESCING_WINDOW_MILLIS = 2;
+
+    /**
+     * Default number of collected missing keys after which a query is issued
+     * without waiting for the end of the coalescing window.
+     */
+    public static final int DEFAULT_COALESCING_MAX_KEYS = 1000;
+
+    private final Map<Repository, RepositoryCache> repositoryMap = Maps.newConcurrentMap();
 
     private final String cacheId;
 
+    @Nullable
+    private final CacheManager cacheManager;
+
     public ResourcePropertyCache(String cacheId) {
+        this(cacheId, null);
+    }
+
+    /**
+     * @param cacheId      ID of the cache
+     * @param cacheManager manager providing the configuration and the statistics
+     *                     counter of the cache
+     */
+    public ResourcePropertyCache(String cacheId, @Nullable CacheManager cacheManager) {
         this.cacheId = cacheId;
+        this.cacheManager = cacheManager;
     }
 
     protected abstract IRI keyToIri(Key key);
@@ -82,38 +114,277 @@ public abstract class ResourcePropertyCache<Key, Property> implements PlatformCa
     }
 
     public final Map<Key, Optional<Property>> getAll(Repository repository, Iterable<? extends Key> resourceIRIs) {
-        initializeCache(repository);
-        try {
-            // obtain iri-to-property map
-            return repositoryMap.get(repository).getAll(resourceIRIs);
-        } catch (ExecutionException e) {
-            logger.warn("Execution error while populating cache: " + e.getMessage());
-            Throwables.throwIfUnchecked(e);
-            throw new RuntimeException(e);
-        }
+        return initializeCache(repository).getAll(resourceIRIs);
+    }
+
+    private RepositoryCache initializeCache(Repository repository) {
+        return repositoryMap.computeIfAbsent(repository, repo -> {
+            logger.debug("Initializing cache for repository: {}", repo);
+            return new RepositoryCache(repo);
+        });
+    }
+
+    /**
+     * Time window (in milliseconds) in which missing keys requested by concurrent
+     * callers are collected into a single {@link #queryAll(Repository, Iterable)}
+     * call. The window only applies while other loads of the repository are in
+     * progress, i.e. an isolated miss is loaded immediately. A value of
+     * <code>0</code> disables the window, i.e. only keys that are requested while
+     * another caller is already loading them are shared.
+     * 
+     * <p>
+     * Sub-classes may provide a configuration suitable for the use case.
+     * </p>
+     */
+    protected long getCoalescingWindowMillis() {
+        return DEFAULT_COALESCING_WINDOW_MILLIS;
+    }
+
+    /**
+     * Number of collected missing keys after which the query is issued
+     * immediately, without waiting for the end of the coalescing window.
+     * 
+     * <p>
+     * Sub-classes may provide a configuration suitable for the use case.
+     * </p>
+     */
+    protected int getCoalescingMaxKeys() {
+        return DEFAULT_COALESCING_MAX_KEYS;
     }
 
-    private void initializeCache(Repository repository) {
-        if (repositoryMap.containsKey(repository)) {
-            return;
+    /**
+     * Cache of a single repository.
+     * 
+     * <p>
+     * A bulk {@link LoadingCache#getAll(Iterable)} issues a separate load for
+     * every caller, even if concurrent callers ask for overlapping keys.
+     * Instead, missing keys are registered as in-flight futures (so each key is
+     * loaded at most once at a time) and collected from all concurrent callers
+     * within the coalescing window. The first caller contributing to an empty
+     * batch waits for the window to elapse (or for the batch to fill up), issues
+     * one {@link ResourcePropertyCache#queryAll(Repository, Iterable)} round-trip
+     * for the whole batch and fans the results back out to all waiting callers.
+     * It only waits if other loads are in progress, since otherwise there are no
+     * concurrent callers which are likely to join the batch.
+     * </p>
+     * 
+     * <p>
+     * In addition a reverse index from IRI (see
+     * {@link ResourcePropertyCache#keyToIri(Object)}) to all cached keys of that
+     * IRI is maintained, so that invalidating a set of resources is proportional
+     * to the number of affected keys instead of the size of the cache. A key is
+     * added to the index before it is put into the cache and removed once it is
+     * evicted or invalidated; the removal re-checks the cache to not drop keys
+     * which have been re-loaded concurrently. Both happen under the same lock, as
+     * removals are notified asynchronously and could otherwise re-check the cache
+     * after a concurrent load has indexed the key but before it has been put into
+     * the cache.
+     * </p>
+     */
+    private class RepositoryCache {
+        private final Repository repository;
+        private final LoadingCache<Key, Optional<Property>> cache;
+
+        private final Map<IRI, Set<Key>> keysByIri = Maps.newConcurrentMap();
+        private final Object indexLock = new Object();
+
+        private final Map<Key, CompletableFuture<Optional<Property>>> inFlight = Maps.newConcurrentMap();
+
+        private final Object batchLock = new Object();
+        private List<Key> pendingBatch = new ArrayList<>();
+        private final AtomicInteger runningLoads = new AtomicInteger();
+
+        RepositoryCache(Repository repository) {
+            this.repository = repository;
+            RemovalListener<Key, Optional<Property>> removalListener = this::onRemoval;
+            // the loader is only used to refresh stale entries (see
+            // refreshAfterWrite in the cache specification), missing keys are
+            // loaded through getAll(Iterable)
+            CacheLoader<Key, Optional<Property>> refreshLoader = this::refresh;
+            this.cache = createCacheBuilder().removalListener(removalListener).build(refreshLoader);
+        }
+
+        void invalidate(Set<IRI> iris) {
+            List<Key> keysToInvalidate = new ArrayList<>();
+            for (IRI iri : iris) {
+                Set<Key> keys = keysByIri.get(iri);
+                if (keys != null) {
+                    keysToInvalidate.addAll(keys);
+                }
+            }
+            cache.invalidateAll(keysToInvalidate);
+        }
+
+        private void put(Key key, Optional<Property> value) {
+            synchronized (indexLock) {
+                addToIndex(key);
+                cache.put(key, value);
+            }
+        }
+
+        private void onRemoval(Key key, Optional<Property> value, RemovalCause cause) {
+            if (cause == RemovalCause.REPLACED || key == null) {
+                return;
+            }
+            IRI iri = keyToIri(key);
+            synchronized (indexLock) {
+                keysByIri.computeIfPresent(iri, (i, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+                // the key may have been re-loaded in the meantime
+                if (cache.asMap().containsKey(key)) {
+                    addToIndex(key);
+                }
+            }
+        }
+
+        private void addToIndex(Key key) {
+            keysByIri.compute(keyToIri(key), (iri, keys) -> {
+                Set<Key> result = keys != null ? keys : Sets.newConcurrentHashSet();
+                result.add(key);
+                return result;
+            });
+        }
+
+        Map<Key, Optional<Property>> getAll(Iterable<? extends Key> keys) {
+            Map<Key, Optional<Property>> result = new LinkedHashMap<>(cache.getAllPresent(keys));
+
+            Map<Key, CompletableFuture<Optional<Property>>> awaited = new LinkedHashMap<>();
+            List<Key> owned = new ArrayList<>();
+            for (Key key : keys) {
+                if (result.containsKey(key) || awaited.containsKey(key)) {
+                    continue;
+                }
+                CompletableFuture<Optional<Property>> future = new CompletableFuture<>();
+                CompletableFuture<Optional<Property>> existing = inFlight.putIfAbsent(key, future);
+                if (existing != null) {
+                    awaited.put(key, existing);
+                    continue;
+                }
+
+                // the key may have been loaded in between by another caller
+                Optional<Property> cached = cache.getIfPresent(key);
+                if (cached != null) {
+                    inFlight.remove(key, future);
+                    future.complete(cached);
+                } else {
+                    owned.add(key);
+                }
+                awaited.put(key, future);
+            }
+
+            if (!owned.isEmpty()) {
+                enqueue(owned);
+            }
+
+            for (Map.Entry<Key, CompletableFuture<Optional<Property>>> entry : awaited.entrySet()) {
+                result.put(entry.getKey(), await(entry.getValue()));
+            }
+            return result;
+        }
+
+        /**
+         * Re-loads a stale key in the background. Concurrent loads of the key are
+         * shared like regular cache misses. The key is loaded on its own, as the
+         * cache already records the refresh in the statistics, and the value is
+         * stored by the cache, i.e. the key stays in the IRI index.
+         */
+        private Optional<Property> refresh(Key key) {
+            CompletableFuture<Optional<Property>> future = new CompletableFuture<>();
+            CompletableFuture<Optional<Property>> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                return await(existing);
+            }
+            try {
+                Optional<Property> value = queryAll(repository, Collections.singletonList(key)).getOrDefault(key,
+                        Optional.empty());
+                future.complete(value);
+                return value;
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+                throw t;
+            } finally {
+                inFlight.remove(key, future);
+            }
         }
 
-        logger.debug("Initializing cache for repository: {}", repository);
-        repositoryMap.put(repository, createCacheBuilder().build(new CacheLoader<Key, Optional<Property>>() {
-            @Override
-            public Optional<Property> load(Key key) {
-                return queryAll(repository, Collections.singletonList(key)).get(key);
+        private void enqueue(List<Key> keys) {
+            List<Key> batch;
+            synchronized (batchLock) {
+                boolean leader = pendingBatch.isEmpty();
+                pendingBatch.addAll(keys);
+                if (!leader) {
+                    if (pendingBatch.size() >= getCoalescingMaxKeys()) {
+                        batchLock.notifyAll();
+                    }
+                    return;
+                }
+
+                long window = runningLoads.get() > 0 ? getCoalescingWindowMillis() : 0;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(window);
+                long remaining;
+                while (pendingBatch.size() < getCoalescingMaxKeys()
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(batchLock, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                batch = pendingBatch;
+                pendingBatch = new ArrayList<>();
             }
+            load(batch);
+        }
 
-            @Override
-            public Map<Key, Optional<Property>> loadAll(Iterable<? extends Key> keys) throws Exception {
-                return queryAll(repository, keys);
+        private void load(List<Key> batch) {
+            logger.trace("Loading {} keys for cache {}", batch.size(), cacheId);
+            Optional<PlatformCacheStatsCounter> statsCounter = cacheManager()
+                    .map(manager -> manager.getStatsCounter(cacheId));
+            long start = System.nanoTime();
+            runningLoads.incrementAndGet();
+            try {
+                Map<Key, Optional<Property>> loaded = queryAll(repository, batch);
+                statsCounter.ifPresent(counter -> counter.recordLoadSuccess(System.nanoTime() - start));
+                for (Key key : batch) {
+                    Optional<Property> value = loaded.getOrDefault(key, Optional.empty());
+                    put(key, value);
+                    CompletableFuture<Optional<Property>> future = inFlight.remove(key);
+                    if (future != null) {
+                        future.complete(value);
+                    }
+                }
+            } catch (Throwable t) {
+                statsCounter.ifPresent(counter -> counter.recordLoadFailure(System.nanoTime() - start));
+                for (Key key : batch) {
+                    CompletableFuture<Optional<Property>> future = inFlight.remove(key);
+                    if (future != null) {
+                        future.completeExceptionally(t);
+                    }
+                }
+            } finally {
+                runningLoads.decrementAndGet();
+            }
+        }
+
+        private Optional<Property> await(CompletableFuture<Optional<Property>> future) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                logger.warn("Execution error while populating cache: " + e.getCause().getMessage());
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
             }
-        }));
+        }
     }
 
     /**
-     * Create the {@link CacheBuilder}.
+     * Create the {@link Caffeine} cache builder.
      * 
      * <p>
      * If available, use the {@link CacheManager} provided by
@@ -134,32 +405,37 @@ public abstract class ResourcePropertyCache<Key, Property> implements PlatformCa
      * 
      * @return
      */
-    protected CacheBuilder<Object, Object> createCacheBuilder() {
+    protected Caffeine<Object, Object> createCacheBuilder() {
         if (cacheManager().isPresent()) {
             return cacheManager().get().newBuilder(cacheId, cacheBuilder -> {
                 cacheBuilder.maximumSize(1000).expireAfterAccess(30, TimeUnit.MINUTES);
             });
         }
-        return CacheBuilder.newBuilder().maximumSize(1000).expireAfterAccess(30, TimeUnit.MINUTES);
+        return Caffeine.newBuilder().maximumSize(1000).expireAfterAccess(30, TimeUnit.MINUTES);
     }
 
     protected Optional<CacheManager> cacheManager() {
-        return Optional.empty();
+        return Optional.ofNullable(cacheManager);
+    }
+
+    @Override
+    public PlatformCacheStatistics getStatistics(int hotKeysLimit) {
+        PlatformCacheStatsCounter counter = cacheManager().map(manager -> manager.getStatsCounter(cacheId))
+                .orElse(null);
+        List<LoadingCache<Key, Optional<Property>>> caches = repositoryMap.values().stream()
+                .map(repositoryCache -> repositoryCache.cache).collect(Collectors.toList());
+        return PlatformCacheStatistics.of(cacheId, counter, caches, hotKeysLimit);
     }
 
     @Override
     public void invalidate() {
-        repositoryMap.values().forEach(Cache::invalidateAll);
+        repositoryMap.values().forEach(repositoryCache -> repositoryCache.cache.invalidateAll());
         repositoryMap.clear();
     }
 
     @Override
     public void invalidate(Set<IRI> iris) {
-        repositoryMap.values().forEach(cache -> {
-            List<Key> keysToInvalidate = cache.asMap().keySet().stream().filter(key -> iris.contains(keyToIri(key)))
-                    .collect(Collectors.toList());
-            cache.invalidateAll(keysToInvalidate);
-        });
+        repositoryMap.values().forEach(repositoryCache -> repositoryCache.invalidate(iris));
     }
 
     /**
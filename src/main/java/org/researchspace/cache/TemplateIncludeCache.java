@@ -19,6 +19,7 @@
 
 package org.researchspace.cache;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
@@ -41,8 +42,8 @@ import org.researchspace.api.sparql.SparqlOperationBuilder;
 import org.researchspace.config.Configuration;
 import org.researchspace.config.NamespaceRegistry;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.google.common.base.Throwables;
-import com.google.common.cache.Cache;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
@@ -58,12 +59,14 @@ public class TemplateIncludeCache implements PlatformCache {
     private Configuration config;
 
     private final Cache<IRI, LinkedHashSet<Resource>> includeTypesCache;
+    private final PlatformCacheStatsCounter statsCounter;
 
     @Inject
     public TemplateIncludeCache(Configuration config, CacheManager cacheManager) {
         this.config = config;
         includeTypesCache = cacheManager.newBuilder(CACHE_ID,
                 cacheBuilder -> cacheBuilder.maximumSize(1000).expireAfterAccess(30, TimeUnit.MINUTES)).build();
+        statsCounter = cacheManager.getStatsCounter(CACHE_ID);
         cacheManager.register(this);
     }
 
@@ -130,6 +133,12 @@ public class TemplateIncludeCache implements PlatformCache {
         return newResourceSet;
     }
 
+    @Override
+    public PlatformCacheStatistics getStatistics(int hotKeysLimit) {
+        return PlatformCacheStatistics.of(getId(), statsCounter, Collections.singletonList(includeTypesCache),
+                hotKeysLimit);
+    }
+
     @Override
     public void invalidate() {
         includeTypesCache.invalidateAll();
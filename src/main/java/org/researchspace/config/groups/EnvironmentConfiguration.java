@@ -27,12 +27,15 @@ import com.google.common.collect.Lists;
 import javax.inject.Inject;
 
 import org.researchspace.cache.LabelCache;
+import org.researchspace.cache.LabelResolutionExecutor;
 import org.researchspace.config.ConfigurationParameter;
 import org.researchspace.config.InvalidConfigurationException;
 import org.researchspace.security.SecurityConfigRecord;
 import org.researchspace.security.SecurityConfigType;
 import org.researchspace.security.ShiroGuiceModule.ShiroFilter;
 import org.researchspace.services.storage.api.PlatformStorage;
+import org.researchspace.templates.ResearchSpaceHandlebars;
+import org.researchspace.templates.TemplateQueryPrefetcher;
 
 /**
  * Configuration group for all deployment-specific configuration options, such
@@ -236,6 +239,85 @@ public class EnvironmentConfiguration extends ConfigurationGroupBase {
         return getInteger("labelsCacheSize", 1000);
     }
 
+    /**
+     * Time window (in milliseconds) in which label cache misses of concurrent
+     * requests are collected into a single SPARQL query. Misses only wait for the
+     * window while other label queries are running. Set to 0 to only share
+     * lookups of labels that are already being loaded.
+     * 
+     * @see LabelCache
+     */
+    @ConfigurationParameter
+    public int getLabelsCoalescingWindowMillis() {
+        return getInteger("labelsCoalescingWindowMillis", 2);
+    }
+
+    /**
+     * Number of threads in the platform-wide pool used to resolve label batches.
+     * The pool is shared by all concurrent requests. Requires a restart to take
+     * effect.
+     * 
+     * @see LabelResolutionExecutor
+     */
+    @ConfigurationParameter
+    public int getLabelsResolutionThreads() {
+        return getInteger("labelsResolutionThreads", 10);
+    }
+
+    /**
+     * Maximum number of label batches that may be evaluated concurrently against
+     * a single repository. Requires a restart to take effect.
+     * 
+     * @see LabelResolutionExecutor
+     */
+    @ConfigurationParameter
+    public int getLabelsResolutionMaxConcurrencyPerRepository() {
+        return getInteger("labelsResolutionMaxConcurrencyPerRepository", 5);
+    }
+
+    /**
+     * Number of threads in the platform-wide pool used to evaluate the SPARQL
+     * queries of template helpers (e.g. <code>singleValueFromSelect</code> or
+     * <code>ask</code>) concurrently before a template is rendered. Set to 0 to
+     * evaluate the queries one after the other while rendering. Requires a
+     * restart to take effect.
+     * 
+     * @see TemplateQueryPrefetcher
+     */
+    @ConfigurationParameter
+    public int getTemplateQueryPrefetchThreads() {
+        return getInteger("templateQueryPrefetchThreads", 8);
+    }
+
+    /**
+     * Compiles all templates of the platform storage in the background on
+     * startup, so that the first page requests do not pay the compilation cost.
+     * 
+     * @see ResearchSpaceHandlebars#precompileTemplates()
+     */
+    @ConfigurationParameter
+    public Boolean isPrecompileTemplatesOnStartup() {
+        return getBoolean("precompileTemplatesOnStartup", false);
+    }
+
+    /**
+     * Caffeine cache specification overriding the default configuration of the
+     * cache with the given ID, e.g.
+     * <code>cacheSpec.repository.LabelCache = maximumSize=10000,refreshAfterWrite=10m</code>.
+     * 
+     * With <code>refreshAfterWrite</code> stale entries are still served while
+     * they are re-loaded in the background.
+     * 
+     * @param cacheId the ID of the cache, e.g. {@link LabelCache#CACHE_ID}
+     * @return the cache specification or <code>null</code> if not configured
+     * @see com.github.benmanes.caffeine.cache.CaffeineSpec
+     */
+    public String getCacheSpec(String cacheId) {
+        // the spec is split into a list by the comma list delimiter
+        List<String> spec = getStringList("cacheSpec." + cacheId);
+        return spec.isEmpty() ? null : String.join(",", spec);
+    }
+
     /****************************** VALIDATION ********************************/
     @Override
     public void assertConsistency() {
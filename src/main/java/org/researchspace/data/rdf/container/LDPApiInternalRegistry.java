@@ -21,8 +21,6 @@ package org.researchspace.data.rdf.container;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -37,7 +35,7 @@ import org.researchspace.querycatalog.QueryCatalogRESTServiceRegistry;
 import org.researchspace.repository.MpRepositoryProvider;
 import org.researchspace.repository.RepositoryManager;
 
-import com.google.common.cache.Cache;
+import com.github.benmanes.caffeine.cache.Cache;
 
 /**
  * Registry for maintaining {@link LDPApiInternal} instances.
@@ -76,22 +74,11 @@ public class LDPApiInternalRegistry {
 
     public LDPApiInternal api(String repositoryId) {
         final String repId = Optional.ofNullable(repositoryId).orElse(RepositoryManager.ASSET_REPOSITORY_ID);
-        try {
-
-            return ldpCache.get(repId, new Callable<LDPApiInternal>() {
-                @Override
-                public LDPApiInternal call() {
-                    logger.debug("Creating new LDPApi instance for repository \"{}\".", repId);
-                    return new LDPApiInternal(new MpRepositoryProvider(repositoryManagerProvider.get(), repId),
-                            namespaceRegistry);
-                }
-            });
-        } catch (ExecutionException e) {
-            // This exception should never be thrown
-            // But in case if something happens, we just send a newly created API instance.
-            return new LDPApiInternal(new MpRepositoryProvider(repositoryManagerProvider.get(), repId),
+        return ldpCache.get(repId, id -> {
+            logger.debug("Creating new LDPApi instance for repository \"{}\".", id);
+            return new LDPApiInternal(new MpRepositoryProvider(repositoryManagerProvider.get(), id),
                     namespaceRegistry);
-        }
+        });
     }
 
 }
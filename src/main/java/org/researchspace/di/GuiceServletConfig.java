@@ -26,10 +26,15 @@ import javax.servlet.ServletContextEvent;
 
 import org.apache.log4j.Logger;
 import org.apache.shiro.guice.web.ShiroWebModule;
+import org.researchspace.cache.LabelResolutionExecutor;
+import org.researchspace.config.Configuration;
 import org.researchspace.data.rdf.container.LDPAssetsLoader;
+import org.researchspace.federation.repository.FederationStatistics;
 import org.researchspace.repository.RepositoryManager;
 import org.researchspace.security.ShiroGuiceModule;
 import org.researchspace.services.storage.MainPlatformStorage;
+import org.researchspace.templates.ResearchSpaceHandlebars;
+import org.researchspace.templates.TemplateQueryPrefetcher;
 
 import com.google.inject.CreationException;
 import com.google.inject.Guice;
@@ -87,6 +92,18 @@ public class GuiceServletConfig extends GuiceServletContextListener {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+
+        if (injector.getInstance(Configuration.class).getEnvironmentConfig().isPrecompileTemplatesOnStartup()) {
+            Thread precompilation = new Thread(() -> {
+                try {
+                    injector.getInstance(ResearchSpaceHandlebars.class).precompileTemplates();
+                } catch (Exception e) {
+                    logger.warn("Failed to precompile templates: " + e.getMessage());
+                }
+            }, "template-precompilation");
+            precompilation.setDaemon(true);
+            precompilation.start();
+        }
     }
 
     @Override
@@ -97,9 +114,18 @@ public class GuiceServletConfig extends GuiceServletContextListener {
                         + "* Main platform servlet context in process of shutting down.                        *\n"
                         + "*************************************************************************************\n");
 
+        logger.info("Shutting down label resolution executor.");
+        injector.getInstance(LabelResolutionExecutor.class).shutdown();
+
+        logger.info("Shutting down template query prefetcher.");
+        injector.getInstance(TemplateQueryPrefetcher.class).shutdown();
+
         logger.info("Shutting down repositories.");
         injector.getInstance(RepositoryManager.class).shutdown();
 
+        logger.info("Saving federation statistics.");
+        injector.getInstance(FederationStatistics.class).save();
+
         logger.info("Shutting down main platform storage.");
         try {
             injector.getInstance(MainPlatformStorage.class).shutdown();
@@ -31,7 +31,9 @@ import org.apache.shiro.authc.credential.DefaultPasswordService;
 import org.apache.shiro.authc.credential.PasswordMatcher;
 import org.apache.shiro.authc.credential.PasswordService;
 import org.researchspace.cache.LabelCache;
+import org.researchspace.cache.LabelResolutionExecutor;
 import org.researchspace.cache.QueryTemplateCache;
+import org.researchspace.cache.RenderedPageCache;
 import org.researchspace.cache.ResourceConfigurationCache;
 import org.researchspace.cache.TemplateIncludeCache;
 import org.researchspace.config.Configuration;
@@ -40,6 +42,7 @@ import org.researchspace.data.rdf.container.LDPApiInternalRegistry;
 import org.researchspace.data.rdf.container.LDPAssetsLoader;
 import org.researchspace.data.rdf.container.LDPImplManager;
 import org.researchspace.data.rdf.container.PermissionsAwareLDPApiRegistry;
+import org.researchspace.federation.repository.FederationStatistics;
 import org.researchspace.federation.repository.MpSparqlServiceRegistry;
 import org.researchspace.querycatalog.QueryCatalogRESTServiceRegistry;
 import org.researchspace.repository.RepositoryManager;
@@ -48,6 +51,8 @@ import org.researchspace.services.fields.FieldDefinitionManager;
 import org.researchspace.services.fields.FieldsBasedSearch;
 import org.researchspace.servlet.MProxyServlet;
 import org.researchspace.servlet.SparqlServlet;
+import org.researchspace.templates.ResearchSpaceHandlebars;
+import org.researchspace.templates.TemplateQueryPrefetcher;
 import org.researchspace.thumbnails.DefaultThumbnailService;
 import org.researchspace.thumbnails.ThumbnailServiceRegistry;
 import org.researchspace.ui.templates.MainTemplate;
@@ -89,6 +94,7 @@ public class MainGuiceModule extends AbstractModule {
         bind(MainTemplate.class).in(Singleton.class);
         requestStaticInjection(MainTemplateProvider.class);
         bind(MpSparqlServiceRegistry.class).in(Singleton.class);
+        bind(FederationStatistics.class).in(Singleton.class);
 
         bind(RepositoryManager.class).in(Singleton.class);
         bind(LDPApiInternalRegistry.class).in(Singleton.class);
@@ -96,8 +102,12 @@ public class MainGuiceModule extends AbstractModule {
         bind(QueryTemplateCache.class).in(Singleton.class);
         bind(QueryCatalogRESTServiceRegistry.class).in(Singleton.class);
         bind(LabelCache.class).in(Singleton.class);
+        bind(LabelResolutionExecutor.class).in(Singleton.class);
         bind(ResourceConfigurationCache.class).in(Singleton.class);
         bind(TemplateIncludeCache.class).in(Singleton.class);
+        bind(RenderedPageCache.class).in(Singleton.class);
+        bind(TemplateQueryPrefetcher.class).in(Singleton.class);
+        bind(ResearchSpaceHandlebars.class).in(Singleton.class);
         bind(SparqlServlet.class).in(Singleton.class);
         bind(MProxyServlet.class).in(Singleton.class);
         bind(ThumbnailServiceRegistry.class).in(Singleton.class);
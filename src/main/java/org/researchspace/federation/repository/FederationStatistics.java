@@ -0,0 +1,369 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.federation.repository;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.researchspace.config.Configuration;
+import org.researchspace.federation.repository.optimizers.MpEvaluationStatistics;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+
+/**
+ * Platform-wide statistics about the members of federations and the SERVICE
+ * endpoints they reference, collected from real query traffic and optional
+ * background probing (see {@link MpFederation}).
+ *
+ * <p>
+ * Members are identified by their repository ID or, for endpoints which are
+ * not registered as repositories, by the service IRI (see
+ * {@link MpFederation#getMemberId(IRI)}). For each member the following
+ * estimates are kept as exponential moving averages:
+ * <ul>
+ * <li>the latency until the first result of a request,</li>
+ * <li>the number of results of a completely consumed request,</li>
+ * <li>the cardinality of <code>?s &lt;p&gt; ?o</code> for predicates which were
+ * queried on their own, and the number of results per subject or object for
+ * patterns which were queried with a bound subject or object, e.g. in bound
+ * joins (see {@link PatternShape}),</li>
+ * <li>the latency of the background <code>COUNT</code> probes, which is kept
+ * apart from the latency of real requests.</li>
+ * </ul>
+ * The estimates are used by {@link MpEvaluationStatistics} for join ordering
+ * and by the evaluation strategy to choose between bound and hash joins.
+ * </p>
+ *
+ * <p>
+ * Statistics are loaded from <code>data/federation-statistics.tsv</code> in the
+ * runtime directory on startup and written back by {@link #save()}.
+ * </p>
+ */
+public class FederationStatistics {
+
+    private static final Logger logger = LogManager.getLogger(FederationStatistics.class);
+
+    /**
+     * Weight of a new observation in the moving averages.
+     */
+    public static final double SMOOTHING_FACTOR = 0.3;
+
+    /**
+     * Maximum number of predicates tracked per member, further predicates are
+     * ignored.
+     */
+    public static final int MAX_PREDICATES_PER_MEMBER = 10000;
+
+    private static final String LATENCY = "latency";
+    private static final String PROBE_LATENCY = "probe-latency";
+    private static final String RESULTS = "results";
+
+    /**
+     * Shape of a triple pattern with a constant predicate whose number of results
+     * is tracked.
+     */
+    public enum PatternShape {
+        /**
+         * <code>?s &lt;p&gt; ?o</code>, i.e. the cardinality of the predicate
+         */
+        UNBOUND("cardinality"),
+        /**
+         * <code>&lt;s&gt; &lt;p&gt; ?o</code>, i.e. the number of objects per subject
+         */
+        SUBJECT_BOUND("subject-cardinality"),
+        /**
+         * <code>?s &lt;p&gt; &lt;o&gt;</code>, i.e. the number of subjects per object
+         */
+        OBJECT_BOUND("object-cardinality");
+
+        private final String key;
+
+        PatternShape(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the shape of a pattern with the given positions bound or
+         *         <code>null</code> if both are bound
+         */
+        @Nullable
+        public static PatternShape of(boolean subjectBound, boolean objectBound) {
+            if (subjectBound && objectBound) {
+                return null;
+            }
+            return subjectBound ? SUBJECT_BOUND : objectBound ? OBJECT_BOUND : UNBOUND;
+        }
+    }
+
+    private final ConcurrentMap<String, MemberStatistics> members = new ConcurrentHashMap<>();
+
+    @Nullable
+    private final File file;
+
+    @Inject
+    public FederationStatistics() {
+        this(new File(new File(Configuration.getRuntimeDirectory(), "data"), "federation-statistics.tsv"));
+    }
+
+    /**
+     * @param file file the statistics are loaded from and saved to or
+     *             <code>null</code> to keep them in memory only
+     */
+    public FederationStatistics(@Nullable File file) {
+        this.file = file;
+        if (file != null && file.isFile()) {
+            try {
+                load(file);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to load federation statistics from {}: {}", file, e.getMessage());
+                members.clear();
+            }
+        }
+    }
+
+    /**
+     * Records the time until the first result (or the end of the results) of a
+     * request was received.
+     */
+    public void recordLatency(String memberId, long latencyNanos) {
+        getMember(memberId).latencyMillis.update(latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Records the time a background <code>COUNT</code> probe took. Probes are not
+     * representative for the requests of queries and are therefore not mixed into
+     * {@link #getLatencyMillis(String)}.
+     */
+    public void recordProbeLatency(String memberId, long latencyNanos) {
+        getMember(memberId).probeLatencyMillis.update(latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Records the number of results of a completely consumed request.
+     */
+    public void recordResults(String memberId, long results) {
+        getMember(memberId).results.update(results);
+    }
+
+    /**
+     * Records the number of results of <code>?s &lt;predicate&gt; ?o</code>.
+     */
+    public void recordCardinality(String memberId, IRI predicate, long cardinality) {
+        recordCardinality(memberId, predicate, PatternShape.UNBOUND, cardinality);
+    }
+
+    /**
+     * Records the number of results of a pattern with the given shape, i.e. for
+     * bound shapes the average number of results per bound subject or object.
+     */
+    public void recordCardinality(String memberId, IRI predicate, PatternShape shape, double cardinality) {
+        Map<IRI, Estimate> cardinalities = getMember(memberId).cardinalities.get(shape);
+        Estimate estimate = cardinalities.get(predicate);
+        if (estimate == null) {
+            if (cardinalities.size() >= MAX_PREDICATES_PER_MEMBER) {
+                return;
+            }
+            estimate = cardinalities.computeIfAbsent(predicate, key -> new Estimate());
+        }
+        estimate.update(cardinality);
+    }
+
+    /**
+     * @return average time until the first result of a request in milliseconds
+     */
+    public OptionalDouble getLatencyMillis(String memberId) {
+        MemberStatistics member = members.get(memberId);
+        return member != null ? member.latencyMillis.get() : OptionalDouble.empty();
+    }
+
+    /**
+     * @return average duration of a background <code>COUNT</code> probe in
+     *         milliseconds
+     */
+    public OptionalDouble getProbeLatencyMillis(String memberId) {
+        MemberStatistics member = members.get(memberId);
+        return member != null ? member.probeLatencyMillis.get() : OptionalDouble.empty();
+    }
+
+    /**
+     * @return average number of results of a request
+     */
+    public OptionalDouble getResultsPerRequest(String memberId) {
+        MemberStatistics member = members.get(memberId);
+        return member != null ? member.results.get() : OptionalDouble.empty();
+    }
+
+    /**
+     * @return estimated number of results of <code>?s &lt;predicate&gt; ?o</code>
+     */
+    public OptionalDouble getCardinality(String memberId, IRI predicate) {
+        return getCardinality(memberId, predicate, PatternShape.UNBOUND);
+    }
+
+    /**
+     * @return estimated number of results of a pattern with the given shape, i.e.
+     *         for bound shapes the number of results per bound subject or object
+     */
+    public OptionalDouble getCardinality(String memberId, IRI predicate, PatternShape shape) {
+        MemberStatistics member = members.get(memberId);
+        if (member == null) {
+            return OptionalDouble.empty();
+        }
+        Estimate estimate = member.cardinalities.get(shape).get(predicate);
+        return estimate != null ? estimate.get() : OptionalDouble.empty();
+    }
+
+    /**
+     * @return predicates with a cardinality estimate of
+     *         <code>?s &lt;predicate&gt; ?o</code> for the member
+     */
+    public Set<IRI> getPredicates(String memberId) {
+        MemberStatistics member = members.get(memberId);
+        return member != null ? ImmutableSet.copyOf(member.cardinalities.get(PatternShape.UNBOUND).keySet())
+                : ImmutableSet.of();
+    }
+
+    private MemberStatistics getMember(String memberId) {
+        return members.computeIfAbsent(memberId, key -> new MemberStatistics());
+    }
+
+    /**
+     * Writes the statistics to the file they have been loaded from. The file is
+     * replaced atomically, i.e. concurrent readers never see partial content.
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, MemberStatistics> entry : members.entrySet()) {
+                    String memberId = entry.getKey();
+                    MemberStatistics member = entry.getValue();
+                    write(writer, member.latencyMillis, LATENCY, memberId);
+                    write(writer, member.probeLatencyMillis, PROBE_LATENCY, memberId);
+                    write(writer, member.results, RESULTS, memberId);
+                    for (PatternShape shape : PatternShape.values()) {
+                        for (Map.Entry<IRI, Estimate> cardinality : member.cardinalities.get(shape).entrySet()) {
+                            write(writer, cardinality.getValue(), shape.key, memberId,
+                                    cardinality.getKey().stringValue());
+                        }
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to save federation statistics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static void write(BufferedWriter writer, Estimate estimate, String... key) throws IOException {
+        OptionalDouble value = estimate.get();
+        if (!value.isPresent()) {
+            return;
+        }
+        writer.write(String.join("\t", key));
+        writer.write('\t');
+        writer.write(Double.toString(value.getAsDouble()));
+        writer.newLine();
+    }
+
+    private void load(File file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 3) {
+                    continue;
+                }
+                double value = Double.parseDouble(fields[fields.length - 1]);
+                MemberStatistics member = getMember(fields[1]);
+                if (LATENCY.equals(fields[0])) {
+                    member.latencyMillis.update(value);
+                } else if (PROBE_LATENCY.equals(fields[0])) {
+                    member.probeLatencyMillis.update(value);
+                } else if (RESULTS.equals(fields[0])) {
+                    member.results.update(value);
+                } else if (fields.length == 4) {
+                    for (PatternShape shape : PatternShape.values()) {
+                        if (shape.key.equals(fields[0])) {
+                            member.cardinalities.get(shape).computeIfAbsent(
+                                    SimpleValueFactory.getInstance().createIRI(fields[2]), key -> new Estimate())
+                                    .update(value);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static class MemberStatistics {
+        private final Estimate latencyMillis = new Estimate();
+        private final Estimate probeLatencyMillis = new Estimate();
+        private final Estimate results = new Estimate();
+        private final Map<PatternShape, ConcurrentMap<IRI, Estimate>> cardinalities = new EnumMap<>(
+                PatternShape.class);
+
+        MemberStatistics() {
+            for (PatternShape shape : PatternShape.values()) {
+                cardinalities.put(shape, new ConcurrentHashMap<>());
+            }
+        }
+    }
+
+    /**
+     * Exponential moving average, the first observation is taken as is.
+     */
+    private static class Estimate {
+        private double value;
+        private boolean present;
+
+        public synchronized void update(double observation) {
+            value = present ? value + SMOOTHING_FACTOR * (observation - value) : observation;
+            present = true;
+        }
+
+        public synchronized OptionalDouble get() {
+            return present ? OptionalDouble.of(value) : OptionalDouble.empty();
+        }
+    }
+}
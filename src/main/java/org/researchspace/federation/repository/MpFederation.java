@@ -22,30 +22,55 @@ package org.researchspace.federation.repository;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import javax.annotation.Nullable;
+
+import org.eclipse.rdf4j.RDF4JException;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.algebra.evaluation.TripleSource;
+import org.eclipse.rdf4j.query.algebra.evaluation.federation.FederatedService;
 import org.eclipse.rdf4j.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.eclipse.rdf4j.repository.sparql.federation.RepositoryFederatedService;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.filters.RepositoryBloomFilter;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.sparql.SPARQLRepository;
+import org.eclipse.rdf4j.repository.sparql.federation.SPARQLFederatedService;
 import org.eclipse.rdf4j.repository.sparql.federation.SPARQLServiceResolver;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
 import org.eclipse.rdf4j.sail.SailException;
 import org.eclipse.rdf4j.sail.federation.MpFederationConnection;
+import org.researchspace.federation.repository.evaluation.BindingSetBuffer;
+import org.researchspace.federation.repository.evaluation.BoundJoinBlockSizer;
+import org.researchspace.federation.repository.evaluation.FederationExecutor;
+import org.researchspace.federation.repository.evaluation.FederationTaskScope;
 import org.researchspace.federation.repository.evaluation.MedianAggregateService;
 import org.researchspace.federation.repository.evaluation.MpFederationStrategy;
+import org.researchspace.federation.repository.evaluation.MpGroupIterator;
+import org.researchspace.federation.repository.evaluation.ProbeResultCache;
 import org.researchspace.repository.RepositoryManager;
+import org.researchspace.sail.rest.AbstractServiceWrappingSail;
 import org.eclipse.rdf4j.sail.federation.Federation;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
@@ -64,19 +89,59 @@ public class MpFederation extends Federation {
 
     private static final Logger logger = LogManager.getLogger(MpFederation.class);
 
+    public static final int DEFAULT_BOUND_JOIN_MAX_CONCURRENT_BLOCKS = 4;
+    public static final int DEFAULT_BOUND_JOIN_MAX_CONCURRENT_REQUESTS = 16;
+    public static final int DEFAULT_NUM_THREADS = 100;
+    public static final int DEFAULT_MAX_CONCURRENT_TASKS_PER_QUERY = 40;
+    public static final int DEFAULT_NUM_DRIVER_THREADS = 200;
+    public static final int DEFAULT_EXECUTOR_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_HASH_JOIN_MAX_CARDINALITY = 1000;
+    private static final int MAX_BOUND_JOIN_BLOCK_SIZERS = 1000;
+
     protected Map<IRI, String> repositoryIDMappings;
 
     protected final String defaultRepositoryId;
 
-    protected final int numThreads = 20;
+    protected int numThreads = DEFAULT_NUM_THREADS;
+
+    protected int maxConcurrentTasksPerQuery = DEFAULT_MAX_CONCURRENT_TASKS_PER_QUERY;
+
+    protected int numDriverThreads = DEFAULT_NUM_DRIVER_THREADS;
+
+    protected int executorQueueCapacity = DEFAULT_EXECUTOR_QUEUE_CAPACITY;
 
     @Inject
     protected Provider<MpSparqlServiceRegistry> serviceRegistryProvider;
 
     protected Map<IRI, AggregateService> aggregateServiceRegistry = Maps.newHashMap();
 
-    protected ExecutorService rankedExecutor = Executors
-            .newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("mp-rdf4j-federation-%d").build());
+    @Inject
+    protected Provider<FederationStatistics> statisticsProvider;
+
+    protected boolean collectStatistics = true;
+    protected long statisticsProbeIntervalMillis = 0;
+    protected int hashJoinMaxCardinality = DEFAULT_HASH_JOIN_MAX_CARDINALITY;
+
+    /**
+     * Statistics IDs of the default member and the repositories referenced as
+     * services, see {@link #getMemberId(Repository)}.
+     */
+    private final Map<Repository, String> memberIds = new ConcurrentHashMap<>();
+
+    /**
+     * Block sizers per member endpoint, see {@link #getBoundJoinBlockSizer(String)}.
+     * SERVICE endpoints are identified by their IRI, hence the number of sizers is
+     * bounded.
+     */
+    private final Cache<String, BoundJoinBlockSizer> boundJoinBlockSizers = Caffeine.newBuilder()
+            .maximumSize(MAX_BOUND_JOIN_BLOCK_SIZERS).build();
+
+    private ScheduledExecutorService statisticsProbeExecutor;
+
+    /**
+     * Created on first use, i.e. after the executor settings have been applied.
+     */
+    private FederationExecutor rankedExecutor;
 
     /*
      * TODO: re-enable for top-k "depth-first" optimization protected
@@ -96,6 +161,29 @@ public class MpFederation extends Federation {
     protected boolean useBoundJoin = true;
     protected boolean enableQueryHints = true;
 
+    protected int boundJoinMinBlockSize = BoundJoinBlockSizer.DEFAULT_MIN_BLOCK_SIZE;
+    protected int boundJoinMaxBlockSize = BoundJoinBlockSizer.DEFAULT_MAX_BLOCK_SIZE;
+    protected int boundJoinMaxQueryLength = BoundJoinBlockSizer.DEFAULT_MAX_QUERY_LENGTH;
+    protected long boundJoinTargetLatencyMillis = BoundJoinBlockSizer.DEFAULT_TARGET_LATENCY_MILLIS;
+    protected int boundJoinMaxResultsPerBlock = BoundJoinBlockSizer.DEFAULT_MAX_RESULTS_PER_BLOCK;
+
+    protected int boundJoinMaxConcurrentBlocks = DEFAULT_BOUND_JOIN_MAX_CONCURRENT_BLOCKS;
+    protected Semaphore boundJoinRequestPermits = new Semaphore(DEFAULT_BOUND_JOIN_MAX_CONCURRENT_REQUESTS, true);
+    protected boolean boundJoinPreserveOrder = true;
+
+    protected long materializationMemoryBudget = BindingSetBuffer.DEFAULT_MEMORY_BUDGET_BYTES;
+    protected long aggregationMemoryBudget = MpGroupIterator.DEFAULT_MEMORY_BUDGET_BYTES;
+
+    protected int probeCacheMaxResults = ProbeResultCache.DEFAULT_MAX_RESULTS;
+    protected int probeCacheMaxResultsPerKey = ProbeResultCache.DEFAULT_MAX_RESULTS_PER_KEY;
+    protected long probeCacheTTLMillis = 0;
+
+    /**
+     * Probe results shared across queries, only created if a probe cache TTL is
+     * configured.
+     */
+    private Cache<Object, List<BindingSet>> sharedProbeResults;
+
     public MpFederation(String defaultRepositoryId, Map<IRI, String> repositoryIDMappings) {
         this.defaultRepositoryId = defaultRepositoryId;
         this.repositoryIDMappings = repositoryIDMappings;
@@ -170,22 +258,146 @@ public class MpFederation extends Federation {
                 Collectors.toMap(entry -> entry.getKey(), entry -> repositoryManager.getRepository(entry.getValue())));
     }
 
+    /**
+     * Checks whether a SERVICE clause with the given IRI is evaluated against a
+     * SPARQL endpoint, i.e. whether multiple bindings can be sent in a single
+     * request using a <code>VALUES</code> clause. Services backed by other
+     * repositories (e.g. REST or SQL services) are evaluated binding by binding.
+     */
+    public boolean isSparqlService(IRI serviceRef) {
+        if (!repositoryIDMappings.containsKey(serviceRef)) {
+            // resolved as a remote SPARQL endpoint by the service resolver
+            return true;
+        }
+        return repositoryManagerProvider.get()
+                .getRepository(repositoryIDMappings.get(serviceRef)) instanceof SPARQLRepository;
+    }
+
+    /**
+     * @return the repository of a service-wrapping SAIL (e.g. a REST or SQL
+     *         service) the SERVICE clause with the given IRI is evaluated against
+     *         or <code>null</code> if the service is not backed by such a
+     *         repository
+     */
+    @Nullable
+    public SailRepository getServiceWrappingRepository(IRI serviceRef) {
+        String repositoryId = repositoryIDMappings.get(serviceRef);
+        if (repositoryId == null) {
+            return null;
+        }
+        Repository repository = repositoryManagerProvider.get().getRepository(repositoryId);
+        if (repository instanceof SailRepository
+                && ((SailRepository) repository).getSail() instanceof AbstractServiceWrappingSail) {
+            return (SailRepository) repository;
+        }
+        return null;
+    }
+
     /**
      * Federation service resolver is initialized from {@link RepositoryManager}
      */
     protected synchronized void initServiceResolver() {
         RepositoryManager repositoryManager = repositoryManagerProvider.get();
-        super.addMember(repositoryManager.getRepository(this.defaultRepositoryId));
+        Repository defaultMember = repositoryManager.getRepository(this.defaultRepositoryId);
+        super.addMember(defaultMember);
+        memberIds.put(defaultMember, defaultRepositoryId);
 
         Map<IRI, Repository> serviceMappings = getServiceMappings();
-        SPARQLServiceResolver serviceResolver = new SPARQLServiceResolver();
+        SPARQLServiceResolver serviceResolver = new SPARQLServiceResolver() {
+            @Override
+            protected FederatedService createService(String serviceUrl) throws QueryEvaluationException {
+                SPARQLFederatedService service = new SPARQLFederatedService(serviceUrl,
+                        getHttpClientSessionManager());
+                service.setBoundJoinBlockSize(boundJoinMaxBlockSize);
+                return service;
+            }
+        };
         serviceResolver.setHttpClientSessionManager(repositoryManager.getClientSessionManager());
         serviceMappings.forEach((refIri, repo) -> {
-            serviceResolver.registerService(refIri.stringValue(), new RepositoryFederatedService(repo, false));
+            if (repo != null) {
+                memberIds.put(repo, repositoryIDMappings.get(refIri));
+            }
+            RepositoryFederatedService service = new RepositoryFederatedService(repo, false);
+            if (repo instanceof SPARQLRepository) {
+                // batches of join keys are sent as a single VALUES block
+                service.setBoundJoinBlockSize(boundJoinMaxBlockSize);
+            }
+            serviceResolver.registerService(refIri.stringValue(), service);
         });
 
         super.setFederatedServiceResolver(serviceResolver);
         isServiceResolverInitialized = true;
+
+        if (statisticsProbeIntervalMillis > 0 && getStatistics() != null && statisticsProbeExecutor == null) {
+            statisticsProbeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("mp-federation-statistics-%d").setDaemon(true).build());
+            statisticsProbeExecutor.scheduleWithFixedDelay(this::probeStatistics, statisticsProbeIntervalMillis,
+                    statisticsProbeIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the statistics of federation members or <code>null</code> if
+     *         statistics collection is disabled
+     */
+    @Nullable
+    public FederationStatistics getStatistics() {
+        if (!collectStatistics || statisticsProvider == null) {
+            return null;
+        }
+        return statisticsProvider.get();
+    }
+
+    /**
+     * @return the ID under which statistics of the repository are recorded or
+     *         <code>null</code> if it is not a member of this federation
+     */
+    @Nullable
+    public String getMemberId(Repository repository) {
+        return memberIds.get(repository);
+    }
+
+    /**
+     * @return the ID under which statistics of the SERVICE endpoint are recorded,
+     *         i.e. the repository ID for services mapped to repositories and the
+     *         IRI otherwise
+     */
+    public String getMemberId(IRI serviceRef) {
+        String repositoryId = repositoryIDMappings.get(serviceRef);
+        return repositoryId != null ? repositoryId : serviceRef.stringValue();
+    }
+
+    /**
+     * Refreshes the cardinalities of the predicates observed in query traffic
+     * with <code>COUNT</code> queries against the SPARQL members.
+     */
+    protected void probeStatistics() {
+        FederationStatistics statistics = getStatistics();
+        if (statistics == null) {
+            return;
+        }
+        memberIds.forEach((repository, memberId) -> {
+            if (!(repository instanceof SPARQLRepository) && !memberId.equals(defaultRepositoryId)) {
+                // custom services may not support arbitrary queries
+                return;
+            }
+            try (RepositoryConnection con = repository.getConnection()) {
+                for (IRI predicate : statistics.getPredicates(memberId)) {
+                    long start = System.nanoTime();
+                    TupleQuery query = con.prepareTupleQuery("SELECT (COUNT(*) AS ?count) WHERE { ?s "
+                            + NTriplesUtil.toNTriplesString(predicate) + " ?o }");
+                    BindingSet result = QueryResults.singleResult(query.evaluate());
+                    statistics.recordProbeLatency(memberId, System.nanoTime() - start);
+                    if (result != null && result.getValue("count") instanceof Literal) {
+                        statistics.recordCardinality(memberId, predicate,
+                                ((Literal) result.getValue("count")).longValue());
+                    }
+                }
+            } catch (RDF4JException | RuntimeException e) {
+                logger.warn("Failed to probe statistics of federation member {}: {}", memberId, e.getMessage());
+            }
+        });
+        statistics.save();
     }
 
     @Override
@@ -205,13 +417,39 @@ public class MpFederation extends Federation {
         // RepositoryManager.
     }
 
-    public ExecutorService getRankedExecutor() {
+    public synchronized FederationExecutor getExecutor() {
+        if (rankedExecutor == null) {
+            rankedExecutor = new FederationExecutor("mp-rdf4j-federation", numThreads, numDriverThreads,
+                    executorQueueCapacity);
+        }
         return rankedExecutor;
     }
 
+    public ExecutorService getRankedExecutor() {
+        return getExecutor().getExecutorService();
+    }
+
+    /**
+     * Used by the RDF4J join cursors, which block like join drivers.
+     */
     @Override
     public void execute(Runnable command) {
-        this.rankedExecutor.execute(command);
+        getExecutor().executeDriver(command);
+    }
+
+    /**
+     * Creates the scope for the tasks of a single query.
+     */
+    public FederationTaskScope createTaskScope() {
+        return new FederationTaskScope(getExecutor(), maxConcurrentTasksPerQuery);
+    }
+
+    public void setExecutorLimits(int numThreads, int numDriverThreads, int maxConcurrentTasksPerQuery,
+            int queueCapacity) {
+        this.numThreads = numThreads;
+        this.numDriverThreads = numDriverThreads;
+        this.maxConcurrentTasksPerQuery = maxConcurrentTasksPerQuery;
+        this.executorQueueCapacity = queueCapacity;
     }
 
     public MpSparqlServiceRegistry getServiceRegistry() throws Exception {
@@ -258,9 +496,148 @@ public class MpFederation extends Federation {
         this.enableQueryHints = queryHintsEnabled;
     }
 
+    public void setBoundJoinBlockSizeLimits(int minBlockSize, int maxBlockSize, int maxQueryLength,
+            long targetLatencyMillis, int maxResultsPerBlock) {
+        this.boundJoinMinBlockSize = minBlockSize;
+        this.boundJoinMaxBlockSize = maxBlockSize;
+        this.boundJoinMaxQueryLength = maxQueryLength;
+        this.boundJoinTargetLatencyMillis = targetLatencyMillis;
+        this.boundJoinMaxResultsPerBlock = maxResultsPerBlock;
+    }
+
+    public void setBoundJoinConcurrency(int maxConcurrentBlocks, int maxConcurrentRequests,
+            boolean preserveOrder) {
+        this.boundJoinMaxConcurrentBlocks = maxConcurrentBlocks;
+        this.boundJoinRequestPermits = new Semaphore(maxConcurrentRequests, true);
+        this.boundJoinPreserveOrder = preserveOrder;
+    }
+
+    /**
+     * @return maximum number of blocks of a single bound join which are requested
+     *         ahead of consumption
+     */
+    public int getBoundJoinMaxConcurrentBlocks() {
+        return boundJoinMaxConcurrentBlocks;
+    }
+
+    /**
+     * @return permits limiting the number of concurrent bound join requests of
+     *         all queries against this federation
+     */
+    public Semaphore getBoundJoinRequestPermits() {
+        return boundJoinRequestPermits;
+    }
+
+    public boolean isBoundJoinPreserveOrder() {
+        return boundJoinPreserveOrder;
+    }
+
+    /**
+     * @return estimated number of bytes a single materialized intermediate result
+     *         may occupy in memory before it is spilled to disk
+     */
+    public long getMaterializationMemoryBudget() {
+        return materializationMemoryBudget;
+    }
+
+    public void setMaterializationMemoryBudget(long materializationMemoryBudget) {
+        this.materializationMemoryBudget = materializationMemoryBudget;
+    }
+
+    /**
+     * @return estimated number of bytes the group state of a single GROUP BY may
+     *         occupy in memory before solutions are spilled to disk
+     */
+    public long getAggregationMemoryBudget() {
+        return aggregationMemoryBudget;
+    }
+
+    public void setAggregationMemoryBudget(long aggregationMemoryBudget) {
+        this.aggregationMemoryBudget = aggregationMemoryBudget;
+    }
+
+    public boolean isCollectStatistics() {
+        return collectStatistics;
+    }
+
+    public void setCollectStatistics(boolean collectStatistics) {
+        this.collectStatistics = collectStatistics;
+    }
+
+    public void setStatisticsProbeInterval(long statisticsProbeIntervalMillis) {
+        this.statisticsProbeIntervalMillis = statisticsProbeIntervalMillis;
+    }
+
+    /**
+     * @return maximum observed cardinality of a remote subquery which is
+     *         evaluated once and hash joined instead of using a bound join;
+     *         <code>0</code> disables hash joins
+     */
+    public int getHashJoinMaxCardinality() {
+        return hashJoinMaxCardinality;
+    }
+
+    public void setHashJoinMaxCardinality(int hashJoinMaxCardinality) {
+        this.hashJoinMaxCardinality = hashJoinMaxCardinality;
+    }
+
+    public void setProbeCacheLimits(int maxResults, int maxResultsPerKey, long ttlMillis) {
+        this.probeCacheMaxResults = maxResults;
+        this.probeCacheMaxResultsPerKey = maxResultsPerKey;
+        this.probeCacheTTLMillis = ttlMillis;
+    }
+
+    /**
+     * Creates the probe result cache for a single async join.
+     * 
+     * @param sharedScope identifies the probed expression across queries or
+     *                    <code>null</code> if results must not be shared
+     */
+    public ProbeResultCache createProbeResultCache(@Nullable Object sharedScope) {
+        return new ProbeResultCache(probeCacheMaxResults, probeCacheMaxResultsPerKey, getSharedProbeResults(),
+                sharedScope);
+    }
+
+    private synchronized Cache<Object, List<BindingSet>> getSharedProbeResults() {
+        if (sharedProbeResults == null && probeCacheTTLMillis > 0) {
+            sharedProbeResults = Caffeine.newBuilder().maximumWeight(probeCacheMaxResults)
+                    .<Object, List<BindingSet>>weigher((key, results) -> Math.max(1, results.size()))
+                    .expireAfterWrite(probeCacheTTLMillis, TimeUnit.MILLISECONDS).build();
+        }
+        return sharedProbeResults;
+    }
+
+    /**
+     * Returns the block sizer of the member endpoint, which is shared by all bound
+     * joins against the endpoint, so that the block size learned from previous
+     * queries is re-used.
+     *
+     * @param memberId ID of the member endpoint (see
+     *                 {@link #getMemberId(Repository)}) or <code>null</code> if
+     *                 unknown, in which case a new block sizer is created for the
+     *                 join
+     */
+    public BoundJoinBlockSizer getBoundJoinBlockSizer(@Nullable String memberId) {
+        if (memberId == null) {
+            return createBoundJoinBlockSizer();
+        }
+        return boundJoinBlockSizers.get(memberId, id -> createBoundJoinBlockSizer());
+    }
+
+    /**
+     * Creates a block sizer using the configured limits.
+     */
+    protected BoundJoinBlockSizer createBoundJoinBlockSizer() {
+        return new BoundJoinBlockSizer(boundJoinMinBlockSize, boundJoinMaxBlockSize, boundJoinMaxQueryLength,
+                boundJoinTargetLatencyMillis, boundJoinMaxResultsPerBlock);
+    }
+
     @Override
     public void shutDown() throws SailException {
         List<SailException> toThrowExceptions = new ArrayList<>();
+        if (statisticsProbeExecutor != null) {
+            statisticsProbeExecutor.shutdownNow();
+        }
         try {
             SPARQLServiceResolver toCloseServiceResolver = (SPARQLServiceResolver) getFederatedServiceResolver();
             super.setFederatedServiceResolver(null);
@@ -268,20 +645,26 @@ public class MpFederation extends Federation {
                 toCloseServiceResolver.shutDown();
             }
         } finally {
+            shutDownExecutor();
+        }
+        if (!toThrowExceptions.isEmpty()) {
+            throw toThrowExceptions.get(0);
+        }
+    }
+
+    private void shutDownExecutor() {
+        FederationExecutor executor;
+        synchronized (this) {
+            executor = rankedExecutor;
+        }
+        // the executor is created lazily and might have never been used
+        if (executor != null) {
             try {
-                this.rankedExecutor.shutdown();
-                this.rankedExecutor.awaitTermination(10, TimeUnit.SECONDS);
+                executor.shutdown(10, TimeUnit.SECONDS);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-            } finally {
-                if (!this.rankedExecutor.isShutdown()) {
-                    this.rankedExecutor.shutdownNow();
-                }
             }
         }
-        if (!toThrowExceptions.isEmpty()) {
-            throw toThrowExceptions.get(0);
-        }
     }
 
 }
\ No newline at end of file
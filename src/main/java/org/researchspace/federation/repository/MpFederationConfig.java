@@ -37,6 +37,10 @@ import org.eclipse.rdf4j.model.util.Models;
 import org.eclipse.rdf4j.sail.config.AbstractSailImplConfig;
 import org.eclipse.rdf4j.sail.config.SailConfigException;
 import org.eclipse.rdf4j.sail.federation.config.FederationConfig;
+import org.researchspace.federation.repository.evaluation.BindingSetBuffer;
+import org.researchspace.federation.repository.evaluation.BoundJoinBlockSizer;
+import org.researchspace.federation.repository.evaluation.MpGroupIterator;
+import org.researchspace.federation.repository.evaluation.ProbeResultCache;
 import org.researchspace.repository.MpDelegatingImplConfig;
 import org.researchspace.repository.MpRepositoryVocabulary;
 
@@ -122,6 +126,28 @@ public class MpFederationConfig extends AbstractSailImplConfig implements MpDele
     private boolean useBoundJoin = true;
     private boolean enableQueryHints = true;
 
+    private int boundJoinMinBlockSize = BoundJoinBlockSizer.DEFAULT_MIN_BLOCK_SIZE;
+    private int boundJoinMaxBlockSize = BoundJoinBlockSizer.DEFAULT_MAX_BLOCK_SIZE;
+    private int boundJoinMaxQueryLength = BoundJoinBlockSizer.DEFAULT_MAX_QUERY_LENGTH;
+    private long boundJoinTargetLatency = BoundJoinBlockSizer.DEFAULT_TARGET_LATENCY_MILLIS;
+    private int boundJoinMaxResultsPerBlock = BoundJoinBlockSizer.DEFAULT_MAX_RESULTS_PER_BLOCK;
+    private int boundJoinMaxConcurrentBlocks = MpFederation.DEFAULT_BOUND_JOIN_MAX_CONCURRENT_BLOCKS;
+    private int boundJoinMaxConcurrentRequests = MpFederation.DEFAULT_BOUND_JOIN_MAX_CONCURRENT_REQUESTS;
+    private boolean boundJoinPreserveOrder = true;
+
+    private int maxThreads = MpFederation.DEFAULT_NUM_THREADS;
+    private int maxDriverThreads = MpFederation.DEFAULT_NUM_DRIVER_THREADS;
+    private int maxConcurrentTasksPerQuery = MpFederation.DEFAULT_MAX_CONCURRENT_TASKS_PER_QUERY;
+    private int executorQueueCapacity = MpFederation.DEFAULT_EXECUTOR_QUEUE_CAPACITY;
+    private int probeCacheMaxResults = ProbeResultCache.DEFAULT_MAX_RESULTS;
+    private int probeCacheMaxResultsPerKey = ProbeResultCache.DEFAULT_MAX_RESULTS_PER_KEY;
+    private long probeCacheTTL = 0;
+    private long materializationMemoryBudget = BindingSetBuffer.DEFAULT_MEMORY_BUDGET_BYTES;
+    private long aggregationMemoryBudget = MpGroupIterator.DEFAULT_MEMORY_BUDGET_BYTES;
+    private boolean collectStatistics = true;
+    private long statisticsProbeInterval = 0;
+    private int hashJoinMaxCardinality = MpFederation.DEFAULT_HASH_JOIN_MAX_CARDINALITY;
+
     public MpFederationConfig() {
         super(MpFederationFactory.SAIL_TYPE);
     }
@@ -150,6 +176,30 @@ public class MpFederationConfig extends AbstractSailImplConfig implements MpDele
         if (this.defaultMember == null) {
             throw new SailConfigException("Default member was not defined.");
         }
+        if (boundJoinMinBlockSize < 1 || boundJoinMaxBlockSize < boundJoinMinBlockSize) {
+            throw new SailConfigException("Invalid bound join block size limits: min " + boundJoinMinBlockSize
+                    + ", max " + boundJoinMaxBlockSize);
+        }
+        if (boundJoinMaxConcurrentBlocks < 1 || boundJoinMaxConcurrentRequests < 1) {
+            throw new SailConfigException("The number of concurrent bound join blocks and requests must be positive");
+        }
+        if (maxThreads < 1 || maxDriverThreads < 1 || maxConcurrentTasksPerQuery < 1) {
+            throw new SailConfigException("The number of threads and concurrent tasks per query must be positive");
+        }
+        if (executorQueueCapacity < 1) {
+            throw new SailConfigException("The executor queue capacity must be positive");
+        }
+        if (probeCacheMaxResults < 1 || probeCacheMaxResultsPerKey < 0 || probeCacheTTL < 0) {
+            throw new SailConfigException("Invalid probe cache limits: max results " + probeCacheMaxResults
+                    + ", max results per key " + probeCacheMaxResultsPerKey + ", TTL " + probeCacheTTL);
+        }
+        if (materializationMemoryBudget < 0 || aggregationMemoryBudget < 0) {
+            throw new SailConfigException("Memory budgets must not be negative");
+        }
+        if (statisticsProbeInterval < 0 || hashJoinMaxCardinality < 0) {
+            throw new SailConfigException("Invalid statistics settings: probe interval " + statisticsProbeInterval
+                    + ", hash join max cardinality " + hashJoinMaxCardinality);
+        }
         for (MpFederationMemberConfig config : memberConfigs) {
             config.validate();
         }
@@ -182,6 +232,76 @@ public class MpFederationConfig extends AbstractSailImplConfig implements MpDele
             model.add(res, MpRepositoryVocabulary.ENABLE_QUERY_HINTS,
                     SimpleValueFactory.getInstance().createLiteral(this.enableQueryHints));
         }
+        if (boundJoinMinBlockSize != BoundJoinBlockSizer.DEFAULT_MIN_BLOCK_SIZE) {
+            model.add(res, MpRepositoryVocabulary.BOUND_JOIN_MIN_BLOCK_SIZE, vf.createLiteral(boundJoinMinBlockSize));
+        }
+        if (boundJoinMaxBlockSize != BoundJoinBlockSizer.DEFAULT_MAX_BLOCK_SIZE) {
+            model.add(res, MpRepositoryVocabulary.BOUND_JOIN_MAX_BLOCK_SIZE, vf.createLiteral(boundJoinMaxBlockSize));
+        }
+        if (boundJoinMaxQueryLength != BoundJoinBlockSizer.DEFAULT_MAX_QUERY_LENGTH) {
+            model.add(res, MpRepositoryVocabulary.BOUND_JOIN_MAX_QUERY_LENGTH,
+                    vf.createLiteral(boundJoinMaxQueryLength));
+        }
+        if (boundJoinTargetLatency != BoundJoinBlockSizer.DEFAULT_TARGET_LATENCY_MILLIS) {
+            model.add(res, MpRepositoryVocabulary.BOUND_JOIN_TARGET_LATENCY, vf.createLiteral(boundJoinTargetLatency));
+        }
+        if (boundJoinMaxResultsPerBlock != BoundJoinBlockSizer.DEFAULT_MAX_RESULTS_PER_BLOCK) {
+            model.add(res, MpRepositoryVocabulary.BOUND_JOIN_MAX_RESULTS_PER_BLOCK,
+                    vf.createLiteral(boundJoinMaxResultsPerBlock));
+        }
+        if (boundJoinMaxConcurrentBlocks != MpFederation.DEFAULT_BOUND_JOIN_MAX_CONCURRENT_BLOCKS) {
+            model.add(res, MpRepositoryVocabulary.BOUND_JOIN_MAX_CONCURRENT_BLOCKS,
+                    vf.createLiteral(boundJoinMaxConcurrentBlocks));
+        }
+        if (boundJoinMaxConcurrentRequests != MpFederation.DEFAULT_BOUND_JOIN_MAX_CONCURRENT_REQUESTS) {
+            model.add(res, MpRepositoryVocabulary.BOUND_JOIN_MAX_CONCURRENT_REQUESTS,
+                    vf.createLiteral(boundJoinMaxConcurrentRequests));
+        }
+        if (!boundJoinPreserveOrder) {
+            model.add(res, MpRepositoryVocabulary.BOUND_JOIN_PRESERVE_ORDER, vf.createLiteral(boundJoinPreserveOrder));
+        }
+        if (maxThreads != MpFederation.DEFAULT_NUM_THREADS) {
+            model.add(res, MpRepositoryVocabulary.MAX_THREADS, vf.createLiteral(maxThreads));
+        }
+        if (maxDriverThreads != MpFederation.DEFAULT_NUM_DRIVER_THREADS) {
+            model.add(res, MpRepositoryVocabulary.MAX_DRIVER_THREADS, vf.createLiteral(maxDriverThreads));
+        }
+        if (maxConcurrentTasksPerQuery != MpFederation.DEFAULT_MAX_CONCURRENT_TASKS_PER_QUERY) {
+            model.add(res, MpRepositoryVocabulary.MAX_CONCURRENT_TASKS_PER_QUERY,
+                    vf.createLiteral(maxConcurrentTasksPerQuery));
+        }
+        if (executorQueueCapacity != MpFederation.DEFAULT_EXECUTOR_QUEUE_CAPACITY) {
+            model.add(res, MpRepositoryVocabulary.EXECUTOR_QUEUE_CAPACITY, vf.createLiteral(executorQueueCapacity));
+        }
+        if (probeCacheMaxResults != ProbeResultCache.DEFAULT_MAX_RESULTS) {
+            model.add(res, MpRepositoryVocabulary.PROBE_CACHE_MAX_RESULTS, vf.createLiteral(probeCacheMaxResults));
+        }
+        if (probeCacheMaxResultsPerKey != ProbeResultCache.DEFAULT_MAX_RESULTS_PER_KEY) {
+            model.add(res, MpRepositoryVocabulary.PROBE_CACHE_MAX_RESULTS_PER_KEY,
+                    vf.createLiteral(probeCacheMaxResultsPerKey));
+        }
+        if (probeCacheTTL != 0) {
+            model.add(res, MpRepositoryVocabulary.PROBE_CACHE_TTL, vf.createLiteral(probeCacheTTL));
+        }
+        if (materializationMemoryBudget != BindingSetBuffer.DEFAULT_MEMORY_BUDGET_BYTES) {
+            model.add(res, MpRepositoryVocabulary.MATERIALIZATION_MEMORY_BUDGET,
+                    vf.createLiteral(materializationMemoryBudget));
+        }
+        if (aggregationMemoryBudget != MpGroupIterator.DEFAULT_MEMORY_BUDGET_BYTES) {
+            model.add(res, MpRepositoryVocabulary.AGGREGATION_MEMORY_BUDGET,
+                    vf.createLiteral(aggregationMemoryBudget));
+        }
+        if (!collectStatistics) {
+            model.add(res, MpRepositoryVocabulary.COLLECT_STATISTICS, vf.createLiteral(collectStatistics));
+        }
+        if (statisticsProbeInterval != 0) {
+            model.add(res, MpRepositoryVocabulary.STATISTICS_PROBE_INTERVAL,
+                    vf.createLiteral(statisticsProbeInterval));
+        }
+        if (hashJoinMaxCardinality != MpFederation.DEFAULT_HASH_JOIN_MAX_CARDINALITY) {
+            model.add(res, MpRepositoryVocabulary.HASH_JOIN_MAX_CARDINALITY,
+                    vf.createLiteral(hashJoinMaxCardinality));
+        }
         return res;
     }
 
@@ -205,6 +325,46 @@ public class MpFederationConfig extends AbstractSailImplConfig implements MpDele
                 .ifPresent(lit -> setUseCompetingJoin(lit.booleanValue()));
         Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.ENABLE_QUERY_HINTS, null))
                 .ifPresent(lit -> setEnableQueryHints(lit.booleanValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.BOUND_JOIN_MIN_BLOCK_SIZE, null))
+                .ifPresent(lit -> setBoundJoinMinBlockSize(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.BOUND_JOIN_MAX_BLOCK_SIZE, null))
+                .ifPresent(lit -> setBoundJoinMaxBlockSize(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.BOUND_JOIN_MAX_QUERY_LENGTH, null))
+                .ifPresent(lit -> setBoundJoinMaxQueryLength(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.BOUND_JOIN_TARGET_LATENCY, null))
+                .ifPresent(lit -> setBoundJoinTargetLatency(lit.longValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.BOUND_JOIN_MAX_RESULTS_PER_BLOCK, null))
+                .ifPresent(lit -> setBoundJoinMaxResultsPerBlock(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.BOUND_JOIN_MAX_CONCURRENT_BLOCKS, null))
+                .ifPresent(lit -> setBoundJoinMaxConcurrentBlocks(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.BOUND_JOIN_MAX_CONCURRENT_REQUESTS, null))
+                .ifPresent(lit -> setBoundJoinMaxConcurrentRequests(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.BOUND_JOIN_PRESERVE_ORDER, null))
+                .ifPresent(lit -> setBoundJoinPreserveOrder(lit.booleanValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.MAX_THREADS, null))
+                .ifPresent(lit -> setMaxThreads(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.MAX_DRIVER_THREADS, null))
+                .ifPresent(lit -> setMaxDriverThreads(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.MAX_CONCURRENT_TASKS_PER_QUERY, null))
+                .ifPresent(lit -> setMaxConcurrentTasksPerQuery(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.EXECUTOR_QUEUE_CAPACITY, null))
+                .ifPresent(lit -> setExecutorQueueCapacity(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.PROBE_CACHE_MAX_RESULTS, null))
+                .ifPresent(lit -> setProbeCacheMaxResults(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.PROBE_CACHE_MAX_RESULTS_PER_KEY, null))
+                .ifPresent(lit -> setProbeCacheMaxResultsPerKey(lit.intValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.PROBE_CACHE_TTL, null))
+                .ifPresent(lit -> setProbeCacheTTL(lit.longValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.MATERIALIZATION_MEMORY_BUDGET, null))
+                .ifPresent(lit -> setMaterializationMemoryBudget(lit.longValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.AGGREGATION_MEMORY_BUDGET, null))
+                .ifPresent(lit -> setAggregationMemoryBudget(lit.longValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.COLLECT_STATISTICS, null))
+                .ifPresent(lit -> setCollectStatistics(lit.booleanValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.STATISTICS_PROBE_INTERVAL, null))
+                .ifPresent(lit -> setStatisticsProbeInterval(lit.longValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.HASH_JOIN_MAX_CARDINALITY, null))
+                .ifPresent(lit -> setHashJoinMaxCardinality(lit.intValue()));
     }
 
     public Map<IRI, String> getRepositoryIDMappings() {
@@ -243,4 +403,182 @@ public class MpFederationConfig extends AbstractSailImplConfig implements MpDele
     public void setEnableQueryHints(boolean enableQueryHints) {
         this.enableQueryHints = enableQueryHints;
     }
+
+    public int getBoundJoinMinBlockSize() {
+        return boundJoinMinBlockSize;
+    }
+
+    public void setBoundJoinMinBlockSize(int boundJoinMinBlockSize) {
+        this.boundJoinMinBlockSize = boundJoinMinBlockSize;
+    }
+
+    public int getBoundJoinMaxBlockSize() {
+        return boundJoinMaxBlockSize;
+    }
+
+    public void setBoundJoinMaxBlockSize(int boundJoinMaxBlockSize) {
+        this.boundJoinMaxBlockSize = boundJoinMaxBlockSize;
+    }
+
+    public int getBoundJoinMaxQueryLength() {
+        return boundJoinMaxQueryLength;
+    }
+
+    public void setBoundJoinMaxQueryLength(int boundJoinMaxQueryLength) {
+        this.boundJoinMaxQueryLength = boundJoinMaxQueryLength;
+    }
+
+    /**
+     * @return target latency of a single bound join block in milliseconds
+     */
+    public long getBoundJoinTargetLatency() {
+        return boundJoinTargetLatency;
+    }
+
+    public void setBoundJoinTargetLatency(long boundJoinTargetLatency) {
+        this.boundJoinTargetLatency = boundJoinTargetLatency;
+    }
+
+    public int getBoundJoinMaxResultsPerBlock() {
+        return boundJoinMaxResultsPerBlock;
+    }
+
+    public void setBoundJoinMaxResultsPerBlock(int boundJoinMaxResultsPerBlock) {
+        this.boundJoinMaxResultsPerBlock = boundJoinMaxResultsPerBlock;
+    }
+
+    public int getBoundJoinMaxConcurrentBlocks() {
+        return boundJoinMaxConcurrentBlocks;
+    }
+
+    public void setBoundJoinMaxConcurrentBlocks(int boundJoinMaxConcurrentBlocks) {
+        this.boundJoinMaxConcurrentBlocks = boundJoinMaxConcurrentBlocks;
+    }
+
+    public int getBoundJoinMaxConcurrentRequests() {
+        return boundJoinMaxConcurrentRequests;
+    }
+
+    public void setBoundJoinMaxConcurrentRequests(int boundJoinMaxConcurrentRequests) {
+        this.boundJoinMaxConcurrentRequests = boundJoinMaxConcurrentRequests;
+    }
+
+    public boolean isBoundJoinPreserveOrder() {
+        return boundJoinPreserveOrder;
+    }
+
+    public void setBoundJoinPreserveOrder(boolean boundJoinPreserveOrder) {
+        this.boundJoinPreserveOrder = boundJoinPreserveOrder;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * @return maximum number of threads running join drivers
+     */
+    public int getMaxDriverThreads() {
+        return maxDriverThreads;
+    }
+
+    public void setMaxDriverThreads(int maxDriverThreads) {
+        this.maxDriverThreads = maxDriverThreads;
+    }
+
+    public int getMaxConcurrentTasksPerQuery() {
+        return maxConcurrentTasksPerQuery;
+    }
+
+    public void setMaxConcurrentTasksPerQuery(int maxConcurrentTasksPerQuery) {
+        this.maxConcurrentTasksPerQuery = maxConcurrentTasksPerQuery;
+    }
+
+    /**
+     * @return maximum number of remote requests waiting for a thread before
+     *         further requests are rejected
+     */
+    public int getExecutorQueueCapacity() {
+        return executorQueueCapacity;
+    }
+
+    public void setExecutorQueueCapacity(int executorQueueCapacity) {
+        this.executorQueueCapacity = executorQueueCapacity;
+    }
+
+    /**
+     * @return maximum number of probe results remembered per async join (and by
+     *         the cache shared across queries)
+     */
+    public int getProbeCacheMaxResults() {
+        return probeCacheMaxResults;
+    }
+
+    public void setProbeCacheMaxResults(int probeCacheMaxResults) {
+        this.probeCacheMaxResults = probeCacheMaxResults;
+    }
+
+    /**
+     * @return maximum number of results of a single join key which are
+     *         remembered, larger results are streamed
+     */
+    public int getProbeCacheMaxResultsPerKey() {
+        return probeCacheMaxResultsPerKey;
+    }
+
+    public void setProbeCacheMaxResultsPerKey(int probeCacheMaxResultsPerKey) {
+        this.probeCacheMaxResultsPerKey = probeCacheMaxResultsPerKey;
+    }
+
+    public long getProbeCacheTTL() {
+        return probeCacheTTL;
+    }
+
+    public void setProbeCacheTTL(long probeCacheTTL) {
+        this.probeCacheTTL = probeCacheTTL;
+    }
+
+    public long getMaterializationMemoryBudget() {
+        return materializationMemoryBudget;
+    }
+
+    public void setMaterializationMemoryBudget(long materializationMemoryBudget) {
+        this.materializationMemoryBudget = materializationMemoryBudget;
+    }
+
+    public long getAggregationMemoryBudget() {
+        return aggregationMemoryBudget;
+    }
+
+    public void setAggregationMemoryBudget(long aggregationMemoryBudget) {
+        this.aggregationMemoryBudget = aggregationMemoryBudget;
+    }
+
+    public boolean isCollectStatistics() {
+        return collectStatistics;
+    }
+
+    public void setCollectStatistics(boolean collectStatistics) {
+        this.collectStatistics = collectStatistics;
+    }
+
+    public long getStatisticsProbeInterval() {
+        return statisticsProbeInterval;
+    }
+
+    public void setStatisticsProbeInterval(long statisticsProbeInterval) {
+        this.statisticsProbeInterval = statisticsProbeInterval;
+    }
+
+    public int getHashJoinMaxCardinality() {
+        return hashJoinMaxCardinality;
+    }
+
+    public void setHashJoinMaxCardinality(int hashJoinMaxCardinality) {
+        this.hashJoinMaxCardinality = hashJoinMaxCardinality;
+    }
 }
\ No newline at end of file
@@ -58,6 +58,20 @@ public class MpFederationFactory implements SailFactory {
         result.setUseBoundJoin(config.isUseBoundJoin());
         result.setUseCompetingJoin(config.isUseCompetingJoin());
         result.setEnableQueryHints(config.isEnableQueryHints());
+        result.setBoundJoinBlockSizeLimits(config.getBoundJoinMinBlockSize(), config.getBoundJoinMaxBlockSize(),
+                config.getBoundJoinMaxQueryLength(), config.getBoundJoinTargetLatency(),
+                config.getBoundJoinMaxResultsPerBlock());
+        result.setBoundJoinConcurrency(config.getBoundJoinMaxConcurrentBlocks(),
+                config.getBoundJoinMaxConcurrentRequests(), config.isBoundJoinPreserveOrder());
+        result.setExecutorLimits(config.getMaxThreads(), config.getMaxDriverThreads(),
+                config.getMaxConcurrentTasksPerQuery(), config.getExecutorQueueCapacity());
+        result.setProbeCacheLimits(config.getProbeCacheMaxResults(), config.getProbeCacheMaxResultsPerKey(),
+                config.getProbeCacheTTL());
+        result.setMaterializationMemoryBudget(config.getMaterializationMemoryBudget());
+        result.setAggregationMemoryBudget(config.getAggregationMemoryBudget());
+        result.setCollectStatistics(config.isCollectStatistics());
+        result.setStatisticsProbeInterval(config.getStatisticsProbeInterval());
+        result.setHashJoinMaxCardinality(config.getHashJoinMaxCardinality());
         return result;
     }
 
@@ -0,0 +1,113 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nullable;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Service;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+
+/**
+ * Worker class for async join evaluation which probes a block of distinct join
+ * keys with a single request (see {@link ParallelAsyncJoinCursorWithCache}).
+ * The keys are sent to the SERVICE endpoint in a <code>VALUES</code> clause and
+ * the results are grouped by the key they were produced for.
+ *
+ * <p>
+ * The results of the remote endpoint arrive in arbitrary order, i.e. they can
+ * only be grouped once they have been read completely. To bound the memory
+ * used for this, a block answered with more than
+ * {@link BoundJoinBlockSizer#getMaxResultsPerBlock()} results is abandoned
+ * (<code>null</code> is returned) and its keys have to be probed one by one,
+ * which allows to stream their results.
+ * </p>
+ */
+public class AsyncBatchJoinEvaluator implements Callable<Map<BindingSet, List<BindingSet>>> {
+
+    private static final Logger logger = LogManager.getLogger(AsyncBatchJoinEvaluator.class);
+
+    protected final MpFederationStrategy strategy;
+    protected final Service rightArg;
+    protected final List<BindingSet> keys;
+    protected final BoundJoinBlockSizer blockSizer;
+
+    /**
+     * @param keys join keys, all binding the same variables
+     */
+    public AsyncBatchJoinEvaluator(MpFederationStrategy strategy, Service rightArg, List<BindingSet> keys,
+            BoundJoinBlockSizer blockSizer) {
+        this.strategy = strategy;
+        this.rightArg = rightArg;
+        this.keys = keys;
+        this.blockSizer = blockSizer;
+    }
+
+    /**
+     * @return the results grouped by key or <code>null</code> if the block
+     *         returned too many results to be grouped
+     */
+    @Override
+    @Nullable
+    public Map<BindingSet, List<BindingSet>> call() throws QueryEvaluationException {
+        List<String> keyNames = new ArrayList<>(keys.get(0).getBindingNames());
+        Map<BindingSet, List<BindingSet>> results = new HashMap<>();
+        long count = 0;
+        long start = System.nanoTime();
+        try (CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluateUsingBoundJoin(rightArg,
+                keys)) {
+            while (iter.hasNext()) {
+                if (count >= blockSizer.getMaxResultsPerBlock()) {
+                    // shrinks the following blocks
+                    blockSizer.recordResults(keys.size(), count + 1);
+                    logger.debug("Block of {} keys exceeded {} results, probing the keys one by one", keys.size(),
+                            count);
+                    return null;
+                }
+                BindingSet next = iter.next();
+                List<Value> keyValues = new ArrayList<>(keyNames.size());
+                for (String name : keyNames) {
+                    keyValues.add(next.getValue(name));
+                }
+                results.computeIfAbsent(new ListBindingSet(keyNames, keyValues), key -> new ArrayList<>()).add(next);
+                count++;
+            }
+        } catch (RuntimeException e) {
+            logger.warn(e.getMessage());
+            logger.debug("Cause: ", e);
+            throw e;
+        }
+        blockSizer.recordLatency(keys.size(), System.nanoTime() - start);
+        blockSizer.recordResults(keys.size(), count);
+        logger.trace("Probed {} keys with a single request, received {} results", keys.size(), count);
+        return results;
+    }
+
+}
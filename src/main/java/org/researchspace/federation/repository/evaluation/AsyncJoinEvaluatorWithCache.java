@@ -19,7 +19,10 @@
 
 package org.researchspace.federation.repository.evaluation;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
@@ -28,66 +31,63 @@ import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
-import org.eclipse.rdf4j.sail.federation.evaluation.InsertBindingSetCursor;
-
-import com.google.common.collect.Lists;
 
 /**
  * Worker class for async bound join evaluation using caching of bound values
- * (see {@link ParallelAsyncJoinCursorWithCache}).
+ * (see {@link ParallelAsyncJoinCursorWithCache}). Evaluates the right argument
+ * for a single join key. Results of up to <code>maxMemoizedResults</code>
+ * bindings are read completely, so that they can be shared by all left
+ * bindings with the same key, larger results are streamed (and buffered in a
+ * {@link BindingSetBuffer} if joined with several left bindings).
  * 
  * 
  * @author Andriy Nikolov an@metaphacts.com
  *
  */
-public class AsyncJoinEvaluatorWithCache implements Runnable {
+public class AsyncJoinEvaluatorWithCache implements Callable<ProbeResult> {
 
     private static final Logger logger = LogManager.getLogger(AsyncJoinEvaluatorWithCache.class);
 
-    protected final ParallelAsyncJoinCursorWithCache parentJoin;
     protected final MpFederationStrategy strategy;
     protected final TupleExpr rightArg;
-    protected final List<BindingSet> bindings;
     protected final BindingSet key;
+    protected final int maxMemoizedResults;
 
-    public AsyncJoinEvaluatorWithCache(ParallelAsyncJoinCursorWithCache join, MpFederationStrategy strategy,
-            TupleExpr rightArg, List<BindingSet> bindings, BindingSet key) {
-        this.parentJoin = join;
+    public AsyncJoinEvaluatorWithCache(MpFederationStrategy strategy, TupleExpr rightArg, BindingSet key,
+            int maxMemoizedResults) {
         this.strategy = strategy;
         this.rightArg = rightArg;
-        this.bindings = bindings;
         this.key = key;
-    }
-
-    public ParallelAsyncJoinCursorWithCache getParentJoin() {
-        return parentJoin;
+        this.maxMemoizedResults = maxMemoizedResults;
     }
 
     @Override
-    public void run() {
-        CloseableIteration<BindingSet, QueryEvaluationException> result = null;
+    public ProbeResult call() throws QueryEvaluationException {
+        CloseableIteration<BindingSet, QueryEvaluationException> iter = null;
         try {
-            if (bindings.size() == 1) {
-                result = strategy.evaluate(rightArg, bindings.iterator().next());
-            } else {
-                MaterializedIteration etalonResult;
-                etalonResult = new MaterializedIteration(strategy.evaluate(rightArg, key));
-                etalonResult.close();
-                List<CloseableIteration<BindingSet, QueryEvaluationException>> results = Lists
-                        .newArrayListWithCapacity(bindings.size());
-                for (BindingSet bs : bindings) {
-                    CollectionIteration<BindingSet, QueryEvaluationException> tmpResult = new CollectionIteration<>(
-                            etalonResult.list);
-                    results.add(new InsertBindingSetCursor(tmpResult, bs));
+            iter = strategy.evaluate(rightArg, key);
+            List<BindingSet> results = new ArrayList<>();
+            while (iter.hasNext()) {
+                results.add(iter.next());
+                if (results.size() > maxMemoizedResults) {
+                    // too large to be memoized, the remaining results are streamed
+                    ProbeResult streamed = ProbeResult.streamed(
+                            new UnionIteration<BindingSet, QueryEvaluationException>(
+                                    new CollectionIteration<>(results), iter));
+                    iter = null;
+                    return streamed;
                 }
-                result = new UnionIteration<BindingSet, QueryEvaluationException>(results);
             }
-            parentJoin.operationFinishCallback(this, result);
-        } catch (Exception e) {
+            return ProbeResult.memoized(results);
+        } catch (RuntimeException e) {
             logger.warn(e.getMessage());
             logger.debug("Cause: ", e);
-            parentJoin.operationErrorCallback(this, e);
+            throw e;
+        } finally {
+            if (iter != null) {
+                iter.close();
+            }
         }
     }
 
-}
\ No newline at end of file
+}
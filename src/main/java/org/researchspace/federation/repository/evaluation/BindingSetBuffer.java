@@ -0,0 +1,233 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+/**
+ * Append-only buffer of binding sets with a memory budget.
+ *
+ * <p>
+ * Rows are stored in a compact, dictionary-encoded form: each distinct value is
+ * kept only once and a row is an array of value IDs indexed by the column
+ * (binding name) it belongs to. Once the estimated memory use exceeds the
+ * budget, further rows are spilled to a temporary MapDB file (as
+ * {@link MpGroupIterator} does for large groups), so that huge intermediate
+ * results degrade performance instead of exhausting the heap.
+ * </p>
+ *
+ * <p>
+ * The buffer is written by a single thread and must be closed to delete the
+ * temporary file. After it has been filled, it can be read by multiple threads.
+ * </p>
+ */
+public class BindingSetBuffer implements Iterable<BindingSet>, AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(BindingSetBuffer.class);
+
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Rough per-object costs used to estimate the memory consumption.
+     */
+    private static final int ROW_OVERHEAD_BYTES = 24;
+    private static final int VALUE_OVERHEAD_BYTES = 80;
+
+    private final long memoryBudgetBytes;
+
+    private final List<String> columns = new ArrayList<>();
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+
+    private final List<Value> dictionary = new ArrayList<>();
+    private final Map<Value, Integer> dictionaryIndex = new HashMap<>();
+
+    /**
+     * Rows kept in memory, value IDs are offset by one, i.e. <code>0</code> marks
+     * an unbound column.
+     */
+    private final List<int[]> rows = new ArrayList<>();
+
+    private long estimatedBytes = 0;
+
+    private File spillFile;
+    private DB spillDb;
+    private Map<Integer, BindingSet> spilledRows;
+    private int spilledCount = 0;
+
+    public BindingSetBuffer() {
+        this(DEFAULT_MEMORY_BUDGET_BYTES);
+    }
+
+    /**
+     * @param memoryBudgetBytes estimated number of bytes the buffer may keep in
+     *                          memory before spilling to disk
+     */
+    public BindingSetBuffer(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public void add(BindingSet bindingSet) throws QueryEvaluationException {
+        for (Binding binding : bindingSet) {
+            columnIndex.computeIfAbsent(binding.getName(), name -> {
+                columns.add(name);
+                return columns.size() - 1;
+            });
+        }
+        if (spilledRows == null && estimatedBytes <= memoryBudgetBytes) {
+            rows.add(encode(bindingSet));
+        } else {
+            spill(bindingSet);
+        }
+    }
+
+    private int[] encode(BindingSet bindingSet) {
+        int[] row = new int[columns.size()];
+        for (Binding binding : bindingSet) {
+            row[columnIndex.get(binding.getName())] = encode(binding.getValue()) + 1;
+        }
+        estimatedBytes += ROW_OVERHEAD_BYTES + 4L * row.length;
+        return row;
+    }
+
+    private int encode(Value value) {
+        Integer id = dictionaryIndex.get(value);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.add(value);
+            dictionaryIndex.put(value, id);
+            estimatedBytes += VALUE_OVERHEAD_BYTES + 2L * value.stringValue().length();
+        }
+        return id;
+    }
+
+    private void spill(BindingSet bindingSet) throws QueryEvaluationException {
+        if (spilledRows == null) {
+            try {
+                spillFile = File.createTempFile("federation-buffer", null);
+            } catch (IOException e) {
+                throw new QueryEvaluationException("could not initialize temp db", e);
+            }
+            spillDb = DBMaker.newFileDB(spillFile).deleteFilesAfterClose().closeOnJvmShutdown()
+                    .transactionDisable().make();
+            spilledRows = spillDb.getTreeMap("rows");
+            logger.debug("Memory budget of {} bytes exceeded after {} rows, spilling to {}", memoryBudgetBytes,
+                    rows.size(), spillFile);
+        }
+        spilledRows.put(spilledCount++, bindingSet);
+    }
+
+    /**
+     * @return the binding set at the given position (in insertion order)
+     */
+    public BindingSet get(int index) {
+        if (index < rows.size()) {
+            return decode(rows.get(index));
+        }
+        BindingSet spilled = spilledRows != null ? spilledRows.get(index - rows.size()) : null;
+        if (spilled == null) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        return spilled;
+    }
+
+    private BindingSet decode(int[] row) {
+        List<String> names = new ArrayList<>(row.length);
+        List<Value> values = new ArrayList<>(row.length);
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] != 0) {
+                names.add(columns.get(i));
+                values.add(dictionary.get(row[i] - 1));
+            }
+        }
+        return new ListBindingSet(names, values);
+    }
+
+    public int size() {
+        return rows.size() + spilledCount;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return <code>true</code> if rows have been written to disk
+     */
+    public boolean isSpilled() {
+        return spilledRows != null;
+    }
+
+    /**
+     * @return names of all bindings occurring in at least one row
+     */
+    public Set<String> getBindingNames() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(columns));
+    }
+
+    @Override
+    public Iterator<BindingSet> iterator() {
+        return new Iterator<BindingSet>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public BindingSet next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        rows.clear();
+        dictionary.clear();
+        dictionaryIndex.clear();
+        if (spillDb != null) {
+            spillDb.close();
+            spillDb = null;
+        }
+    }
+}
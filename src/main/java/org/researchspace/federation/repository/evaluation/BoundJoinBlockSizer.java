@@ -0,0 +1,149 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.researchspace.federation.repository.MpFederation;
+import org.researchspace.federation.repository.MpFederationConfig;
+
+/**
+ * Determines the number of left-hand bindings sent in one <code>VALUES</code>
+ * block of a bound join (see {@link ParallelBoundJoinCursor}).
+ *
+ * <p>
+ * The block size starts at {@link #getMinBlockSize()} and adapts to the
+ * observed behavior of the remote endpoint:
+ * <ul>
+ * <li>it is doubled while full blocks are answered faster than half of the
+ * target latency,</li>
+ * <li>it is halved if a block takes longer than twice the target latency,</li>
+ * <li>it is reduced if a block produces more than
+ * {@link #getMaxResultsPerBlock()} results.</li>
+ * </ul>
+ * The block size never exceeds {@link #getMaxBlockSize()} (the maximum number
+ * of <code>VALUES</code> rows), and a block is closed early when the estimated
+ * query length would exceed {@link #getMaxQueryLength()}.
+ * </p>
+ *
+ * <p>
+ * Limits are configured per federation, see {@link MpFederationConfig}, while
+ * the block size is learned per member endpoint: the federation keeps one
+ * instance per endpoint which is shared by all bound joins against it (see
+ * {@link MpFederation#getBoundJoinBlockSizer(String)}). Instances are
+ * thread-safe: feedback on results is reported from the consuming threads of
+ * concurrent joins while blocks are created by their evaluation threads.
+ * </p>
+ */
+public class BoundJoinBlockSizer {
+
+    public static final int DEFAULT_MIN_BLOCK_SIZE = 3;
+    public static final int DEFAULT_MAX_BLOCK_SIZE = 500;
+    public static final int DEFAULT_MAX_QUERY_LENGTH = 20000;
+    public static final long DEFAULT_TARGET_LATENCY_MILLIS = 1000;
+    public static final int DEFAULT_MAX_RESULTS_PER_BLOCK = 10000;
+
+    private final int minBlockSize;
+    private final int maxBlockSize;
+    private final int maxQueryLength;
+    private final long targetLatencyNanos;
+    private final int maxResultsPerBlock;
+
+    private int blockSize;
+
+    public BoundJoinBlockSizer() {
+        this(DEFAULT_MIN_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE, DEFAULT_MAX_QUERY_LENGTH, DEFAULT_TARGET_LATENCY_MILLIS,
+                DEFAULT_MAX_RESULTS_PER_BLOCK);
+    }
+
+    public BoundJoinBlockSizer(int minBlockSize, int maxBlockSize, int maxQueryLength, long targetLatencyMillis,
+            int maxResultsPerBlock) {
+        this.minBlockSize = Math.max(1, minBlockSize);
+        this.maxBlockSize = Math.max(this.minBlockSize, maxBlockSize);
+        this.maxQueryLength = maxQueryLength;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.maxResultsPerBlock = maxResultsPerBlock;
+        this.blockSize = this.minBlockSize;
+    }
+
+    /**
+     * @return the number of bindings to put into the next block
+     */
+    public synchronized int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Records the time until the remote endpoint responded to a block.
+     *
+     * @param size         number of bindings in the block
+     * @param latencyNanos time until the response was received
+     */
+    public synchronized void recordLatency(int size, long latencyNanos) {
+        if (latencyNanos > 2 * targetLatencyNanos) {
+            blockSize = Math.max(minBlockSize, Math.min(blockSize, size / 2));
+        } else if (latencyNanos < targetLatencyNanos / 2 && size >= blockSize) {
+            // only full blocks are a reliable indicator that larger blocks are fine
+            blockSize = Math.min(maxBlockSize, blockSize * 2);
+        }
+    }
+
+    /**
+     * Records the number of results produced by a completely consumed block.
+     *
+     * @param size    number of bindings in the block
+     * @param results number of results of the block
+     */
+    public synchronized void recordResults(int size, long results) {
+        if (maxResultsPerBlock > 0 && results > maxResultsPerBlock) {
+            int limit = (int) (size * (long) maxResultsPerBlock / results);
+            blockSize = Math.max(minBlockSize, Math.min(blockSize, limit));
+        }
+    }
+
+    /**
+     * Checks whether another row can be added to a block without exceeding the
+     * maximum query length.
+     *
+     * @param queryLength estimated length of the query including the rows added
+     *                    so far
+     * @param rowLength   estimated length of the row to add
+     * @param rows        number of rows added so far
+     */
+    public boolean fitsQueryLength(int queryLength, int rowLength, int rows) {
+        // at least one row is always sent, otherwise the join can not progress
+        return rows == 0 || maxQueryLength <= 0 || queryLength + rowLength <= maxQueryLength;
+    }
+
+    public int getMinBlockSize() {
+        return minBlockSize;
+    }
+
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+
+    public int getMaxQueryLength() {
+        return maxQueryLength;
+    }
+
+    public int getMaxResultsPerBlock() {
+        return maxResultsPerBlock;
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Range;
+import com.google.common.collect.Sets;
+
+/**
+ * Hash join over a materialized build input (see {@link BindingSetBuffer}).
+ *
+ * <p>
+ * The hash table only stores row positions of the build input keyed by the
+ * values of the join variables, the rows themselves stay in the (possibly
+ * spilled) buffer. The probe input is streamed, either from its own buffer or
+ * directly from an iteration. Rows which leave one of the join variables
+ * unbound are checked against all rows of the other input.
+ * </p>
+ *
+ * <p>
+ * Closing the iteration releases both inputs.
+ * </p>
+ */
+public class BufferHashJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+    @Nullable
+    private final Supplier<BindingSetBuffer> buildSupplier;
+
+    /**
+     * Buffer of the probe input if it has been materialized.
+     */
+    @Nullable
+    private final BindingSetBuffer probe;
+
+    private final CloseableIteration<BindingSet, QueryEvaluationException> probeIter;
+
+    private final Set<String> probeBindingNames;
+
+    private BindingSetBuffer build;
+
+    /**
+     * Variables shared by both inputs, initialized with the hash table.
+     */
+    private List<String> joinVars;
+
+    private final Map<List<Value>, List<Integer>> index = new HashMap<>();
+
+    /**
+     * Rows of the build input with unbound join variables.
+     */
+    private final List<Integer> partiallyBound = new ArrayList<>();
+
+    private BindingSet currentProbe;
+
+    private Iterator<Integer> candidates = Collections.emptyIterator();
+
+    /**
+     * Joins two materialized inputs, building the hash table over the smaller
+     * one.
+     */
+    public BufferHashJoinIteration(BindingSetBuffer left, BindingSetBuffer right) {
+        boolean leftIsSmaller = left.size() <= right.size();
+        this.build = leftIsSmaller ? left : right;
+        this.probe = leftIsSmaller ? right : left;
+        this.buildSupplier = null;
+        this.probeIter = new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(probe.iterator());
+        this.probeBindingNames = probe.getBindingNames();
+    }
+
+    /**
+     * Streams the left input as probe input. The right input is only
+     * materialized as build input when the first result is requested.
+     *
+     * @param left             the probe input
+     * @param leftBindingNames names of the variables which may be bound by the
+     *                         left input
+     * @param right            supplies the materialized build input
+     */
+    public BufferHashJoinIteration(CloseableIteration<BindingSet, QueryEvaluationException> left,
+            Set<String> leftBindingNames, Supplier<BindingSetBuffer> right) {
+        this.probe = null;
+        this.probeIter = left;
+        this.probeBindingNames = leftBindingNames;
+        this.buildSupplier = right;
+    }
+
+    private void buildIndex() throws QueryEvaluationException {
+        if (build == null) {
+            build = buildSupplier.get();
+        }
+        joinVars = new ArrayList<>(Sets.intersection(probeBindingNames, build.getBindingNames()));
+        for (int i = 0; i < build.size(); i++) {
+            List<Value> key = keyOf(build.get(i));
+            if (key == null) {
+                partiallyBound.add(i);
+            } else {
+                index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(i);
+            }
+        }
+    }
+
+    /**
+     * @return the values of the join variables or <code>null</code> if any of
+     *         them is unbound
+     */
+    private List<Value> keyOf(BindingSet bindingSet) {
+        List<Value> key = new ArrayList<>(joinVars.size());
+        for (String var : joinVars) {
+            Value value = bindingSet.getValue(var);
+            if (value == null) {
+                return null;
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        if (joinVars == null) {
+            buildIndex();
+        }
+        while (true) {
+            while (candidates.hasNext()) {
+                BindingSet candidate = build.get(candidates.next());
+                if (QueryResults.bindingSetsCompatible(currentProbe, candidate)) {
+                    return merge(currentProbe, candidate);
+                }
+            }
+            if (!probeIter.hasNext()) {
+                return null;
+            }
+            currentProbe = probeIter.next();
+            List<Value> key = keyOf(currentProbe);
+            if (key == null) {
+                candidates = ContiguousSet.create(Range.closedOpen(0, build.size()), DiscreteDomain.integers())
+                        .iterator();
+            } else {
+                candidates = Iterators.concat(index.getOrDefault(key, Collections.emptyList()).iterator(),
+                        partiallyBound.iterator());
+            }
+        }
+    }
+
+    private static BindingSet merge(BindingSet first, BindingSet second) {
+        QueryBindingSet result = new QueryBindingSet(first);
+        for (Binding binding : second) {
+            if (!result.hasBinding(binding.getName())) {
+                result.addBinding(binding);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            super.handleClose();
+        } finally {
+            try {
+                probeIter.close();
+            } finally {
+                if (build != null) {
+                    build.close();
+                }
+                if (probe != null) {
+                    probe.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.researchspace.federation.repository.MpFederation;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Size-bounded thread pools shared by all queries evaluated by a
+ * {@link MpFederation}.
+ *
+ * <p>
+ * Remote requests ({@link #execute(Runnable)}) run on at most
+ * {@code maxThreads} threads. Requests which can not be started immediately
+ * wait in a queue of {@code queueCapacity} entries, further requests are
+ * rejected with a {@link RejectedExecutionException}. The submitting thread is
+ * never blocked.
+ * </p>
+ *
+ * <p>
+ * Tasks which wait for other tasks, i.e. join drivers and requests nested in
+ * other requests ({@link #executeDriver(Runnable)}), run on a separate pool of
+ * at most {@code maxDriverThreads} threads. They are never queued, as a queued
+ * driver could wait for a request which in turn waits for the driver, and are
+ * rejected if all driver threads are busy.
+ * </p>
+ *
+ * <p>
+ * Threads of both pools are created on demand and released after being idle
+ * for a minute. Short, non-blocking timer tasks ({@link #schedule}) run on a
+ * single timer thread. Tasks are usually not submitted directly, but through
+ * the {@link FederationTaskScope} of a query.
+ * </p>
+ */
+public class FederationExecutor {
+
+    private static final Logger logger = LogManager.getLogger(FederationExecutor.class);
+
+    private final ThreadPoolExecutor requestExecutor;
+
+    private final ThreadPoolExecutor driverExecutor;
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final int queueCapacity;
+
+    private final LongAdder rejectedTasks = new LongAdder();
+
+    public FederationExecutor(String threadNamePrefix, int maxThreads, int maxDriverThreads, int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        int requestThreads = Math.max(1, maxThreads);
+        this.requestExecutor = new ThreadPoolExecutor(requestThreads, requestThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(this.queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "-%d").build(),
+                (task, executor) -> {
+                    throw reject(executor, "request queue is full (" + this.queueCapacity + " tasks)");
+                });
+        this.requestExecutor.allowCoreThreadTimeOut(true);
+        this.driverExecutor = new ThreadPoolExecutor(0, Math.max(1, maxDriverThreads), 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "-driver-%d").build(),
+                (task, executor) -> {
+                    throw reject(executor, "all " + executor.getMaximumPoolSize() + " driver threads are busy");
+                });
+        this.timer = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "-timer-%d").setDaemon(true).build());
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Runs a remote request, queueing it if all request threads are busy.
+     *
+     * @throws RejectedExecutionException if the queue is full or the executor has
+     *                                    been shut down
+     */
+    public void execute(Runnable request) {
+        requestExecutor.execute(request);
+    }
+
+    /**
+     * Runs a task which waits for other tasks on a thread of the driver pool.
+     *
+     * @throws RejectedExecutionException if all driver threads are busy or the
+     *                                    executor has been shut down
+     */
+    public void executeDriver(Runnable driver) {
+        driverExecutor.execute(driver);
+    }
+
+    /**
+     * Runs a short, non-blocking task on the timer thread after the given delay.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return timer.schedule(task, delay, unit);
+    }
+
+    private RejectedExecutionException reject(ThreadPoolExecutor executor, String reason) {
+        if (executor.isShutdown()) {
+            reason = "executor has been shut down";
+        }
+        rejectedTasks.increment();
+        logger.warn("Rejected federation task, {} (active threads: {}, rejected tasks: {})", reason,
+                executor.getActiveCount(), rejectedTasks.sum());
+        return new RejectedExecutionException("Federation task rejected: " + reason);
+    }
+
+    /**
+     * Initiates an orderly shutdown of both pools and waits for running tasks to
+     * complete, interrupting the tasks still running after the timeout.
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        timer.shutdownNow();
+        requestExecutor.shutdown();
+        driverExecutor.shutdown();
+        try {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            requestExecutor.awaitTermination(timeout, unit);
+            driverExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } finally {
+            shutdownNow();
+        }
+    }
+
+    public void shutdownNow() {
+        timer.shutdownNow();
+        requestExecutor.shutdownNow();
+        driverExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the executor service of remote requests
+     */
+    public ExecutorService getExecutorService() {
+        return requestExecutor;
+    }
+
+    public int getMaxThreads() {
+        return requestExecutor.getMaximumPoolSize();
+    }
+
+    public int getMaxDriverThreads() {
+        return driverExecutor.getMaximumPoolSize();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return number of requests waiting for a thread
+     */
+    public int getQueueSize() {
+        return requestExecutor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return requestExecutor.getActiveCount();
+    }
+
+    public int getActiveDriverCount() {
+        return driverExecutor.getActiveCount();
+    }
+
+    public int getPoolSize() {
+        return requestExecutor.getPoolSize() + driverExecutor.getPoolSize();
+    }
+
+    public int getLargestPoolSize() {
+        return requestExecutor.getLargestPoolSize() + driverExecutor.getLargestPoolSize();
+    }
+
+    public long getCompletedTaskCount() {
+        return requestExecutor.getCompletedTaskCount() + driverExecutor.getCompletedTaskCount();
+    }
+
+    public long getRejectedTaskCount() {
+        return rejectedTasks.sum();
+    }
+}
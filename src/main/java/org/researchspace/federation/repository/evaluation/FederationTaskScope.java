@@ -0,0 +1,352 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * Tasks of a single federated query, executed on the shared
+ * {@link FederationExecutor}.
+ *
+ * <p>
+ * Two kinds of tasks are distinguished:
+ * <ul>
+ * <li><i>Join drivers</i> ({@link #execute(Runnable)}), e.g. the evaluation
+ * loops of {@link ParallelBoundJoinCursor} or
+ * {@link ParallelAsyncJoinCursorWithCache}. They block on the progress of
+ * other tasks and their number is determined by the query plan, therefore they
+ * are started immediately on the driver pool of the executor.</li>
+ * <li><i>Remote requests</i> ({@link #supplyAsync(Callable)}), e.g. bound join
+ * blocks or async join probes. At most {@code maxConcurrentRequests} of them
+ * run at the same time, further requests are queued within the scope. This
+ * per-query budget prevents a single heavy query from occupying all threads of
+ * the federation.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Each running request occupies a worker of its budget. When a request has
+ * finished, its worker runs the next queued request of the budget on the same
+ * thread, i.e. queued requests are never submitted from within a finishing
+ * task.
+ * </p>
+ *
+ * <p>
+ * Requests may evaluate nested joins synchronously (e.g. a bound join block or
+ * an async join probe over a sub-query with joins) and thus wait for requests
+ * submitted from within themselves. To not deadlock on these, the budget is
+ * applied per nesting depth: requests submitted while a request is evaluated
+ * (directly or by a join driver started from it) are accounted one level
+ * deeper and never wait for a slot of their parent. As their parent holds a
+ * request thread while waiting for them, nested requests run on the driver
+ * pool instead of being queued behind other requests.
+ * </p>
+ *
+ * <p>
+ * {@link #cancel()} cancels all running and queued tasks of the query, e.g.
+ * when the query result is closed before being fully consumed.
+ * </p>
+ */
+public class FederationTaskScope {
+
+    private final FederationExecutor executor;
+
+    private final int maxConcurrentRequests;
+
+    private final Set<Future<?>> tasks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Budgets indexed by nesting depth, guarded by this scope.
+     */
+    private final List<Budget> budgets = new ArrayList<>();
+
+    /**
+     * Nesting depth of the requests submitted by the current thread.
+     */
+    private final ThreadLocal<Integer> currentDepth = new ThreadLocal<>();
+
+    private volatile boolean cancelled = false;
+
+    private static class Budget {
+        private final Queue<ScopedTask> queuedRequests = new ArrayDeque<>();
+        private int runningWorkers = 0;
+    }
+
+    public FederationTaskScope(FederationExecutor executor, int maxConcurrentRequests) {
+        this.executor = executor;
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+    }
+
+    /**
+     * Starts a join driver.
+     *
+     * @throws QueryEvaluationException if the scope was cancelled or the task was
+     *                                  rejected by the executor
+     */
+    public void execute(Runnable driver) throws QueryEvaluationException {
+        ScopedTask task = new ScopedTask(driver, false, getCurrentDepth());
+        checkNotCancelled();
+        tasks.add(task);
+        try {
+            executor.executeDriver(task);
+        } catch (RejectedExecutionException e) {
+            tasks.remove(task);
+            throw new QueryEvaluationException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Submits a remote request. The request is started immediately if the budget
+     * of the query allows so, otherwise as soon as another request of the query
+     * at the same nesting depth has finished. Cancelling the returned future
+     * interrupts the request.
+     */
+    public <T> CompletableFuture<T> supplyAsync(Callable<T> request) throws QueryEvaluationException {
+        ScopedFuture<T> result = new ScopedFuture<>();
+        ScopedTask task = new ScopedTask(() -> {
+            try {
+                result.complete(request.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, true, getCurrentDepth());
+        result.task = task;
+        task.result = result;
+
+        checkNotCancelled();
+        tasks.add(task);
+        boolean startWorker;
+        synchronized (this) {
+            Budget budget = getBudget(task.depth);
+            startWorker = budget.runningWorkers < maxConcurrentRequests;
+            if (startWorker) {
+                budget.runningWorkers++;
+            } else {
+                budget.queuedRequests.add(task);
+            }
+        }
+        if (startWorker) {
+            Worker worker = new Worker(task);
+            try {
+                if (task.depth > 0) {
+                    executor.executeDriver(worker);
+                } else {
+                    executor.execute(worker);
+                }
+            } catch (RejectedExecutionException e) {
+                tasks.remove(task);
+                workerFinished(task.depth);
+                throw new QueryEvaluationException(e.getMessage(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs a short, non-blocking task after the given delay, e.g. to submit
+     * requests which have been held back for batching. Requests submitted by the
+     * task are accounted at the nesting depth of the calling thread. The task is
+     * skipped if the scope has been cancelled in the meantime.
+     *
+     * @throws QueryEvaluationException if the scope was cancelled
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) throws QueryEvaluationException {
+        checkNotCancelled();
+        int depth = getCurrentDepth();
+        return executor.schedule(() -> {
+            if (cancelled) {
+                return;
+            }
+            Integer previousDepth = currentDepth.get();
+            currentDepth.set(depth);
+            try {
+                task.run();
+            } finally {
+                if (previousDepth != null) {
+                    currentDepth.set(previousDepth);
+                } else {
+                    currentDepth.remove();
+                }
+            }
+        }, delay, unit);
+    }
+
+    private void checkNotCancelled() throws QueryEvaluationException {
+        if (cancelled) {
+            throw new QueryEvaluationException("Query has been cancelled");
+        }
+    }
+
+    private int getCurrentDepth() {
+        Integer depth = currentDepth.get();
+        return depth != null ? depth : 0;
+    }
+
+    private Budget getBudget(int depth) {
+        while (budgets.size() <= depth) {
+            budgets.add(new Budget());
+        }
+        return budgets.get(depth);
+    }
+
+    /**
+     * @return the next queued request of the budget or <code>null</code> if there
+     *         is none, in which case the worker of the caller is released
+     */
+    private ScopedTask nextRequest(int depth) {
+        synchronized (this) {
+            Budget budget = getBudget(depth);
+            ScopedTask next = budget.queuedRequests.poll();
+            if (next == null) {
+                budget.runningWorkers--;
+            }
+            return next;
+        }
+    }
+
+    private void workerFinished(int depth) {
+        synchronized (this) {
+            getBudget(depth).runningWorkers--;
+        }
+    }
+
+    /**
+     * Cancels all running and queued tasks of the query.
+     */
+    public void cancel() {
+        cancelled = true;
+        List<ScopedTask> toCancel = new ArrayList<>();
+        synchronized (this) {
+            for (Budget budget : budgets) {
+                toCancel.addAll(budget.queuedRequests);
+                budget.queuedRequests.clear();
+            }
+        }
+        for (ScopedTask queued : toCancel) {
+            tasks.remove(queued);
+            queued.cancel(false);
+        }
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return number of tasks of the query which are currently executed or
+     *         waiting for a thread
+     */
+    public int getRunningTaskCount() {
+        return tasks.size();
+    }
+
+    /**
+     * Runs requests of one budget one after another until its queue is empty.
+     */
+    private class Worker implements Runnable {
+        private ScopedTask current;
+
+        Worker(ScopedTask first) {
+            this.current = first;
+        }
+
+        @Override
+        public void run() {
+            int depth = current.depth;
+            while (current != null) {
+                current.run();
+                if (current.isCancelled()) {
+                    // clears the interrupt of a cancelled request before the next one
+                    Thread.interrupted();
+                }
+                current = nextRequest(depth);
+            }
+        }
+    }
+
+    private class ScopedTask extends FutureTask<Void> {
+        private final boolean request;
+        private final int depth;
+        private volatile ScopedFuture<?> result;
+
+        ScopedTask(Runnable runnable, boolean request, int depth) {
+            super(runnable, null);
+            this.request = request;
+            this.depth = depth;
+        }
+
+        @Override
+        public void run() {
+            Integer previousDepth = currentDepth.get();
+            // requests submitted by a request are nested, join drivers submit
+            // requests at the depth they have been started from
+            currentDepth.set(request ? depth + 1 : depth);
+            try {
+                super.run();
+            } finally {
+                if (previousDepth != null) {
+                    currentDepth.set(previousDepth);
+                } else {
+                    currentDepth.remove();
+                }
+                tasks.remove(this);
+            }
+        }
+
+        @Override
+        protected void done() {
+            ScopedFuture<?> toFail = result;
+            if (isCancelled() && toFail != null) {
+                // the request was cancelled before it could complete its result
+                toFail.completeExceptionally(new CancellationException());
+            }
+        }
+    }
+
+    private static class ScopedFuture<T> extends CompletableFuture<T> {
+        private volatile ScopedTask task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            ScopedTask toCancel = task;
+            if (toCancel != null) {
+                toCancel.cancel(mayInterruptIfRunning);
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
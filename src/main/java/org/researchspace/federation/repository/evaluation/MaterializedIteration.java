@@ -20,8 +20,6 @@
 package org.researchspace.federation.repository.evaluation;
 
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.query.BindingSet;
@@ -30,25 +28,40 @@ import org.eclipse.rdf4j.query.QueryEvaluationException;
 /**
  * Implementation of a {@link CloseableIteration} with materialization.
  * 
+ * <p>
+ * The results are kept in a {@link BindingSetBuffer}, i.e. results exceeding
+ * the memory budget are spilled to disk. The buffer remains readable after the
+ * iteration has been closed and must be released using {@link #release()}.
+ * </p>
+ * 
  * @author Andriy Nikolov an@metaphacts.com
  *
  */
 public class MaterializedIteration implements CloseableIteration<BindingSet, QueryEvaluationException> {
 
-    protected final List<BindingSet> list = new LinkedList<BindingSet>();
+    protected final BindingSetBuffer buffer;
     protected final Iterator<BindingSet> iterator;
     protected boolean closed = false;
 
     public MaterializedIteration(CloseableIteration<BindingSet, QueryEvaluationException> delegate)
             throws QueryEvaluationException {
+        this(delegate, BindingSetBuffer.DEFAULT_MEMORY_BUDGET_BYTES);
+    }
+
+    public MaterializedIteration(CloseableIteration<BindingSet, QueryEvaluationException> delegate,
+            long memoryBudgetBytes) throws QueryEvaluationException {
+        buffer = new BindingSetBuffer(memoryBudgetBytes);
         try {
             while (delegate.hasNext()) {
-                list.add(delegate.next());
+                buffer.add(delegate.next());
             }
+        } catch (RuntimeException e) {
+            buffer.close();
+            throw e;
         } finally {
             delegate.close();
         }
-        iterator = list.iterator();
+        iterator = buffer.iterator();
     }
 
     @Override
@@ -73,7 +86,22 @@ public class MaterializedIteration implements CloseableIteration<BindingSet, Que
         closed = true;
     }
 
+    /**
+     * @return the materialized results
+     */
+    public BindingSetBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Releases the materialized results, including their temporary file.
+     */
+    public void release() {
+        closed = true;
+        buffer.close();
+    }
+
     public int size() {
-        return list.size();
+        return buffer.size();
     }
 }
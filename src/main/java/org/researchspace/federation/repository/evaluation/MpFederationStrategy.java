@@ -19,14 +19,20 @@
 
 package org.researchspace.federation.repository.evaluation;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalDouble;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.IterationWrapper;
 import org.eclipse.rdf4j.common.iteration.UnionIteration;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Value;
@@ -38,21 +44,30 @@ import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.algebra.Group;
 import org.eclipse.rdf4j.query.algebra.Service;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.Union;
+import org.eclipse.rdf4j.query.algebra.Var;
 import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
 import org.eclipse.rdf4j.query.algebra.evaluation.TripleSource;
+import org.eclipse.rdf4j.query.algebra.evaluation.federation.FederatedService;
 import org.eclipse.rdf4j.query.algebra.evaluation.federation.FederatedServiceResolver;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.sail.SailRepositoryConnection;
 import org.eclipse.rdf4j.sail.federation.MpFederationConnection;
 import org.eclipse.rdf4j.sail.federation.algebra.NaryJoin;
 import org.eclipse.rdf4j.sail.federation.evaluation.FederationStrategy;
 import org.eclipse.rdf4j.sail.federation.evaluation.ParallelJoinCursor;
 import org.researchspace.federation.repository.AggregateService;
+import org.researchspace.federation.repository.FederationStatistics;
+import org.researchspace.federation.repository.FederationStatistics.PatternShape;
 import org.researchspace.federation.repository.MpFederation;
 import org.researchspace.federation.sparql.FederationSparqlAlgebraUtils;
 import org.researchspace.federation.sparql.MpOwnedTupleExpr;
 import org.researchspace.federation.sparql.algebra.ServiceCallAggregate;
+import org.researchspace.sail.rest.AbstractServiceWrappingSailConnection;
 import org.researchspace.sparql.renderer.MpSparqlQueryRenderer;
 
 import com.google.common.collect.Lists;
@@ -73,10 +88,21 @@ public class MpFederationStrategy extends FederationStrategy {
     protected boolean useCompetingJoin = true;
     protected boolean useBoundJoin = true;
 
+    /**
+     * Tasks started for the evaluation of the query.
+     */
+    protected final FederationTaskScope taskScope;
+
     public MpFederationStrategy(MpFederation federation, TripleSource tripleSource, Dataset dataset,
             FederatedServiceResolver serviceManager) {
+        this(federation, tripleSource, dataset, serviceManager, federation.createTaskScope());
+    }
+
+    protected MpFederationStrategy(MpFederation federation, TripleSource tripleSource, Dataset dataset,
+            FederatedServiceResolver serviceManager, FederationTaskScope taskScope) {
         super(federation, tripleSource, dataset, serviceManager);
         this.federation = federation;
+        this.taskScope = taskScope;
     }
 
     /**
@@ -133,7 +159,7 @@ public class MpFederationStrategy extends FederationStrategy {
             for (int i = 1, n = join.getNumberOfArguments(); i < n; i++) {
 
                 TupleExpr rightArg = join.getArg(i);
-                result = evaluateJoin(result, rightArg, collectedBindingNames);
+                result = evaluateJoin(result, rightArg, bindings, collectedBindingNames);
             }
             return result;
         }
@@ -154,26 +180,116 @@ public class MpFederationStrategy extends FederationStrategy {
     }
 
     public CloseableIteration<BindingSet, QueryEvaluationException> evaluateJoin(
-            CloseableIteration<BindingSet, QueryEvaluationException> leftIter, TupleExpr rightArg,
+            CloseableIteration<BindingSet, QueryEvaluationException> leftIter, TupleExpr rightArg, BindingSet bindings,
             Set<String> collectedBindingNames) {
         CloseableIteration<BindingSet, QueryEvaluationException> result;
-        if ((rightArg instanceof MpOwnedTupleExpr) && useBoundJoin) {
-            ParallelBoundJoinCursor tmp = new ParallelBoundJoinCursor(this, leftIter, (MpOwnedTupleExpr) rightArg);
-            federation.execute(tmp);
+        if ((rightArg instanceof MpOwnedTupleExpr) && useHashJoin((MpOwnedTupleExpr) rightArg)) {
+            result = evaluateUsingHashJoin(leftIter, new HashSet<>(collectedBindingNames), (MpOwnedTupleExpr) rightArg,
+                    bindings);
+            collectedBindingNames.addAll(rightArg.getBindingNames());
+        } else if ((rightArg instanceof MpOwnedTupleExpr) && useBoundJoin) {
+            ParallelBoundJoinCursor tmp = new ParallelBoundJoinCursor(this, leftIter, (MpOwnedTupleExpr) rightArg,
+                    getBoundJoinBlockSizer(rightArg));
+            taskScope.execute(tmp);
             result = new RemoteClosingExceptionConvertingIteration<BindingSet>(tmp);
             collectedBindingNames.addAll(rightArg.getBindingNames());
         } else if (useAsyncParallelJoin) {
             result = new ParallelAsyncJoinCursorWithCache(this, leftIter, rightArg);
-            federation.execute((Runnable) result);
+            taskScope.execute((Runnable) result);
             collectedBindingNames.addAll(rightArg.getBindingNames());
         } else {
             result = new ParallelJoinCursor(this, leftIter, rightArg); // NOPMD
-            federation.execute((Runnable) result);
+            taskScope.execute((Runnable) result);
             collectedBindingNames.addAll(rightArg.getBindingNames());
         }
         return result;
     }
 
+    /**
+     * Checks whether the right argument of a join is better evaluated once and
+     * hash joined with the left results than probed with blocks of left bindings.
+     * This is the case for a single triple pattern with a constant predicate whose
+     * observed cardinality at the owning member does not exceed
+     * {@link MpFederation#getHashJoinMaxCardinality()}.
+     */
+    protected boolean useHashJoin(MpOwnedTupleExpr rightArg) {
+        FederationStatistics statistics = federation.getStatistics();
+        if (statistics == null || federation.getHashJoinMaxCardinality() <= 0) {
+            return false;
+        }
+        String memberId = federation.getMemberId(rightArg.getOwner().getRepository());
+        StatementPattern pattern = getCardinalityPattern(rightArg);
+        if (memberId == null || pattern == null
+                || getPatternShape(pattern, Collections.emptySet()) != PatternShape.UNBOUND) {
+            return false;
+        }
+        OptionalDouble cardinality = statistics.getCardinality(memberId, (IRI) pattern.getPredicateVar().getValue());
+        return cardinality.isPresent() && cardinality.getAsDouble() <= federation.getHashJoinMaxCardinality();
+    }
+
+    /**
+     * Evaluates the right argument once with the outer bindings and joins it with
+     * the streamed left results on their shared variables. The right argument is
+     * only evaluated and materialized when the first result is requested.
+     */
+    protected CloseableIteration<BindingSet, QueryEvaluationException> evaluateUsingHashJoin(
+            CloseableIteration<BindingSet, QueryEvaluationException> leftIter, Set<String> leftBindingNames,
+            MpOwnedTupleExpr rightArg, BindingSet bindings) throws QueryEvaluationException {
+        long memoryBudget = federation.getMaterializationMemoryBudget();
+        return new BufferHashJoinIteration(leftIter, leftBindingNames,
+                () -> new MaterializedIteration(evaluate(rightArg, bindings), memoryBudget).getBuffer());
+    }
+
+    /**
+     * Returns the pattern if the expression is a single triple pattern with a
+     * constant predicate, i.e. its number of results is tracked in
+     * {@link FederationStatistics}.
+     */
+    @Nullable
+    protected static StatementPattern getCardinalityPattern(MpOwnedTupleExpr expr) {
+        if (!(expr.getArg() instanceof StatementPattern)) {
+            return null;
+        }
+        StatementPattern pattern = (StatementPattern) expr.getArg();
+        if (!(pattern.getPredicateVar().getValue() instanceof IRI) || pattern.getContextVar() != null) {
+            return null;
+        }
+        return pattern;
+    }
+
+    /**
+     * @return which positions of the pattern are bound by constants or the given
+     *         binding names
+     */
+    @Nullable
+    protected static PatternShape getPatternShape(StatementPattern pattern, Set<String> boundNames) {
+        Var subject = pattern.getSubjectVar();
+        Var object = pattern.getObjectVar();
+        return PatternShape.of(subject.hasValue() || boundNames.contains(subject.getName()),
+                object.hasValue() || boundNames.contains(object.getName()));
+    }
+
+    /**
+     * Wraps the results of a request to the owner of the expression to record its
+     * latency and number of results, if statistics are collected.
+     */
+    private CloseableIteration<BindingSet, QueryEvaluationException> recordStatistics(
+            CloseableIteration<BindingSet, QueryEvaluationException> result, MpOwnedTupleExpr expr,
+            Set<String> boundNames, int bindingCount, long start) {
+        FederationStatistics statistics = federation.getStatistics();
+        String memberId = federation.getMemberId(expr.getOwner().getRepository());
+        if (statistics == null || memberId == null) {
+            return result;
+        }
+        StatementPattern pattern = getCardinalityPattern(expr);
+        if (pattern == null) {
+            return new StatisticsRecordingIteration(result, statistics, memberId, null, null, bindingCount, start);
+        }
+        return new StatisticsRecordingIteration(result, statistics, memberId,
+                (IRI) pattern.getPredicateVar().getValue(), getPatternShape(pattern, boundNames), bindingCount,
+                start);
+    }
+
     @Override
     public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(TupleExpr expr, BindingSet bindings)
             throws QueryEvaluationException {
@@ -190,10 +306,14 @@ public class MpFederationStrategy extends FederationStrategy {
 
     protected CloseableIteration<BindingSet, QueryEvaluationException> evaluate(MpOwnedTupleExpr expr,
             BindingSet bindings) throws QueryEvaluationException {
+        long start = System.nanoTime();
         CloseableIteration<BindingSet, QueryEvaluationException> result = expr.evaluate(dataset, bindings);
-        if (result == null) {
+        if (result != null) {
+            result = recordStatistics(result, expr, bindings.getBindingNames(), 1, start);
+        } else {
             TripleSource source = new org.eclipse.rdf4j.repository.evaluation.RepositoryTripleSource(expr.getOwner());
-            EvaluationStrategy eval = new MpFederationStrategy(federation, source, dataset, serviceResolver);
+            EvaluationStrategy eval = new MpFederationStrategy(federation, source, dataset, serviceResolver,
+                    taskScope);
             result = eval.evaluate(expr.getArg(), bindings);
         }
         return result;
@@ -217,19 +337,124 @@ public class MpFederationStrategy extends FederationStrategy {
 
     protected CloseableIteration<BindingSet, QueryEvaluationException> evaluateUsingBoundJoin(MpOwnedTupleExpr expr,
             List<BindingSet> bindingSets, Set<String> boundVars) throws QueryEvaluationException {
+        long start = System.nanoTime();
         CloseableIteration<BindingSet, QueryEvaluationException> result = expr.evaluate(dataset, bindingSets,
                 boundVars);
+        if (result != null) {
+            result = recordStatistics(result, expr, boundVars, bindingSets.size(), start);
+        }
         return result;
     }
 
+    /**
+     * Checks whether an async join may send multiple join keys to the right
+     * argument in a single request, i.e. whether it is a non-silent SERVICE
+     * clause with a constant SPARQL endpoint (see
+     * {@link MpFederation#isSparqlService(IRI)}) or a service-wrapping repository
+     * (see {@link MpFederation#getServiceWrappingRepository(IRI)}).
+     */
+    public boolean supportsValuesBatching(TupleExpr rightArg) {
+        if (!(rightArg instanceof Service)) {
+            return false;
+        }
+        Service service = (Service) rightArg;
+        Value serviceRef = service.getServiceRef().getValue();
+        return !service.isSilent() && serviceRef instanceof IRI && (federation.isSparqlService((IRI) serviceRef)
+                || federation.getServiceWrappingRepository((IRI) serviceRef) != null);
+    }
+
+    /**
+     * @return the block sizer of the member endpoint evaluating the right argument
+     *         of a bound join, see {@link MpFederation#getBoundJoinBlockSizer}
+     */
+    public BoundJoinBlockSizer getBoundJoinBlockSizer(TupleExpr rightArg) {
+        String memberId = null;
+        if (rightArg instanceof MpOwnedTupleExpr) {
+            memberId = federation.getMemberId(((MpOwnedTupleExpr) rightArg).getOwner().getRepository());
+        } else if (rightArg instanceof Service) {
+            Value serviceRef = ((Service) rightArg).getServiceRef().getValue();
+            if (serviceRef instanceof IRI) {
+                memberId = federation.getMemberId((IRI) serviceRef);
+            }
+        }
+        return federation.getBoundJoinBlockSizer(memberId);
+    }
+
+    /**
+     * Evaluates a SERVICE clause for a block of bindings. The bindings are sent to
+     * a SPARQL endpoint with a <code>VALUES</code> clause, while service-wrapping
+     * repositories are invoked for all bindings of the block at once (see
+     * {@link AbstractServiceWrappingSailConnection#evaluateBatch}); each result is
+     * joined with the binding it was produced for.
+     */
+    protected CloseableIteration<BindingSet, QueryEvaluationException> evaluateUsingBoundJoin(Service service,
+            List<BindingSet> bindingSets) throws QueryEvaluationException {
+        SailRepository serviceWrappingRepository = federation
+                .getServiceWrappingRepository((IRI) service.getServiceRef().getValue());
+        if (serviceWrappingRepository != null) {
+            return evaluateServiceWrappingBatch(serviceWrappingRepository, service, bindingSets);
+        }
+        String serviceUri = service.getServiceRef().getValue().stringValue();
+        FederatedService federatedService = serviceResolver.getService(serviceUri);
+        return new RemoteClosingExceptionConvertingIteration<BindingSet>(
+                federatedService.evaluate(service, new CollectionIteration<>(bindingSets), service.getBaseURI()));
+    }
+
+    private CloseableIteration<BindingSet, QueryEvaluationException> evaluateServiceWrappingBatch(
+            SailRepository repository, Service service, List<BindingSet> bindingSets)
+            throws QueryEvaluationException {
+        SailRepositoryConnection connection = repository.getConnection();
+        try {
+            AbstractServiceWrappingSailConnection<?> sailConnection = (AbstractServiceWrappingSailConnection<?>) connection
+                    .getSailConnection();
+            return new IterationWrapper<BindingSet, QueryEvaluationException>(
+                    sailConnection.evaluateBatch(service.getServiceExpr(), dataset, bindingSets)) {
+                @Override
+                protected void handleClose() throws QueryEvaluationException {
+                    try {
+                        super.handleClose();
+                    } finally {
+                        connection.close();
+                    }
+                }
+            };
+        } catch (RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
     public MpFederation getFederation() {
         return federation;
     }
 
+    public FederationTaskScope getTaskScope() {
+        return taskScope;
+    }
+
+    /**
+     * Creates the probe result cache for a join with the given right argument.
+     * Results of remote subqueries ({@link MpOwnedTupleExpr}) may additionally be
+     * shared with other queries if the federation has a probe cache TTL
+     * configured; they are identified by the member repository, the query string
+     * and the dataset.
+     */
+    public ProbeResultCache createProbeResultCache(TupleExpr rightArg) {
+        Object sharedScope = null;
+        if (rightArg instanceof MpOwnedTupleExpr) {
+            MpOwnedTupleExpr owned = (MpOwnedTupleExpr) rightArg;
+            if (owned.getQueryString() != null) {
+                sharedScope = Arrays.asList(owned.getOwner().getRepository(), owned.getQueryString(),
+                        String.valueOf(dataset));
+            }
+        }
+        return federation.createProbeResultCache(sharedScope);
+    }
+
     @Override
     public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Group node, BindingSet bindings)
             throws QueryEvaluationException {
-        return new MpGroupIterator(this, node, bindings, 0);
+        return new MpGroupIterator(this, node, bindings, 0, federation.getAggregationMemoryBudget());
     }
 
     public List<Value> evaluateAggregateService(ServiceCallAggregate aggregate, List<Value> values)
@@ -251,7 +476,14 @@ public class MpFederationStrategy extends FederationStrategy {
             throws QueryEvaluationException {
         logger.trace("Evaluating service: " + service.toString() + " with bindings: " + bindings.toString());
         i++;
+        long start = System.nanoTime();
         CloseableIteration<BindingSet, QueryEvaluationException> iter = super.evaluate(service, bindings);
+        FederationStatistics statistics = federation.getStatistics();
+        Value serviceRef = service.getServiceRef().getValue();
+        if (statistics != null && serviceRef instanceof IRI) {
+            iter = new StatisticsRecordingIteration(iter, statistics, federation.getMemberId((IRI) serviceRef), null,
+                    start);
+        }
         logger.trace("Evaluated service: " + service.toString() + " with bindings: " + bindings.toString());
         logger.trace("Evaluation call: " + i);
         return new RemoteClosingExceptionConvertingIteration<BindingSet>(iter);
@@ -23,17 +23,23 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.BiPredicate;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.common.lang.ObjectUtil;
 import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Value;
@@ -46,35 +52,62 @@ import org.eclipse.rdf4j.query.algebra.AbstractAggregateOperator;
 import org.eclipse.rdf4j.query.algebra.AggregateOperator;
 import org.eclipse.rdf4j.query.algebra.Avg;
 import org.eclipse.rdf4j.query.algebra.Count;
+import org.eclipse.rdf4j.query.algebra.Distinct;
+import org.eclipse.rdf4j.query.algebra.Extension;
+import org.eclipse.rdf4j.query.algebra.ExtensionElem;
+import org.eclipse.rdf4j.query.algebra.Filter;
 import org.eclipse.rdf4j.query.algebra.Group;
 import org.eclipse.rdf4j.query.algebra.GroupConcat;
 import org.eclipse.rdf4j.query.algebra.GroupElem;
 import org.eclipse.rdf4j.query.algebra.MathExpr.MathOp;
 import org.eclipse.rdf4j.query.algebra.Max;
 import org.eclipse.rdf4j.query.algebra.Min;
+import org.eclipse.rdf4j.query.algebra.Order;
+import org.eclipse.rdf4j.query.algebra.OrderElem;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.ProjectionElem;
+import org.eclipse.rdf4j.query.algebra.Reduced;
 import org.eclipse.rdf4j.query.algebra.Sample;
+import org.eclipse.rdf4j.query.algebra.Slice;
 import org.eclipse.rdf4j.query.algebra.Sum;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.UnaryTupleOperator;
 import org.eclipse.rdf4j.query.algebra.ValueExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
 import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
 import org.eclipse.rdf4j.query.algebra.evaluation.ValueExprEvaluationException;
 import org.eclipse.rdf4j.query.algebra.evaluation.util.MathUtil;
 import org.eclipse.rdf4j.query.algebra.evaluation.util.ValueComparator;
 import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
+import org.researchspace.federation.sparql.MpOwnedTupleExpr;
 import org.researchspace.federation.sparql.algebra.ServiceCallAggregate;
 
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 
 /**
  * A modification of the standard RDF4J {@link GroupIterator} which is able to
  * process custom aggregates.
  * 
+ * <p>
+ * Aggregates are computed incrementally, i.e. solutions are not retained once
+ * they have been added to their group. If the input is ordered by the group
+ * variables, groups are emitted as soon as they are complete. Otherwise groups
+ * are aggregated in memory up to the memory budget and solutions of further
+ * groups are spilled to a temporary file.
+ * </p>
+ * 
  * @author Andriy Nikolov an@metaphacts.com
  *
  */
 public class MpGroupIterator extends CloseableIteratorIteration<BindingSet, QueryEvaluationException> {
 
+    private static final Logger logger = LogManager.getLogger(MpGroupIterator.class);
+
     /*-----------*
      * Constants *
      *-----------*/
@@ -91,9 +124,24 @@ public class MpGroupIterator extends CloseableIteratorIteration<BindingSet, Quer
 
     private final Object lock = new Object();
 
-    private final File tempFile;
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 64L * 1024 * 1024;
 
-    private final DB db;
+    /**
+     * Rough per-group costs used to estimate the memory consumption of the group
+     * state.
+     */
+    private static final int GROUP_OVERHEAD_BYTES = 256;
+    private static final int AGGREGATE_OVERHEAD_BYTES = 96;
+
+    /**
+     * Number of spilled solutions after which the temporary database is
+     * committed.
+     */
+    private static final int SPILL_COMMIT_INTERVAL = 10000;
+
+    private File tempFile;
+
+    private DB db;
 
     /**
      * Number of items cached before internal collections are synced to disk. If set
@@ -101,6 +149,16 @@ public class MpGroupIterator extends CloseableIteratorIteration<BindingSet, Quer
      */
     private final long iterationCacheSyncThreshold;
 
+    /**
+     * Estimated number of bytes the state of all groups may occupy before
+     * solutions of further groups are spilled to disk.
+     */
+    private final long memoryBudgetBytes;
+
+    private CloseableIteration<BindingSet, QueryEvaluationException> input;
+
+    private final ValueComparator orderComparator = new ValueComparator();
+
     /*--------------*
      * Constructors *
      *--------------*/
@@ -112,21 +170,19 @@ public class MpGroupIterator extends CloseableIteratorIteration<BindingSet, Quer
 
     public MpGroupIterator(MpFederationStrategy strategy, Group group, BindingSet parentBindings,
             long iterationCacheSyncThreshold) throws QueryEvaluationException {
+        this(strategy, group, parentBindings, iterationCacheSyncThreshold, DEFAULT_MEMORY_BUDGET_BYTES);
+    }
+
+    public MpGroupIterator(MpFederationStrategy strategy, Group group, BindingSet parentBindings,
+            long iterationCacheSyncThreshold, long memoryBudgetBytes) throws QueryEvaluationException {
         this.strategy = strategy;
         this.group = group;
         this.parentBindings = parentBindings;
         this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
+        this.memoryBudgetBytes = memoryBudgetBytes;
 
         if (this.iterationCacheSyncThreshold > 0) {
-            try {
-                this.tempFile = File.createTempFile("group-eval", null);
-            } catch (IOException e) {
-                throw new QueryEvaluationException("could not initialize temp db", e);
-            }
-            this.db = DBMaker.newFileDB(tempFile).deleteFilesAfterClose().closeOnJvmShutdown().make();
-        } else {
-            this.tempFile = null;
-            this.db = null;
+            getDb();
         }
     }
 
@@ -165,89 +221,257 @@ public class MpGroupIterator extends CloseableIteratorIteration<BindingSet, Quer
         try {
             super.handleClose();
         } finally {
-            if (db != null) {
-                db.close();
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            } finally {
+                if (db != null) {
+                    db.close();
+                }
             }
         }
     }
 
+    private DB getDb() throws QueryEvaluationException {
+        if (db == null) {
+            try {
+                this.tempFile = File.createTempFile("group-eval", null);
+            } catch (IOException e) {
+                throw new QueryEvaluationException("could not initialize temp db", e);
+            }
+            this.db = DBMaker.newFileDB(tempFile).deleteFilesAfterClose().closeOnJvmShutdown().make();
+        }
+        return db;
+    }
+
     private <T> Set<T> createSet(String setName) {
-        if (db != null) {
-            return db.getHashSet(setName);
+        if (iterationCacheSyncThreshold > 0) {
+            return getDb().getHashSet(setName);
         } else {
             return new HashSet<T>();
         }
     }
 
     private Iterator<BindingSet> createIterator() throws QueryEvaluationException {
-        Collection<Entry> entries = buildEntries();
-        Set<BindingSet> bindingSets = createSet("bindingsets");
+        input = strategy.evaluate(group.getArg(), parentBindings);
 
-        for (Entry entry : entries) {
-            QueryBindingSet sol = new QueryBindingSet(parentBindings);
+        if (!input.hasNext()) {
+            // no solutions, but if aggregates are present we still need to process them to
+            // produce a zero-result.
+            final Entry entry = new Entry(null);
+            if (!entry.getAggregates().isEmpty()) {
+                entry.addSolution(EmptyBindingSet.getInstance());
+                return entry.getSolutions().iterator();
+            }
+            return Collections.emptyIterator();
+        }
 
-            for (String name : group.getGroupBindingNames()) {
-                BindingSet prototype = entry.getPrototype();
-                if (prototype != null) {
-                    Value value = prototype.getValue(name);
-                    if (value != null) {
-                        // Potentially overwrites bindings from super
-                        sol.setBinding(name, value);
+        if (isSortedOnGroupKeys()) {
+            return new SortedGroupIterator(Iterations.stream(input).iterator(), this::isOrderTie);
+        }
+        return aggregate(Iterations.stream(input).iterator());
+    }
+
+    /**
+     * Checks whether the input is guaranteed to be ordered by all group variables,
+     * in which case each group is complete as soon as a solution of the next group
+     * arrives. The guarantee is derived from an {@link Order} below the group which
+     * is only followed by operators that preserve the order of their input, e.g.
+     * an ordered sub-select or an ordered subquery sent to a single member.
+     */
+    private boolean isSortedOnGroupKeys() {
+        Set<String> groupNames = group.getGroupBindingNames();
+        if (groupNames.isEmpty()) {
+            return false;
+        }
+        Set<String> names = new HashSet<>(groupNames);
+        TupleExpr expr = group.getArg();
+        while (!(expr instanceof Order)) {
+            if (expr instanceof Projection) {
+                // follow renamed variables to the names they have below the projection
+                Set<String> sourceNames = new HashSet<>();
+                for (ProjectionElem element : ((Projection) expr).getProjectionElemList().getElements()) {
+                    if (names.contains(element.getTargetName())) {
+                        sourceNames.add(element.getSourceName());
+                    }
+                }
+                if (sourceNames.size() != names.size()) {
+                    return false;
+                }
+                names = sourceNames;
+            } else if (expr instanceof Extension) {
+                for (ExtensionElem element : ((Extension) expr).getElements()) {
+                    if (names.contains(element.getName())) {
+                        // bound after the order was established
+                        return false;
+                    }
+                }
+            } else if (!(expr instanceof Filter || expr instanceof Distinct || expr instanceof Reduced
+                    || expr instanceof Slice || expr instanceof MpOwnedTupleExpr)) {
+                return false;
+            }
+            expr = ((UnaryTupleOperator) expr).getArg();
+        }
+
+        List<OrderElem> elements = ((Order) expr).getElements();
+        if (elements.size() < names.size()) {
+            return false;
+        }
+        Set<String> leadingNames = new HashSet<>();
+        for (OrderElem element : elements.subList(0, names.size())) {
+            if (!(element.getExpr() instanceof Var)) {
+                return false;
+            }
+            leadingNames.add(((Var) element.getExpr()).getName());
+        }
+        return leadingNames.equals(names);
+    }
+
+    /**
+     * Hash aggregation of unsorted input. Groups are aggregated in memory until
+     * their estimated size exceeds the memory budget; solutions of groups which
+     * are not in memory at that point are spilled to disk, sorted by group key,
+     * and aggregated group by group once the input has been consumed.
+     */
+    private Iterator<BindingSet> aggregate(Iterator<BindingSet> solutions) throws QueryEvaluationException {
+        Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+        long estimatedBytes = 0;
+        Map<String, BindingSet> spilled = null;
+        long spilledCount = 0;
+
+        while (solutions.hasNext()) {
+            BindingSet sol = solutions.next();
+            Key key = new Key(sol);
+            Entry entry = entries.get(key);
+
+            if (entry == null) {
+                if (estimatedBytes > memoryBudgetBytes) {
+                    if (spilled == null) {
+                        logger.debug("Memory budget of {} bytes exceeded by {} groups, spilling to disk",
+                                memoryBudgetBytes, entries.size());
+                        spilled = getDb().getTreeMap("spilled-solutions");
+                    }
+                    spilled.put(spillKey(sol, spilledCount++), sol);
+                    if (spilledCount % SPILL_COMMIT_INTERVAL == 0) {
+                        db.commit();
                     }
+                    continue;
                 }
+                entry = new Entry(sol);
+                entries.put(key, entry);
+                estimatedBytes += estimateSize(entry);
             }
 
-            List<BindingSet> solutions = entry.getBoundSolutions(sol);
+            entry.addSolution(sol);
+        }
 
-            bindingSets.addAll(solutions);
+        Iterator<BindingSet> result = Iterators
+                .concat(Iterators.transform(entries.values().iterator(), entry -> entry.getSolutions().iterator()));
+        if (spilled != null) {
+            db.commit();
+            result = Iterators.concat(result,
+                    new SortedGroupIterator(spilled.values().iterator(), (a, b) -> new Key(a).equals(new Key(b))));
         }
+        return result;
+    }
 
-        return bindingSets.iterator();
+    /**
+     * Key of a spilled solution, which sorts solutions of the same group next to
+     * each other and keeps them in input order.
+     */
+    private String spillKey(BindingSet sol, long sequence) {
+        StringBuilder key = new StringBuilder();
+        for (String name : group.getGroupBindingNames()) {
+            Value value = sol.getValue(name);
+            if (value != null) {
+                key.append(NTriplesUtil.toNTriplesString(value));
+            }
+            key.append('\u0000');
+        }
+        return key.append('\u0001').append(String.format("%019d", sequence)).toString();
     }
 
-    private Collection<Entry> buildEntries() throws QueryEvaluationException {
-        CloseableIteration<BindingSet, QueryEvaluationException> iter;
-        iter = strategy.evaluate(group.getArg(), parentBindings);
+    private long estimateSize(Entry entry) throws QueryEvaluationException {
+        long size = GROUP_OVERHEAD_BYTES + AGGREGATE_OVERHEAD_BYTES * entry.getAggregates().size();
+        for (String name : group.getGroupBindingNames()) {
+            Value value = entry.getPrototype().getValue(name);
+            if (value != null) {
+                size += 2L * value.stringValue().length();
+            }
+        }
+        return size;
+    }
 
-        try {
-            Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
-
-            if (!iter.hasNext()) {
-                // no solutions, but if aggregates are present we still need to process them to
-                // produce a
-                // zero-result.
-                final Entry entry = new Entry(null);
-                if (!entry.getAggregates().isEmpty()) {
-                    entry.addSolution(EmptyBindingSet.getInstance());
-                    entries.put(new Key(EmptyBindingSet.getInstance()), entry);
-                }
+    /**
+     * Checks whether two solutions are not ordered relative to each other by an
+     * {@link Order} on the group variables. Such ties may be distinct group keys
+     * (e.g. <code>1</code> and <code>1.0</code>) which arrive interleaved.
+     */
+    private boolean isOrderTie(BindingSet first, BindingSet second) {
+        for (String name : group.getGroupBindingNames()) {
+            if (orderComparator.compare(first.getValue(name), second.getValue(name)) != 0) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            // long count = 0;
+    /**
+     * Aggregates solutions which arrive ordered by group, i.e. emits the groups of
+     * a run of tied solutions as soon as the first solution of the next run
+     * arrives. Within a run solutions are grouped by {@link Key}, so only the
+     * state of the groups of the current run is kept in memory.
+     */
+    private class SortedGroupIterator extends AbstractIterator<BindingSet> {
 
-            while (iter.hasNext()) {
-                BindingSet sol;
-                try {
-                    sol = iter.next();
-                } catch (NoSuchElementException e) {
-                    break; // closed
-                }
-                Key key = new Key(sol);
-                Entry entry = entries.get(key);
+        private final Iterator<BindingSet> solutions;
 
-                if (entry == null) {
-                    entry = new Entry(sol);
-                    entries.put(key, entry);
-                }
+        private final BiPredicate<BindingSet, BindingSet> tied;
 
-                entry.addSolution(sol);
-            }
+        private Iterator<BindingSet> pending = Collections.emptyIterator();
 
-            return entries.values();
-        } finally {
-            iter.close();
+        private BindingSet lookAhead;
+
+        SortedGroupIterator(Iterator<BindingSet> solutions, BiPredicate<BindingSet, BindingSet> tied) {
+            this.solutions = solutions;
+            this.tied = tied;
         }
 
+        @Override
+        protected BindingSet computeNext() {
+            while (!pending.hasNext()) {
+                if (lookAhead == null && !solutions.hasNext()) {
+                    return endOfData();
+                }
+                BindingSet first = lookAhead != null ? lookAhead : solutions.next();
+                lookAhead = null;
+
+                Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+                BindingSet next = first;
+                while (true) {
+                    Key key = new Key(next);
+                    Entry entry = entries.get(key);
+                    if (entry == null) {
+                        entry = new Entry(next);
+                        entries.put(key, entry);
+                    }
+                    entry.addSolution(next);
+
+                    if (!solutions.hasNext()) {
+                        break;
+                    }
+                    next = solutions.next();
+                    if (!tied.test(first, next)) {
+                        lookAhead = next;
+                        break;
+                    }
+                }
+                pending = Iterators.concat(
+                        Iterators.transform(entries.values().iterator(), entry -> entry.getSolutions().iterator()));
+            }
+            return pending.next();
+        }
     }
 
     /**
@@ -343,6 +567,25 @@ public class MpGroupIterator extends CloseableIteratorIteration<BindingSet, Quer
             }
         }
 
+        /**
+         * @return the distinct result solutions of the group
+         */
+        public Collection<BindingSet> getSolutions() throws QueryEvaluationException {
+            QueryBindingSet sol = new QueryBindingSet(parentBindings);
+
+            if (prototype != null) {
+                for (String name : group.getGroupBindingNames()) {
+                    Value value = prototype.getValue(name);
+                    if (value != null) {
+                        // Potentially overwrites bindings from super
+                        sol.setBinding(name, value);
+                    }
+                }
+            }
+
+            return new LinkedHashSet<>(getBoundSolutions(sol));
+        }
+
         public List<BindingSet> getBoundSolutions(QueryBindingSet sol) throws QueryEvaluationException {
             List<BindingSet> inputSolutions = Lists.<BindingSet>newArrayList(sol);
             List<BindingSet> outputSolutions = inputSolutions;
@@ -451,7 +694,7 @@ public class MpGroupIterator extends CloseableIteratorIteration<BindingSet, Quer
             }
 
             final boolean result = distinctValues.add(value);
-            if (db != null && distinctValues.size() % iterationCacheSyncThreshold == 0) {
+            if (iterationCacheSyncThreshold > 0 && distinctValues.size() % iterationCacheSyncThreshold == 0) {
                 // write to disk every $iterationCacheSyncThreshold items
                 db.commit();
             }
@@ -511,7 +754,7 @@ public class MpGroupIterator extends CloseableIteratorIteration<BindingSet, Quer
             }
 
             final boolean result = distinctBindingSets.add(s);
-            if (db != null && distinctBindingSets.size() % iterationCacheSyncThreshold == 0) {
+            if (iterationCacheSyncThreshold > 0 && distinctBindingSets.size() % iterationCacheSyncThreshold == 0) {
                 // write to disk every
                 db.commit();
             }
@@ -21,8 +21,10 @@ package org.researchspace.federation.repository.evaluation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.log4j.Logger;
@@ -45,15 +47,16 @@ public class ParallelAsyncJoinCursor extends LookAheadIteration<BindingSet, Quer
 
     public static Logger logger = Logger.getLogger(ParallelAsyncJoinCursor.class);
 
-    protected static final int NUM_THREADS = 40;
-
     private final MpFederationStrategy strategy;
 
     private final TupleExpr rightArg;
 
     // private volatile Thread evaluationThread;
 
-    private volatile ThreadPoolExecutor executor;
+    /**
+     * Probe requests, submitted to the {@link FederationTaskScope} of the query.
+     */
+    private final Queue<Future<?>> probes = new ConcurrentLinkedQueue<>();
 
     private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
 
@@ -86,11 +89,10 @@ public class ParallelAsyncJoinCursor extends LookAheadIteration<BindingSet, Quer
     @Override
     public void run() {
         try {
-            executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(NUM_THREADS);
             while (!isClosed() && leftIter.hasNext()) {
                 BindingSet next = leftIter.next();
                 AsyncJoinEvaluator task = new AsyncJoinEvaluator(this, strategy, rightArg, next);
-                executor.submit(task);
+                probes.add(strategy.getTaskScope().supplyAsync(Executors.callable(task)));
                 counter.incrementAndGet();
                 // toCloseList.add(evaluate);
                 // rightQueue.put(evaluate);
@@ -101,8 +103,6 @@ public class ParallelAsyncJoinCursor extends LookAheadIteration<BindingSet, Quer
             logger.trace("sumbission exception: " + e.getMessage(), e);
             rightQueue.toss(e);
             close();
-        } finally {
-            executor.shutdown();
         }
     }
 
@@ -158,7 +158,7 @@ public class ParallelAsyncJoinCursor extends LookAheadIteration<BindingSet, Quer
                                 }
                             }
                         } finally {
-                            executor.shutdownNow();
+                            probes.forEach(probe -> probe.cancel(true));
                         }
                     }
                 }
@@ -194,7 +194,6 @@ public class ParallelAsyncJoinCursor extends LookAheadIteration<BindingSet, Quer
 
             if (allSubmitted.get() && countDown == 0) {
                 rightQueue.done();
-                executor.shutdown();
             }
 
         }
@@ -20,10 +20,16 @@
 package org.researchspace.federation.repository.evaluation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -31,13 +37,18 @@ import java.util.stream.Collectors;
 import org.apache.log4j.Logger;
 import org.eclipse.rdf4j.common.iteration.AbstractCloseableIteration;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
 import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.common.iteration.UnionIteration;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Service;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
 import org.eclipse.rdf4j.query.impl.ListBindingSet;
 import org.eclipse.rdf4j.query.impl.QueueCursor;
+import org.eclipse.rdf4j.sail.federation.evaluation.InsertBindingSetCursor;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -46,6 +57,22 @@ import com.google.common.collect.Sets;
  * Modification of {@link ParallelAsyncJoinCursor} which avoids sending probing
  * requests with the same values.
  * 
+ * <p>
+ * Consecutive left bindings with the same join key are probed as one batch.
+ * Results of each probe are remembered by a {@link ProbeResultCache}, so that
+ * repeated keys of an unsorted left input are answered without issuing the
+ * same remote request again. Results which are too large to be remembered are
+ * streamed to the batch which triggered the probe.
+ * </p>
+ * 
+ * <p>
+ * If the right argument is a SERVICE clause of a SPARQL endpoint, distinct keys
+ * are collected into blocks (sized by a {@link BoundJoinBlockSizer}) and each
+ * block is probed with a single request using a <code>VALUES</code> clause. A
+ * block which does not fill up is sent {@link #BLOCK_FLUSH_DELAY_MILLIS} after
+ * its first key.
+ * </p>
+ * 
  * @author Andriy Nikolov an@metaphacts.com
  *
  */
@@ -54,11 +81,11 @@ public class ParallelAsyncJoinCursorWithCache extends LookAheadIteration<Binding
 
     public static Logger logger = Logger.getLogger(ParallelAsyncJoinCursorWithCache.class);
 
-    /*-----------*
-     * Constants *
-     *-----------*/
-
-    protected static final int NUM_THREADS = 40;
+    /**
+     * Maximum time the first key of a block waits for further keys before the
+     * block is sent, e.g. while the left argument is slow to produce bindings.
+     */
+    public static final long BLOCK_FLUSH_DELAY_MILLIS = 20;
 
     private final MpFederationStrategy strategy;
 
@@ -70,7 +97,10 @@ public class ParallelAsyncJoinCursorWithCache extends LookAheadIteration<Binding
 
     // private volatile Thread evaluationThread;
 
-    private volatile ThreadPoolExecutor executor;
+    /**
+     * Probe requests, submitted to the {@link FederationTaskScope} of the query.
+     */
+    private final Queue<Future<?>> probes = new ConcurrentLinkedQueue<>();
 
     private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
 
@@ -89,7 +119,31 @@ public class ParallelAsyncJoinCursorWithCache extends LookAheadIteration<Binding
     private final QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>> rightQueue = new QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>>(
             1024);
 
-    private final List<CloseableIteration<BindingSet, QueryEvaluationException>> toCloseList = new ArrayList<>();
+    private final Queue<CloseableIteration<BindingSet, QueryEvaluationException>> toCloseList = new ConcurrentLinkedQueue<>();
+
+    private final ProbeResultCache probeCache;
+
+    /**
+     * Set if the right argument accepts multiple join keys in a single request
+     * (see {@link MpFederationStrategy#supportsValuesBatching(TupleExpr)}).
+     */
+    private final BoundJoinBlockSizer blockSizer;
+
+    /**
+     * Keys waiting to be probed with the next block, guarded by
+     * {@link #pendingLock}.
+     */
+    private final List<BindingSet> pendingKeys = new ArrayList<>();
+
+    private final List<CompletableFuture<ProbeResult>> pendingProbes = new ArrayList<>();
+
+    private final Object pendingLock = new Object();
+
+    /**
+     * Incremented whenever a block is sent, so that a scheduled flush of an
+     * earlier block does not send the following one prematurely.
+     */
+    private long pendingBlock = 0;
 
     /*--------------*
      * Constructors *
@@ -102,14 +156,18 @@ public class ParallelAsyncJoinCursorWithCache extends LookAheadIteration<Binding
         this.strategy = strategy;
         this.leftIter = leftIter;
         this.rightArg = rightArg;
+        this.probeCache = strategy.createProbeResultCache(rightArg);
+        this.blockSizer = strategy.supportsValuesBatching(rightArg)
+                ? strategy.getBoundJoinBlockSizer(rightArg)
+                : null;
     }
 
     /*---------*
      * Methods *
      *---------*/
 
-    protected BindingSet getKey(Set<String> keyVars, BindingSet bs) {
-        List<String> names = Lists.newArrayList(keyVars);
+    protected BindingSet getKey(Set<String> rightVars, BindingSet bs) {
+        List<String> names = rightVars.stream().filter(bs::hasBinding).collect(Collectors.toList());
         List<Value> vals = names.stream().map(key -> bs.getValue(key)).collect(Collectors.toList());
         return new ListBindingSet(names, vals);
     }
@@ -117,54 +175,226 @@ public class ParallelAsyncJoinCursorWithCache extends LookAheadIteration<Binding
     @Override
     public void run() {
         try {
-            Set<String> keyVars = null;
             Set<String> rightVars = Sets.newLinkedHashSet(rightArg.getBindingNames());
             BindingSet prevKey = null;
-            BindingSet nextKey = null;
             List<BindingSet> currentBatch = Lists.newArrayList();
-            executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(NUM_THREADS);
             while (!isClosed() && leftIter.hasNext()) {
                 BindingSet next = leftIter.next();
-                if (keyVars == null) {
-                    keyVars = Sets.newLinkedHashSet(rightVars);
-                    keyVars.retainAll(next.getBindingNames());
-                }
-                nextKey = getKey(keyVars, next);
-                if (prevKey != null && nextKey.equals(prevKey)) {
-                    currentBatch.add(next);
-                } else {
-                    if (prevKey != null && currentBatch.size() > 0) {
-                        AsyncJoinEvaluatorWithCache task = new AsyncJoinEvaluatorWithCache(this, strategy, rightArg,
-                                currentBatch, prevKey);
-                        executor.submit(task);
-                        counter.incrementAndGet();
-                        currentBatch = Lists.newArrayList();
-                    }
-                    prevKey = nextKey;
-                    currentBatch.add(next);
+                BindingSet nextKey = getKey(rightVars, next);
+                if (prevKey != null && !nextKey.equals(prevKey)) {
+                    submit(prevKey, currentBatch);
+                    currentBatch = Lists.newArrayList();
                 }
-                // toCloseList.add(evaluate);
-                // rightQueue.put(evaluate);
+                prevKey = nextKey;
+                currentBatch.add(next);
             }
             if (currentBatch.size() > 0 && !isClosed()) {
-                AsyncJoinEvaluatorWithCache task = new AsyncJoinEvaluatorWithCache(this, strategy, rightArg,
-                        currentBatch, nextKey);
-                executor.submit(task);
-                counter.incrementAndGet();
-            } else {
-                rightQueue.done();
+                submit(prevKey, currentBatch);
+            }
+            synchronized (pendingLock) {
+                flushProbes();
+            }
+            synchronized (this) {
+                allSubmitted.set(true);
+                if (counter.get() == 0) {
+                    rightQueue.done();
+                }
             }
-            allSubmitted.set(true);
             logger.trace("Submitted all: " + counter.get());
         } catch (RuntimeException e) {
             logger.warn("sumbission exception: " + e.getMessage(), e);
             rightQueue.toss(e);
             close();
-        } finally {
-            executor.shutdown();
         }
     }
 
+    /**
+     * Joins a batch of left bindings sharing the same key with the probe result
+     * for the key. Keys which have already been probed by this join (or are
+     * being probed) are not sent to the remote endpoint again.
+     */
+    private void submit(BindingSet key, List<BindingSet> batch) {
+        counter.incrementAndGet();
+        probeCache.get(key, this::probe).whenComplete((result, e) -> join(key, batch, result, e));
+    }
+
+    private void join(BindingSet key, List<BindingSet> batch, ProbeResult result, Throwable exception) {
+        if (exception != null) {
+            operationErrorCallback(exception);
+            return;
+        }
+        try {
+            if (result.isMemoized()) {
+                operationFinishCallback(joinWithBatch(result.getResults(), batch));
+                return;
+            }
+            CloseableIteration<BindingSet, QueryEvaluationException> stream = result.takeStream();
+            if (stream != null) {
+                operationFinishCallback(joinWithStream(stream, batch));
+            } else {
+                // the streamed result has been taken by another batch with the same key
+                probeUncached(key).whenComplete((uncached, e) -> join(key, batch, uncached, e));
+            }
+        } catch (RuntimeException e) {
+            operationErrorCallback(e);
+        }
+    }
+
+    private CompletableFuture<ProbeResult> probe(BindingSet key) {
+        if (blockSizer != null) {
+            return probeWithBlock(key);
+        }
+        return probeUncached(key);
+    }
+
+    private CompletableFuture<ProbeResult> probeUncached(BindingSet key) {
+        CompletableFuture<ProbeResult> probe = strategy.getTaskScope().supplyAsync(
+                new AsyncJoinEvaluatorWithCache(strategy, rightArg, key, probeCache.getMaxResultsPerKey()));
+        probes.add(probe);
+        return probe;
+    }
+
+    /**
+     * Adds the key to the next block of keys which are probed with a single
+     * request. The block is sent once it reaches the block size, the next key
+     * binds different variables or its first key has been waiting for
+     * {@link #BLOCK_FLUSH_DELAY_MILLIS}.
+     */
+    private CompletableFuture<ProbeResult> probeWithBlock(BindingSet key) {
+        synchronized (pendingLock) {
+            if (!pendingKeys.isEmpty() && !pendingKeys.get(0).getBindingNames().equals(key.getBindingNames())) {
+                flushProbes();
+            }
+            CompletableFuture<ProbeResult> probe = new CompletableFuture<>();
+            pendingKeys.add(key);
+            pendingProbes.add(probe);
+            if (pendingKeys.size() >= blockSizer.getBlockSize()) {
+                flushProbes();
+            } else if (pendingKeys.size() == 1) {
+                long block = pendingBlock;
+                strategy.getTaskScope().schedule(() -> flushIdleBlock(block), BLOCK_FLUSH_DELAY_MILLIS,
+                        TimeUnit.MILLISECONDS);
+            }
+            return probe;
+        }
+    }
+
+    private void flushIdleBlock(long block) {
+        synchronized (pendingLock) {
+            if (pendingBlock != block || isClosed()) {
+                return;
+            }
+            try {
+                flushProbes();
+            } catch (RuntimeException e) {
+                // the probes of the block have been failed
+                logger.debug("Failed to send idle block: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends the pending keys as a block, must be called holding
+     * {@link #pendingLock}.
+     */
+    private void flushProbes() {
+        pendingBlock++;
+        if (pendingKeys.isEmpty()) {
+            return;
+        }
+        List<BindingSet> keys = new ArrayList<>(pendingKeys);
+        List<CompletableFuture<ProbeResult>> waiting = new ArrayList<>(pendingProbes);
+        pendingKeys.clear();
+        pendingProbes.clear();
+
+        CompletableFuture<Map<BindingSet, List<BindingSet>>> response;
+        try {
+            response = strategy.getTaskScope()
+                    .supplyAsync(new AsyncBatchJoinEvaluator(strategy, (Service) rightArg, keys, blockSizer));
+        } catch (RuntimeException e) {
+            waiting.forEach(probe -> probe.completeExceptionally(e));
+            throw e;
+        }
+        probes.add(response);
+        response.whenComplete((results, e) -> {
+            for (int i = 0; i < keys.size(); i++) {
+                CompletableFuture<ProbeResult> probe = waiting.get(i);
+                if (e != null) {
+                    probe.completeExceptionally(e);
+                } else if (results == null) {
+                    // too many results to group the block, each key is probed and streamed separately
+                    probeSeparately(keys.get(i), probe);
+                } else {
+                    probe.complete(
+                            ProbeResult.memoized(results.getOrDefault(keys.get(i), Collections.emptyList())));
+                }
+            }
+        });
+    }
+
+    private void probeSeparately(BindingSet key, CompletableFuture<ProbeResult> probe) {
+        try {
+            probeUncached(key).whenComplete((result, e) -> {
+                if (e != null) {
+                    probe.completeExceptionally(e);
+                } else {
+                    probe.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            probe.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Joins a result which is too large to be memoized. A single left binding is
+     * joined while the result is streamed. For several left bindings, the result
+     * is materialized in a {@link BindingSetBuffer}, which spills to disk beyond
+     * the materialization memory budget of the federation, and released once the
+     * join of the batch is closed.
+     */
+    private CloseableIteration<BindingSet, QueryEvaluationException> joinWithStream(
+            CloseableIteration<BindingSet, QueryEvaluationException> stream, List<BindingSet> batch)
+            throws QueryEvaluationException {
+        if (batch.size() == 1) {
+            return new InsertBindingSetCursor(stream, batch.get(0));
+        }
+        BindingSetBuffer buffer = new MaterializedIteration(stream,
+                strategy.getFederation().getMaterializationMemoryBudget()).getBuffer();
+        List<CloseableIteration<BindingSet, QueryEvaluationException>> results = Lists
+                .newArrayListWithCapacity(batch.size());
+        for (BindingSet bs : batch) {
+            results.add(new InsertBindingSetCursor(new CloseableIteratorIteration<>(buffer.iterator()), bs));
+        }
+        return new UnionIteration<BindingSet, QueryEvaluationException>(results) {
+            @Override
+            protected void handleClose() throws QueryEvaluationException {
+                try {
+                    super.handleClose();
+                } finally {
+                    buffer.close();
+                }
+            }
+        };
+    }
+
+    private CloseableIteration<BindingSet, QueryEvaluationException> joinWithBatch(List<BindingSet> probeResult,
+            List<BindingSet> batch) {
+        List<CloseableIteration<BindingSet, QueryEvaluationException>> results = Lists
+                .newArrayListWithCapacity(batch.size());
+        for (BindingSet bs : batch) {
+            results.add(new InsertBindingSetCursor(new CollectionIteration<>(probeResult), bs));
+        }
+        return new UnionIteration<BindingSet, QueryEvaluationException>(results);
+    }
+
+    /**
+     * @return statistics of the probe result cache of this join
+     */
+    public ProbeResultCache getProbeCache() {
+        return probeCache;
+    }
+
     @Override
     public BindingSet getNextElement() throws QueryEvaluationException {
         BindingSet result = null;
@@ -209,15 +439,21 @@ public class ParallelAsyncJoinCursorWithCache extends LookAheadIteration<Binding
                         rightQueue.close();
                     } finally {
                         try {
-                            for (CloseableIteration<BindingSet, QueryEvaluationException> nextToCloseIteration : toCloseList) {
-                                try {
-                                    nextToCloseIteration.close();
-                                } catch (Exception e) {
-                                    // Ignoring exceptions while closing component iterations
+                            // results handed over after this point are closed by the callback
+                            synchronized (this) {
+                                for (CloseableIteration<BindingSet, QueryEvaluationException> nextToCloseIteration : toCloseList) {
+                                    try {
+                                        nextToCloseIteration.close();
+                                    } catch (Exception e) {
+                                        // Ignoring exceptions while closing component iterations
+                                    }
                                 }
                             }
                         } finally {
-                            executor.shutdownNow();
+                            probes.forEach(probe -> probe.cancel(true));
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("Probe cache of " + rightArg.getSignature() + ": " + probeCache);
+                            }
                         }
                     }
                 }
@@ -233,10 +469,14 @@ public class ParallelAsyncJoinCursorWithCache extends LookAheadIteration<Binding
         return "ParallelAsyncJoin\n\t" + left + "\n\t" + right.replace("\n", "\n\t");
     }
 
-    public void operationFinishCallback(AsyncJoinEvaluatorWithCache evaluator,
-            CloseableIteration<BindingSet, QueryEvaluationException> result) {
+    private void operationFinishCallback(CloseableIteration<BindingSet, QueryEvaluationException> result) {
 
         synchronized (this) {
+            if (isClosed()) {
+                // the join has been closed while the probe was running
+                result.close();
+                return;
+            }
             toCloseList.add(result);
             int countDown = counter.decrementAndGet();
             try {
@@ -253,19 +493,21 @@ public class ParallelAsyncJoinCursorWithCache extends LookAheadIteration<Binding
 
             if (allSubmitted.get() && countDown == 0) {
                 rightQueue.done();
-                executor.shutdown();
             }
 
         }
 
     }
 
-    public void operationErrorCallback(AsyncJoinEvaluatorWithCache evaluator, Exception exception) {
+    private void operationErrorCallback(Throwable exception) {
+        if (exception instanceof CompletionException && exception.getCause() != null) {
+            exception = exception.getCause();
+        }
         synchronized (this) {
-            rightQueue.toss(exception);
+            rightQueue.toss(exception instanceof Exception ? (Exception) exception
+                    : new QueryEvaluationException(exception));
             logger.trace("Closing: " + exception.getMessage(), exception);
             close();
-            executor.shutdown();
         }
 
     }
@@ -21,7 +21,14 @@ package org.researchspace.federation.repository.evaluation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.rdf4j.common.iteration.AbstractCloseableIteration;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
@@ -30,6 +37,7 @@ import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.impl.QueueCursor;
 import org.eclipse.rdf4j.sail.federation.evaluation.ParallelJoinCursor;
+import org.researchspace.federation.repository.MpFederation;
 import org.researchspace.federation.sparql.MpOwnedTupleExpr;
 
 import com.google.common.collect.Lists;
@@ -41,21 +49,41 @@ import com.google.common.collect.Sets;
  * the bound-nested loop join, only iterate the right side in the controlling
  * thread.
  * 
+ * <p>
+ * The number of left bindings sent per bound join block is determined by a
+ * {@link BoundJoinBlockSizer}, which adapts it to the observed latency and
+ * result cardinality of the remote endpoint.
+ * </p>
+ * 
+ * <p>
+ * Blocks are dispatched concurrently as requests of the
+ * {@link FederationTaskScope} of the query: up to
+ * {@link MpFederation#getBoundJoinMaxConcurrentBlocks()} blocks of one join
+ * are in flight (i.e. requested, but not yet consumed) at the same time, and
+ * the number of concurrent block requests of all joins of the federation is
+ * limited by {@link MpFederation#getBoundJoinRequestPermits()}. Results are
+ * returned in block order, or as soon as a block is answered if
+ * {@link MpFederation#isBoundJoinPreserveOrder()} is disabled.
+ * </p>
+ * 
  * @author Andriy Nikolov <an@metaphacts.com>
  */
 public class ParallelBoundJoinCursor extends LookAheadIteration<BindingSet, QueryEvaluationException>
         implements Runnable {
 
-    /*-----------*
-     * Constants *
-     *-----------*/
-
-    public static final int BOUND_JOIN_BLOCK_SIZE = 10;
-
     protected final MpFederationStrategy strategy;
 
     protected final MpOwnedTupleExpr rightArg;
 
+    protected final BoundJoinBlockSizer blockSizer;
+
+    protected final MpFederation federation;
+
+    /**
+     * Limits the number of blocks of this join which are in flight.
+     */
+    private final Semaphore blockPermits;
+
     /*-----------*
      * Variables *
      *-----------*/
@@ -75,7 +103,7 @@ public class ParallelBoundJoinCursor extends LookAheadIteration<BindingSet, Quer
     private final QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>> rightQueue = new QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>>(
             1024);
 
-    private final List<CloseableIteration<BindingSet, QueryEvaluationException>> toCloseList = new ArrayList<>();
+    private final Queue<CloseableIteration<BindingSet, QueryEvaluationException>> toCloseList = new ConcurrentLinkedQueue<>();
 
     /*--------------*
      * Constructors *
@@ -84,10 +112,19 @@ public class ParallelBoundJoinCursor extends LookAheadIteration<BindingSet, Quer
     public ParallelBoundJoinCursor(MpFederationStrategy strategy,
             CloseableIteration<BindingSet, QueryEvaluationException> leftIter, MpOwnedTupleExpr rightArg)
             throws QueryEvaluationException {
+        this(strategy, leftIter, rightArg, new BoundJoinBlockSizer());
+    }
+
+    public ParallelBoundJoinCursor(MpFederationStrategy strategy,
+            CloseableIteration<BindingSet, QueryEvaluationException> leftIter, MpOwnedTupleExpr rightArg,
+            BoundJoinBlockSizer blockSizer) throws QueryEvaluationException {
         super();
         this.strategy = strategy;
         this.leftIter = leftIter;
         this.rightArg = rightArg;
+        this.blockSizer = blockSizer;
+        this.federation = strategy.getFederation();
+        this.blockPermits = new Semaphore(Math.max(1, federation.getBoundJoinMaxConcurrentBlocks()));
     }
 
     /*---------*
@@ -98,45 +135,57 @@ public class ParallelBoundJoinCursor extends LookAheadIteration<BindingSet, Quer
     public void run() {
         evaluationThread = Thread.currentThread();
 
-        int totalLeftBindingsProcessed = 0;
-
         try {
             if (!isClosed() && leftIter.hasNext()) {
                 BindingSet nextBs = leftIter.next();
-                totalLeftBindingsProcessed++;
                 CloseableIteration<BindingSet, QueryEvaluationException> evaluate = strategy.evaluate(rightArg, nextBs);
                 toCloseList.add(evaluate);
                 rightQueue.put(evaluate);
             }
 
             int bindingsBlockSize;
-            List<BindingSet> bindingSets = null;
+            BindingSet pendingLeft = null;
+            int baseQueryLength = rightArg.estimateBoundJoinQueryLength();
+            boolean preserveOrder = federation.isBoundJoinPreserveOrder();
+            List<CompletableFuture<?>> pendingBlocks = new ArrayList<>();
 
-            Set<String> boundVars = Sets.newHashSet();
-            while (!isClosed() && leftIter.hasNext()) {
+            while (!isClosed() && (pendingLeft != null || leftIter.hasNext())) {
+                bindingsBlockSize = blockSizer.getBlockSize();
 
-                if (totalLeftBindingsProcessed > BOUND_JOIN_BLOCK_SIZE) {
-                    bindingsBlockSize = BOUND_JOIN_BLOCK_SIZE;
-                } else {
-                    bindingsBlockSize = 3;
-                }
-
-                bindingSets = Lists.newArrayListWithCapacity(bindingsBlockSize);
-                boundVars.clear();
+                List<BindingSet> bindingSets = Lists.newArrayListWithCapacity(bindingsBlockSize);
+                Set<String> boundVars = Sets.newHashSet();
                 int count = 0;
-                while (count < bindingsBlockSize && leftIter.hasNext()) {
-                    BindingSet nextLeft = leftIter.next();
+                int queryLength = baseQueryLength;
+                while (count < bindingsBlockSize && (pendingLeft != null || leftIter.hasNext())) {
+                    BindingSet nextLeft = pendingLeft != null ? pendingLeft : leftIter.next();
+                    pendingLeft = null;
+                    int rowLength = rightArg.estimateValuesRowLength(nextLeft);
+                    if (!blockSizer.fitsQueryLength(queryLength, rowLength, count)) {
+                        // keep the binding for the next block
+                        pendingLeft = nextLeft;
+                        break;
+                    }
+                    queryLength += rowLength;
                     boundVars.addAll(nextLeft.getBindingNames());
                     bindingSets.add(nextLeft);
                     count++;
                 }
 
-                totalLeftBindingsProcessed += count;
+                BlockIteration block = dispatch(bindingSets, boundVars);
+                toCloseList.add(block);
+                if (preserveOrder) {
+                    rightQueue.put(block);
+                } else {
+                    pendingBlocks.add(block.response.handle((result, e) -> {
+                        putUnordered(block);
+                        return null;
+                    }));
+                }
+            }
 
-                CloseableIteration<BindingSet, QueryEvaluationException> evaluate = strategy
-                        .evaluateUsingBoundJoin(rightArg, bindingSets, boundVars);
-                toCloseList.add(evaluate);
-                rightQueue.put(evaluate);
+            // wait until all unordered blocks have been added to the queue
+            for (CompletableFuture<?> pendingBlock : pendingBlocks) {
+                pendingBlock.get();
             }
         } catch (RuntimeException e) {
             rightQueue.toss(e);
@@ -144,12 +193,110 @@ public class ParallelBoundJoinCursor extends LookAheadIteration<BindingSet, Quer
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             close();
+        } catch (ExecutionException e) {
+            rightQueue.toss(new QueryEvaluationException(e.getCause()));
+            close();
         } finally {
             evaluationThread = null;
             rightQueue.done();
         }
     }
 
+    /**
+     * Sends the block to the remote endpoint as a request of the query's
+     * {@link FederationTaskScope}. Blocks the evaluation thread while the maximum
+     * number of blocks of this join is in flight or all request permits of the
+     * federation are taken, i.e. before the request is submitted, so that no
+     * executor thread is occupied by a request waiting for its permit.
+     */
+    private BlockIteration dispatch(List<BindingSet> bindingSets, Set<String> boundVars)
+            throws InterruptedException {
+        Semaphore requestPermits = federation.getBoundJoinRequestPermits();
+        blockPermits.acquire();
+        try {
+            requestPermits.acquire();
+        } catch (InterruptedException e) {
+            blockPermits.release();
+            throw e;
+        }
+
+        int count = bindingSets.size();
+        BlockIteration block = new BlockIteration(count);
+        RequestPermit requestPermit = new RequestPermit(requestPermits);
+        try {
+            block.response = strategy.getTaskScope().supplyAsync(() -> {
+                if (!requestPermit.start()) {
+                    return null;
+                }
+                try {
+                    long start = System.nanoTime();
+                    CloseableIteration<BindingSet, QueryEvaluationException> result = strategy
+                            .evaluateUsingBoundJoin(rightArg, bindingSets, boundVars);
+                    blockSizer.recordLatency(count, System.nanoTime() - start);
+                    return block.answer(result);
+                } finally {
+                    // the request is answered, further results are streamed
+                    requestPermit.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            requestPermit.release();
+            blockPermits.release();
+            throw e;
+        }
+        // frees the permit of a request which is cancelled before it was started
+        block.response.whenComplete((result, e) -> requestPermit.releaseIfNotStarted());
+        return block;
+    }
+
+    /**
+     * Federation-wide permit of a single block request, acquired by the evaluation
+     * thread before the request is submitted and released exactly once, either
+     * when the request has been answered or when it is cancelled before being
+     * started.
+     */
+    private static class RequestPermit {
+        private static final int PENDING = 0;
+        private static final int STARTED = 1;
+        private static final int RELEASED = 2;
+
+        private final Semaphore permits;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        RequestPermit(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        /**
+         * @return <code>false</code> if the permit has already been released, i.e.
+         *         the request has been cancelled
+         */
+        boolean start() {
+            return state.compareAndSet(PENDING, STARTED);
+        }
+
+        void releaseIfNotStarted() {
+            if (state.compareAndSet(PENDING, RELEASED)) {
+                permits.release();
+            }
+        }
+
+        void release() {
+            if (state.getAndSet(RELEASED) != RELEASED) {
+                permits.release();
+            }
+        }
+    }
+
+    private void putUnordered(BlockIteration block) {
+        try {
+            rightQueue.put(block);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            block.close();
+        }
+    }
+
     @Override
     public BindingSet getNextElement() throws QueryEvaluationException {
         BindingSet result = null;
@@ -211,6 +358,94 @@ public class ParallelBoundJoinCursor extends LookAheadIteration<BindingSet, Quer
         }
     }
 
+    /**
+     * Results of a dispatched block. Waits for the response of the remote
+     * endpoint on first access, reports the number of results of a completely
+     * consumed block to the {@link BoundJoinBlockSizer} and frees the slot of the
+     * block once closed.
+     */
+    private class BlockIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+        private volatile CompletableFuture<CloseableIteration<BindingSet, QueryEvaluationException>> response;
+        private final int blockSize;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private CloseableIteration<BindingSet, QueryEvaluationException> delegate;
+        private long results = 0;
+
+        private final Object answerLock = new Object();
+        private boolean answerClosed = false;
+        private CloseableIteration<BindingSet, QueryEvaluationException> answer;
+
+        public BlockIteration(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        /**
+         * Hands the result of the request over to the block. Called by the request
+         * itself, as a result completing the response after the block has been
+         * closed (and the response has been cancelled) would never be closed.
+         *
+         * @return the result or <code>null</code> if the block has been closed
+         */
+        private CloseableIteration<BindingSet, QueryEvaluationException> answer(
+                CloseableIteration<BindingSet, QueryEvaluationException> result) throws QueryEvaluationException {
+            synchronized (answerLock) {
+                if (!answerClosed) {
+                    answer = result;
+                    return result;
+                }
+            }
+            if (result != null) {
+                result.close();
+            }
+            return null;
+        }
+
+        @Override
+        protected BindingSet getNextElement() throws QueryEvaluationException {
+            if (delegate == null) {
+                try {
+                    delegate = response.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new QueryEvaluationException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof QueryEvaluationException) {
+                        throw (QueryEvaluationException) e.getCause();
+                    }
+                    throw new QueryEvaluationException(e.getCause());
+                }
+            }
+            if (delegate != null && delegate.hasNext()) {
+                results++;
+                return delegate.next();
+            }
+            blockSizer.recordResults(blockSize, results);
+            return null;
+        }
+
+        @Override
+        protected void handleClose() throws QueryEvaluationException {
+            try {
+                super.handleClose();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    blockPermits.release();
+                    CloseableIteration<BindingSet, QueryEvaluationException> toClose;
+                    synchronized (answerLock) {
+                        answerClosed = true;
+                        toClose = answer;
+                    }
+                    // abort the request if the block is closed before it was answered,
+                    // a later answer is closed by the request itself
+                    response.cancel(true);
+                    if (toClose != null) {
+                        toClose.close();
+                    }
+                }
+            }
+        }
+    }
+
     @Override
     public String toString() {
         String left = leftIter.toString().replace("\n", "\n\t");
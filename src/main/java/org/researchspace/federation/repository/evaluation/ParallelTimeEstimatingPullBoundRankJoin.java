@@ -34,8 +34,6 @@ import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.algebra.OrderElem;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
-import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
-import org.eclipse.rdf4j.query.algebra.evaluation.iterator.HashJoinIteration;
 import org.eclipse.rdf4j.query.algebra.evaluation.util.ValueComparator;
 import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.researchspace.federation.sparql.rank.optimizers.NaryJoinOrderOptimizerHelper;
@@ -117,7 +115,7 @@ public class ParallelTimeEstimatingPullBoundRankJoin {
         for (TupleExpr seed : seeds) {
             PipelineJoinQueueEvaluator evaluator = new PipelineJoinQueueEvaluator(this, strategy, seed, null, seed,
                     bindings, freeVarsSetsList.get(seed));
-            strategy.getFederation().execute(evaluator);
+            strategy.getTaskScope().execute(evaluator);
         }
         try {
             latch.await();
@@ -130,19 +128,11 @@ public class ParallelTimeEstimatingPullBoundRankJoin {
             try {
                 MaterializedIteration iter1 = (MaterializedIteration) partialIterations.get(seeds.get(0));
                 MaterializedIteration iter2 = (MaterializedIteration) partialIterations.get(seeds.get(1));
-                CollectionIteration<BindingSet, QueryEvaluationException> colIter1 = new CollectionIteration<>(
-                        iter1.list);
-                CollectionIteration<BindingSet, QueryEvaluationException> colIter2 = new CollectionIteration<>(
-                        iter2.list);
 
-                log.debug("iter1: " + iter1.list.get(0).getBindingNames());
-                log.debug("iter2: " + iter2.list.get(0).getBindingNames());
+                log.debug("iter1: " + iter1.getBuffer().getBindingNames() + ", size: " + iter1.size());
+                log.debug("iter2: " + iter2.getBuffer().getBindingNames() + ", size: " + iter2.size());
 
-                Set<String> freeVars1 = freeVarsSetsList.get(seeds.get(0));
-                Set<String> freeVars2 = freeVarsSetsList.get(seeds.get(1));
-
-                return new HashJoinIteration(strategy, colIter1, iter1.list.get(0).getBindingNames(), colIter2,
-                        iter2.list.get(0).getBindingNames(), false);
+                return new BufferHashJoinIteration(iter1.getBuffer(), iter2.getBuffer());
             } catch (Exception e) {
                 log.debug(e.getMessage(), e);
                 throw e;
@@ -206,6 +196,7 @@ public class ParallelTimeEstimatingPullBoundRankJoin {
 
         synchronized (this) {
             if (latch.getCount() <= 0) {
+                release(result);
                 return;
             }
             // Remove justJoined from all other queues
@@ -221,13 +212,14 @@ public class ParallelTimeEstimatingPullBoundRankJoin {
             if (!ourQueue.isEmpty()) {
                 PipelineJoinQueueEvaluator newEvaluator = new PipelineJoinQueueEvaluator(this, strategy,
                         evaluator.getSeed(), result, ourQueue.get(0), new MapBindingSet(), branchVars);
-                strategy.getFederation().execute(newEvaluator);
+                strategy.getTaskScope().execute(newEvaluator);
             } else {
                 log.debug("Stopping branch: " + evaluator.getSeed().toString());
                 // if not, stop
             }
 
-            partialIterations.put(evaluator.getSeed(), result);
+            // the previous result of the branch has been consumed by the evaluator
+            release(partialIterations.put(evaluator.getSeed(), result));
             latch.countDown();
 
             // if all stopped, trigger hash join
@@ -236,4 +228,10 @@ public class ParallelTimeEstimatingPullBoundRankJoin {
 
     }
 
-}
\ No newline at end of file
+    private static void release(CloseableIteration<BindingSet, QueryEvaluationException> result) {
+        if (result instanceof MaterializedIteration) {
+            ((MaterializedIteration) result).release();
+        }
+    }
+
+}
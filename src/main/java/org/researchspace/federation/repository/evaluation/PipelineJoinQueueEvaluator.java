@@ -71,12 +71,12 @@ public class PipelineJoinQueueEvaluator implements Runnable {
         logger.trace("Triggered joining: " + rightArg.toString());
         CloseableIteration<BindingSet, QueryEvaluationException> result;
         if (leftIter != null) {
-            result = strategy.evaluateJoin(leftIter, rightArg, collectedBindingNames);
+            result = strategy.evaluateJoin(leftIter, rightArg, bindings, collectedBindingNames);
         } else {
             result = strategy.evaluate(rightArg, bindings);
         }
 
-        result = new MaterializedIteration(result);
+        result = new MaterializedIteration(result, strategy.getFederation().getMaterializationMemoryBudget());
 
         parentJoin.operationFinishCallback(this, rightArg, result);
     }
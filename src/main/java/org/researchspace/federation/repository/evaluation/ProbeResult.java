@@ -0,0 +1,116 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * Result of a probe of an async join for a single join key (see
+ * {@link ProbeResultCache}).
+ *
+ * <p>
+ * Results up to the memoization limit are read completely and may be re-used
+ * for further left bindings with the same key. Larger results are not
+ * memoized, but streamed from the remote endpoint to a single consumer, which
+ * takes over the iteration with {@link #takeStream()}.
+ * </p>
+ */
+public class ProbeResult {
+
+    @Nullable
+    private final List<BindingSet> results;
+
+    @Nullable
+    private final CloseableIteration<BindingSet, QueryEvaluationException> stream;
+
+    private final AtomicBoolean taken = new AtomicBoolean();
+
+    private ProbeResult(@Nullable List<BindingSet> results,
+            @Nullable CloseableIteration<BindingSet, QueryEvaluationException> stream) {
+        this.results = results;
+        this.stream = stream;
+    }
+
+    public static ProbeResult memoized(List<BindingSet> results) {
+        return new ProbeResult(results, null);
+    }
+
+    public static ProbeResult streamed(CloseableIteration<BindingSet, QueryEvaluationException> stream) {
+        return new ProbeResult(null, stream);
+    }
+
+    /**
+     * @return <code>true</code> if the results have been read completely and can
+     *         be shared by all lookups of the key
+     */
+    public boolean isMemoized() {
+        return results != null;
+    }
+
+    /**
+     * @return the memoized results
+     * @throws IllegalStateException if the result is streamed
+     */
+    public List<BindingSet> getResults() {
+        if (results == null) {
+            throw new IllegalStateException("Probe result is streamed");
+        }
+        return results;
+    }
+
+    /**
+     * @return number of memoized results, used as the weight of the result in
+     *         the caches
+     */
+    public int getWeight() {
+        return results != null ? Math.max(1, results.size()) : 1;
+    }
+
+    /**
+     * Hands the streamed results over to the caller, who is responsible for
+     * closing them.
+     *
+     * @return the streamed results or <code>null</code> if they have already been
+     *         taken by another consumer (or the result is memoized)
+     */
+    @Nullable
+    public CloseableIteration<BindingSet, QueryEvaluationException> takeStream() {
+        if (stream == null || !taken.compareAndSet(false, true)) {
+            return null;
+        }
+        return stream;
+    }
+
+    /**
+     * Closes the streamed results unless they have been taken by a consumer.
+     */
+    public void discard() throws QueryEvaluationException {
+        CloseableIteration<BindingSet, QueryEvaluationException> toClose = takeStream();
+        if (toClose != null) {
+            toClose.close();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.rdf4j.query.BindingSet;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Memo table of the probe results of a single
+ * {@link ParallelAsyncJoinCursorWithCache}, keyed by the projected join key
+ * binding set.
+ *
+ * <p>
+ * Each distinct key is evaluated once per join: lookups for a key whose probe
+ * is still running receive the same (pending) result instead of issuing another
+ * remote request. Failed probes are removed, so a later lookup evaluates the
+ * key again.
+ * </p>
+ *
+ * <p>
+ * The memo table is bounded by the total number of remembered results (each
+ * key weighs at least one), not by the number of keys. Results with more than
+ * {@link #getMaxResultsPerKey()} bindings are not memoized at all: they are
+ * streamed to a single consumer (see {@link ProbeResult}) and the key is
+ * removed, so that a later lookup probes it again.
+ * </p>
+ *
+ * <p>
+ * Optionally, completed results are also stored in a federation-wide,
+ * TTL-bounded cache (see {@link MpFederationStrategy#createProbeResultCache}),
+ * in which case the <code>sharedScope</code> identifies the probed expression
+ * across queries.
+ * </p>
+ */
+public class ProbeResultCache {
+
+    public static final int DEFAULT_MAX_RESULTS = 100000;
+
+    public static final int DEFAULT_MAX_RESULTS_PER_KEY = 1000;
+
+    private final ConcurrentMap<BindingSet, CompletableFuture<ProbeResult>> probes;
+
+    private final int maxResultsPerKey;
+
+    @Nullable
+    private final Cache<Object, List<BindingSet>> sharedResults;
+
+    @Nullable
+    private final Object sharedScope;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder inFlightHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder streamed = new LongAdder();
+
+    public ProbeResultCache(int maxResults, int maxResultsPerKey) {
+        this(maxResults, maxResultsPerKey, null, null);
+    }
+
+    /**
+     * @param maxResults       maximum number of results remembered by this join
+     * @param maxResultsPerKey maximum number of results of a single key which are
+     *                         memoized
+     * @param sharedResults    federation-wide cache of completed results or
+     *                         <code>null</code>
+     * @param sharedScope      identifies the probed expression in the shared
+     *                         cache, ignored if <code>sharedResults</code> is
+     *                         <code>null</code>
+     */
+    public ProbeResultCache(int maxResults, int maxResultsPerKey,
+            @Nullable Cache<Object, List<BindingSet>> sharedResults, @Nullable Object sharedScope) {
+        // evicts on the calling thread, so that the bound holds as soon as a probe
+        // has been memoized
+        this.probes = Caffeine.newBuilder().maximumWeight(maxResults).executor(Runnable::run)
+                .<BindingSet, CompletableFuture<ProbeResult>>weigher((key, probe) -> weigh(probe)).build().asMap();
+        this.maxResultsPerKey = maxResultsPerKey;
+        this.sharedResults = sharedScope != null ? sharedResults : null;
+        this.sharedScope = sharedScope;
+    }
+
+    /**
+     * Pending probes weigh one, completed probes the number of their results.
+     */
+    private static int weigh(CompletableFuture<ProbeResult> probe) {
+        ProbeResult result = probe.getNow(null);
+        return result != null ? result.getWeight() : 1;
+    }
+
+    /**
+     * Returns the (possibly pending) probe result for the key. The evaluator is
+     * only invoked if the key has neither been probed by this join nor is found
+     * in the shared cache.
+     *
+     * @param key       the projected join key
+     * @param evaluator submits the probe request for a key
+     */
+    public CompletableFuture<ProbeResult> get(BindingSet key,
+            Function<BindingSet, CompletableFuture<ProbeResult>> evaluator) {
+        CompletableFuture<ProbeResult> placeholder = new CompletableFuture<>();
+        CompletableFuture<ProbeResult> existing = probes.putIfAbsent(key, placeholder);
+        if (existing != null) {
+            if (existing.isDone()) {
+                hits.increment();
+            } else {
+                inFlightHits.increment();
+            }
+            return existing;
+        }
+
+        List<BindingSet> shared = sharedResults != null ? sharedResults.getIfPresent(sharedKey(key)) : null;
+        if (shared != null) {
+            sharedHits.increment();
+            placeholder.complete(ProbeResult.memoized(shared));
+            // re-weighs the entry
+            probes.replace(key, placeholder, placeholder);
+            return placeholder;
+        }
+
+        misses.increment();
+        try {
+            evaluator.apply(key).whenComplete((result, e) -> {
+                if (e != null) {
+                    probes.remove(key, placeholder);
+                    placeholder.completeExceptionally(e);
+                } else if (!isMemoizable(result)) {
+                    streamed.increment();
+                    probes.remove(key, placeholder);
+                    placeholder.complete(result);
+                } else {
+                    if (sharedResults != null) {
+                        sharedResults.put(sharedKey(key), result.getResults());
+                    }
+                    placeholder.complete(result);
+                    // re-weighs the entry
+                    probes.replace(key, placeholder, placeholder);
+                }
+            });
+        } catch (RuntimeException e) {
+            probes.remove(key, placeholder);
+            placeholder.completeExceptionally(e);
+            throw e;
+        }
+        return placeholder;
+    }
+
+    private boolean isMemoizable(ProbeResult result) {
+        return result.isMemoized() && result.getResults().size() <= maxResultsPerKey;
+    }
+
+    private Object sharedKey(BindingSet key) {
+        return Arrays.asList(sharedScope, key);
+    }
+
+    /**
+     * @return maximum number of results of a single key which are memoized, larger
+     *         results are streamed
+     */
+    public int getMaxResultsPerKey() {
+        return maxResultsPerKey;
+    }
+
+    /**
+     * @return number of lookups answered by a completed probe of this join
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups which joined a probe still in flight
+     */
+    public long getInFlightHitCount() {
+        return inFlightHits.sum();
+    }
+
+    /**
+     * @return number of lookups answered by the federation-wide cache
+     */
+    public long getSharedHitCount() {
+        return sharedHits.sum();
+    }
+
+    /**
+     * @return number of lookups which required a remote probe
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of probes whose results exceeded the memoization limit
+     */
+    public long getStreamedCount() {
+        return streamed.sum();
+    }
+
+    public double getHitRate() {
+        long saved = getHitCount() + getInFlightHitCount() + getSharedHitCount();
+        long total = saved + getMissCount();
+        return total == 0 ? 1.0 : (double) saved / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "hits: %d, in-flight hits: %d, shared hits: %d, misses: %d, streamed: %d, hit rate: %.2f",
+                getHitCount(), getInFlightHitCount(), getSharedHitCount(), getMissCount(), getStreamedCount(),
+                getHitRate());
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.federation.repository.evaluation;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.IterationWrapper;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.researchspace.federation.repository.FederationStatistics;
+import org.researchspace.federation.repository.FederationStatistics.PatternShape;
+
+/**
+ * Records the latency and the number of results of a request to a federation
+ * member in {@link FederationStatistics}.
+ *
+ * <p>
+ * The latency is the time from the start of the request until the first result
+ * (or the end of the results) is available. Result counts are only recorded if
+ * the results are consumed completely. For requests of a bound join, which
+ * carry a block of bindings, only the number of results per binding is recorded
+ * as the cardinality of the pattern.
+ * </p>
+ */
+public class StatisticsRecordingIteration extends IterationWrapper<BindingSet, QueryEvaluationException> {
+
+    private final FederationStatistics statistics;
+    private final String memberId;
+    @Nullable
+    private final IRI predicate;
+    @Nullable
+    private final PatternShape shape;
+    private final int bindingCount;
+    private final long startNanos;
+
+    private boolean latencyRecorded = false;
+    private boolean resultsRecorded = false;
+    private long results = 0;
+
+    /**
+     * @param iter       results of the request
+     * @param statistics statistics to record in
+     * @param memberId   ID of the member the request was sent to
+     * @param predicate  predicate whose cardinality equals the number of results,
+     *                   if the request was a single <code>?s &lt;p&gt; ?o</code>
+     *                   pattern
+     * @param startNanos {@link System#nanoTime()} when the request was started
+     */
+    public StatisticsRecordingIteration(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+            FederationStatistics statistics, String memberId, @Nullable IRI predicate, long startNanos) {
+        this(iter, statistics, memberId, predicate, PatternShape.UNBOUND, 1, startNanos);
+    }
+
+    /**
+     * @param iter         results of the request
+     * @param statistics   statistics to record in
+     * @param memberId     ID of the member the request was sent to
+     * @param predicate    predicate of the single triple pattern of the request,
+     *                     if any
+     * @param shape        which positions of the pattern are bound, or
+     *                     <code>null</code> if both are bound
+     * @param bindingCount number of bindings the request was sent with
+     * @param startNanos   {@link System#nanoTime()} when the request was started
+     */
+    public StatisticsRecordingIteration(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+            FederationStatistics statistics, String memberId, @Nullable IRI predicate, @Nullable PatternShape shape,
+            int bindingCount, long startNanos) {
+        super(iter);
+        this.statistics = statistics;
+        this.memberId = memberId;
+        this.predicate = predicate;
+        this.shape = shape;
+        this.bindingCount = Math.max(1, bindingCount);
+        this.startNanos = startNanos;
+    }
+
+    @Override
+    public boolean hasNext() throws QueryEvaluationException {
+        if (isClosed()) {
+            return false;
+        }
+        boolean hasNext = super.hasNext();
+        if (!latencyRecorded) {
+            latencyRecorded = true;
+            statistics.recordLatency(memberId, System.nanoTime() - startNanos);
+        }
+        if (!hasNext && !resultsRecorded && !Thread.currentThread().isInterrupted()) {
+            resultsRecorded = true;
+            if (bindingCount == 1) {
+                statistics.recordResults(memberId, results);
+            }
+            if (predicate != null && shape != null) {
+                statistics.recordCardinality(memberId, predicate, shape, results / (double) bindingCount);
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public BindingSet next() throws QueryEvaluationException {
+        BindingSet next = super.next();
+        results++;
+        return next;
+    }
+}
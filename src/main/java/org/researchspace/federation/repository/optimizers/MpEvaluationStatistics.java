@@ -19,10 +19,22 @@
 
 package org.researchspace.federation.repository.optimizers;
 
+import java.util.OptionalDouble;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+import org.eclipse.rdf4j.query.algebra.Service;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
 import org.eclipse.rdf4j.sail.federation.algebra.NaryJoin;
+import org.researchspace.federation.repository.FederationStatistics;
+import org.researchspace.federation.repository.FederationStatistics.PatternShape;
+import org.researchspace.federation.repository.MpFederation;
+import org.researchspace.federation.sparql.MpOwnedTupleExpr;
 
 /**
  * An extension of {@link EvaluationStatistics}, which prioritizes SERVICE
@@ -32,17 +44,35 @@ import org.eclipse.rdf4j.sail.federation.algebra.NaryJoin;
  * used by default by the RDF4J federation. This extension also supports
  * multi-join nodes.
  * 
+ * <p>
+ * If created for a federation which collects {@link FederationStatistics},
+ * observed cardinalities replace the heuristic estimates where available: the
+ * cardinality of triple patterns evaluated by a member is derived from the
+ * observed cardinality of their predicate, and the cardinality of a SERVICE
+ * clause is the average number of results per request to the endpoint.
+ * </p>
+ * 
  * @author Andriy Nikolov an@metaphacts.com
  *
  */
 public class MpEvaluationStatistics extends EvaluationStatistics {
 
-    protected static class MpCardinalityCalculator extends CardinalityCalculator {
+    @Nullable
+    protected final MpFederation federation;
+
+    protected class MpCardinalityCalculator extends CardinalityCalculator {
+
+        /**
+         * ID of the member evaluating the currently visited expression.
+         */
+        private String memberId;
 
         @Override
         public void meetOther(QueryModelNode node) throws RuntimeException {
             if (node instanceof NaryJoin) {
                 meetMultiJoin((NaryJoin) node);
+            } else if (node instanceof MpOwnedTupleExpr) {
+                meetOwnedTupleExpr((MpOwnedTupleExpr) node);
             } else {
                 super.meetOther(node);
             }
@@ -57,10 +87,62 @@ public class MpEvaluationStatistics extends EvaluationStatistics {
             cardinality = cost;
         }
 
+        public void meetOwnedTupleExpr(MpOwnedTupleExpr node) {
+            String origMemberId = memberId;
+            try {
+                memberId = getStatistics() != null ? federation.getMemberId(node.getOwner().getRepository())
+                        : null;
+                super.meetOther(node);
+            } finally {
+                memberId = origMemberId;
+            }
+        }
+
+        @Override
+        public void meet(Service node) {
+            super.meet(node);
+            FederationStatistics statistics = getStatistics();
+            Value serviceRef = node.getServiceRef().getValue();
+            if (statistics != null && serviceRef instanceof IRI) {
+                OptionalDouble results = statistics.getResultsPerRequest(federation.getMemberId((IRI) serviceRef));
+                if (results.isPresent()) {
+                    cardinality = Math.max(1, results.getAsDouble());
+                }
+            }
+        }
+
+        @Override
+        protected double getCardinality(StatementPattern sp) {
+            FederationStatistics statistics = getStatistics();
+            Value predicate = sp.getPredicateVar().getValue();
+            PatternShape shape = PatternShape.of(sp.getSubjectVar().hasValue(), sp.getObjectVar().hasValue());
+            if (statistics != null && memberId != null && predicate instanceof IRI && shape != null
+                    && sp.getContextVar() == null) {
+                // counts observed for the same shape of the pattern are used as they are
+                OptionalDouble observed = statistics.getCardinality(memberId, (IRI) predicate, shape);
+                if (observed.isPresent()) {
+                    return Math.max(1, observed.getAsDouble());
+                }
+            }
+            return super.getCardinality(sp);
+        }
     }
 
     public MpEvaluationStatistics() {
+        this(null);
+    }
+
+    /**
+     * @param federation the federation whose member statistics are used or
+     *                   <code>null</code> to use heuristics only
+     */
+    public MpEvaluationStatistics(@Nullable MpFederation federation) {
+        this.federation = federation;
+    }
 
+    @Nullable
+    protected FederationStatistics getStatistics() {
+        return federation != null ? federation.getStatistics() : null;
     }
 
     @Override
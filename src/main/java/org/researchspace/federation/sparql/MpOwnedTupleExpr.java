@@ -22,12 +22,15 @@ package org.researchspace.federation.sparql;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.log4j.Logger;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.Binding;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.BooleanQuery;
 import org.eclipse.rdf4j.query.Dataset;
@@ -59,6 +62,13 @@ import com.google.common.collect.Sets;
  * inheritance to avoid extensive use of reflection to access private fields and
  * methods.
  * 
+ * <p>
+ * Prepared queries are mutable (bindings and dataset are set on the query
+ * object), therefore each evaluation borrows its own prepared query instance
+ * from a pool. This way parallel probes against the same owner (e.g. from bound
+ * or asynchronous joins) do not block each other.
+ * </p>
+ * 
  * @author Andriy Nikolov <an@metaphacts.com>
  *
  */
@@ -74,6 +84,13 @@ public class MpOwnedTupleExpr extends UnaryTupleOperator {
 
     private Query preparedQuery;
 
+    /**
+     * Prepared query instances which are currently not in use by an evaluation.
+     */
+    private final Queue<Query> idleQueries = new ConcurrentLinkedQueue<>();
+
+    private QueryLanguage queryLanguage;
+
     private String queryAsString;
 
     private Map<String, String> variables;
@@ -84,6 +101,14 @@ public class MpOwnedTupleExpr extends UnaryTupleOperator {
         return owner;
     }
 
+    /**
+     * @return the SPARQL query string evaluated for this expression or
+     *         <code>null</code> if the expression has not been prepared yet
+     */
+    public String getQueryString() {
+        return queryAsString;
+    }
+
     public MpOwnedTupleExpr(RepositoryConnection owner, TupleExpr arg) {
         super((arg instanceof QueryRoot) ? ((QueryRoot) arg).getArg() : arg);
         this.owner = owner;
@@ -94,8 +119,29 @@ public class MpOwnedTupleExpr extends UnaryTupleOperator {
             throws RepositoryException, MalformedQueryException {
         assert this.preparedQuery == null;
         this.preparedQuery = owner.prepareQuery(queryLn, qry);
+        this.queryLanguage = queryLn;
         this.queryAsString = qry;
         this.variables = bindings;
+        this.idleQueries.add(preparedQuery);
+    }
+
+    /**
+     * Takes an idle prepared query from the pool or prepares a new one if all
+     * instances are in use. The query must be returned using
+     * {@link #releaseQuery(Query)}.
+     */
+    private Query borrowQuery() throws RepositoryException, MalformedQueryException {
+        Query query = idleQueries.poll();
+        if (query == null) {
+            query = owner.prepareQuery(queryLanguage, queryAsString);
+        }
+        return query;
+    }
+
+    private void releaseQuery(Query query) {
+        query.clearBindings();
+        query.setDataset(null);
+        idleQueries.offer(query);
     }
 
     public boolean hasQuery() {
@@ -106,41 +152,64 @@ public class MpOwnedTupleExpr extends UnaryTupleOperator {
             throws QueryEvaluationException {
         CloseableIteration<BindingSet, QueryEvaluationException> rval = null;
         if (preparedQuery != null) {
+            Query query = borrowQuery();
             try {
-                synchronized (preparedQuery) {
-                    for (String name : variables.keySet()) {
-                        if (bindings.hasBinding(name)) {
-                            Value value = bindings.getValue(name);
-                            preparedQuery.setBinding(variables.get(name), value);
-                        } else {
-                            preparedQuery.removeBinding(variables.get(name));
-                        }
-                    }
-                    preparedQuery.setDataset(dataset);
-                    TupleQueryResult result;
-                    if (preparedQuery instanceof TupleQuery) {
-                        result = ((TupleQuery) preparedQuery).evaluate();
-                    } else if (preparedQuery instanceof BooleanQuery) {
-                        boolean eval = ((BooleanQuery) preparedQuery).evaluate();
-                        List<BindingSet> bsetList = Lists.newArrayList();
-                        if (eval) {
-                            BindingSet bs = new MapBindingSet();
-                            bsetList.add(bs);
-                        }
-                        result = new MutableTupleQueryResult(Lists.newArrayList(), bsetList);
+                for (String name : variables.keySet()) {
+                    if (bindings.hasBinding(name)) {
+                        Value value = bindings.getValue(name);
+                        query.setBinding(variables.get(name), value);
                     } else {
-                        throw new IllegalArgumentException("Illegal prepared query: " + preparedQuery.toString());
+                        query.removeBinding(variables.get(name));
                     }
-
-                    rval = new InsertBindingSetCursor(result, bindings);
                 }
+                query.setDataset(dataset);
+                TupleQueryResult result;
+                if (query instanceof TupleQuery) {
+                    result = ((TupleQuery) query).evaluate();
+                } else if (query instanceof BooleanQuery) {
+                    boolean eval = ((BooleanQuery) query).evaluate();
+                    List<BindingSet> bsetList = Lists.newArrayList();
+                    if (eval) {
+                        BindingSet bs = new MapBindingSet();
+                        bsetList.add(bs);
+                    }
+                    result = new MutableTupleQueryResult(Lists.newArrayList(), bsetList);
+                } else {
+                    throw new IllegalArgumentException("Illegal prepared query: " + query.toString());
+                }
+
+                rval = new InsertBindingSetCursor(result, bindings);
             } catch (IllegalArgumentException e) { // NOPMD
                 // query does not support BNode bindings
+            } finally {
+                releaseQuery(query);
             }
         }
         return rval;
     }
 
+    /**
+     * Estimates the length of the query sent by
+     * {@link #evaluate(Dataset, List, Set)} without any <code>VALUES</code> rows.
+     */
+    public int estimateBoundJoinQueryLength() {
+        return queryAsString != null ? queryAsString.length() + INDEX_VAR_NAME.length() + 32 : 0;
+    }
+
+    /**
+     * Estimates the length of the <code>VALUES</code> row rendered for the given
+     * bindings in {@link #evaluate(Dataset, List, Set)}.
+     */
+    public int estimateValuesRowLength(BindingSet bindings) {
+        // index literal and parentheses
+        int length = 32;
+        for (Binding binding : bindings) {
+            // quotes, brackets, datatype or language tags
+            length += binding.getValue().stringValue().length() + 16;
+        }
+        return length;
+    }
+
     public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Dataset dataset, List<BindingSet> bindings,
             Set<String> boundVars) throws QueryEvaluationException {
         CloseableIteration<BindingSet, QueryEvaluationException> rval = null;
@@ -182,7 +251,13 @@ public class MpOwnedTupleExpr extends UnaryTupleOperator {
                         bindingNames.addAll(bs.getBindingNames());
                     }
 
-                    boolean check = ((BooleanQuery) this.preparedQuery).evaluate();
+                    Query query = borrowQuery();
+                    boolean check;
+                    try {
+                        check = ((BooleanQuery) query).evaluate();
+                    } finally {
+                        releaseQuery(query);
+                    }
 
                     if (check) {
                         rval = new MutableTupleQueryResult(bindingNames, bindings);
@@ -90,6 +90,33 @@ public class MpRepositoryVocabulary {
      */
     public static final IRI USER_AGENT = VF.createIRI(FEDERATION_NAMESPACE, "userAgent");
 
+    /**
+     * In service wrapper configs maxConcurrentRequests holds the maximum number
+     * of requests issued to the service in parallel when the service is probed
+     * with a batch of bindings in a federated join. Default is 4.
+     */
+    public static final IRI MAX_CONCURRENT_REQUESTS = VF.createIRI(FEDERATION_NAMESPACE, "maxConcurrentRequests");
+
+    /**
+     * In REST service wrapper configs responseCacheTtl holds the maximum time (in
+     * milliseconds) responses of the service are cached. By default responses
+     * are not cached.
+     */
+    public static final IRI RESPONSE_CACHE_TTL = VF.createIRI(FEDERATION_NAMESPACE, "responseCacheTtl");
+
+    /**
+     * Maximum number of responses cached for a REST service wrapper.
+     */
+    public static final IRI RESPONSE_CACHE_MAX_ENTRIES = VF.createIRI(FEDERATION_NAMESPACE,
+            "responseCacheMaxEntries");
+
+    /**
+     * If true, the cached responses of a REST service wrapper are persisted in the
+     * runtime data directory and survive restarts.
+     */
+    public static final IRI RESPONSE_CACHE_PERSISTENT = VF.createIRI(FEDERATION_NAMESPACE,
+            "responseCachePersistent");
+
     /**
      * A datatype property that points to the repository ID which would be treated
      * as the default federation member.
@@ -108,6 +135,78 @@ public class MpRepositoryVocabulary {
             "useAsynchronousParallelJoin");
     public static final IRI USE_COMPETING_JOIN = VF.createIRI(FEDERATION_NAMESPACE, "useCompetingJoin");
     public static final IRI USE_BOUND_JOIN = VF.createIRI(FEDERATION_NAMESPACE, "useBoundJoin");
+    /**
+     * Bound join block sizing: the number of bindings sent per VALUES block starts
+     * at boundJoinMinBlockSize and adapts to the observed latency (see
+     * boundJoinTargetLatency) up to boundJoinMaxBlockSize rows, while the query
+     * length is kept below boundJoinMaxQueryLength characters and the number of
+     * results per block below boundJoinMaxResultsPerBlock.
+     */
+    public static final IRI BOUND_JOIN_MIN_BLOCK_SIZE = VF.createIRI(FEDERATION_NAMESPACE, "boundJoinMinBlockSize");
+    public static final IRI BOUND_JOIN_MAX_BLOCK_SIZE = VF.createIRI(FEDERATION_NAMESPACE, "boundJoinMaxBlockSize");
+    public static final IRI BOUND_JOIN_MAX_QUERY_LENGTH = VF.createIRI(FEDERATION_NAMESPACE,
+            "boundJoinMaxQueryLength");
+    public static final IRI BOUND_JOIN_TARGET_LATENCY = VF.createIRI(FEDERATION_NAMESPACE, "boundJoinTargetLatency");
+    public static final IRI BOUND_JOIN_MAX_RESULTS_PER_BLOCK = VF.createIRI(FEDERATION_NAMESPACE,
+            "boundJoinMaxResultsPerBlock");
+    /**
+     * Bound join dispatch: up to boundJoinMaxConcurrentBlocks blocks of a single
+     * join are requested ahead of consumption, at most
+     * boundJoinMaxConcurrentRequests block requests of the federation are
+     * evaluated concurrently. If boundJoinPreserveOrder is false, results of a
+     * block are returned as soon as it is answered.
+     */
+    public static final IRI BOUND_JOIN_MAX_CONCURRENT_BLOCKS = VF.createIRI(FEDERATION_NAMESPACE,
+            "boundJoinMaxConcurrentBlocks");
+    public static final IRI BOUND_JOIN_MAX_CONCURRENT_REQUESTS = VF.createIRI(FEDERATION_NAMESPACE,
+            "boundJoinMaxConcurrentRequests");
+    public static final IRI BOUND_JOIN_PRESERVE_ORDER = VF.createIRI(FEDERATION_NAMESPACE, "boundJoinPreserveOrder");
+    /**
+     * Federation executor: at most maxThreads threads are shared by the remote
+     * requests of all queries, each query runs at most maxConcurrentTasksPerQuery
+     * remote requests at the same time. Up to executorQueueCapacity requests wait
+     * for a thread, further requests are rejected. Join drivers run on a separate
+     * pool of at most maxDriverThreads threads.
+     */
+    public static final IRI MAX_THREADS = VF.createIRI(FEDERATION_NAMESPACE, "maxThreads");
+    public static final IRI MAX_DRIVER_THREADS = VF.createIRI(FEDERATION_NAMESPACE, "maxDriverThreads");
+    public static final IRI MAX_CONCURRENT_TASKS_PER_QUERY = VF.createIRI(FEDERATION_NAMESPACE,
+            "maxConcurrentTasksPerQuery");
+    public static final IRI EXECUTOR_QUEUE_CAPACITY = VF.createIRI(FEDERATION_NAMESPACE, "executorQueueCapacity");
+    /**
+     * Async joins remember up to probeCacheMaxResults probe results per join,
+     * results of a single key with more than probeCacheMaxResultsPerKey bindings
+     * are streamed instead. If probeCacheTTL (milliseconds) is positive, results
+     * of remote subqueries are also shared across queries for that long.
+     */
+    public static final IRI PROBE_CACHE_MAX_RESULTS = VF.createIRI(FEDERATION_NAMESPACE, "probeCacheMaxResults");
+    public static final IRI PROBE_CACHE_MAX_RESULTS_PER_KEY = VF.createIRI(FEDERATION_NAMESPACE,
+            "probeCacheMaxResultsPerKey");
+    public static final IRI PROBE_CACHE_TTL = VF.createIRI(FEDERATION_NAMESPACE, "probeCacheTTL");
+    /**
+     * Estimated number of bytes a materialized intermediate result may keep in
+     * memory before further results are spilled to a temporary file.
+     */
+    public static final IRI MATERIALIZATION_MEMORY_BUDGET = VF.createIRI(FEDERATION_NAMESPACE,
+            "materializationMemoryBudget");
+    /**
+     * Estimated number of bytes the group state of a GROUP BY may keep in memory
+     * before solutions of further groups are spilled to a temporary file.
+     */
+    public static final IRI AGGREGATION_MEMORY_BUDGET = VF.createIRI(FEDERATION_NAMESPACE,
+            "aggregationMemoryBudget");
+    /**
+     * Statistics of federation members are collected from query traffic unless
+     * collectStatistics is false. If statisticsProbeInterval (milliseconds) is
+     * positive, cardinalities of observed predicates are refreshed in the
+     * background. Remote subqueries with an observed cardinality of at most
+     * hashJoinMaxCardinality are hash joined instead of bound joined.
+     */
+    public static final IRI COLLECT_STATISTICS = VF.createIRI(FEDERATION_NAMESPACE, "collectStatistics");
+    public static final IRI STATISTICS_PROBE_INTERVAL = VF.createIRI(FEDERATION_NAMESPACE,
+            "statisticsProbeInterval");
+    public static final IRI HASH_JOIN_MAX_CARDINALITY = VF.createIRI(FEDERATION_NAMESPACE,
+            "hashJoinMaxCardinality");
     public static final IRI JSON_PATH = VF.createIRI(FEDERATION_NAMESPACE, "jsonPath");
     public static final IRI INPUT_JSON_PATH = VF.createIRI(FEDERATION_NAMESPACE, "inputJsonPath");
     public static final IRI HTTP_METHOD = VF.createIRI(FEDERATION_NAMESPACE, "httpMethod");
@@ -138,6 +237,19 @@ public class MpRepositoryVocabulary {
     public static final IRI INCLUDE_SQL_QUERY = VF.createIRI(SQL_NAMESPACE, "includesSQLQuery");
     public static final IRI HAS_QUERY_ID = VF.createIRI(SQL_NAMESPACE, "hasQueryId");
     public static final IRI HAS_QUERY_TEXT = VF.createIRI(SQL_NAMESPACE, "text");
+    /**
+     * Limits of the JDBC connection pool of a SQL service: maximum number of open
+     * connections, time to wait for a free connection (milliseconds) and number
+     * of prepared statements cached per connection.
+     */
+    public static final IRI SQL_MAX_POOL_SIZE = VF.createIRI(SQL_NAMESPACE, "maxPoolSize");
+    public static final IRI SQL_POOL_ACQUIRE_TIMEOUT = VF.createIRI(SQL_NAMESPACE, "poolAcquireTimeout");
+    public static final IRI SQL_STATEMENT_CACHE_SIZE = VF.createIRI(SQL_NAMESPACE, "statementCacheSize");
+    /**
+     * Number of rows fetched from the database cursor at a time while the results
+     * of a SQL service are consumed.
+     */
+    public static final IRI SQL_FETCH_SIZE = VF.createIRI(SQL_NAMESPACE, "fetchSize");
 
     public static final Set<IRI> queryHints = Sets.newHashSet(EXECUTE_FIRST, EXECUTE_LAST, DISABLE_JOIN_REORDERING);
 
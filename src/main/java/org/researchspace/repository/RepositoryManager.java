@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
@@ -69,6 +70,7 @@ import org.researchspace.services.storage.api.ObjectMetadata;
 import org.researchspace.services.storage.api.ObjectStorage;
 import org.researchspace.services.storage.api.PlatformStorage;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -89,7 +91,12 @@ public class RepositoryManager implements RepositoryManagerInterface {
     private PlatformStorage platformStorage;
     private LDPApiInternalRegistry ldpCache;
 
-    private final Map<String, Repository> initializedRepositories = Maps.newConcurrentMap();
+    /**
+     * Copy-on-write snapshot of the initialized repositories. Lookups read the
+     * current snapshot without locking, whereas all modifications are performed
+     * while holding the monitor of the manager and publish a new snapshot.
+     */
+    private volatile RepositorySnapshot initializedRepositories = RepositorySnapshot.EMPTY;
 
     private final File repositoryDataFolder;
 
@@ -174,7 +181,7 @@ public class RepositoryManager implements RepositoryManagerInterface {
      *
      */
     public void sentTestQueries() {
-        for (Entry<String, Repository> entry : initializedRepositories.entrySet()) {
+        for (Entry<String, Repository> entry : initializedRepositories.repositories.entrySet()) {
 
             // @gspinaci Prevent default test query sending for SailRepositories 
             // SailRepositories requires custom queries
@@ -227,27 +234,50 @@ public class RepositoryManager implements RepositoryManagerInterface {
     /**
      * <b>NEVER CALL THIS METHOD </b> This is for testing purpose only.
      */
-    public void setForTests(Repository defaultRepository, Repository assetRepository, Repository testRepository) {
-        if (initializedRepositories.containsKey(DEFAULT_REPOSITORY_ID)) {
-            initializedRepositories.get(DEFAULT_REPOSITORY_ID).shutDown();
-        }
-        initializedRepositories.put(DEFAULT_REPOSITORY_ID, defaultRepository);
-
-        if (initializedRepositories.containsKey(ASSET_REPOSITORY_ID)) {
-            initializedRepositories.get(ASSET_REPOSITORY_ID).shutDown();
-        }
-        initializedRepositories.put(ASSET_REPOSITORY_ID, assetRepository);
-
-        if (initializedRepositories.containsKey(TEST_REPOSITORY_ID)) {
-            initializedRepositories.get(TEST_REPOSITORY_ID).shutDown();
-        }
-        initializedRepositories.put(TEST_REPOSITORY_ID, testRepository);
+    public synchronized void setForTests(Repository defaultRepository, Repository assetRepository,
+            Repository testRepository) {
+        shutDownIfPresent(putRepository(DEFAULT_REPOSITORY_ID, defaultRepository));
+        shutDownIfPresent(putRepository(ASSET_REPOSITORY_ID, assetRepository));
+        shutDownIfPresent(putRepository(TEST_REPOSITORY_ID, testRepository));
 
         this.ldpCache.invalidate();
     }
 
     private boolean isInitialized(String repID) {
-        return initializedRepositories.containsKey(repID);
+        return initializedRepositories.repositories.containsKey(repID);
+    }
+
+    /**
+     * Publishes the repository under the given ID.
+     * 
+     * @return the previously registered repository, which the caller is
+     *         responsible to shut down, or <code>null</code>
+     */
+    private synchronized Repository putRepository(String repID, Repository repository) {
+        RepositorySnapshot snapshot = initializedRepositories;
+        initializedRepositories = snapshot.with(repID, repository);
+        return snapshot.repositories.get(repID);
+    }
+
+    /**
+     * Removes the repository with the given ID from the published repositories.
+     * 
+     * @return the removed repository, which the caller is responsible to shut
+     *         down, or <code>null</code>
+     */
+    private synchronized Repository removeRepository(String repID) {
+        RepositorySnapshot snapshot = initializedRepositories;
+        if (!snapshot.repositories.containsKey(repID)) {
+            return null;
+        }
+        initializedRepositories = snapshot.without(repID);
+        return snapshot.repositories.get(repID);
+    }
+
+    private static void shutDownIfPresent(Repository repository) {
+        if (repository != null) {
+            repository.shutDown();
+        }
     }
 
     private boolean isProtected(String repID) {
@@ -342,11 +372,9 @@ public class RepositoryManager implements RepositoryManagerInterface {
 
         repository.init();
 
-        if (initializedRepositories.containsKey(repConfig.getID())) {
-            initializedRepositories.get(repConfig.getID()).shutDown();
-        }
-
-        initializedRepositories.put(repConfig.getID(), repository);
+        // publish the new repository before shutting down the replaced one, so that
+        // concurrent lookups never obtain a repository which is already shut down
+        shutDownIfPresent(putRepository(repConfig.getID(), repository));
         logger.info("Repository with id \"{}\" successfully initialized", repConfig.getID());
 
         return repository;
@@ -424,14 +452,14 @@ public class RepositoryManager implements RepositoryManagerInterface {
     }
 
     private synchronized void shutdown(boolean unregisterShutdownHook) {
-        for (Entry<String, Repository> entry : initializedRepositories.entrySet()) {
+        for (Entry<String, Repository> entry : initializedRepositories.repositories.entrySet()) {
             try {
                 if (isProtected(entry.getKey())) {
                     continue;
                 }
                 logger.info("Trying to shutdown repository \"{}\".", entry.getKey());
                 entry.getValue().shutDown();
-                initializedRepositories.remove(entry.getKey());
+                removeRepository(entry.getKey());
             } catch (RepositoryException e) {
                 // we will catch and log the exception, so that at least remaining repositories
                 // can be shut down
@@ -441,7 +469,7 @@ public class RepositoryManager implements RepositoryManagerInterface {
         // handle protected repositories separately
         getDefault().shutDown();
         getAssetRepository().shutDown();
-        initializedRepositories.clear();
+        initializedRepositories = initializedRepositories.cleared();
 
         if (unregisterShutdownHook) {
             // unregister shutdown hook as everything is done
@@ -452,8 +480,7 @@ public class RepositoryManager implements RepositoryManagerInterface {
     public synchronized void shutdownRepository(final String repID)
             throws RepositoryException, IllegalArgumentException {
         if (isInitialized(repID)) {
-            initializedRepositories.get(repID).shutDown();
-            initializedRepositories.remove(repID);
+            removeRepository(repID).shutDown();
         } else if (isProtected(repID)) {
             throw new IllegalAccessError(String.format("Default repository with ID \"%s\" can not be removed.", repID));
         } else {
@@ -471,7 +498,7 @@ public class RepositoryManager implements RepositoryManagerInterface {
     public Map<String, Boolean> getAvailableRepositoryConfigs() throws IOException {
         Map<String, Boolean> map = Maps.newHashMap();
 
-        Set<String> initializedRepositoryKeys = initializedRepositories.keySet();
+        Set<String> initializedRepositoryKeys = initializedRepositories.repositories.keySet();
         Set<String> definedRepositoryKeys = Sets
                 .newHashSet(RepositoryConfigUtils.readInitialRepositoryConfigsFromStorage(platformStorage).keySet());
         String sparqlRepositoryUrl = this.config.getEnvironmentConfig().getSparqlEndpoint();
@@ -547,8 +574,13 @@ public class RepositoryManager implements RepositoryManagerInterface {
         return RepositoryConfigUtils.exportConfigToModel(repConfig);
     }
 
+    /**
+     * Returns the initialized repository with the given ID. The lookup does not
+     * acquire any lock, i.e. it is never blocked by concurrent (re-)initialization
+     * of repositories.
+     */
     @Override
-    public synchronized Repository getRepository(String repID) throws RepositoryException, RepositoryConfigException {
+    public Repository getRepository(String repID) throws RepositoryException, RepositoryConfigException {
         Optional<Repository> repo = getRepository(Optional.of(repID));
         if (repo.isPresent()) {
             return repo.get();
@@ -569,9 +601,9 @@ public class RepositoryManager implements RepositoryManagerInterface {
             RepositoryConfigUtils.deleteRepositoryConfigurationIfExists(platformStorage, repId);
         }
 
-        if (this.initializedRepositories.containsKey(repId)) {
-            this.initializedRepositories.get(repId).shutDown();
-            this.initializedRepositories.remove(repId);
+        Repository repository = removeRepository(repId);
+        if (repository != null) {
+            repository.shutDown();
             this.cacheManager.invalidateAll();
             this.ldpCache.invalidate();
         }
@@ -591,13 +623,22 @@ public class RepositoryManager implements RepositoryManagerInterface {
         }
     }
 
-    public synchronized Optional<Repository> getRepository(Optional<String> repID)
+    public Optional<Repository> getRepository(Optional<String> repID)
             throws RepositoryException, RepositoryConfigException {
-        return repID.filter(initializedRepositories::containsKey).map(initializedRepositories::get);
+        Map<String, Repository> repositories = initializedRepositories.repositories;
+        return repID.map(repositories::get);
+    }
+
+    /**
+     * Returns the version of the set of initialized repositories, which is
+     * incremented whenever a repository is initialized, replaced or shut down.
+     */
+    long getRepositoriesVersion() {
+        return initializedRepositories.version;
     }
 
     public String getRepositoryID(Repository repository) {
-        for (Entry<String, Repository> rep : initializedRepositories.entrySet()) {
+        for (Entry<String, Repository> rep : initializedRepositories.repositories.entrySet()) {
             if (rep.getValue().equals(repository)) {
                 return rep.getKey();
             }
@@ -689,7 +730,37 @@ public class RepositoryManager implements RepositoryManagerInterface {
      * @return
      */
     public Set<String> getInitializedRepositoryIds() {
-        return Sets.newHashSet(this.initializedRepositories.keySet());
+        return Sets.newHashSet(this.initializedRepositories.repositories.keySet());
     }
 
+    /**
+     * Immutable, versioned view of the initialized repositories.
+     */
+    private static final class RepositorySnapshot {
+        static final RepositorySnapshot EMPTY = new RepositorySnapshot(0, ImmutableMap.of());
+
+        final long version;
+        final Map<String, Repository> repositories;
+
+        private RepositorySnapshot(long version, Map<String, Repository> repositories) {
+            this.version = version;
+            this.repositories = repositories;
+        }
+
+        RepositorySnapshot with(String repID, Repository repository) {
+            Map<String, Repository> copy = new LinkedHashMap<>(repositories);
+            copy.put(repID, repository);
+            return new RepositorySnapshot(version + 1, ImmutableMap.copyOf(copy));
+        }
+
+        RepositorySnapshot without(String repID) {
+            Map<String, Repository> copy = new LinkedHashMap<>(repositories);
+            copy.remove(repID);
+            return new RepositorySnapshot(version + 1, ImmutableMap.copyOf(copy));
+        }
+
+        RepositorySnapshot cleared() {
+            return new RepositorySnapshot(version + 1, ImmutableMap.of());
+        }
+    }
 }
@@ -21,12 +21,18 @@ package org.researchspace.rest.endpoint;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.apache.commons.lang3.StringUtils;
@@ -37,6 +43,9 @@ import org.apache.shiro.authz.annotation.RequiresPermissions;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.researchspace.cache.CacheManager;
+import org.researchspace.cache.LabelResolutionExecutor;
+import org.researchspace.cache.PlatformCacheStatistics;
+import org.researchspace.rest.feature.CacheControl.NoCache;
 import org.researchspace.security.Permissions.CACHES;
 
 /**
@@ -50,9 +59,34 @@ public class CacheEndpoint {
 
     private CacheManager cacheManager;
 
+    private LabelResolutionExecutor labelResolutionExecutor;
+
     @Inject
-    public CacheEndpoint(CacheManager cacheManager) {
+    public CacheEndpoint(CacheManager cacheManager, LabelResolutionExecutor labelResolutionExecutor) {
         this.cacheManager = cacheManager;
+        this.labelResolutionExecutor = labelResolutionExecutor;
+    }
+
+    @GET()
+    @Path("/all/statistics")
+    @NoCache
+    @RequiresAuthentication
+    @RequiresPermissions(CACHES.VIEW_STATISTICS)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStatistics(@QueryParam("hotKeys") @DefaultValue("10") int hotKeysLimit) {
+        List<PlatformCacheStatistics> statistics = cacheManager.getStatistics(hotKeysLimit);
+        return Response.ok().entity(statistics).build();
+    }
+
+    @GET()
+    @Path("/labels/resolution/statistics")
+    @NoCache
+    @RequiresAuthentication
+    @RequiresPermissions(CACHES.VIEW_STATISTICS)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getLabelResolutionStatistics() {
+        Map<String, Object> statistics = labelResolutionExecutor.getStatistics();
+        return Response.ok().entity(statistics).build();
     }
 
     @POST()
@@ -24,6 +24,7 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -60,6 +61,7 @@ import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.config.RepositoryConfig;
 import org.eclipse.rdf4j.repository.config.RepositoryConfigException;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.Rio;
 import org.researchspace.config.Configuration;
@@ -70,6 +72,7 @@ import org.researchspace.repository.RepositoryManager;
 import org.researchspace.repository.memory.MpMemoryRepository;
 import org.researchspace.repository.memory.MpMemoryRepositoryFactory;
 import org.researchspace.rest.feature.CacheControl.NoCache;
+import org.researchspace.sail.rest.sql.SQLSail;
 import org.researchspace.security.Permissions;
 import org.researchspace.security.Permissions.REPOSITORY_CONFIG;
 import org.researchspace.services.storage.api.ObjectKind;
@@ -206,6 +209,28 @@ public class RepositoryManagerEndpoint {
         return resultMap;
     }
 
+    /**
+     * Returns runtime statistics of the repository, currently the metrics of the
+     * connection pool of SQL repositories (see
+     * {@link org.researchspace.sail.rest.sql.SQLConnectionPool#getStatistics()}).
+     */
+    @GET
+    @RequiresAuthentication
+    @Produces(APPLICATION_JSON)
+    @Path("statistics/{repositoryId}")
+    public Map<String, Object> getRepositoryStatistics(@NotNull @PathParam("repositoryId") String repID)
+            throws Exception {
+        if (!checkPermission(REPOSITORY_CONFIG.PREFIX_VIEW + repID)) {
+            throw new ForbiddenException();
+        }
+        Repository repository = repositoryManager.getRepository(repID);
+        if (repository instanceof SailRepository && ((SailRepository) repository).getSail() instanceof SQLSail) {
+            SQLSail sail = (SQLSail) ((SailRepository) repository).getSail();
+            return Collections.singletonMap("connectionPool", sail.getConnectionPool().getStatistics());
+        }
+        return Collections.emptyMap();
+    }
+
     @GET
     @RequiresAuthentication
     @Path("validatedefault")
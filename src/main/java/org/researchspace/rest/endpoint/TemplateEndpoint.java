@@ -83,6 +83,7 @@ import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.sail.SailException;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.researchspace.cache.LabelCache;
+import org.researchspace.cache.RenderedPageCache;
 import org.researchspace.cache.TemplateIncludeCache;
 import org.researchspace.config.Configuration;
 import org.researchspace.config.NamespaceRegistry;
@@ -100,10 +101,10 @@ import org.researchspace.services.storage.api.ObjectStorage;
 import org.researchspace.services.storage.api.PlatformStorage;
 import org.researchspace.services.storage.api.StorageException;
 import org.researchspace.services.storage.api.StoragePath;
-import org.researchspace.templates.HandlebarsHelperRegistry;
 import org.researchspace.templates.ResearchSpaceHandlebars;
 import org.researchspace.templates.TemplateByIriLoader;
 import org.researchspace.templates.TemplateContext;
+import org.researchspace.templates.TemplateQueryPrefetcher;
 import org.researchspace.templates.TemplateUtil;
 import org.researchspace.ui.templates.ST;
 import org.researchspace.ui.templates.ST.TEMPLATES;
@@ -129,6 +130,9 @@ public class TemplateEndpoint extends ResourceConfig {
     @Inject
     private LabelCache labelCache;
 
+    @Inject
+    private TemplateQueryPrefetcher queryPrefetcher;
+
     @Context
     private UriInfo uriInfo;
 
@@ -139,6 +143,7 @@ public class TemplateEndpoint extends ResourceConfig {
     private final NamespaceRegistry ns;
     private final RepositoryManager repositoryManager;
     private final TemplateIncludeCache includeCache;
+    private final RenderedPageCache renderedPageCache;
     private final PlatformStorage platformStorage;
 
     private final ValueFactory vf;
@@ -146,16 +151,17 @@ public class TemplateEndpoint extends ResourceConfig {
 
     @Inject
     public TemplateEndpoint(Configuration config, NamespaceRegistry ns, RepositoryManager repositoryManager,
-            TemplateIncludeCache includeCache, PlatformStorage platformStorage,
-            HandlebarsHelperRegistry helperRegistry) {
+            TemplateIncludeCache includeCache, RenderedPageCache renderedPageCache, PlatformStorage platformStorage,
+            ResearchSpaceHandlebars handlebars) {
         this.config = config;
         this.ns = ns;
         this.repositoryManager = repositoryManager;
         this.includeCache = includeCache;
+        this.renderedPageCache = renderedPageCache;
         this.platformStorage = platformStorage;
 
         this.vf = SimpleValueFactory.getInstance();
-        this.handlebars = new ResearchSpaceHandlebars(new TemplateByIriLoader(platformStorage, ns), helperRegistry);
+        this.handlebars = handlebars;
     }
 
     public static class RenderedTemplate {
@@ -227,12 +233,28 @@ public class TemplateEndpoint extends ResourceConfig {
         }
 
         try {
+            List<Object> cacheKey = RenderedPageCache.createKey(iri, templateContextIri,
+                    repositoryId.orElse(RepositoryManager.DEFAULT_REPOSITORY_ID), uriInfo.getQueryParameters());
+            Optional<String> cachedHtml = renderedPageCache.getIfPresent(cacheKey);
+            if (cachedHtml.isPresent()) {
+                logger.trace("Returning cached page for resource \"{}\"", iri.stringValue());
+                return withETagCacheControl(request, new RenderedTemplate(cachedHtml.get()), iri).build();
+            }
+
+            long cacheGeneration = renderedPageCache.getGeneration();
             Repository repo = repositoryManager.getRepository(repositoryId).orElse(repositoryManager.getDefault());
             TemplateContext tc = new TemplateContext(templateContextIri, repo, uriInfo, preferredLanguage.orElse(null));
             tc.setLabelCache(labelCache);
+            tc.setQueryPrefetcher(queryPrefetcher);
             tc.setNamespaceRegistry(this.ns);
             RenderedTemplate template = new RenderedTemplate(
                     RenderedTemplate.getCompiledHtml(iri, tc, handlebars, includeCache));
+            if (renderedPageCache.isEnabled() && tc.isCacheable()) {
+                // the applicable templates depend on the types of the resource
+                tc.addDependency(iri);
+                tc.addDependency(templateContextIri);
+                renderedPageCache.put(cacheKey, template.getTemplateHtml(), tc.getDependencies(), cacheGeneration);
+            }
 
             return withETagCacheControl(request, template, iri).build();
         } catch (IllegalArgumentException e) {
@@ -286,6 +308,7 @@ public class TemplateEndpoint extends ResourceConfig {
             Repository repo = repositoryManager.getRepository(repositoryId).orElse(repositoryManager.getDefault());
             TemplateContext tc = new TemplateContext(iri, repo, uriInfo, preferredLanguage.orElse(null));
             tc.setLabelCache(labelCache);
+            tc.setQueryPrefetcher(queryPrefetcher);
             tc.setNamespaceRegistry(this.ns);
 
             LinkedHashSet<String> templateIncludes = Sets.newLinkedHashSet();
@@ -0,0 +1,436 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.rest.filters;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status.Family;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.common.hash.Hashing;
+
+/**
+ * Can be used together with JAX-RS (Jersey) client to cache the responses of a
+ * remote service and to avoid issuing the same request several times in
+ * parallel.
+ *
+ * <p>
+ * Successful responses of GET and POST requests are cached by method, URL,
+ * <code>Accept</code> header and request body. The configured TTL is the
+ * maximum time a response is cached; a shorter <code>max-age</code> or
+ * <code>Expires</code> header of the response takes precedence and responses
+ * marked with <code>no-store</code> or <code>no-cache</code> are not cached at
+ * all.
+ * </p>
+ *
+ * <p>
+ * If a request is issued while an identical request is in flight, it waits for
+ * the response of the first request and shares it if the response is
+ * cacheable. Cache hits are answered before any filter with a lower priority
+ * (e.g. {@link RequestRateLimitFilter}) is applied.
+ * </p>
+ *
+ * <p>
+ * The response filter is not invoked for requests which fail without a
+ * response (e.g. on connection timeouts), hence callers must invoke
+ * {@link #requestFinished()} after each request.
+ * </p>
+ *
+ * <p>
+ * Optionally, the cached responses are persisted to a file and survive
+ * restarts.
+ * </p>
+ */
+@Priority(Priorities.USER - 100)
+public class ResponseCacheFilter implements ClientRequestFilter, ClientResponseFilter, Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ResponseCacheFilter.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * Maximum time to wait for the response of an identical request in flight.
+     * If the first request fails without a response and its caller does not
+     * invoke {@link #requestFinished()}, the waiting requests are issued
+     * independently after this timeout.
+     */
+    private static final long IN_FLIGHT_TIMEOUT_MILLIS = 30000;
+
+    private static final String CACHE_KEY_PROPERTY = ResponseCacheFilter.class.getName() + ".key";
+    private static final String IN_FLIGHT_PROPERTY = ResponseCacheFilter.class.getName() + ".inFlight";
+    private static final String FROM_CACHE_PROPERTY = ResponseCacheFilter.class.getName() + ".fromCache";
+
+    private static class CachedResponse implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+        final LinkedHashMap<String, ArrayList<String>> headers;
+        final byte[] body;
+        final long expiresAtMillis;
+
+        CachedResponse(int status, LinkedHashMap<String, ArrayList<String>> headers, byte[] body,
+                long expiresAtMillis) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        long remainingNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresAtMillis - System.currentTimeMillis()));
+        }
+    }
+
+    private final long ttlMillis;
+
+    private final Cache<String, CachedResponse> cache;
+
+    private final ConcurrentMap<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Request in flight which has been issued by the current thread and has not
+     * received a response yet.
+     */
+    private final ThreadLocal<InFlightRequest> issuedRequest = new ThreadLocal<>();
+
+    private static class InFlightRequest {
+        final String key;
+        final CompletableFuture<CachedResponse> response;
+
+        InFlightRequest(String key, CompletableFuture<CachedResponse> response) {
+            this.key = key;
+            this.response = response;
+        }
+    }
+
+    @Nullable
+    private final DB db;
+
+    @Nullable
+    private final Map<String, CachedResponse> persistentResponses;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param ttlMillis       maximum time a response is cached
+     * @param maxEntries      maximum number of cached responses
+     * @param persistenceFile file the responses are persisted to or
+     *                        <code>null</code> to keep them in memory only
+     */
+    public ResponseCacheFilter(long ttlMillis, int maxEntries, @Nullable File persistenceFile) {
+        this.ttlMillis = ttlMillis;
+        if (persistenceFile != null) {
+            persistenceFile.getAbsoluteFile().getParentFile().mkdirs();
+            this.db = DBMaker.newFileDB(persistenceFile).closeOnJvmShutdown().transactionDisable().make();
+            this.persistentResponses = db.getHashMap("responses");
+        } else {
+            this.db = null;
+            this.persistentResponses = null;
+        }
+
+        this.cache = Caffeine.newBuilder().maximumSize(maxEntries).expireAfter(new Expiry<String, CachedResponse>() {
+            @Override
+            public long expireAfterCreate(String key, CachedResponse value, long currentTime) {
+                return value.remainingNanos();
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, CachedResponse value, long currentTime,
+                    long currentDuration) {
+                return value.remainingNanos();
+            }
+
+            @Override
+            public long expireAfterRead(String key, CachedResponse value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        }).removalListener((String key, CachedResponse value, RemovalCause cause) -> {
+            if (persistentResponses != null && !db.isClosed() && key != null && cause.wasEvicted()) {
+                persistentResponses.remove(key);
+            }
+        }).build();
+
+        if (persistentResponses != null) {
+            loadPersistentResponses();
+        }
+    }
+
+    private void loadPersistentResponses() {
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        for (String key : new ArrayList<>(persistentResponses.keySet())) {
+            CachedResponse response = persistentResponses.get(key);
+            if (response == null || response.expiresAtMillis <= now) {
+                persistentResponses.remove(key);
+            } else {
+                cache.put(key, response);
+                loaded++;
+            }
+        }
+        logger.debug("Loaded {} persisted responses", loaded);
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) throws IOException {
+        String key = cacheKey(requestContext);
+        if (key == null) {
+            return;
+        }
+        requestContext.setProperty(CACHE_KEY_PROPERTY, key);
+
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            abortWith(requestContext, cached);
+            return;
+        }
+
+        CompletableFuture<CachedResponse> response = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> pending = inFlight.putIfAbsent(key, response);
+        if (pending == null) {
+            misses.incrementAndGet();
+            requestContext.setProperty(IN_FLIGHT_PROPERTY, response);
+            issuedRequest.set(new InFlightRequest(key, response));
+            return;
+        }
+
+        // an identical request is in flight, wait for its response
+        try {
+            CachedResponse shared = pending.get(IN_FLIGHT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (shared != null) {
+                coalesced.incrementAndGet();
+                abortWith(requestContext, shared);
+                return;
+            }
+        } catch (TimeoutException e) {
+            logger.debug("No response for in-flight request to {}, issuing it again", requestContext.getUri());
+            inFlight.remove(key, pending);
+        } catch (ExecutionException e) {
+            // the first request failed, issue this one independently
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the response of " + requestContext.getUri(), e);
+        }
+        misses.incrementAndGet();
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext)
+            throws IOException {
+        String key = (String) requestContext.getProperty(CACHE_KEY_PROPERTY);
+        if (key == null || requestContext.getProperty(FROM_CACHE_PROPERTY) != null) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        CompletableFuture<CachedResponse> response = (CompletableFuture<CachedResponse>) requestContext
+                .getProperty(IN_FLIGHT_PROPERTY);
+
+        CachedResponse cached = null;
+        try {
+            long expiresAtMillis = expiresAtMillis(responseContext);
+            if (expiresAtMillis > System.currentTimeMillis()
+                    && responseContext.getStatusInfo().getFamily() == Family.SUCCESSFUL
+                    && responseContext.hasEntity()) {
+                byte[] body = IOUtils.toByteArray(responseContext.getEntityStream());
+                responseContext.setEntityStream(new ByteArrayInputStream(body));
+
+                LinkedHashMap<String, ArrayList<String>> headers = new LinkedHashMap<>();
+                responseContext.getHeaders().forEach((name, values) -> {
+                    if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)
+                            && !"Transfer-Encoding".equalsIgnoreCase(name)) {
+                        headers.put(name, new ArrayList<>(values));
+                    }
+                });
+                cached = new CachedResponse(responseContext.getStatus(), headers, body, expiresAtMillis);
+                cache.put(key, cached);
+                if (persistentResponses != null) {
+                    persistentResponses.put(key, cached);
+                }
+            }
+        } finally {
+            if (response != null) {
+                InFlightRequest issued = issuedRequest.get();
+                if (issued != null && issued.response == response) {
+                    issuedRequest.remove();
+                }
+                inFlight.remove(key, response);
+                response.complete(cached);
+            }
+        }
+    }
+
+    /**
+     * Releases the request issued by the current thread if it failed without a
+     * response, so that identical requests waiting for it are issued
+     * independently right away. Must be called after each request, e.g. in a
+     * <code>finally</code> block.
+     */
+    public void requestFinished() {
+        InFlightRequest issued = issuedRequest.get();
+        if (issued != null) {
+            issuedRequest.remove();
+            inFlight.remove(issued.key, issued.response);
+            issued.response.completeExceptionally(new IOException("Request failed without a response"));
+        }
+    }
+
+    /**
+     * @return the time until the response may be cached, at most the configured
+     *         TTL from now
+     */
+    private long expiresAtMillis(ClientResponseContext responseContext) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + ttlMillis;
+
+        List<String> cacheControl = responseContext.getHeaders().get(HttpHeaders.CACHE_CONTROL);
+        if (cacheControl != null) {
+            for (String header : cacheControl) {
+                for (String directive : header.split(",")) {
+                    directive = directive.trim().toLowerCase();
+                    if (directive.equals("no-store") || directive.equals("no-cache")) {
+                        return 0;
+                    }
+                    if (directive.startsWith("max-age=")) {
+                        try {
+                            long maxAge = Long.parseLong(directive.substring("max-age=".length()).trim());
+                            return Math.min(expiresAt, now + TimeUnit.SECONDS.toMillis(maxAge));
+                        } catch (NumberFormatException e) {
+                            return 0;
+                        }
+                    }
+                }
+            }
+        }
+
+        String expires = responseContext.getHeaderString(HttpHeaders.EXPIRES);
+        if (expires != null) {
+            try {
+                long expiresHeader = ZonedDateTime.parse(expires, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+                        .toEpochMilli();
+                return Math.min(expiresAt, expiresHeader);
+            } catch (DateTimeParseException e) {
+                // invalid dates mean that the response is already expired
+                return 0;
+            }
+        }
+        return expiresAt;
+    }
+
+    @Nullable
+    private static String cacheKey(ClientRequestContext requestContext) {
+        String method = requestContext.getMethod();
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.POST.equals(method)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(method).append(' ').append(requestContext.getUri());
+        String accept = requestContext.getHeaderString(HttpHeaders.ACCEPT);
+        if (accept != null) {
+            key.append('\n').append(accept);
+        }
+        if (requestContext.hasEntity()) {
+            Object entity = requestContext.getEntity();
+            key.append('\n').append(entity instanceof Form ? ((Form) entity).asMap() : entity);
+        }
+        // the key may contain API keys passed as parameters, only keep its hash
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    private static void abortWith(ClientRequestContext requestContext, CachedResponse cached) {
+        Response.ResponseBuilder response = Response.status(cached.status);
+        cached.headers.forEach((name, values) -> values.forEach(value -> response.header(name, value)));
+        requestContext.setProperty(FROM_CACHE_PROPERTY, Boolean.TRUE);
+        requestContext.abortWith(response.entity(new ByteArrayInputStream(cached.body)).build());
+    }
+
+    public void invalidate() {
+        cache.invalidateAll();
+        if (persistentResponses != null) {
+            persistentResponses.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of requests answered with the response of an identical
+     *         request which was in flight
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void close() {
+        if (db != null && !db.isClosed()) {
+            db.close();
+        }
+    }
+}
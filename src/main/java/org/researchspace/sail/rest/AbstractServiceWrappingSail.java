@@ -22,6 +22,10 @@ package org.researchspace.sail.rest;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.ValueFactory;
@@ -36,6 +40,7 @@ import org.researchspace.secrets.SecretResolver;
 import org.researchspace.secrets.SecretsHelper;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 /**
  * Abstract {@link Sail} implementation for invokable services that are defined by a URL.
  * 
@@ -60,6 +65,12 @@ public abstract class AbstractServiceWrappingSail<C extends AbstractServiceWrapp
   protected Map<IRI, Parameter> mapInputParametersByProperty = null;
   protected Optional<Parameter> subjectParameter = null;
 
+  /**
+   * Executes the requests of batch evaluations, created on first use. The
+   * number of threads limits the concurrent requests to the service.
+   */
+  private ExecutorService batchExecutor;
+
   public AbstractServiceWrappingSail(C config) {
     this.config = config;
 
@@ -94,7 +105,29 @@ public abstract class AbstractServiceWrappingSail<C extends AbstractServiceWrapp
 
   @Override
   protected void shutDownInternal() throws SailException {
+    synchronized (this) {
+      if (batchExecutor != null) {
+        batchExecutor.shutdownNow();
+        batchExecutor = null;
+      }
+    }
+  }
 
+  /**
+   * @return the executor for the requests of batch evaluations with at most
+   *         {@link AbstractServiceWrappingSailConfig#getMaxConcurrentRequests()}
+   *         threads
+   */
+  public synchronized ExecutorService getBatchExecutor() {
+    if (batchExecutor == null) {
+      int threads = Math.max(1, config.getMaxConcurrentRequests());
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          new ThreadFactoryBuilder().setNameFormat("service-wrapping-sail-%d").setDaemon(true).build());
+      executor.allowCoreThreadTimeOut(true);
+      batchExecutor = executor;
+    }
+    return batchExecutor;
   }
 
   public ServiceDescriptor getServiceDescriptor() {
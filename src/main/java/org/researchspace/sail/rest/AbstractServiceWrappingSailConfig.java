@@ -54,6 +54,14 @@ public abstract class AbstractServiceWrappingSailConfig extends AbstractSailImpl
     private String unResolvedUsername;
     private String unResolvedPassword;
 
+    /**
+     * Maximum number of requests issued to the service in parallel when a batch
+     * of input bindings is evaluated (see
+     * {@link AbstractServiceWrappingSailConnection#evaluateBatch}).
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+
     protected AbstractServiceWrappingSailConfig() {
 
     }
@@ -68,6 +76,9 @@ public abstract class AbstractServiceWrappingSailConfig extends AbstractSailImpl
         if (StringUtils.isEmpty(url)) {
             throw new SailConfigException("SAIL service URL is not provided");
         }
+        if (maxConcurrentRequests < 1) {
+            throw new SailConfigException("Invalid maximum number of concurrent requests: " + maxConcurrentRequests);
+        }
     }
 
     @Override
@@ -89,6 +100,11 @@ public abstract class AbstractServiceWrappingSailConfig extends AbstractSailImpl
         if (getUnResolvedPassword() != null) {
             model.add(implNode, MpRepositoryVocabulary.PASSWORD, vf.createLiteral(getUnResolvedPassword()));
         }
+
+        if (maxConcurrentRequests != DEFAULT_MAX_CONCURRENT_REQUESTS) {
+            model.add(implNode, MpRepositoryVocabulary.MAX_CONCURRENT_REQUESTS,
+                    vf.createLiteral(maxConcurrentRequests));
+        }
         return implNode;
     }
 
@@ -103,6 +119,8 @@ public abstract class AbstractServiceWrappingSailConfig extends AbstractSailImpl
                 .ifPresent(iri -> setUnResolvedUsername(iri.stringValue()));
         Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.PASSWORD, null))
                 .ifPresent(iri -> setUnResolvedPassword(iri.stringValue()));
+        Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.MAX_CONCURRENT_REQUESTS, null))
+                .ifPresent(lit -> setMaxConcurrentRequests(lit.intValue()));
 
     }
 
@@ -153,4 +171,12 @@ public abstract class AbstractServiceWrappingSailConfig extends AbstractSailImpl
     void setUnResolvedPassword(String unResolvedPassword) {
         this.unResolvedPassword = unResolvedPassword;
     }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
 }
\ No newline at end of file
@@ -21,21 +21,28 @@ package org.researchspace.sail.rest;
 
 import java.io.InputStream;
 import java.sql.ResultSet;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Namespace;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.Dataset;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
 import org.eclipse.rdf4j.query.algebra.evaluation.impl.BindingAssigner;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
 import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
@@ -43,6 +50,7 @@ import org.eclipse.rdf4j.sail.SailConnection;
 import org.eclipse.rdf4j.sail.SailException;
 import org.eclipse.rdf4j.sail.helpers.AbstractSailConnection;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -119,14 +127,167 @@ public abstract class AbstractServiceWrappingSailConnection<C extends AbstractSe
     @Override
     protected CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluateInternal(TupleExpr tupleExpr,
             Dataset dataset, BindingSet bindings, boolean includeInferred) throws SailException {
+        ServiceParametersHolder parametersHolder = extractInputsAndOutputs(tupleExpr, dataset, bindings);
+        // limiter goes here
+        return executeAndConvertResultsToBindingSet(parametersHolder);
+    }
+
+    private ServiceParametersHolder extractInputsAndOutputs(TupleExpr tupleExpr, Dataset dataset,
+            BindingSet bindings) throws SailException {
         TupleExpr cloned = tupleExpr.clone();
         new BindingAssigner().optimize(cloned, dataset, bindings);
         StatementPatternCollector collector = new StatementPatternCollector();
         cloned.visit(collector);
         List<StatementPattern> stmtPatterns = collector.getStatementPatterns();
-        ServiceParametersHolder parametersHolder = extractInputsAndOutputs(stmtPatterns);
-        // limiter goes here
-        return executeAndConvertResultsToBindingSet(parametersHolder);
+        return extractInputsAndOutputs(stmtPatterns);
+    }
+
+    /**
+     * Evaluates the service once for each of the input bindings, e.g. for a block
+     * of join keys in a federated bound join.
+     * 
+     * <p>
+     * By default the requests are issued in parallel on the executor of the SAIL,
+     * which limits the number of concurrent requests to the service (see
+     * {@link AbstractServiceWrappingSailConfig#getMaxConcurrentRequests()}).
+     * Subclasses may override {@link #executeBatch(List, List)} to map the batch
+     * to a native batch call of the service.
+     * </p>
+     * 
+     * @param tupleExpr   the expression wrapping the service call
+     * @param dataset     the dataset of the query
+     * @param bindingSets the input bindings
+     * @return the results merged with the input bindings they were produced for,
+     *         in the order of the input bindings
+     */
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluateBatch(TupleExpr tupleExpr,
+            Dataset dataset, List<BindingSet> bindingSets) throws SailException {
+        verifyIsOpen();
+        List<ServiceParametersHolder> parameters = new ArrayList<>(bindingSets.size());
+        for (BindingSet bindings : bindingSets) {
+            parameters.add(extractInputsAndOutputs(tupleExpr, dataset, bindings));
+        }
+        return executeBatch(parameters, bindingSets);
+    }
+
+    /**
+     * Executes the service for each of the parameters and merges the results with
+     * the corresponding input bindings.
+     * 
+     * @param parameters  the parameters extracted from each input binding
+     * @param bindingSets the input bindings, in the same order as the parameters
+     */
+    protected CloseableIteration<BindingSet, QueryEvaluationException> executeBatch(
+            List<ServiceParametersHolder> parameters, List<BindingSet> bindingSets) {
+        List<Future<List<BindingSet>>> futures = null;
+        if (supportsConcurrentRequests() && parameters.size() > 1) {
+            ExecutorService executor = sail.getBatchExecutor();
+            futures = new ArrayList<>(parameters.size());
+            try {
+                for (ServiceParametersHolder parametersHolder : parameters) {
+                    futures.add(executor.submit(
+                            () -> Iterations.asList(executeAndConvertResultsToBindingSet(parametersHolder))));
+                }
+            } catch (RuntimeException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw e;
+            }
+        }
+        return new BatchIteration(parameters, bindingSets, futures);
+    }
+
+    /**
+     * @return <code>true</code> if {@link #executeAndConvertResultsToBindingSet}
+     *         may be invoked concurrently by multiple threads
+     */
+    protected boolean supportsConcurrentRequests() {
+        return true;
+    }
+
+    /**
+     * Iterates over the results of a batch, input by input. If the requests are
+     * not executed in parallel, the service is invoked for an input once the
+     * results of the previous input have been consumed.
+     */
+    private class BatchIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+        private final List<ServiceParametersHolder> parameters;
+        private final List<BindingSet> bindingSets;
+        private final List<Future<List<BindingSet>>> futures;
+
+        private int index = -1;
+        private CloseableIteration<? extends BindingSet, QueryEvaluationException> current;
+
+        BatchIteration(List<ServiceParametersHolder> parameters, List<BindingSet> bindingSets,
+                List<Future<List<BindingSet>>> futures) {
+            this.parameters = parameters;
+            this.bindingSets = bindingSets;
+            this.futures = futures;
+        }
+
+        @Override
+        protected BindingSet getNextElement() throws QueryEvaluationException {
+            while (true) {
+                if (current != null) {
+                    while (current.hasNext()) {
+                        BindingSet merged = merge(bindingSets.get(index), current.next());
+                        if (merged != null) {
+                            return merged;
+                        }
+                    }
+                    current.close();
+                    current = null;
+                }
+                if (++index >= parameters.size()) {
+                    return null;
+                }
+                current = futures != null
+                        ? new CollectionIteration<BindingSet, QueryEvaluationException>(await(futures.get(index)))
+                        : executeAndConvertResultsToBindingSet(parameters.get(index));
+            }
+        }
+
+        private List<BindingSet> await(Future<List<BindingSet>> future) throws QueryEvaluationException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryEvaluationException("Interrupted while waiting for the service", e);
+            } catch (ExecutionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new QueryEvaluationException(e.getCause());
+            }
+        }
+
+        @Override
+        protected void handleClose() throws QueryEvaluationException {
+            try {
+                super.handleClose();
+            } finally {
+                if (futures != null) {
+                    futures.forEach(future -> future.cancel(true));
+                }
+                if (current != null) {
+                    current.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the result joined with the input bindings or <code>null</code> if
+     *         they bind a variable to different values
+     */
+    private static BindingSet merge(BindingSet input, BindingSet result) {
+        QueryBindingSet merged = new QueryBindingSet(input);
+        for (Binding binding : result) {
+            Value value = merged.getValue(binding.getName());
+            if (value == null) {
+                merged.addBinding(binding);
+            } else if (!value.equals(binding.getValue())) {
+                return null;
+            }
+        }
+        return merged;
     }
 
     /**
@@ -221,9 +382,18 @@ public abstract class AbstractServiceWrappingSailConnection<C extends AbstractSe
     protected abstract ServiceParametersHolder extractInputsAndOutputs(List<StatementPattern> stmtPatterns)
             throws SailException;
 
-    protected abstract Collection<BindingSet> convertResult2BindingSets(InputStream result,
-            ServiceParametersHolder parametersHolder) throws SailException;
+    /**
+     * Converts the results returned by the service into {@link BindingSet}s.
+     * Implementations should convert the results lazily (see
+     * {@link StreamingBindingSetIteration}); the returned iteration takes over
+     * the result and closes it when it is exhausted or closed.
+     */
+    protected abstract CloseableIteration<BindingSet, QueryEvaluationException> convertResult2BindingSets(
+            InputStream result, ServiceParametersHolder parametersHolder) throws SailException;
 
-    protected abstract Collection<BindingSet> convertResult2BindingSets(ResultSet result,
-            ServiceParametersHolder parametersHolder) throws SailException;
+    /**
+     * @see #convertResult2BindingSets(InputStream, ServiceParametersHolder)
+     */
+    protected abstract CloseableIteration<BindingSet, QueryEvaluationException> convertResult2BindingSets(
+            ResultSet result, ServiceParametersHolder parametersHolder) throws SailException;
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.sail.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.impl.MapBindingSet;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Converts parsed JSON items (trees of {@link java.util.Map}s and
+ * {@link java.util.List}s) into binding sets by evaluating precompiled JSON
+ * paths of the output parameters.
+ *
+ * <p>
+ * The outputs are resolved once per request, the conversion of a single item
+ * only evaluates the compiled paths over the already parsed tree.
+ * </p>
+ *
+ * @see RESTSail#getOutputJsonPath(IRI)
+ */
+public class JsonBindingSetConverter {
+
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+    private static class Output {
+        final String variableName;
+        final IRI valueType;
+        final boolean isResource;
+        final JsonPath path;
+
+        Output(String variableName, IRI valueType, JsonPath path) {
+            this.variableName = variableName;
+            this.valueType = valueType;
+            this.isResource = StringUtils.equals(valueType.stringValue(), RDFS.RESOURCE.stringValue());
+            this.path = path;
+        }
+    }
+
+    private final Configuration jsonPathConfig;
+
+    private final List<Output> outputs = new ArrayList<>();
+
+    /**
+     * @param jsonPathConfig configuration used to evaluate the output paths,
+     *                       should suppress exceptions for missing paths
+     */
+    public JsonBindingSetConverter(Configuration jsonPathConfig) {
+        this.jsonPathConfig = jsonPathConfig;
+    }
+
+    /**
+     * @param variableName name of the variable the value is bound to
+     * @param valueType    datatype of the value, or {@link RDFS#RESOURCE} for
+     *                     IRIs
+     * @param path         path of the value relative to the item
+     */
+    public JsonBindingSetConverter addOutput(String variableName, IRI valueType, JsonPath path) {
+        outputs.add(new Output(variableName, valueType, path));
+        return this;
+    }
+
+    public MapBindingSet convert(Object item) {
+        MapBindingSet mapBindingSet = new MapBindingSet();
+        for (Output output : outputs) {
+            Object value = output.path.read(item, jsonPathConfig);
+            if (value != null) {
+                String stringValue = value.toString();
+                if (output.isResource) {
+                    mapBindingSet.addBinding(output.variableName, VF.createIRI(stringValue));
+                } else {
+                    mapBindingSet.addBinding(output.variableName, VF.createLiteral(stringValue, output.valueType));
+                }
+            }
+        }
+        return mapBindingSet;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.sail.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.PathNotFoundException;
+
+/**
+ * Streaming reader for the items selected by the root JSON path of a REST
+ * service (see {@link RESTSailConnection}).
+ *
+ * <p>
+ * Only simple root paths consisting of property names with an optional
+ * trailing wildcard, e.g. <code>$</code>, <code>$.data.items</code> or
+ * <code>$['data'].items[*]</code>, can be streamed (see
+ * {@link #isStreamable(String)}). The reader skips over the JSON document up to
+ * the selected node and then reads one item at a time: the elements of an
+ * array, the values of an object if the path ends with a wildcard or the
+ * object itself otherwise. Only the current item is kept in memory.
+ * </p>
+ */
+public class JsonRootPathReader implements Closeable {
+
+    private static final Pattern SIMPLE_PATH = Pattern.compile("\\$((?:\\.[^.\\[\\]*]+|\\['[^']*'\\])*)(\\[\\*\\])?");
+
+    private static final Pattern PATH_SEGMENT = Pattern.compile("\\.([^.\\[\\]*]+)|\\['([^']*)'\\]");
+
+    private enum Mode {
+        ARRAY_ELEMENTS, OBJECT_VALUES, SINGLE_OBJECT, EMPTY
+    }
+
+    private final JsonParser parser;
+    private final ObjectMapper objectMapper;
+    private Mode mode;
+    private boolean hasPendingValue;
+
+    private JsonRootPathReader(JsonParser parser, ObjectMapper objectMapper, Mode mode) {
+        this.parser = parser;
+        this.objectMapper = objectMapper;
+        this.mode = mode;
+        this.hasPendingValue = mode == Mode.SINGLE_OBJECT;
+    }
+
+    /**
+     * @return <code>true</code> if the items selected by the JSON path can be read
+     *         with a {@link JsonRootPathReader}
+     */
+    public static boolean isStreamable(String rootPath) {
+        return SIMPLE_PATH.matcher(rootPath.trim()).matches();
+    }
+
+    /**
+     * Parses the JSON document up to the node selected by the root path. The
+     * input stream is closed together with the reader.
+     *
+     * @throws PathNotFoundException if the document doesn't contain the path
+     * @throws IllegalArgumentException if the path is not
+     *                                  {@link #isStreamable(String) streamable}
+     */
+    public static JsonRootPathReader open(InputStream input, String rootPath, ObjectMapper objectMapper)
+            throws IOException {
+        Matcher matcher = SIMPLE_PATH.matcher(rootPath.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("JSON path " + rootPath + " cannot be streamed");
+        }
+        List<String> fields = new ArrayList<>();
+        Matcher segments = PATH_SEGMENT.matcher(matcher.group(1));
+        while (segments.find()) {
+            fields.add(segments.group(1) != null ? segments.group(1) : segments.group(2));
+        }
+        boolean wildcard = matcher.group(2) != null;
+
+        JsonParser parser = objectMapper.getFactory().createParser(input);
+        try {
+            JsonToken token = parser.nextToken();
+            for (String field : fields) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new PathNotFoundException("Missing property in path " + rootPath);
+                }
+                token = findField(parser, field);
+                if (token == null) {
+                    throw new PathNotFoundException("Missing property in path " + rootPath);
+                }
+            }
+
+            Mode mode;
+            if (token == JsonToken.START_ARRAY) {
+                mode = Mode.ARRAY_ELEMENTS;
+            } else if (token == JsonToken.START_OBJECT) {
+                mode = wildcard ? Mode.OBJECT_VALUES : Mode.SINGLE_OBJECT;
+            } else {
+                mode = Mode.EMPTY;
+            }
+            return new JsonRootPathReader(parser, objectMapper, mode);
+        } catch (IOException | RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves the parser of an object to the value of the field.
+     *
+     * @return the first token of the value or <code>null</code> if the object
+     *         has no such field
+     */
+    private static JsonToken findField(JsonParser parser, String field) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals(name)) {
+                return value;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    /**
+     * @return <code>true</code> if there is another item, <code>null</code>
+     *         values are skipped
+     */
+    public boolean hasNext() throws IOException {
+        while (!hasPendingValue && mode != Mode.EMPTY) {
+            JsonToken token = parser.nextToken();
+            if (mode == Mode.OBJECT_VALUES && token == JsonToken.FIELD_NAME) {
+                token = parser.nextToken();
+            }
+            if (token == null || token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT) {
+                mode = Mode.EMPTY;
+            } else if (token != JsonToken.VALUE_NULL) {
+                hasPendingValue = true;
+            }
+        }
+        return hasPendingValue;
+    }
+
+    /**
+     * @return the next item as a tree of {@link java.util.Map}s and
+     *         {@link java.util.List}s or a simple value
+     */
+    public Object next() throws IOException {
+        if (!hasNext()) {
+            throw new IllegalStateException("No more items");
+        }
+        hasPendingValue = false;
+        Object value = objectMapper.readValue(parser, Object.class);
+        if (mode == Mode.SINGLE_OBJECT) {
+            mode = Mode.EMPTY;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mode = Mode.EMPTY;
+        parser.close();
+    }
+}
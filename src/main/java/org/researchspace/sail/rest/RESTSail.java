@@ -18,20 +18,34 @@
 
 package org.researchspace.sail.rest;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.sail.SailException;
 import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+import org.researchspace.federation.repository.service.ServiceDescriptor.Parameter;
 import org.researchspace.rest.filters.RequestRateLimitFilter;
+import org.researchspace.rest.filters.ResponseCacheFilter;
 import org.researchspace.rest.filters.UserAgentFilter;
 import org.researchspace.secrets.SecretsHelper;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+
 /**
  * 
  * @author Janmaruko Hōrensō <@gspinaci>
@@ -51,6 +65,36 @@ public class RESTSail extends AbstractServiceWrappingSail<RESTSailConfig> {
    */
   private Client client;
 
+  /**
+   * The mapper is thread-safe and expensive to create, so it is shared by all
+   * REST services.
+   */
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  /**
+   * JsonPath configuration for the root path, which fails on missing paths.
+   */
+  private static final Configuration JSON_PATH_CONFIG = Configuration.builder()
+      .jsonProvider(new JacksonJsonProvider(OBJECT_MAPPER)).build();
+
+  /**
+   * JsonPath configuration for the output paths, which returns null on missing
+   * paths instead of throwing an exception.
+   */
+  private static final Configuration OUTPUT_JSON_PATH_CONFIG = JSON_PATH_CONFIG
+      .addOptions(Option.SUPPRESS_EXCEPTIONS);
+
+  /**
+   * JSON paths of the service descriptor, compiled once on initialization.
+   */
+  private JsonPath rootJsonPath;
+  private Map<IRI, JsonPath> outputJsonPaths;
+
+  /**
+   * Cache of the service responses, <code>null</code> if caching is disabled.
+   */
+  private ResponseCacheFilter responseCache;
+
   public RESTSail(RESTSailConfig config) {
     super(config);
   }
@@ -60,6 +104,33 @@ public class RESTSail extends AbstractServiceWrappingSail<RESTSailConfig> {
     return new RESTSailConnection(this);
   }
 
+  @Override
+  protected void initParameters() {
+    super.initParameters();
+
+    Optional<Parameter> subject = getSubjectParameter();
+    String rootPath = subject.isPresent() && subject.get().getJsonPath() != null ? subject.get().getJsonPath()
+        : "$";
+    this.rootJsonPath = compileJsonPath(rootPath, "root");
+
+    this.outputJsonPaths = new HashMap<>();
+    for (Map.Entry<IRI, Parameter> entry : getMapOutputParametersByProperty().entrySet()) {
+      String jsonPath = entry.getValue().getJsonPath();
+      if (jsonPath != null) {
+        outputJsonPaths.put(entry.getKey(), compileJsonPath(jsonPath, entry.getValue().getParameterName()));
+      }
+    }
+  }
+
+  private JsonPath compileJsonPath(String jsonPath, String parameterName) {
+    try {
+      return JsonPath.compile(jsonPath);
+    } catch (InvalidPathException e) {
+      throw new SailException("Invalid JSON path " + jsonPath + " of parameter " + parameterName + ": "
+          + e.getMessage(), e);
+    }
+  }
+
   @Override
   protected void initializeInternal() throws SailException {
     super.initializeInternal();
@@ -91,9 +162,35 @@ public class RESTSail extends AbstractServiceWrappingSail<RESTSailConfig> {
       clientBuilder = clientBuilder.register(basicAuthFeature);
     }
 
+    // response cache, registered with a higher priority than the rate limiter so
+    // that cache hits are not throttled
+    if (config.getResponseCacheTtl() != null && config.getResponseCacheTtl() > 0) {
+      File persistenceFile = config.isResponseCachePersistent() ? getResponseCacheFile(config) : null;
+      this.responseCache = new ResponseCacheFilter(config.getResponseCacheTtl(),
+          config.getResponseCacheMaxEntries(), persistenceFile);
+      clientBuilder = clientBuilder.register(responseCache);
+    }
+
     this.client = clientBuilder.build();
   }
 
+  private File getResponseCacheFile(RESTSailConfig config) {
+    String serviceId = config.getServiceID() != null ? config.getServiceID().stringValue() : config.getUrl();
+    String fileName = Hashing.sha256().hashString(serviceId, StandardCharsets.UTF_8).toString() + ".db";
+    return new File(
+        new File(new File(org.researchspace.config.Configuration.getRuntimeDirectory(), "data"), "rest-cache"),
+        fileName);
+  }
+
+  @Override
+  protected void shutDownInternal() throws SailException {
+    super.shutDownInternal();
+    if (responseCache != null) {
+      responseCache.close();
+      responseCache = null;
+    }
+  }
+
   /**
    * Resolve secrets in HTTP headers using the SecretResolver.
    * This method processes unresolved header values that may contain secret
@@ -128,4 +225,39 @@ public class RESTSail extends AbstractServiceWrappingSail<RESTSailConfig> {
   protected Client getClient() {
     return client;
   }
+
+  /**
+   * @return the response cache of the service or <code>null</code> if caching
+   *         is disabled
+   */
+  public ResponseCacheFilter getResponseCache() {
+    return responseCache;
+  }
+
+  public static ObjectMapper getObjectMapper() {
+    return OBJECT_MAPPER;
+  }
+
+  public static Configuration getJsonPathConfig() {
+    return JSON_PATH_CONFIG;
+  }
+
+  public static Configuration getOutputJsonPathConfig() {
+    return OUTPUT_JSON_PATH_CONFIG;
+  }
+
+  /**
+   * @return the compiled JSON path selecting the result items
+   */
+  public JsonPath getRootJsonPath() {
+    return rootJsonPath;
+  }
+
+  /**
+   * @return the compiled JSON path of the output parameter mapped to the
+   *         property or <code>null</code> if the parameter has no JSON path
+   */
+  public JsonPath getOutputJsonPath(IRI property) {
+    return outputJsonPaths.get(property);
+  }
 }
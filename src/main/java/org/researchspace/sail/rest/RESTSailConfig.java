@@ -33,6 +33,7 @@ import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.model.util.Models;
 import org.eclipse.rdf4j.sail.config.SailConfigException;
 import org.researchspace.repository.MpRepositoryVocabulary;
+import org.researchspace.rest.filters.ResponseCacheFilter;
 
 import com.beust.jcommander.internal.Maps;
 
@@ -119,6 +120,15 @@ public class RESTSailConfig extends AbstractServiceWrappingSailConfig {
 
   private String userAgent;
 
+  /**
+   * maximum time in milliseconds responses are cached, no caching if not set
+   */
+  private Long responseCacheTtl;
+
+  private int responseCacheMaxEntries = ResponseCacheFilter.DEFAULT_MAX_ENTRIES;
+
+  private boolean responseCachePersistent = false;
+
   private RestAuthorization auth;
 
   public RESTSailConfig() {
@@ -127,6 +137,15 @@ public class RESTSailConfig extends AbstractServiceWrappingSailConfig {
     unResolvedHttpHeaders = Maps.newHashMap();
   }
 
+  @Override
+  public void validate() throws SailConfigException {
+    super.validate();
+    if ((responseCacheTtl != null && responseCacheTtl < 0) || responseCacheMaxEntries < 1) {
+      throw new SailConfigException("Invalid response cache settings: TTL " + responseCacheTtl + ", max entries "
+          + responseCacheMaxEntries);
+    }
+  }
+
   @Override
   public void parse(Model model, Resource implNode) throws SailConfigException {
     super.parse(model, implNode);
@@ -158,6 +177,13 @@ public class RESTSailConfig extends AbstractServiceWrappingSailConfig {
     Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.USER_AGENT, null))
         .ifPresent(lit -> setUserAgent(lit.stringValue()));
 
+    Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.RESPONSE_CACHE_TTL, null))
+        .ifPresent(lit -> setResponseCacheTtl(lit.longValue()));
+    Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.RESPONSE_CACHE_MAX_ENTRIES, null))
+        .ifPresent(lit -> setResponseCacheMaxEntries(lit.intValue()));
+    Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.RESPONSE_CACHE_PERSISTENT, null))
+        .ifPresent(lit -> setResponseCachePersistent(lit.booleanValue()));
+
     // Set Authorization
     Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.AUTHORIZATION_KEY, null))
         .ifPresent(lit -> setAuthKey(lit.stringValue()));
@@ -206,6 +232,19 @@ public class RESTSailConfig extends AbstractServiceWrappingSailConfig {
       model.add(implNode, MpRepositoryVocabulary.USER_AGENT, vf.createLiteral(getUserAgent()));
     }
 
+    if (getResponseCacheTtl() != null) {
+      model.add(implNode, MpRepositoryVocabulary.RESPONSE_CACHE_TTL, vf.createLiteral(getResponseCacheTtl()));
+    }
+
+    if (getResponseCacheMaxEntries() != ResponseCacheFilter.DEFAULT_MAX_ENTRIES) {
+      model.add(implNode, MpRepositoryVocabulary.RESPONSE_CACHE_MAX_ENTRIES,
+          vf.createLiteral(getResponseCacheMaxEntries()));
+    }
+
+    if (isResponseCachePersistent()) {
+      model.add(implNode, MpRepositoryVocabulary.RESPONSE_CACHE_PERSISTENT, vf.createLiteral(true));
+    }
+
     if (this.getAuth() != null) {
 
       if (this.getAuth().getKey() != null) {
@@ -279,6 +318,30 @@ public class RESTSailConfig extends AbstractServiceWrappingSailConfig {
     this.userAgent = userAgent;
   }
 
+  public Long getResponseCacheTtl() {
+    return responseCacheTtl;
+  }
+
+  public void setResponseCacheTtl(Long responseCacheTtl) {
+    this.responseCacheTtl = responseCacheTtl;
+  }
+
+  public int getResponseCacheMaxEntries() {
+    return responseCacheMaxEntries;
+  }
+
+  public void setResponseCacheMaxEntries(int responseCacheMaxEntries) {
+    this.responseCacheMaxEntries = responseCacheMaxEntries;
+  }
+
+  public boolean isResponseCachePersistent() {
+    return responseCachePersistent;
+  }
+
+  public void setResponseCachePersistent(boolean responseCachePersistent) {
+    this.responseCachePersistent = responseCachePersistent;
+  }
+
   public RestAuthorization getAuth() {
     return auth;
   }
@@ -18,11 +18,10 @@
 
 package org.researchspace.sail.rest;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -48,30 +47,25 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.EmptyIteration;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
-import org.eclipse.rdf4j.model.vocabulary.RDFS;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.algebra.Create;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.Var;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
-import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.eclipse.rdf4j.sail.SailException;
 import org.glassfish.jersey.client.ClientProperties;
 import org.researchspace.federation.repository.service.ServiceDescriptor.Parameter;
+import org.researchspace.rest.filters.ResponseCacheFilter;
 import org.researchspace.sail.rest.RESTSailConfig.AUTH_LOCATION;
 import org.researchspace.sail.rest.RESTSailConfig.RestAuthorization;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.Option;
-import com.jayway.jsonpath.ReadContext;
-import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
 import com.jayway.jsonpath.spi.json.JsonSmartJsonProvider;
 import com.jayway.jsonpath.spi.mapper.JsonSmartMappingProvider;
 
@@ -92,34 +86,25 @@ public class RESTSailConnection extends AbstractServiceWrappingSailConnection<RE
   protected static final ValueFactory VF = SimpleValueFactory.getInstance();
 
   protected Client client;
-  private Configuration jsonPathConfig;
 
   public RESTSailConnection(RESTSail sailBase) {
     super(sailBase);
     this.client = sailBase.getClient();
-
-    // configure JsonPath to not throw exception on missing path, instead return
-    // null
-    this.jsonPathConfig = Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS);
   }
 
   @Override
-  protected Collection<BindingSet> convertResult2BindingSets(ResultSet result,
+  protected CloseableIteration<BindingSet, QueryEvaluationException> convertResult2BindingSets(ResultSet result,
       ServiceParametersHolder parametersHolder) throws SailException {
     throw new UnsupportedOperationException("Unimplemented method 'convertResult2BindingSets'");
 
   }
 
   @Override
-  protected Collection<BindingSet> convertResult2BindingSets(InputStream result,
+  protected CloseableIteration<BindingSet, QueryEvaluationException> convertResult2BindingSets(InputStream result,
       ServiceParametersHolder parametersHolder) throws SailException {
     logger.trace("REST Response received");
 
-    List<BindingSet> results = Lists.newArrayList();
-
     try {
-      String stringResponse = IOUtils.toString(result, StandardCharsets.UTF_8.name());
-
       String type = RESTSailConfig.JSON;
 
       logger.trace("REST Response type is {}", type);
@@ -127,11 +112,9 @@ public class RESTSailConnection extends AbstractServiceWrappingSailConnection<RE
         case RESTSailConfig.JSON:
 
           // Get the root path
-          Optional<Parameter> param = getSail().getSubjectParameter();
-          String rootPath = param.isPresent() ? param.get().getJsonPath() : "$";
-          logger.trace("rootPath" + rootPath);
-          results = executeJson(stringResponse, rootPath, parametersHolder.getOutputVariables());
-          break;
+          JsonPath rootPath = ((RESTSail) getSail()).getRootJsonPath();
+          logger.trace("rootPath" + rootPath.getPath());
+          return convertJson(result, rootPath, createJsonConverter(parametersHolder.getOutputVariables()));
 
         case RESTSailConfig.XML:
           logger.trace("XML format not supported yet");
@@ -141,40 +124,84 @@ public class RESTSailConnection extends AbstractServiceWrappingSailConnection<RE
           break;
       }
 
-      return results;
+      result.close();
+      return new EmptyIteration<>();
     } catch (Exception e) {
+      IOUtils.closeQuietly(result);
       throw new SailException(e);
     }
 
   }
 
   /**
+   * Resolves the output parameters and their compiled JSON paths once per
+   * request.
    * 
-   * @param res
-   * @param rootPath
    * @param outputParameters
    * @return
    */
-  private List<BindingSet> executeJson(String res, String rootPath, Map<IRI, String> outputParameters) {
-    logger.trace("Response: " + res);
+  private JsonBindingSetConverter createJsonConverter(Map<IRI, String> outputParameters) {
+    RESTSail sail = (RESTSail) getSail();
+    JsonBindingSetConverter converter = new JsonBindingSetConverter(RESTSail.getOutputJsonPathConfig());
 
-    ObjectMapper objectMapper = new ObjectMapper();
+    for (Map.Entry<IRI, String> outputParameter : outputParameters.entrySet()) {
+      Parameter parameter = sail.getMapOutputParametersByProperty().get(outputParameter.getKey());
+      JsonPath jsonPath = sail.getOutputJsonPath(outputParameter.getKey());
+      if (jsonPath != null) {
+        logger.trace("Output {} of type {} is read from {}", outputParameter.getValue(), parameter.getValueType(),
+            jsonPath.getPath());
+        converter.addOutput(outputParameter.getValue(), parameter.getValueType(), jsonPath);
+      }
+    }
+    return converter;
+  }
 
-    Configuration config = Configuration.builder()
-        .jsonProvider(new JacksonJsonProvider(objectMapper))
-        .build();
+  /**
+   * Converts the items selected by the root path lazily while the response is
+   * read. Root paths which cannot be streamed (e.g. filter expressions) are
+   * evaluated on the whole document.
+   * 
+   * @param result
+   * @param rootPath
+   * @param converter
+   * @return
+   */
+  private CloseableIteration<BindingSet, QueryEvaluationException> convertJson(InputStream result, JsonPath rootPath,
+      JsonBindingSetConverter converter) throws IOException {
+    if (!JsonRootPathReader.isStreamable(rootPath.getPath())) {
+      try (InputStream in = result) {
+        return new CollectionIteration<BindingSet, QueryEvaluationException>(executeJson(in, rootPath, converter));
+      }
+    }
+
+    JsonRootPathReader reader = JsonRootPathReader.open(result, rootPath.getPath(), RESTSail.getObjectMapper());
+    return new StreamingBindingSetIteration(reader) {
+      @Override
+      protected BindingSet convertNext() throws IOException {
+        return reader.hasNext() ? converter.convert(reader.next()) : null;
+      }
+    };
+  }
 
-    ReadContext context = JsonPath.using(config).parse(res);
+  /**
+   * 
+   * @param res
+   * @param rootPath
+   * @param converter
+   * @return
+   */
+  private List<BindingSet> executeJson(InputStream res, JsonPath rootPath, JsonBindingSetConverter converter)
+      throws IOException {
     List<BindingSet> results = new ArrayList<>();
-    Object root = context.read(rootPath);
+    Object root = rootPath.read(res, RESTSail.getJsonPathConfig());
     if (root instanceof List) {
       // likely a JSON array
       logger.trace("Root is a JSON array. Iterating over array properties...");
-      results = iterateJsonArray((List<?>) root, outputParameters);
+      results = iterateJsonArray((List<?>) root, converter);
     } else if (root instanceof Map) {
       // likely a JSON object
       logger.trace("Root is a JSON object. Iterating over object properties...");
-      results = iterateJsonMap((Map<?, ?>) root, outputParameters);
+      results = iterateJsonMap((Map<?, ?>) root, converter);
     }
 
     return results;
@@ -183,16 +210,16 @@ public class RESTSailConnection extends AbstractServiceWrappingSailConnection<RE
   /**
    * 
    * @param array
-   * @param outputParameters
+   * @param converter
    * @return
    */
-  private List<BindingSet> iterateJsonArray(List<?> array, Map<IRI, String> outputParameters) {
+  private List<BindingSet> iterateJsonArray(List<?> array, JsonBindingSetConverter converter) {
     List<BindingSet> bindingSets = new ArrayList<>();
 
     logger.trace("### [START] Parsing JSONArray ###");
 
     for (Object object : array) {
-      bindingSets.add(createBindingSetFromJSONObject(object, outputParameters));
+      bindingSets.add(converter.convert(object));
     }
 
     logger.trace("### [END] Parsing JSONArray");
@@ -202,64 +229,36 @@ public class RESTSailConnection extends AbstractServiceWrappingSailConnection<RE
   /**
    * 
    * @param map
-   * @param outputParameters
+   * @param converter
    * @return
    */
-  private List<BindingSet> iterateJsonMap(Map<?, ?> map, Map<IRI, String> outputParameters) {
+  private List<BindingSet> iterateJsonMap(Map<?, ?> map, JsonBindingSetConverter converter) {
 
     logger.trace("### [START] Parsing JSONObject ###");
     List<BindingSet> bindingSets = Lists.newArrayList();
 
-    bindingSets.add(createBindingSetFromJSONObject(map, outputParameters));
+    bindingSets.add(converter.convert(map));
 
     logger.trace("### [END] Parsing JSONObject ###");
     return bindingSets;
   }
 
-  /**
-   * 
-   * @param object
-   * @param outputParameters
-   * @return
-   */
-  private MapBindingSet createBindingSetFromJSONObject(Object object, Map<IRI, String> outputParameters) {
-    MapBindingSet mapBindingSet = new MapBindingSet();
-
-    for (Map.Entry<IRI, String> outputParameter : outputParameters.entrySet()) {
-
-      String parameterName = getSail().getMapOutputParametersByProperty().get(outputParameter.getKey())
-          .getParameterName();
-      Parameter parameter = getSail().getServiceDescriptor().getOutputParameters().get(parameterName);
-
-      IRI type = parameter.getValueType();
-      String jsonPath = parameter.getJsonPath();
-      Object value = JsonPath.using(this.jsonPathConfig).parse(object).read(jsonPath);
-      if (value != null) {
-        String stringValue = value.toString();
-        if (StringUtils.equals(type.stringValue(), RDFS.RESOURCE.stringValue())) {
-          logger.trace("Creating Resource ({})", value);
-          mapBindingSet.addBinding(outputParameter.getValue(), VF.createIRI(stringValue));
-        } else {
-          logger.trace("Creating Literal({},{})", value, type);
-          mapBindingSet.addBinding(outputParameter.getValue(), VF.createLiteral(stringValue, type));
-        }
-      }
-    }
-
-    return mapBindingSet;
-  }
-
   @Override
   protected CloseableIteration<? extends BindingSet, QueryEvaluationException> executeAndConvertResultsToBindingSet(
       ServiceParametersHolder parametersHolder) {
     Response response = submit(parametersHolder);
     if (!response.getStatusInfo().getFamily().equals(Family.SUCCESSFUL)) {
+      response.close();
       throw new SailException("Request failed with HTTP status code " + response.getStatus() + ": "
           + response.getStatusInfo().getReasonPhrase());
     }
     InputStream resultStream = (InputStream) response.getEntity();
-    return new CollectionIteration<BindingSet, QueryEvaluationException>(
-        convertResult2BindingSets(resultStream, parametersHolder));
+    try {
+      return convertResult2BindingSets(resultStream, parametersHolder);
+    } catch (RuntimeException e) {
+      response.close();
+      throw e;
+    }
   }
 
   protected Response submit(ServiceParametersHolder parametersHolder) {
@@ -298,6 +297,21 @@ public class RESTSailConnection extends AbstractServiceWrappingSailConnection<RE
 
     } catch (Exception e) {
       throw new SailException(e);
+    } finally {
+      requestFinished();
+    }
+  }
+
+  /**
+   * Releases identical requests waiting for a request of the current thread
+   * which failed without a response (see
+   * {@link ResponseCacheFilter#requestFinished()}). Must be called after each
+   * request issued with {@link #client}, e.g. in a <code>finally</code> block.
+   */
+  protected void requestFinished() {
+    ResponseCacheFilter responseCache = ((RESTSail) getSail()).getResponseCache();
+    if (responseCache != null) {
+      responseCache.requestFinished();
     }
   }
 
@@ -0,0 +1,83 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.sail.rest;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * Iteration converting the results of a service call into {@link BindingSet}s
+ * one at a time, while they are consumed.
+ *
+ * <p>
+ * The iteration owns the underlying result (e.g. a JDBC result set or an HTTP
+ * response stream) and releases it as soon as it is exhausted or closed, i.e. a
+ * query with a <code>LIMIT</code> stops reading from the service once enough
+ * results have been produced.
+ * </p>
+ */
+public abstract class StreamingBindingSetIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+    private static final Logger logger = LogManager.getLogger(StreamingBindingSetIteration.class);
+
+    private final AutoCloseable source;
+
+    /**
+     * @param source the underlying result, closed together with this iteration
+     */
+    protected StreamingBindingSetIteration(AutoCloseable source) {
+        this.source = source;
+    }
+
+    /**
+     * Reads and converts the next result.
+     *
+     * @return the next binding set or <code>null</code> if the result is
+     *         exhausted
+     */
+    protected abstract BindingSet convertNext() throws Exception;
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        try {
+            return convertNext();
+        } catch (QueryEvaluationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new QueryEvaluationException(e);
+        }
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            super.handleClose();
+        } finally {
+            try {
+                source.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close service result: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.sail.rest.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Bounded pool of JDBC connections of a single {@link SQLSail}.
+ *
+ * <p>
+ * At most {@link #getMaxSize()} connections are open at the same time; callers
+ * wait up to the acquire timeout for a free connection. Connections which have
+ * been idle for longer than the validation interval are checked with
+ * {@link Connection#isValid(int)} before they are handed out again, and
+ * connections which failed during use are discarded.
+ * </p>
+ *
+ * <p>
+ * Each pooled connection caches the prepared statements of the most recently
+ * used SQL queries, keyed by the query ID of the service descriptor (see
+ * {@link SQLSail#getQueryById(String)}).
+ * </p>
+ */
+public class SQLConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(SQLConnectionPool.class);
+
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 50;
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 30000;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Opens a new physical connection to the database.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final int statementCacheSize;
+    private final long validationIntervalNanos;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private boolean closed = false;
+
+    private final AtomicLong createdConnections = new AtomicLong();
+    private final AtomicLong borrowedConnections = new AtomicLong();
+    private final AtomicLong discardedConnections = new AtomicLong();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong totalAcquireNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    public SQLConnectionPool(ConnectionFactory factory) {
+        this(factory, DEFAULT_MAX_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS, DEFAULT_STATEMENT_CACHE_SIZE,
+                DEFAULT_VALIDATION_INTERVAL_MILLIS);
+    }
+
+    public SQLConnectionPool(ConnectionFactory factory, int maxSize, long acquireTimeoutMillis,
+            int statementCacheSize, long validationIntervalMillis) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.statementCacheSize = Math.max(1, statementCacheSize);
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMillis);
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if no idle connection
+     * is available. The connection must be returned with
+     * {@link PooledConnection#close()}.
+     *
+     * @throws SQLTransientConnectionException if no connection became available
+     *                                         within the acquire timeout
+     */
+    public PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLTransientConnectionException("No database connection available within "
+                        + acquireTimeoutMillis + " ms, all " + maxSize + " connections are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", e);
+        }
+        totalAcquireNanos.addAndGet(System.nanoTime() - start);
+
+        try {
+            PooledConnection connection;
+            while ((connection = pollIdle()) != null) {
+                if (isHealthy(connection)) {
+                    borrowedConnections.incrementAndGet();
+                    connection.borrowed = true;
+                    return connection;
+                }
+                discard(connection);
+            }
+            connection = new PooledConnection(factory.create());
+            createdConnections.incrementAndGet();
+            borrowedConnections.incrementAndGet();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private synchronized PooledConnection pollIdle() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool is closed");
+        }
+        return idle.pollFirst();
+    }
+
+    private boolean isHealthy(PooledConnection connection) {
+        if (System.nanoTime() - connection.lastUsedNanos < validationIntervalNanos) {
+            return true;
+        }
+        try {
+            return connection.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection connection) {
+        try {
+            boolean keep;
+            synchronized (this) {
+                keep = !closed && !connection.broken;
+                if (keep) {
+                    connection.lastUsedNanos = System.nanoTime();
+                    idle.addFirst(connection);
+                }
+            }
+            if (!keep) {
+                discard(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection connection) {
+        discardedConnections.incrementAndGet();
+        connection.closePhysical();
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed when they are
+     * returned.
+     */
+    @Override
+    public void close() {
+        Deque<PooledConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+        }
+        toClose.forEach(PooledConnection::closePhysical);
+        logger.info("Closed SQL connection pool: {}", this);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of connections currently borrowed
+     */
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return number of callers waiting for a connection
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getCreatedCount() {
+        return createdConnections.get();
+    }
+
+    public long getBorrowedCount() {
+        return borrowedConnections.get();
+    }
+
+    /**
+     * @return number of connections closed because they were broken or failed
+     *         validation
+     */
+    public long getDiscardedCount() {
+        return discardedConnections.get();
+    }
+
+    public long getAcquireTimeoutCount() {
+        return acquireTimeouts.get();
+    }
+
+    public double getAverageAcquireMillis() {
+        long borrowed = borrowedConnections.get();
+        if (borrowed == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(totalAcquireNanos.get()) / 1000.0 / borrowed;
+    }
+
+    public double getStatementCacheHitRate() {
+        long hits = statementCacheHits.get();
+        long total = hits + statementCacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return snapshot of the pool metrics as exposed by the repository statistics
+     *         endpoint
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("maxSize", getMaxSize());
+        statistics.put("activeCount", getActiveCount());
+        statistics.put("idleCount", getIdleCount());
+        statistics.put("waitingCount", getWaitingCount());
+        statistics.put("createdCount", getCreatedCount());
+        statistics.put("borrowedCount", getBorrowedCount());
+        statistics.put("discardedCount", getDiscardedCount());
+        statistics.put("acquireTimeoutCount", getAcquireTimeoutCount());
+        statistics.put("averageAcquireMillis", getAverageAcquireMillis());
+        statistics.put("statementCacheHitRate", getStatementCacheHitRate());
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return "SQLConnectionPool [active=" + getActiveCount() + ", idle=" + getIdleCount() + ", waiting="
+                + getWaitingCount() + ", created=" + getCreatedCount() + ", borrowed=" + getBorrowedCount()
+                + ", discarded=" + getDiscardedCount() + ", acquireTimeouts=" + getAcquireTimeoutCount()
+                + ", statementCacheHitRate=" + getStatementCacheHitRate() + "]";
+    }
+
+    /**
+     * A connection borrowed from the pool. Closing it returns it to the pool.
+     * Instances must only be used by one thread at a time.
+     */
+    public class PooledConnection implements AutoCloseable {
+
+        private final Connection connection;
+
+        private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16,
+                0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        private long lastUsedNanos = System.nanoTime();
+
+        private boolean broken = false;
+
+        private boolean borrowed = true;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Returns the cached prepared statement for the query or prepares a new
+         * one. Parameters of a cached statement are cleared.
+         *
+         * @param queryId ID of the query, the SQL text of an ID must not change
+         * @param sql     the SQL text of the query
+         */
+        public PreparedStatement prepareStatement(String queryId, String sql) throws SQLException {
+            try {
+                PreparedStatement statement = statements.get(queryId);
+                if (statement != null && !statement.isClosed()) {
+                    statementCacheHits.incrementAndGet();
+                    statement.clearParameters();
+                    return statement;
+                }
+                statementCacheMisses.incrementAndGet();
+                statement = connection.prepareStatement(sql);
+                statements.put(queryId, statement);
+                return statement;
+            } catch (SQLException e) {
+                markBroken();
+                throw e;
+            }
+        }
+
+        /**
+         * Marks the connection as unusable, it is discarded instead of being
+         * returned to the pool.
+         */
+        public void markBroken() {
+            this.broken = true;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        @Override
+        public void close() {
+            if (borrowed) {
+                borrowed = false;
+                release(this);
+            }
+        }
+
+        private void closePhysical() {
+            statements.values().forEach(SQLConnectionPool::closeQuietly);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Failed to close database connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            logger.debug("Failed to close {}: {}", closeable, e.getMessage());
+        }
+    }
+}
@@ -117,6 +117,11 @@
      @Inject
      Provider<MpJDBCDriverManager> jdbcDriverManager;
  
+     /**
+      * Created on first use, i.e. after the driver manager has been injected.
+      */
+     private SQLConnectionPool connectionPool;
+ 
      public SQLSail(SQLSailConfig config) {
          super(config);
      }
@@ -186,4 +191,30 @@
  
          return new SQLSailConnection(this);
      }
+ 
+     /**
+      * @return the pool of database connections shared by all connections of
+      *         this SAIL
+      */
+     public synchronized SQLConnectionPool getConnectionPool() {
+         if (connectionPool == null) {
+             SQLSailConfig config = getConfig();
+             connectionPool = new SQLConnectionPool(() -> config.getDriverManager().getConnection(config.getUrl(),
+                     config.getUsername(), config.getPassword()), config.getMaxPoolSize(),
+                     config.getPoolAcquireTimeout(), config.getStatementCacheSize(),
+                     SQLConnectionPool.DEFAULT_VALIDATION_INTERVAL_MILLIS);
+         }
+         return connectionPool;
+     }
+ 
+     @Override
+     protected void shutDownInternal() throws SailException {
+         super.shutDownInternal();
+         synchronized (this) {
+             if (connectionPool != null) {
+                 connectionPool.close();
+                 connectionPool = null;
+             }
+         }
+     }
  }
\ No newline at end of file
@@ -17,6 +17,12 @@
 
 package org.researchspace.sail.rest.sql;
 
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.sail.config.SailConfigException;
+import org.researchspace.repository.MpRepositoryVocabulary;
 import org.researchspace.sail.rest.AbstractServiceWrappingSailConfig;
 
 /**
@@ -29,6 +35,61 @@ public class SQLSailConfig extends AbstractServiceWrappingSailConfig {
 
   protected MpJDBCDriverManager driverManager; 
 
+  private int maxPoolSize = SQLConnectionPool.DEFAULT_MAX_SIZE;
+  private long poolAcquireTimeout = SQLConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MILLIS;
+  private int statementCacheSize = SQLConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE;
+
+  /**
+   * Number of rows the JDBC driver fetches from the database cursor at a time,
+   * <code>0</code> to use the default of the driver.
+   */
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+  private int fetchSize = DEFAULT_FETCH_SIZE;
+
+  @Override
+  public void validate() throws SailConfigException {
+    super.validate();
+    if (maxPoolSize < 1 || poolAcquireTimeout < 0 || statementCacheSize < 1) {
+      throw new SailConfigException("Invalid connection pool settings: max pool size " + maxPoolSize
+          + ", acquire timeout " + poolAcquireTimeout + ", statement cache size " + statementCacheSize);
+    }
+    if (fetchSize < 0) {
+      throw new SailConfigException("Invalid fetch size: " + fetchSize);
+    }
+  }
+
+  @Override
+  public void parse(Model model, Resource implNode) throws SailConfigException {
+    super.parse(model, implNode);
+    Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.SQL_MAX_POOL_SIZE, null))
+        .ifPresent(lit -> setMaxPoolSize(lit.intValue()));
+    Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.SQL_POOL_ACQUIRE_TIMEOUT, null))
+        .ifPresent(lit -> setPoolAcquireTimeout(lit.longValue()));
+    Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.SQL_STATEMENT_CACHE_SIZE, null))
+        .ifPresent(lit -> setStatementCacheSize(lit.intValue()));
+    Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.SQL_FETCH_SIZE, null))
+        .ifPresent(lit -> setFetchSize(lit.intValue()));
+  }
+
+  @Override
+  public Resource export(Model model) {
+    Resource implNode = super.export(model);
+    var vf = SimpleValueFactory.getInstance();
+    if (maxPoolSize != SQLConnectionPool.DEFAULT_MAX_SIZE) {
+      model.add(implNode, MpRepositoryVocabulary.SQL_MAX_POOL_SIZE, vf.createLiteral(maxPoolSize));
+    }
+    if (poolAcquireTimeout != SQLConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MILLIS) {
+      model.add(implNode, MpRepositoryVocabulary.SQL_POOL_ACQUIRE_TIMEOUT, vf.createLiteral(poolAcquireTimeout));
+    }
+    if (statementCacheSize != SQLConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE) {
+      model.add(implNode, MpRepositoryVocabulary.SQL_STATEMENT_CACHE_SIZE, vf.createLiteral(statementCacheSize));
+    }
+    if (fetchSize != DEFAULT_FETCH_SIZE) {
+      model.add(implNode, MpRepositoryVocabulary.SQL_FETCH_SIZE, vf.createLiteral(fetchSize));
+    }
+    return implNode;
+  }
+
 
   public MpJDBCDriverManager getDriverManager() {
     return driverManager;
@@ -38,4 +99,36 @@ public class SQLSailConfig extends AbstractServiceWrappingSailConfig {
     this.driverManager = driverManager;
   }
 
+  public int getMaxPoolSize() {
+    return maxPoolSize;
+  }
+
+  public void setMaxPoolSize(int maxPoolSize) {
+    this.maxPoolSize = maxPoolSize;
+  }
+
+  public long getPoolAcquireTimeout() {
+    return poolAcquireTimeout;
+  }
+
+  public void setPoolAcquireTimeout(long poolAcquireTimeout) {
+    this.poolAcquireTimeout = poolAcquireTimeout;
+  }
+
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+
+  public void setStatementCacheSize(int statementCacheSize) {
+    this.statementCacheSize = statementCacheSize;
+  }
+
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  public void setFetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+  }
+
 }
\ No newline at end of file
@@ -18,19 +18,20 @@
 package org.researchspace.sail.rest.sql;
 
 import java.io.InputStream;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collection;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.ws.rs.core.Response;
 
-import com.google.common.collect.Lists;
-
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -46,12 +47,13 @@ import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.Var;
-import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
 import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.eclipse.rdf4j.sail.SailException;
 import org.researchspace.sail.rest.AbstractServiceWrappingSail;
 import org.researchspace.sail.rest.AbstractServiceWrappingSailConnection;
 import org.researchspace.sail.rest.RESTWrappingSailUtils;
+import org.researchspace.sail.rest.StreamingBindingSetIteration;
+import org.researchspace.sail.rest.sql.SQLConnectionPool.PooledConnection;
 import org.researchspace.sail.rest.sql.SQLSail.SQLParameter;
 import org.researchspace.sail.rest.sql.SQLSail.SQLQuery;
 import org.researchspace.federation.repository.service.ServiceDescriptor.Parameter;
@@ -69,39 +71,65 @@ public class SQLSailConnection extends AbstractServiceWrappingSailConnection<SQL
 
     protected static final ValueFactory VF = SimpleValueFactory.getInstance();
 
-    protected Connection databaseConnection = null;
-    private PreparedStatement ps;
+    /**
+     * Borrowed from the connection pool of the SAIL on first use and returned
+     * when this connection is closed.
+     */
+    protected PooledConnection databaseConnection = null;
+
+    /**
+     * Statements whose result set is still being consumed. A statement can only
+     * have one open result set, so a query evaluated again while its previous
+     * result is still open gets a separate, uncached statement.
+     */
+    private final Set<PreparedStatement> openStatements = ConcurrentHashMap.newKeySet();
 
     public SQLSailConnection(AbstractServiceWrappingSail<SQLSailConfig> sailBase) {
         super(sailBase);
-
-        // Initialize connection to the database
-        initializeConnection();
     }
 
-    protected void initializeConnection() throws SailException {
-        try {
-
-            String url = this.getSail().getConfig().getUrl();
-            String username = this.getSail().getConfig().getUsername();
-            String passw = this.getSail().getConfig().getPassword();
-
-            MpJDBCDriverManager driverManager = this.getSail().getConfig().getDriverManager();
-            this.databaseConnection = driverManager.getConnection(url, username, passw);
+    protected PooledConnection initializeConnection() throws SailException {
+        if (this.databaseConnection == null) {
+            try {
+                this.databaseConnection = ((SQLSail) getSail()).getConnectionPool().borrow();
+            } catch (SQLException e) {
+                throw new SailException(e.getMessage());
+            }
+        }
+        return this.databaseConnection;
+    }
 
-        } catch (SQLException e) {
-            throw new SailException(e.getMessage());
+    @Override
+    protected void closeInternal() throws SailException {
+        super.closeInternal();
+        if (this.databaseConnection != null) {
+            this.databaseConnection.close();
+            this.databaseConnection = null;
         }
     }
 
     protected ResultSet submit(ServiceParametersHolder parametersHolder) throws SailException {
 
-        SQLQuery sqlQuery = ((SQLSail) getSail()).getQueryById(parametersHolder.getSubjVarName());
+        String queryId = parametersHolder.getSubjVarName();
+        SQLQuery sqlQuery = ((SQLSail) getSail()).getQueryById(queryId);
+        if (sqlQuery == null) {
+            throw new SailException("The SQL query with ID " + queryId + " is not defined.");
+        }
 
         // Prepare the statement to handle the input parameters
         // if they are required
+        PooledConnection connection = initializeConnection();
         try {
-            ps = this.databaseConnection.prepareStatement(sqlQuery.getQuery());
+            PreparedStatement ps = connection.prepareStatement(queryId, sqlQuery.getQuery());
+            if (openStatements.contains(ps)) {
+                ps = connection.getConnection().prepareStatement(sqlQuery.getQuery());
+                ps.closeOnCompletion();
+            }
+
+            int fetchSize = getSail().getConfig().getFetchSize();
+            if (fetchSize > 0) {
+                ps.setFetchSize(fetchSize);
+            }
 
             for (Map.Entry<Integer, SQLParameter> entry : sqlQuery.getInputParametersMap().entrySet()) {
 
@@ -125,11 +153,22 @@ public class SQLSailConnection extends AbstractServiceWrappingSailConnection<SQL
 
             }
 
-            return ps.executeQuery();
+            ResultSet resultSet = ps.executeQuery();
+            openStatements.add(ps);
+            return resultSet;
 
         } catch (SQLException e) {
+            if (isConnectionFailure(e)) {
+                connection.markBroken();
+            }
             throw new SailException(e.getMessage());
         }
+    }
+
+    private static boolean isConnectionFailure(SQLException e) {
+        // SQL state class 08 denotes connection exceptions
+        return e instanceof SQLRecoverableException || e instanceof SQLNonTransientConnectionException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
 
     }
 
@@ -177,50 +216,69 @@ public class SQLSailConnection extends AbstractServiceWrappingSailConnection<SQL
     }
 
     @Override
-    protected Collection<BindingSet> convertResult2BindingSets(ResultSet resultSet,
-            ServiceParametersHolder parametersHolder) throws SailException {
-
-        List<BindingSet> bindingSets = Lists.newArrayList();
+    protected CloseableIteration<BindingSet, QueryEvaluationException> convertResult2BindingSets(
+            ResultSet resultSet, ServiceParametersHolder parametersHolder) throws SailException {
+
+        // Resolve the output parameters once instead of for every row
+        Map<String, IRI> outputTypes = new LinkedHashMap<>();
+        for (String variable : parametersHolder.getOutputVariables().values()) {
+            Parameter parameter = getSail().getServiceDescriptor().getOutputParameters().get(variable);
+            outputTypes.put(variable, parameter.getValueType());
+        }
 
-        // Convert inputStream to list of binding sets
-        
+        PooledConnection connection = this.databaseConnection;
+        PreparedStatement statement;
         try {
-            while (resultSet.next()) {
+            statement = (PreparedStatement) resultSet.getStatement();
+        } catch (SQLException e) {
+            throw new SailException(e);
+        }
 
-                MapBindingSet mapBindingSet = new MapBindingSet();
-                for (Map.Entry<IRI, String> outputParameter : parametersHolder.getOutputVariables().entrySet()) {
-                    
-                    Parameter parameter = getSail().getServiceDescriptor().getOutputParameters()
-                            .get(outputParameter.getValue());
-                    IRI type = parameter.getValueType();
+        // Rows are converted one by one while the result is consumed, the driver
+        // fetches them from the cursor in batches of the configured fetch size
+        return new StreamingBindingSetIteration(() -> {
+            try {
+                resultSet.close();
+            } finally {
+                openStatements.remove(statement);
+            }
+        }) {
+            @Override
+            protected BindingSet convertNext() throws SQLException {
+                try {
+                    if (!resultSet.next()) {
+                        return null;
+                    }
+                } catch (SQLException e) {
+                    if (connection != null && isConnectionFailure(e)) {
+                        connection.markBroken();
+                    }
+                    throw e;
+                }
 
-                    String strObj = resultSet.getString(outputParameter.getValue());
+                MapBindingSet mapBindingSet = new MapBindingSet();
+                for (Map.Entry<String, IRI> output : outputTypes.entrySet()) {
+                    IRI type = output.getValue();
+                    String strObj = resultSet.getString(output.getKey());
 
                     if (strObj != null) {
                         if (StringUtils.equals(type.stringValue(), RDFS.RESOURCE.stringValue())) {
                             logger.trace("Creating Resource ({})", strObj);
-                            mapBindingSet.addBinding(outputParameter.getValue(), VF.createIRI(strObj));
+                            mapBindingSet.addBinding(output.getKey(), VF.createIRI(strObj));
                         } else {
                             logger.trace("Creating Literal({},{})", strObj, type);
-                            mapBindingSet.addBinding(outputParameter.getValue(), VF.createLiteral(strObj,
-                                    type));
+                            mapBindingSet.addBinding(output.getKey(), VF.createLiteral(strObj, type));
                         }
                     }
-
                 }
-                bindingSets.add(mapBindingSet);
+                return mapBindingSet;
             }
-
-            return bindingSets;
-
-        } catch (Exception e) {
-            throw new SailException(e);
-        }
+        };
     }
 
     @Override
-    protected Collection<BindingSet> convertResult2BindingSets(InputStream inputStream,
-            ServiceParametersHolder parametersHolder) throws SailException {
+    protected CloseableIteration<BindingSet, QueryEvaluationException> convertResult2BindingSets(
+            InputStream inputStream, ServiceParametersHolder parametersHolder) throws SailException {
         throw new UnsupportedOperationException("Unimplemented method 'convertResult2BindingSets'");
     }
 
@@ -229,9 +287,26 @@ public class SQLSailConnection extends AbstractServiceWrappingSailConnection<SQL
             ServiceParametersHolder parametersHolder) {
 
         ResultSet resultSet = submit(parametersHolder);
+        try {
+            return convertResult2BindingSets(resultSet, parametersHolder);
+        } catch (RuntimeException e) {
+            try {
+                resultSet.close();
+            } catch (SQLException ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        }
+    }
 
-        return new CollectionIteration<BindingSet, QueryEvaluationException>(
-                convertResult2BindingSets(resultSet, parametersHolder));
+    /**
+     * The queries of a batch are executed one after another on the pooled
+     * connection of this SAIL connection, which must not be shared between
+     * threads.
+     */
+    @Override
+    protected boolean supportsConcurrentRequests() {
+        return false;
     }
 
-}
\ No newline at end of file
+}
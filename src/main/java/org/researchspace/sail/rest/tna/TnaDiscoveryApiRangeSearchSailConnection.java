@@ -172,8 +172,13 @@ public class TnaDiscoveryApiRangeSearchSailConnection extends RESTSailConnection
 
             List<BindingSet> bindings = crns.lines().filter(s -> s != null).map(s -> s.trim()).filter(s -> !s.isEmpty())
                     .map(crn -> {
-                        DiscoveryCollection collection = this.client.target(DISCOVERY_COLLECTION_URL).path(crn)
-                                .request(MediaType.APPLICATION_JSON).get(DiscoveryCollection.class);
+                        DiscoveryCollection collection;
+                        try {
+                            collection = this.client.target(DISCOVERY_COLLECTION_URL).path(crn)
+                                    .request(MediaType.APPLICATION_JSON).get(DiscoveryCollection.class);
+                        } finally {
+                            requestFinished();
+                        }
 
                         List<CollectionRecord> records = collection.getAssets();
                         MapBindingSet mapBindingSet = new MapBindingSet();
@@ -288,6 +288,9 @@ public class Permissions {
     public static class CACHES {
         @PermissionsDocField(desc = "Grants permission to invalidate all caches.")
         public static final String INVALIDATE_ALL = "caches:*:invalidate";
+
+        @PermissionsDocField(desc = "Grants permission to view usage statistics of all caches.")
+        public static final String VIEW_STATISTICS = "caches:*:statistics";
     }
 
     public static class SERVICES {
@@ -20,6 +20,7 @@
 package org.researchspace.security;
 
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
@@ -48,6 +49,8 @@ import org.researchspace.config.Configuration;
 import org.researchspace.security.ShiroGuiceModule.ShiroFilter;
 import org.researchspace.security.sso.SSORealm;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import io.buji.pac4j.token.Pac4jToken;
 
 /**
@@ -270,14 +273,22 @@ public class PlatformSecurityManager extends DefaultWebSecurityManager {
 
     class MPCacheManager extends AbstractCacheManager {
 
-        private static final String DEFAULT_SPEC = "expireAfterWrite=30m,maximumSize=1000";
+        private static final long EXPIRY_MINUTES = 30;
+        private static final String DEFAULT_SPEC = "expireAfterWrite=" + EXPIRY_MINUTES + "m,maximumSize=1000";
 
         @Override
         protected Cache<Object, Object> createCache(String name) throws CacheException {
 
-            com.google.common.cache.Cache<Object, Object> guavaCache = cacheManager.newBuilder(name, DEFAULT_SPEC)
-                    .build();
-            return new MapCache<Object, Object>(name, guavaCache.asMap());
+            // run maintenance on the calling thread, so that the size bound
+            // is applied immediately after each write
+            Caffeine<Object, Object> builder = cacheManager.newBuilder(name, DEFAULT_SPEC).executor(Runnable::run);
+            String configuredSpec = cacheManager.getCacheSpec(name);
+            if (configuredSpec != null && !configuredSpec.isEmpty() && !configuredSpec.contains("expireAfter")) {
+                // cached authorization must expire, even if the configured
+                // specification only limits the size
+                builder.expireAfterWrite(EXPIRY_MINUTES, TimeUnit.MINUTES);
+            }
+            return new MapCache<Object, Object>(name, builder.build().asMap());
         }
     }
 }
@@ -29,7 +29,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 
 import javax.annotation.Nullable;
@@ -49,6 +48,8 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.researchspace.api.sparql.SparqlOperationBuilder;
 import org.researchspace.cache.CacheManager;
 import org.researchspace.cache.PlatformCache;
+import org.researchspace.cache.PlatformCacheStatistics;
+import org.researchspace.cache.PlatformCacheStatsCounter;
 import org.researchspace.data.json.JsonUtil;
 import org.researchspace.data.rdf.container.FieldDefinitionContainer;
 import org.researchspace.repository.RepositoryManager;
@@ -56,8 +57,8 @@ import org.researchspace.vocabulary.FIELDS;
 import org.researchspace.vocabulary.XsdUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 
 public class FieldDefinitionManager implements PlatformCache {
 
@@ -67,6 +68,7 @@ public class FieldDefinitionManager implements PlatformCache {
 
     private final RepositoryManager repositoryManager;
     private final LoadingCache<IRI, Optional<FieldDefinition>> cache;
+    private final PlatformCacheStatsCounter statsCounter;
 
     @Inject
     public FieldDefinitionManager(RepositoryManager repositoryManager, CacheManager cacheManager) {
@@ -83,6 +85,7 @@ public class FieldDefinitionManager implements PlatformCache {
                         return loadFieldDefinitions(keys);
                     }
                 });
+        this.statsCounter = cacheManager.getStatsCounter(CACHE_ID);
         cacheManager.register(this);
     }
 
@@ -91,6 +94,12 @@ public class FieldDefinitionManager implements PlatformCache {
         return CACHE_ID;
     }
 
+    @Override
+    public PlatformCacheStatistics getStatistics(int hotKeysLimit) {
+        return PlatformCacheStatistics.of(getId(), statsCounter, Collections.singletonList(this.cache),
+                hotKeysLimit);
+    }
+
     @Override
     public void invalidate() {
         this.cache.invalidateAll();
@@ -102,13 +111,9 @@ public class FieldDefinitionManager implements PlatformCache {
     }
 
     public Map<IRI, FieldDefinition> queryFieldDefinitions(Iterable<? extends IRI> fieldIris) {
-        try {
-            logger.trace("Querying field definitions: {}", fieldIris);
-            Map<IRI, Optional<FieldDefinition>> found = this.cache.getAll(fieldIris);
-            return flattenOptionMap(found);
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e);
-        }
+        logger.trace("Querying field definitions: {}", fieldIris);
+        Map<IRI, Optional<FieldDefinition>> found = this.cache.getAll(fieldIris);
+        return flattenOptionMap(found);
     }
 
     public Map<IRI, FieldDefinition> queryAllFieldDefinitions() {
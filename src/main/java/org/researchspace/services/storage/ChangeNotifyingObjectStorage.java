@@ -0,0 +1,94 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.services.storage;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.researchspace.services.storage.api.ObjectChangeListener;
+import org.researchspace.services.storage.api.ObjectMetadata;
+import org.researchspace.services.storage.api.ObjectRecord;
+import org.researchspace.services.storage.api.ObjectStorage;
+import org.researchspace.services.storage.api.StorageException;
+import org.researchspace.services.storage.api.StoragePath;
+
+/**
+ * {@link ObjectStorage} decorator which reports the path of each object
+ * appended to or deleted from the wrapped storage.
+ *
+ * @see MainPlatformStorage#addChangeListener
+ */
+class ChangeNotifyingObjectStorage implements ObjectStorage {
+    private final ObjectStorage delegate;
+    private final Consumer<StoragePath> onChange;
+
+    ChangeNotifyingObjectStorage(ObjectStorage delegate, Consumer<StoragePath> onChange) {
+        this.delegate = delegate;
+        this.onChange = onChange;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return delegate.isMutable();
+    }
+
+    @Override
+    public Optional<ObjectRecord> getObject(StoragePath path, @Nullable String revision) throws StorageException {
+        return delegate.getObject(path, revision);
+    }
+
+    @Override
+    public List<ObjectRecord> getRevisions(StoragePath path) throws StorageException {
+        return delegate.getRevisions(path);
+    }
+
+    @Override
+    public List<ObjectRecord> getAllObjects(StoragePath prefix) throws StorageException {
+        return delegate.getAllObjects(prefix);
+    }
+
+    @Override
+    public ObjectRecord appendObject(StoragePath path, ObjectMetadata metadata, InputStream content,
+            long contentLength) throws StorageException {
+        ObjectRecord record = delegate.appendObject(path, metadata, content, contentLength);
+        onChange.accept(path);
+        return record;
+    }
+
+    @Override
+    public void deleteObject(StoragePath path, ObjectMetadata metadata) throws StorageException {
+        delegate.deleteObject(path, metadata);
+        onChange.accept(path);
+    }
+
+    @Override
+    public boolean addExternalChangeListener(ObjectChangeListener listener) {
+        return delegate.addExternalChangeListener(listener);
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+}
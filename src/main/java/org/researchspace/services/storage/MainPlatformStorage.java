@@ -25,21 +25,32 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.researchspace.cache.CacheManager;
+import org.researchspace.cache.PlatformCache;
+import org.researchspace.cache.PlatformCacheStatistics;
+import org.researchspace.cache.PlatformCacheStatsCounter;
 import org.researchspace.config.Configuration;
 import org.researchspace.plugin.PlatformPlugin;
 import org.researchspace.plugin.PlatformPluginManager;
 import org.researchspace.security.SecurityService;
+import org.researchspace.services.storage.api.ObjectChangeListener;
 import org.researchspace.services.storage.api.ObjectKind;
 import org.researchspace.services.storage.api.ObjectMetadata;
 import org.researchspace.services.storage.api.ObjectRecord;
@@ -49,12 +60,14 @@ import org.researchspace.services.storage.api.PlatformStorage;
 import org.researchspace.services.storage.api.StorageConfig;
 import org.researchspace.services.storage.api.StorageConfigException;
 import org.researchspace.services.storage.api.StorageConfigLoader;
+import org.researchspace.services.storage.api.StorageChangeListener;
 import org.researchspace.services.storage.api.StorageCreationParams;
 import org.researchspace.services.storage.api.StorageException;
 import org.researchspace.services.storage.api.StoragePath;
 import org.researchspace.services.storage.api.StorageRegistry;
 import org.researchspace.services.storage.file.NonVersionedFileStorage;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.google.common.collect.Lists;
 import com.google.inject.Injector;
 
@@ -64,11 +77,53 @@ import com.google.inject.Injector;
 public class MainPlatformStorage implements PlatformStorage {
     private static final Logger logger = LogManager.getLogger(MainPlatformStorage.class);
 
+    /**
+     * ID of the cache of {@link #findObject} results, which also notifies the
+     * change listeners when all platform caches are invalidated.
+     */
+    public static final String CHANGE_NOTIFIER_CACHE_ID = "platform.PlatformStorage";
+
+    /**
+     * Time after which a cached {@link #findObject} result expires if it depends
+     * on a storage which does not report external changes (e.g. S3 bucket or
+     * commits to a Git repository made by external tools).
+     */
+    private static final long UNREPORTED_CHANGES_EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
     private final Map<String, StorageDescription> storages = new LinkedHashMap<>();
     private final List<String> appSearchOrder = new ArrayList<>();
 
     private final PathMapping appPaths = new PathMapping.Default();
 
+    private final List<StorageChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Results of {@link #findObject} including missing objects, invalidated by
+     * the changes reported by the storages.
+     */
+    private final Cache<StoragePath, CachedFindResult> foundObjects;
+    private final PlatformCacheStatsCounter foundObjectsStatsCounter;
+    private volatile long changeCount;
+    private final Set<String> storagesWithUnreportedChanges = new HashSet<>();
+
+    private static class CachedFindResult {
+        public final Optional<FindResult> result;
+        /**
+         * {@link System#nanoTime()} after which the result is stale or
+         * {@code null} if the result is kept until invalidated.
+         */
+        public final Long expiresAt;
+
+        public CachedFindResult(Optional<FindResult> result, Long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isExpired() {
+            return expiresAt != null && System.nanoTime() - expiresAt >= 0;
+        }
+    }
+
     private static class StorageDescription {
         public final String storageId;
         public final ObjectStorage storage;
@@ -87,7 +142,10 @@ public class MainPlatformStorage implements PlatformStorage {
 
     @Inject
     public MainPlatformStorage(PlatformPluginManager pluginManager, StorageRegistry storageRegistry,
-            Injector injector) {
+            Injector injector, CacheManager cacheManager) {
+        this.foundObjects = cacheManager
+                .newBuilder(CHANGE_NOTIFIER_CACHE_ID, cacheBuilder -> cacheBuilder.maximumSize(10000)).build();
+        this.foundObjectsStatsCounter = cacheManager.getStatsCounter(CHANGE_NOTIFIER_CACHE_ID);
         try {
             initialize(pluginManager, storageRegistry, injector);
         } catch (StorageConfigException | StorageException ex) {
@@ -95,6 +153,10 @@ public class MainPlatformStorage implements PlatformStorage {
             logger.debug("Details: ", ex);
             throw new StorageConfigException("Failed to initialize platform storage system", ex);
         }
+        for (StorageDescription description : storages.values()) {
+            listenToExternalChanges(description);
+        }
+        cacheManager.register(new ChangeNotifier());
     }
 
     private void initialize(PlatformPluginManager pluginManager, StorageRegistry storageRegistry, Injector injector)
@@ -134,6 +196,26 @@ public class MainPlatformStorage implements PlatformStorage {
         }
     }
 
+    private void listenToExternalChanges(StorageDescription description) {
+        boolean reportsExternalChanges = description.storage.addExternalChangeListener(new ObjectChangeListener() {
+            @Override
+            public void objectChanged(StoragePath path) {
+                fireObjectChanged(description.storageId, path);
+            }
+
+            @Override
+            public void allObjectsChanged() {
+                fireAllObjectsChanged();
+            }
+        });
+        if (!reportsExternalChanges) {
+            storagesWithUnreportedChanges.add(description.storageId);
+            logger.debug("Storage '{}' does not report external changes, these become visible after invalidating "
+                    + "the platform caches or within {} seconds", description.storageId,
+                    TimeUnit.NANOSECONDS.toSeconds(UNREPORTED_CHANGES_EXPIRY_NANOS));
+        }
+    }
+
     @Override
     public PathMapping getPathMapping() {
         return appPaths;
@@ -198,7 +280,11 @@ public class MainPlatformStorage implements PlatformStorage {
         addStorageAsFirstInSearchOrder(new StorageDescription(storageId, storage));
     }
 
-    private void addStorageAsFirstInSearchOrder(StorageDescription description) {
+    private void addStorageAsFirstInSearchOrder(StorageDescription added) {
+        ObjectStorage notifyingStorage = new ChangeNotifyingObjectStorage(added.storage,
+                path -> fireObjectChanged(added.storageId, path));
+        StorageDescription description = new StorageDescription(added.storageId, notifyingStorage,
+                added.storedKindPrefix);
         storages.put(description.storageId, description);
         // we may have already initialized a default app storage for the given id
         // and as such must first remove it
@@ -210,6 +296,46 @@ public class MainPlatformStorage implements PlatformStorage {
 
     @Override
     public Optional<FindResult> findObject(StoragePath path) throws StorageException {
+        CachedFindResult cached = foundObjects.getIfPresent(path);
+        if (cached != null && !cached.isExpired()) {
+            return cached.result;
+        }
+
+        long changeCountBeforeSearch = changeCount;
+        Optional<FindResult> found = searchObject(path);
+        Long expiresAt = dependsOnUnreportedChanges(path, found)
+                ? System.nanoTime() + UNREPORTED_CHANGES_EXPIRY_NANOS
+                : null;
+        synchronized (foundObjects) {
+            // skip caching if the object might have been changed during the search
+            if (changeCount == changeCountBeforeSearch) {
+                foundObjects.put(path, new CachedFindResult(found, expiresAt));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks if the result might be changed by a storage which does not report
+     * external changes, i.e. if such storage has been searched for the object.
+     */
+    private boolean dependsOnUnreportedChanges(StoragePath path, Optional<FindResult> found) {
+        for (String appId : appSearchOrder) {
+            StorageDescription description = storages.get(appId);
+            if (!description.storedKindPrefix.isPrefixOf(path)) {
+                continue;
+            }
+            if (storagesWithUnreportedChanges.contains(appId)) {
+                return true;
+            }
+            if (found.isPresent() && found.get().getAppId().equals(appId)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private Optional<FindResult> searchObject(StoragePath path) throws StorageException {
         logger.trace("Searching for single object at: {}", path);
         for (String appId : appSearchOrder) {
             StorageDescription description = storages.get(appId);
@@ -297,6 +423,78 @@ public class MainPlatformStorage implements PlatformStorage {
                 .map(desc -> new StorageStatus(desc.storageId, desc.storage.isMutable())).collect(toList());
     }
 
+    @Override
+    public boolean addChangeListener(StorageChangeListener listener) {
+        changeListeners.add(listener);
+        return true;
+    }
+
+    @Override
+    public void removeChangeListener(StorageChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void fireObjectChanged(String appId, StoragePath path) {
+        logger.trace("Object changed in storage '{}': {}", appId, path);
+        // listeners may look up the changed object again
+        synchronized (foundObjects) {
+            changeCount++;
+            foundObjects.invalidate(path);
+        }
+        for (StorageChangeListener listener : changeListeners) {
+            try {
+                listener.objectChanged(appId, path);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to notify storage change listener: " + e.getMessage());
+                logger.debug("Details:", e);
+            }
+        }
+    }
+
+    private void fireAllObjectsChanged() {
+        synchronized (foundObjects) {
+            changeCount++;
+            foundObjects.invalidateAll();
+        }
+        for (StorageChangeListener listener : changeListeners) {
+            try {
+                listener.allObjectsChanged();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to notify storage change listener: " + e.getMessage());
+                logger.debug("Details:", e);
+            }
+        }
+    }
+
+    /**
+     * Objects may be modified outside of the platform without being reported by
+     * the storage (e.g. in an S3 bucket), hence the found objects are discarded
+     * and the change listeners are notified whenever all platform caches are
+     * invalidated.
+     */
+    private class ChangeNotifier implements PlatformCache {
+        @Override
+        public void invalidate() {
+            fireAllObjectsChanged();
+        }
+
+        @Override
+        public PlatformCacheStatistics getStatistics(int hotKeysLimit) {
+            return PlatformCacheStatistics.of(getId(), foundObjectsStatsCounter,
+                    Collections.singletonList(foundObjects), hotKeysLimit);
+        }
+
+        @Override
+        public void invalidate(Set<IRI> iris) {
+            // objects are not identified by IRIs
+        }
+
+        @Override
+        public String getId() {
+            return CHANGE_NOTIFIER_CACHE_ID;
+        }
+    }
+
     /**
      * Shutdown the main platform storage
      */
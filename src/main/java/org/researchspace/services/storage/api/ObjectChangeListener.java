@@ -0,0 +1,41 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.services.storage.api;
+
+/**
+ * Listener for changes of objects in a single {@link ObjectStorage} which have
+ * been made without using its mutation methods, e.g. by editing the files of a
+ * file storage or by pulling commits into a Git storage.
+ *
+ * @see ObjectStorage#addExternalChangeListener(ObjectChangeListener)
+ */
+public interface ObjectChangeListener {
+    /**
+     * Called after an object has been created, updated or deleted.
+     *
+     * @param path path of the changed object
+     */
+    void objectChanged(StoragePath path);
+
+    /**
+     * Called when any object of the storage may have changed.
+     */
+    void allObjectsChanged();
+}
@@ -94,6 +94,18 @@ public interface ObjectStorage extends AutoCloseable {
      */
     void deleteObject(StoragePath path, ObjectMetadata metadata) throws StorageException;
 
+    /**
+     * Registers a listener for objects changed outside of {@link #appendObject}
+     * and {@link #deleteObject}, e.g. by external tools.
+     *
+     * @param listener listener to notify
+     * @return {@code true} if the storage reports external changes; {@code false}
+     *         if it is unable to detect them
+     */
+    default boolean addExternalChangeListener(ObjectChangeListener listener) {
+        return false;
+    }
+
     /**
      * Define any close behavior
      */
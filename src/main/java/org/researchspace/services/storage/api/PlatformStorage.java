@@ -83,6 +83,20 @@ public interface PlatformStorage {
      */
     List<StorageStatus> getStorageStatusFor(StoragePath prefix);
 
+    /**
+     * Registers a listener to be notified after objects have been changed in any
+     * of the registered storage instances.
+     *
+     * @return {@code true} if the listener has been registered; {@code false} if
+     *         this platform storage does not publish change events
+     */
+    default boolean addChangeListener(StorageChangeListener listener) {
+        return false;
+    }
+
+    default void removeChangeListener(StorageChangeListener listener) {
+    }
+
     class FindResult {
         private final String appId;
         private final ObjectRecord record;
@@ -0,0 +1,161 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.services.storage.file;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Watches a directory tree for created, modified and deleted files and reports
+ * them from a background daemon thread.
+ *
+ * <p>
+ * Only sub-directories accepted by the directory filter are watched, they are
+ * registered as they are created. If the file system
+ * drops events or a watched directory is removed as a whole, the watcher
+ * reports that all files may have changed.
+ * </p>
+ */
+class FileChangeWatcher implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(FileChangeWatcher.class);
+
+    private final Path root;
+    private final Predicate<Path> directoryFilter;
+    private final Consumer<Path> onFileChanged;
+    private final Runnable onAllFilesChanged;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final Thread thread;
+
+    FileChangeWatcher(Path root, Predicate<Path> directoryFilter, Consumer<Path> onFileChanged,
+            Runnable onAllFilesChanged) throws IOException {
+        this.root = root;
+        this.directoryFilter = directoryFilter;
+        this.onFileChanged = onFileChanged;
+        this.onAllFilesChanged = onAllFilesChanged;
+        this.watchService = root.getFileSystem().newWatchService();
+        try {
+            registerAll(root);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        this.thread = new Thread(this::processEvents, "file-storage-watcher-" + root.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void registerAll(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && !directoryFilter.test(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void processEvents() {
+        logger.debug("Watching directory {} for changes", root);
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            Path directory = watchedDirectories.get(key);
+            if (directory != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    try {
+                        processEvent(directory, event);
+                    } catch (RuntimeException | IOException e) {
+                        logger.warn("Failed to process change of files in {}: {}", directory, e.getMessage());
+                        logger.debug("Details:", e);
+                        onAllFilesChanged.run();
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+        logger.debug("Stopped watching directory {} for changes", root);
+    }
+
+    private void processEvent(Path directory, WatchEvent<?> event) throws IOException {
+        if (event.kind() == OVERFLOW) {
+            onAllFilesChanged.run();
+            return;
+        }
+
+        Path changed = directory.resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+            if (!directoryFilter.test(changed)) {
+                return;
+            }
+            registerAll(changed);
+            // files might have been created before the directory was registered
+            try (Stream<Path> files = Files.walk(changed)) {
+                files.filter(Files::isRegularFile).forEach(onFileChanged);
+            }
+        } else if (event.kind() == ENTRY_DELETE && watchedDirectories.containsValue(changed)) {
+            // the files of a removed directory are not necessarily reported
+            onAllFilesChanged.run();
+        } else {
+            onFileChanged.accept(changed);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
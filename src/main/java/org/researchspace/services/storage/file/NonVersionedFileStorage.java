@@ -33,6 +33,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
@@ -51,9 +52,18 @@ public class NonVersionedFileStorage implements ObjectStorage {
     
     private static final Logger logger = LogManager.getLogger(NonVersionedFileStorage.class);
 
+    /**
+     * Kinds of objects whose files are watched for external changes.
+     */
+    private static final List<StoragePath> WATCHED_KINDS = ImmutableList.of(ObjectKind.ASSET, ObjectKind.TEMPLATE,
+            ObjectKind.LDP, ObjectKind.CONFIG, ObjectKind.FILE);
+
     private final PathMapping paths;
     private final Config config;
 
+    private final List<ObjectChangeListener> externalChangeListeners = new CopyOnWriteArrayList<>();
+    private FileChangeWatcher watcher;
+
     public NonVersionedFileStorage(PathMapping paths, Config config) {
         this.paths = paths;
         this.config = config;
@@ -224,6 +234,59 @@ public class NonVersionedFileStorage implements ObjectStorage {
         }
     }
 
+    /**
+     * Watches the directories of the storage root which may contain objects (see
+     * {@link #WATCHED_KINDS}) for changes once the first listener is registered.
+     */
+    @Override
+    public synchronized boolean addExternalChangeListener(ObjectChangeListener listener) {
+        if (watcher == null) {
+            try {
+                watcher = new FileChangeWatcher(config.getRoot(), this::isObjectDirectory, this::onFileChanged,
+                        this::onAllFilesChanged);
+            } catch (IOException e) {
+                logger.warn("Failed to watch storage root directory {} for changes: {}", config.getRoot(),
+                        e.getMessage());
+                logger.debug("Details:", e);
+                return false;
+            }
+        }
+        externalChangeListeners.add(listener);
+        return true;
+    }
+
+    private boolean isObjectDirectory(Path directory) {
+        return objectPathFromFile(directory).map(
+                path -> WATCHED_KINDS.stream().anyMatch(kind -> kind.isPrefixOf(path) || path.isPrefixOf(kind)))
+                .orElse(false);
+    }
+
+    private void onFileChanged(Path file) {
+        Optional<StoragePath> changed = objectPathFromFile(file);
+        if (!changed.isPresent() || WATCHED_KINDS.stream().noneMatch(kind -> kind.isPrefixOf(changed.get()))) {
+            return;
+        }
+        logger.trace("File of object {} changed: {}", changed.get(), file);
+        for (ObjectChangeListener listener : externalChangeListeners) {
+            listener.objectChanged(changed.get());
+        }
+    }
+
+    private void onAllFilesChanged() {
+        logger.trace("Files in storage root directory {} changed", config.getRoot());
+        for (ObjectChangeListener listener : externalChangeListeners) {
+            listener.allObjectsChanged();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
     private Instant getLastModified(Path file) throws IOException {
         return Files.getLastModifiedTime(file).toInstant();
     }
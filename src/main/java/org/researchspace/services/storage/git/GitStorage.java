@@ -28,6 +28,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -75,6 +76,7 @@ import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.researchspace.services.storage.StorageUtils;
+import org.researchspace.services.storage.api.ObjectChangeListener;
 import org.researchspace.services.storage.api.ObjectMetadata;
 import org.researchspace.services.storage.api.ObjectRecord;
 import org.researchspace.services.storage.api.ObjectStorage;
@@ -97,6 +99,8 @@ public class GitStorage implements ObjectStorage {
 
     private ExecutorService executor;
 
+    private final List<ObjectChangeListener> externalChangeListeners = new CopyOnWriteArrayList<>();
+
     public GitStorage(PathMapping paths, GitStorageConfig config) throws StorageException {
         this.paths = paths;
         this.config = config;
@@ -548,12 +552,14 @@ public class GitStorage implements ObjectStorage {
                     pullChangesInFastForwardMode();
                 } finally {
                     lock.writeLock().unlock();
+                    fireAllObjectsChanged();
                 }
                 break;
             default:
                 logger.debug("Failed to push due to unexpected reason: {}; resetting to initial state",
                         pushStatus.name());
                 performRollback(headCommitId);
+                fireAllObjectsChanged();
                 throw new StorageException("Unexpected update status from pushing changes: " + pushStatus.name());
             }
 
@@ -664,6 +670,24 @@ public class GitStorage implements ObjectStorage {
         return Optional.of(entry);
     }
 
+    /**
+     * Reports commits which have been rolled back or pulled from the remote
+     * repository while pushing changes in the background. Commits made directly
+     * to the local repository by external tools are not detected, hence this
+     * storage does not claim to report all external changes.
+     */
+    @Override
+    public boolean addExternalChangeListener(ObjectChangeListener listener) {
+        externalChangeListeners.add(listener);
+        return false;
+    }
+
+    private void fireAllObjectsChanged() {
+        for (ObjectChangeListener listener : externalChangeListeners) {
+            listener.allObjectsChanged();
+        }
+    }
+
     private void performRollback(ObjectId rollbackTo) throws GitAPIException {
         logger.debug("Performing rollback to " + rollbackTo.toString());
         try (Git git = new Git(repository)) {
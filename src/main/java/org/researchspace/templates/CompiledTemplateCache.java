@@ -0,0 +1,126 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.templates;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+
+import org.researchspace.services.storage.api.ObjectRecord;
+import org.researchspace.services.storage.api.StorageChangeListener;
+import org.researchspace.services.storage.api.StoragePath;
+import org.researchspace.templates.FromStorageLoader.StorageTemplateSource;
+
+import com.github.jknack.handlebars.Parser;
+import com.github.jknack.handlebars.Template;
+import com.github.jknack.handlebars.cache.TemplateCache;
+import com.github.jknack.handlebars.io.TemplateSource;
+import com.google.common.collect.Maps;
+
+/**
+ * Handlebars {@link TemplateCache} keeping the compiled templates loaded from the
+ * platform storage until the storage reports a change of the template.
+ *
+ * <p>
+ * Templates from the storage are cached by their storage path, i.e. all
+ * locations resolving to the same template (e.g. <code>Template:foaf:Person</code>
+ * and the full IRI) share the compiled template. A cached template is only used
+ * if the source still refers to the same storage, revision and modification date.
+ * Partials are resolved and compiled when the including template is applied, so
+ * changing a partial does not require to recompile the templates including it.
+ * </p>
+ *
+ * <p>
+ * Other sources (e.g. inline templates) are cached by their filename and
+ * modification date like in
+ * {@link com.github.jknack.handlebars.cache.ConcurrentMapTemplateCache} with
+ * reloading enabled.
+ * </p>
+ */
+public class CompiledTemplateCache implements TemplateCache, StorageChangeListener {
+
+    private final ConcurrentMap<Object, Entry> templates = Maps.newConcurrentMap();
+
+    @Override
+    public Template get(TemplateSource source, Parser parser) throws IOException {
+        Object key = keyOf(source);
+        Object version = versionOf(source);
+        Entry entry = templates.get(key);
+        if (entry != null && entry.version.equals(version)) {
+            return entry.template;
+        }
+        Template template = parser.parse(source);
+        templates.put(key, new Entry(version, template));
+        return template;
+    }
+
+    @Override
+    public void evict(TemplateSource source) {
+        templates.remove(keyOf(source));
+    }
+
+    @Override
+    public void clear() {
+        templates.clear();
+    }
+
+    /**
+     * Has no effect, templates are always recompiled if their source changed.
+     */
+    @Override
+    public TemplateCache setReload(boolean reload) {
+        return this;
+    }
+
+    @Override
+    public void objectChanged(String appId, StoragePath path) {
+        templates.remove(path);
+    }
+
+    @Override
+    public void allObjectsChanged() {
+        clear();
+    }
+
+    private static Object keyOf(TemplateSource source) {
+        if (source instanceof StorageTemplateSource) {
+            return ((StorageTemplateSource) source).getRecord().getPath();
+        }
+        return source.filename();
+    }
+
+    private static Object versionOf(TemplateSource source) {
+        if (source instanceof StorageTemplateSource) {
+            ObjectRecord record = ((StorageTemplateSource) source).getRecord();
+            return Arrays.asList(record.getLocation().getStorage(), record.getRevision(), source.lastModified());
+        }
+        return source.lastModified();
+    }
+
+    private static class Entry {
+        private final Object version;
+        private final Template template;
+
+        Entry(Object version, Template template) {
+            this.version = version;
+            this.template = template;
+        }
+    }
+}
@@ -71,6 +71,10 @@ public abstract class FromStorageLoader extends AbstractTemplateLoader {
             return filename;
         }
 
+        public ObjectRecord getRecord() {
+            return record;
+        }
+
         @Override
         public long lastModified() {
             Instant date = record.getMetadata().getCreationDate();
@@ -19,16 +19,21 @@
 
 package org.researchspace.templates;
 
+import java.io.IOException;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.researchspace.config.NamespaceRegistry;
+import org.researchspace.services.storage.api.PlatformStorage;
 import org.researchspace.templates.helper.DocumentationHelper;
 
 import com.github.jknack.handlebars.EscapingStrategy;
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
-import com.github.jknack.handlebars.cache.ConcurrentMapTemplateCache;
 import com.github.jknack.handlebars.io.TemplateLoader;
+import com.google.common.base.Stopwatch;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 /**
@@ -48,13 +53,27 @@ public class ResearchSpaceHandlebars extends Handlebars {
         initialize(templateLoader, helperRegistry);
     }
 
+    /**
+     * Creates the Handlebars engine loading templates by IRI from the platform
+     * storage.
+     */
+    @Inject
+    public ResearchSpaceHandlebars(PlatformStorage platformStorage, NamespaceRegistry ns,
+            HandlebarsHelperRegistry helperRegistry) {
+        this(new TemplateByIriLoader(platformStorage, ns), helperRegistry);
+    }
+
     private void initialize(TemplateLoader templateLoader, HandlebarsHelperRegistry helperRegistry) {
 
-        ConcurrentMapTemplateCache cache = new ConcurrentMapTemplateCache().setReload(true);
+        CompiledTemplateCache cache = new CompiledTemplateCache();
 
         if (templateLoader != null) {
             with(templateLoader);
         }
+        if (templateLoader instanceof FromStorageLoader) {
+            // templates loaded from the storage are recompiled when they are changed
+            ((FromStorageLoader) templateLoader).storage.addChangeListener(cache);
+        }
         with(cache);
         startDelimiter(startDelimiter);
         endDelimiter(endDelimiter);
@@ -78,6 +97,30 @@ public class ResearchSpaceHandlebars extends Handlebars {
 
     }
 
+    /**
+     * Compiles all templates of the platform storage, so that the compilation cost
+     * is not paid by the first requests rendering them.
+     * 
+     * @return the number of compiled templates
+     */
+    public int precompileTemplates() throws IOException {
+        if (!(getLoader() instanceof TemplateByIriLoader)) {
+            return 0;
+        }
+        Stopwatch watch = Stopwatch.createStarted();
+        int compiled = 0;
+        for (String location : ((TemplateByIriLoader) getLoader()).findAllTemplateLocations()) {
+            try {
+                compile(location);
+                compiled++;
+            } catch (Exception e) {
+                logger.warn("Failed to precompile template {}: {}", location, e.getMessage());
+            }
+        }
+        logger.info("Precompiled {} templates in {}", compiled, watch);
+        return compiled;
+    }
+
     private void registerHelper(HandlebarsHelperRegistry helperRegistry) {
         helperRegistry.getHelpers().forEach(this::registerHelpers);
 
@@ -26,31 +26,52 @@ import org.researchspace.config.NamespaceRegistry;
 import org.researchspace.services.storage.api.*;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.jknack.handlebars.io.TemplateSource;
 import com.github.jknack.handlebars.io.ReloadableTemplateSource;
 
-public class TemplateByIriLoader extends FromStorageLoader {
+/**
+ * Loads templates from the platform storage by template IRI.
+ *
+ * If the storage publishes change events, the resolved storage objects are
+ * cached until a change is reported and the returned sources are not forced to
+ * reload, i.e. a {@link CompiledTemplateCache} only recompiles changed templates.
+ * Otherwise every access resolves and reloads the template.
+ */
+public class TemplateByIriLoader extends FromStorageLoader implements StorageChangeListener {
     
+    private static final long MAX_RESOLVED_LOCATIONS = 10000;
+
     private final NamespaceRegistry ns;
     private final ValueFactory vf = SimpleValueFactory.getInstance();
     private final TemplateResolver resolver;
 
+    private final Cache<String, Optional<PlatformStorage.FindResult>> resolvedLocations = Caffeine.newBuilder()
+            .maximumSize(MAX_RESOLVED_LOCATIONS).build();
+    // guarded by resolvedLocations, incremented on each change
+    private volatile long changeCount;
+    private final boolean changeNotificationsEnabled;
+
     public TemplateByIriLoader(PlatformStorage platformStorage, NamespaceRegistry ns) {
         super(platformStorage);
         this.ns = ns;
         this.resolver = new TemplateResolver();
+        this.changeNotificationsEnabled = platformStorage.addChangeListener(this);
     }
 
     @Override
     public TemplateSource sourceAt(String location) throws IOException {
         // Use unified resolver to find template
-        Optional<PlatformStorage.FindResult> result = resolver.resolve(location, ns, storage);
+        Optional<PlatformStorage.FindResult> result = resolve(location);
         
         if (result.isPresent()) {
-            return new ReloadableTemplateSource(
-                new StorageTemplateSource(location, result.get().getRecord()));
+            StorageTemplateSource source = new StorageTemplateSource(location, result.get().getRecord());
+            return changeNotificationsEnabled ? source : new ReloadableTemplateSource(source);
         }
         
         // If not found, throw exception with primary path for backward compatibility
@@ -58,6 +79,51 @@ public class TemplateByIriLoader extends FromStorageLoader {
         throw new TemplateNotFoundException("Storage object \"" + primaryPath.toString() + "\"");
     }
 
+    private Optional<PlatformStorage.FindResult> resolve(String location) {
+        if (!changeNotificationsEnabled) {
+            return resolver.resolve(location, ns, storage);
+        }
+        Optional<PlatformStorage.FindResult> cached = resolvedLocations.getIfPresent(location);
+        if (cached != null) {
+            return cached;
+        }
+        long changeCountBeforeResolve = changeCount;
+        Optional<PlatformStorage.FindResult> result = resolver.resolve(location, ns, storage);
+        synchronized (resolvedLocations) {
+            // do not cache results resolved while the storage changed
+            if (changeCountBeforeResolve == changeCount) {
+                resolvedLocations.put(location, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Any change may affect the resolution, e.g. a new template in another app
+     * overrides an existing one or a namespace has been added.
+     */
+    @Override
+    public void objectChanged(String appId, StoragePath path) {
+        allObjectsChanged();
+    }
+
+    @Override
+    public void allObjectsChanged() {
+        synchronized (resolvedLocations) {
+            changeCount++;
+            resolvedLocations.invalidateAll();
+        }
+    }
+
+    /**
+     * @return the IRIs of all templates in the storage as template locations
+     */
+    public List<String> findAllTemplateLocations() throws IOException {
+        return storage.findAll(ObjectKind.TEMPLATE).keySet().stream().map(TemplateByIriLoader::templateIriFromPath)
+                .filter(Optional::isPresent).map(iri -> iri.get().stringValue()).distinct()
+                .collect(Collectors.toList());
+    }
+
     @Override
     protected StoragePath resolveLocation(String location) {
         IRI templateIri = constructTemplateIri(location);
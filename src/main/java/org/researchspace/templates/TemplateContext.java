@@ -21,19 +21,24 @@ package org.researchspace.templates;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.core.UriInfo;
 
 import com.github.jknack.handlebars.Context;
+import com.github.jknack.handlebars.Template;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.repository.Repository;
 import org.researchspace.cache.LabelCache;
 import org.researchspace.config.NamespaceRegistry;
+import org.researchspace.templates.TemplateQueryPrefetcher.PrefetchedQuery;
 
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * Carries all the information and references to services required for compiling
@@ -54,6 +59,12 @@ public class TemplateContext {
 
     private LabelCache labelCache;
     private NamespaceRegistry namespaceRegistry;
+    private TemplateQueryPrefetcher queryPrefetcher;
+
+    private final ConcurrentMap<String, PrefetchedQuery> prefetchedQueries = Maps.newConcurrentMap();
+
+    private final Set<IRI> dependencies = Sets.newConcurrentHashSet();
+    private volatile boolean cacheable = true;
 
     public TemplateContext(Value value, Repository repository, UriInfo uriInfo, @Nullable String preferredLanguage) {
         this.value = value;
@@ -102,6 +113,38 @@ public class TemplateContext {
         this.labelCache = labelCache;
     }
 
+    public void setQueryPrefetcher(TemplateQueryPrefetcher queryPrefetcher) {
+        this.queryPrefetcher = queryPrefetcher;
+    }
+
+    /**
+     * Starts the evaluation of the statically known helper queries of the
+     * template, if a {@link TemplateQueryPrefetcher} has been set.
+     */
+    void prefetchQueries(Template template) {
+        if (this.queryPrefetcher != null) {
+            this.queryPrefetcher.prefetch(template, this);
+        }
+    }
+
+    void addPrefetchedQuery(String key, PrefetchedQuery query) {
+        this.prefetchedQueries.putIfAbsent(key, query);
+    }
+
+    @Nullable
+    PrefetchedQuery getPrefetchedQuery(String key) {
+        return this.prefetchedQueries.get(key);
+    }
+
+    /**
+     * Cancels the evaluation of all prefetched queries, which have not been used
+     * while applying the template.
+     */
+    void cancelPrefetchedQueries() {
+        this.prefetchedQueries.values().forEach(PrefetchedQuery::cancel);
+        this.prefetchedQueries.clear();
+    }
+
     public String getLabel() {
         if (this.labelCache != null && this.value instanceof IRI) {
             IRI iri = (IRI) this.value;
@@ -118,6 +161,36 @@ public class TemplateContext {
         return "<" + this.value.stringValue() + ">";
     }
 
+    /**
+     * Records that the rendered output depends on the given value, e.g. because it
+     * has been returned by a SPARQL helper. Only IRIs are recorded.
+     */
+    public void addDependency(@Nullable Value value) {
+        if (value instanceof IRI) {
+            dependencies.add((IRI) value);
+        }
+    }
+
+    /**
+     * @return the resources the rendered output depends on
+     */
+    public Set<IRI> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Marks the rendered output as not cacheable, e.g. because it contains the
+     * current time or the results of a SPARQL query, which may change with any
+     * update of the repository.
+     */
+    public void setNotCacheable() {
+        this.cacheable = false;
+    }
+
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
     /**
      * Overrides toString() for template mechanism to access render [[this]] as the
      * string value of the current context value (i.e. resource)
@@ -0,0 +1,194 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2025, © President and Fellows of Harvard College
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.templates;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.researchspace.services.storage.api.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory index of all templates in the platform storage, keyed by the
+ * template IRI decoded from the path and by the filename.
+ *
+ * The index is built on first use from {@link PlatformStorage#findAll} and is
+ * kept up to date with the change events of the storage, i.e. a lookup does not
+ * depend on the number of templates.
+ *
+ * @see TemplateResolver
+ */
+class TemplateIndex implements StorageChangeListener {
+
+    private static final Logger logger = LogManager.getLogger(TemplateIndex.class);
+
+    private static final String TEMPLATE_EXTENSION = ".html";
+
+    private final PlatformStorage storage;
+
+    /**
+     * Current entries or {@code null} if the index needs to be (re-)built.
+     */
+    private volatile Entries entries;
+
+    private static class Entries {
+        final Map<StoragePath, PlatformStorage.FindResult> templates = new ConcurrentHashMap<>();
+        final Map<String, Set<StoragePath>> pathsByIri = new ConcurrentHashMap<>();
+        final Map<String, Set<StoragePath>> pathsByFilename = new ConcurrentHashMap<>();
+    }
+
+    TemplateIndex(PlatformStorage storage) {
+        this.storage = storage;
+    }
+
+    PlatformStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Looks up a template, trying IRIs first and filenames afterwards, each in
+     * iteration order. If multiple templates match the same key (e.g. templates
+     * with the same filename in different folders), the one with the
+     * lexicographically smallest path is returned.
+     *
+     * @param iris      IRIs to match against the IRI-encoded template paths
+     * @param filenames filenames (including extension) to match
+     * @return Optional containing the result if found
+     */
+    Optional<PlatformStorage.FindResult> find(Collection<String> iris, Collection<String> filenames)
+            throws StorageException {
+        Entries current = getEntries();
+        for (String iri : iris) {
+            Optional<PlatformStorage.FindResult> result = lookup(current, current.pathsByIri.get(iri));
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        for (String filename : filenames) {
+            Optional<PlatformStorage.FindResult> result = lookup(current, current.pathsByFilename.get(filename));
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<PlatformStorage.FindResult> lookup(Entries current, Set<StoragePath> paths) {
+        if (paths == null) {
+            return Optional.empty();
+        }
+        for (StoragePath path : paths) {
+            PlatformStorage.FindResult result = current.templates.get(path);
+            if (result != null) {
+                return Optional.of(result);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Entries getEntries() throws StorageException {
+        Entries current = entries;
+        if (current == null) {
+            synchronized (this) {
+                current = entries;
+                if (current == null) {
+                    current = build();
+                    entries = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Entries build() throws StorageException {
+        Entries built = new Entries();
+        for (Map.Entry<StoragePath, PlatformStorage.FindResult> entry : storage.findAll(ObjectKind.TEMPLATE)
+                .entrySet()) {
+            add(built, entry.getKey(), entry.getValue());
+        }
+        logger.debug("Indexed {} templates", built.templates.size());
+        return built;
+    }
+
+    private static void add(Entries target, StoragePath path, PlatformStorage.FindResult result) {
+        if (!path.hasExtension(TEMPLATE_EXTENSION)) {
+            return;
+        }
+        target.templates.put(path, result);
+        decodeIri(path).ifPresent(iri -> pathsFor(target.pathsByIri, iri).add(path));
+        pathsFor(target.pathsByFilename, filename(path)).add(path);
+    }
+
+    private static void remove(Entries target, StoragePath path) {
+        if (target.templates.remove(path) == null) {
+            return;
+        }
+        decodeIri(path).ifPresent(iri -> removePath(target.pathsByIri, iri, path));
+        removePath(target.pathsByFilename, filename(path), path);
+    }
+
+    private static Set<StoragePath> pathsFor(Map<String, Set<StoragePath>> index, String key) {
+        return index.computeIfAbsent(key,
+                k -> new ConcurrentSkipListSet<>(Comparator.comparing(StoragePath::toString)));
+    }
+
+    private static void removePath(Map<String, Set<StoragePath>> index, String key, StoragePath path) {
+        index.computeIfPresent(key, (k, paths) -> {
+            paths.remove(path);
+            return paths.isEmpty() ? null : paths;
+        });
+    }
+
+    private static Optional<String> decodeIri(StoragePath path) {
+        try {
+            return Optional.of(path.stripExtension(TEMPLATE_EXTENSION).decodeIri().stringValue());
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String filename(StoragePath path) {
+        String pathString = path.toString();
+        return pathString.substring(pathString.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public synchronized void objectChanged(String appId, StoragePath path) {
+        Entries current = entries;
+        if (current == null || !ObjectKind.TEMPLATE.isPrefixOf(path) || !path.hasExtension(TEMPLATE_EXTENSION)) {
+            return;
+        }
+        try {
+            // the changed object may still be provided by another storage
+            remove(current, path);
+            storage.findObject(path).ifPresent(result -> add(current, path, result));
+        } catch (StorageException e) {
+            logger.warn("Failed to update template index for {}, rebuilding it on next lookup: {}", path,
+                    e.getMessage());
+            entries = null;
+        }
+    }
+
+    @Override
+    public synchronized void allObjectsChanged() {
+        entries = null;
+    }
+}
@@ -0,0 +1,481 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.templates;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.Operation;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.researchspace.api.sparql.SparqlOperationBuilder;
+import org.researchspace.config.Configuration;
+import org.researchspace.config.NamespaceRegistry;
+import org.researchspace.config.groups.EnvironmentConfiguration;
+import org.researchspace.templates.helper.HelperUtil.QueryResult;
+
+import com.github.jknack.handlebars.Template;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Evaluates the SPARQL queries of the query helpers in a template concurrently
+ * before the template is applied.
+ *
+ * <p>
+ * Helpers such as <code>[[singleValueFromSelect "SELECT ..."]]</code> or
+ * <code>[[#if (ask "ASK ...")]]</code> evaluate their query while the template
+ * is rendered, i.e. one after the other in document order. If the query is
+ * passed as string literal it is known before rendering, so
+ * {@link #prefetch(Template, TemplateContext)} extracts these queries from the
+ * template source and submits them to a platform-wide pool of
+ * {@link EnvironmentConfiguration#getTemplateQueryPrefetchThreads()} threads.
+ * The helpers then use the prefetched results (see
+ * {@link #getSelectResult(TemplateContext, Repository, String)} and
+ * {@link #getAskResult(TemplateContext, String)}) instead of evaluating the
+ * query themselves.
+ * </p>
+ *
+ * <p>
+ * Queries inside <code>#if</code> and <code>#unless</code> blocks are only
+ * evaluated if the condition holds and are therefore not prefetched. Queries
+ * built dynamically (e.g. from sub-expressions) and queries in included
+ * partials are still evaluated by the helpers. If all threads are busy and the
+ * bounded queue of the pool is full, further queries are not prefetched
+ * either. If a prefetched query
+ * fails or has not been started yet when the helper needs the result, the
+ * helper evaluates the query on the rendering thread, i.e. error handling is
+ * the same as without prefetching.
+ * </p>
+ */
+@Singleton
+public class TemplateQueryPrefetcher {
+    private static final Logger logger = LogManager.getLogger(TemplateQueryPrefetcher.class);
+
+    /**
+     * Helpers taking a SPARQL SELECT query as first parameter.
+     */
+    static final Set<String> SELECT_HELPERS = ImmutableSet.of("singleValueFromSelect", "jsonValueFromSelect",
+            "jsonArrayFromSelect", "jsonObjectArrayFromSelect");
+
+    /**
+     * Helpers taking a SPARQL ASK query as first parameter.
+     */
+    static final Set<String> ASK_HELPERS = ImmutableSet.of("ask");
+
+    /**
+     * Maximum number of queries prefetched for a single template, any further
+     * queries are evaluated by the helpers.
+     */
+    static final int MAX_QUERIES_PER_TEMPLATE = 32;
+
+    /**
+     * Number of queries which may wait for a free thread per thread of the pool.
+     * Queries submitted while the queue is full are not prefetched.
+     */
+    static final int QUEUED_QUERIES_PER_THREAD = MAX_QUERIES_PER_TEMPLATE;
+
+    /**
+     * Block helpers whose content is only rendered depending on a condition.
+     */
+    static final Set<String> CONDITIONAL_BLOCK_HELPERS = ImmutableSet.of("if", "unless");
+
+    @Nullable
+    private final ThreadPoolExecutor executor;
+
+    @Inject
+    public TemplateQueryPrefetcher(Configuration config) {
+        int numberOfThreads = config.getEnvironmentConfig().getTemplateQueryPrefetchThreads();
+        if (numberOfThreads > 0) {
+            this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(numberOfThreads * QUEUED_QUERIES_PER_THREAD),
+                    new ThreadFactoryBuilder().setNameFormat("template-query-prefetch-%d").setDaemon(true).build());
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Submits all queries with statically known query string of the template for
+     * evaluation against the repository of the context. The results are stored in
+     * the context.
+     */
+    public void prefetch(Template template, TemplateContext context) {
+        if (executor == null || !(context.getValue() instanceof IRI)) {
+            return;
+        }
+        List<HelperCall> calls = findQueryHelperCalls(template.text());
+        if (calls.isEmpty()) {
+            return;
+        }
+
+        IRI userIri;
+        try {
+            userIri = context.getNamespaceRegistry().map(NamespaceRegistry::getUserIRI).orElse(null);
+        } catch (RuntimeException e) {
+            logger.debug("Not prefetching template queries, failed to resolve current user: {}", e.getMessage());
+            return;
+        }
+
+        int submitted = 0;
+        for (HelperCall call : calls) {
+            String key = call.getKey();
+            if (context.getPrefetchedQuery(key) != null) {
+                continue;
+            }
+            if (submitted++ >= MAX_QUERIES_PER_TEMPLATE) {
+                break;
+            }
+            PrefetchedQuery query = new PrefetchedQuery(call.isAsk()
+                    ? () -> evaluateAsk(call.getQuery(), context, userIri)
+                    : () -> evaluateSelect(call.getQuery(), context, userIri));
+            try {
+                query.future = executor.submit(query::run);
+            } catch (RejectedExecutionException e) {
+                // queue is full or the executor is shutting down, helpers evaluate the
+                // remaining queries
+                logger.trace("Not prefetching further queries of template, queue is full");
+                return;
+            }
+            context.addPrefetchedQuery(key, query);
+        }
+        logger.trace("Prefetching {} queries of template, queue depth: {}", submitted, executor.getQueue().size());
+    }
+
+    /**
+     * Returns the prefetched result of the SPARQL SELECT query or an empty optional
+     * if the query has not been prefetched, failed or the helper should evaluate
+     * it itself.
+     */
+    public static Optional<QueryResult> getSelectResult(TemplateContext context, Repository repository,
+            String queryString) {
+        if (repository != context.getRepository()) {
+            return Optional.empty();
+        }
+        return getResult(context, HelperCall.key(false, queryString)).map(QueryResult.class::cast);
+    }
+
+    /**
+     * Returns the prefetched result of the SPARQL ASK query or an empty optional
+     * if the query has not been prefetched, failed or the helper should evaluate
+     * it itself.
+     */
+    public static Optional<Boolean> getAskResult(TemplateContext context, String queryString) {
+        return getResult(context, HelperCall.key(true, queryString)).map(Boolean.class::cast);
+    }
+
+    private static Optional<Object> getResult(TemplateContext context, String key) {
+        PrefetchedQuery query = context.getPrefetchedQuery(key);
+        return query != null ? query.getResult() : Optional.empty();
+    }
+
+    private static QueryResult evaluateSelect(String queryString, TemplateContext context, @Nullable IRI userIri) {
+        try (RepositoryConnection con = context.getRepository().getConnection()) {
+            TupleQuery query = contextualize(SparqlOperationBuilder.<TupleQuery>create(queryString, TupleQuery.class),
+                    context, userIri).build(con);
+            try (TupleQueryResult tqr = query.evaluate()) {
+                List<BindingSet> bindings = Iterations.asList(tqr);
+                return new QueryResult(bindings, tqr.getBindingNames());
+            }
+        }
+    }
+
+    private static Boolean evaluateAsk(String queryString, TemplateContext context, @Nullable IRI userIri) {
+        try (RepositoryConnection con = context.getRepository().getConnection()) {
+            return contextualize(SparqlOperationBuilder.<BooleanQuery>create(queryString, BooleanQuery.class),
+                    context, userIri).build(con).evaluate();
+        }
+    }
+
+    private static <T extends Operation> SparqlOperationBuilder<T> contextualize(SparqlOperationBuilder<T> builder,
+            TemplateContext context, @Nullable IRI userIri) {
+        builder.resolveThis((IRI) context.getValue());
+        if (userIri != null) {
+            builder.resolveUser(userIri);
+        }
+        context.getNamespaceRegistry().map(ns -> builder.setNamespaces(ns.getPrefixMap()));
+        return builder;
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts the calls of query helpers with a string literal as first
+     * parameter from the template source, e.g. <code>[[ask "ASK {}"]]</code> or
+     * <code>[[#each (jsonObjectArrayFromSelect 'SELECT ...')]]</code>. Calls
+     * inside conditional blocks (see {@link #CONDITIONAL_BLOCK_HELPERS}) are
+     * skipped, the condition of a block itself is always evaluated.
+     */
+    static List<HelperCall> findQueryHelperCalls(String text) {
+        List<HelperCall> calls = new ArrayList<>();
+        Deque<String> openBlocks = new ArrayDeque<>();
+        int conditionalBlocks = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int start = text.indexOf("[[", i);
+            if (start < 0) {
+                break;
+            }
+            i = start + 2;
+            if (text.startsWith("!--", i)) {
+                int end = text.indexOf("--]]", i);
+                i = end < 0 ? length : end + 4;
+                continue;
+            } else if (text.startsWith("!", i)) {
+                int end = text.indexOf("]]", i);
+                i = end < 0 ? length : end + 2;
+                continue;
+            }
+
+            int nameStart = skipMarkers(text, i, "~");
+            if (text.startsWith("/", nameStart)) {
+                String closedBlock = readIdentifier(text, skipMarkers(text, nameStart + 1, ""));
+                if (openBlocks.contains(closedBlock)) {
+                    String block;
+                    do {
+                        block = openBlocks.pop();
+                        if (CONDITIONAL_BLOCK_HELPERS.contains(block)) {
+                            conditionalBlocks--;
+                        }
+                    } while (!block.equals(closedBlock));
+                }
+                int end = text.indexOf("]]", nameStart);
+                i = end < 0 ? length : end + 2;
+                continue;
+            }
+            String openedBlock = text.startsWith("#", nameStart)
+                    ? readIdentifier(text, skipMarkers(text, nameStart + 1, ">*"))
+                    : null;
+
+            // scan the tag, the query helper call is either the first expression or a
+            // sub-expression
+            boolean expressionStart = true;
+            while (i < length && !text.startsWith("]]", i)) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\'') {
+                    i = skipString(text, i, null);
+                    expressionStart = false;
+                } else if (c == '(') {
+                    i++;
+                    expressionStart = true;
+                } else if (expressionStart && isIdentifierChar(c)) {
+                    int nameEnd = i;
+                    while (nameEnd < length && isIdentifierChar(text.charAt(nameEnd))) {
+                        nameEnd++;
+                    }
+                    String name = text.substring(i, nameEnd);
+                    i = nameEnd;
+                    expressionStart = false;
+
+                    boolean ask = ASK_HELPERS.contains(name);
+                    if (!ask && !SELECT_HELPERS.contains(name)) {
+                        continue;
+                    }
+                    int paramStart = i;
+                    while (paramStart < length && Character.isWhitespace(text.charAt(paramStart))) {
+                        paramStart++;
+                    }
+                    if (paramStart > i && paramStart < length
+                            && (text.charAt(paramStart) == '"' || text.charAt(paramStart) == '\'')) {
+                        StringBuilder query = new StringBuilder();
+                        i = skipString(text, paramStart, query);
+                        if (i <= length && conditionalBlocks == 0) {
+                            calls.add(new HelperCall(ask, query.toString()));
+                        }
+                    }
+                } else {
+                    // whitespace, block and whitespace control markers may precede the helper
+                    // name
+                    if (!Character.isWhitespace(c) && "#~{&".indexOf(c) < 0) {
+                        expressionStart = false;
+                    }
+                    i++;
+                }
+            }
+            i += 2;
+
+            if (openedBlock != null && !openedBlock.isEmpty()) {
+                openBlocks.push(openedBlock);
+                if (CONDITIONAL_BLOCK_HELPERS.contains(openedBlock)) {
+                    conditionalBlocks++;
+                }
+            }
+        }
+        return calls;
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+
+    /**
+     * @return index of the first character at or after <code>start</code> which
+     *         is neither whitespace nor one of the markers
+     */
+    private static int skipMarkers(String text, int start, String markers) {
+        int i = start;
+        while (i < text.length() && (Character.isWhitespace(text.charAt(i)) || markers.indexOf(text.charAt(i)) >= 0)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String readIdentifier(String text, int start) {
+        int end = start;
+        while (end < text.length() && isIdentifierChar(text.charAt(end))) {
+            end++;
+        }
+        return text.substring(start, end);
+    }
+
+    /**
+     * Skips the Handlebars string literal starting at <code>start</code>, in which
+     * the quote character can be escaped with a backslash.
+     *
+     * @param value if not <code>null</code> the unescaped value is appended
+     * @return index after the closing quote or <code>text.length() + 1</code> if
+     *         the literal is not terminated
+     */
+    private static int skipString(String text, int start, @Nullable StringBuilder value) {
+        char quote = text.charAt(start);
+        int i = start + 1;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length() && text.charAt(i + 1) == quote) {
+                if (value != null) {
+                    value.append(quote);
+                }
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                if (value != null) {
+                    value.append(c);
+                }
+                i++;
+            }
+        }
+        return text.length() + 1;
+    }
+
+    /**
+     * Query helper call found in a template source.
+     */
+    static class HelperCall {
+        private final boolean ask;
+        private final String query;
+
+        HelperCall(boolean ask, String query) {
+            this.ask = ask;
+            this.query = query;
+        }
+
+        boolean isAsk() {
+            return ask;
+        }
+
+        String getQuery() {
+            return query;
+        }
+
+        String getKey() {
+            return key(ask, query);
+        }
+
+        static String key(boolean ask, String query) {
+            return (ask ? "ASK " : "SELECT ") + query;
+        }
+    }
+
+    /**
+     * Query submitted for evaluation. A query which has not been started by the
+     * pool when the helper needs the result is not evaluated by the pool anymore
+     * but by the helper on the rendering thread.
+     */
+    static class PrefetchedQuery {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final Callable<?> evaluation;
+        private Future<?> future;
+
+        PrefetchedQuery(Callable<?> evaluation) {
+            this.evaluation = evaluation;
+        }
+
+        private Object run() throws Exception {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            return evaluation.call();
+        }
+
+        Optional<Object> getResult() {
+            if (claimed.compareAndSet(false, true)) {
+                // still queued, evaluating on the rendering thread is faster than waiting
+                // for a free thread
+                future.cancel(false);
+                return Optional.empty();
+            }
+            try {
+                return Optional.ofNullable(future.get());
+            } catch (ExecutionException | CancellationException e) {
+                return Optional.empty();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            }
+        }
+
+        void cancel() {
+            claimed.set(true);
+            future.cancel(true);
+        }
+    }
+}
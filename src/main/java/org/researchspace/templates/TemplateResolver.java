@@ -36,10 +36,15 @@ import java.util.*;
  * - Tries direct path lookup first for optimal performance
  * - Falls back to hierarchical search across all template locations
  * - Supports both clean prefixed filenames and URL-encoded IRI filenames
+ *
+ * The hierarchical search uses a {@link TemplateIndex} if the storage publishes
+ * change events, otherwise all templates are scanned on each lookup.
  */
 public class TemplateResolver {
     
     private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private TemplateIndex index;
     
     /**
      * Resolves a template location using unified hierarchical search.
@@ -207,11 +212,16 @@ public class TemplateResolver {
     private Optional<PlatformStorage.FindResult> searchAllTemplates(Set<String> variations,
                                                                    PlatformStorage storage) {
         try {
-            Map<StoragePath, PlatformStorage.FindResult> allTemplates = storage.findAll(ObjectKind.TEMPLATE);
-            
             // Create filename patterns to match
             Set<String> filenamePatterns = generateFilenamePatterns(variations);
             
+            TemplateIndex templateIndex = getIndex(storage);
+            if (templateIndex != null) {
+                return templateIndex.find(variations, filenamePatterns);
+            }
+            
+            Map<StoragePath, PlatformStorage.FindResult> allTemplates = storage.findAll(ObjectKind.TEMPLATE);
+            
             // Search through all templates
             for (Map.Entry<StoragePath, PlatformStorage.FindResult> entry : allTemplates.entrySet()) {
                 StoragePath templatePath = entry.getKey();
@@ -235,14 +245,36 @@ public class TemplateResolver {
         return Optional.empty();
     }
     
+    /**
+     * Returns the template index for the storage, registering it for the change
+     * events of the storage on first use.
+     *
+     * @param storage The platform storage
+     * @return the index or null if the storage does not publish change events
+     */
+    private synchronized TemplateIndex getIndex(PlatformStorage storage) {
+        if (index != null && index.getStorage() == storage) {
+            return index;
+        }
+        TemplateIndex newIndex = new TemplateIndex(storage);
+        if (!storage.addChangeListener(newIndex)) {
+            return null;
+        }
+        if (index != null) {
+            index.getStorage().removeChangeListener(index);
+        }
+        index = newIndex;
+        return index;
+    }
+    
     /**
      * Generates all possible filename patterns from the given variations.
      *
      * @param variations The template variations
-     * @return Set of filename patterns to match
+     * @return Set of filename patterns to match, in order of the variations
      */
     private Set<String> generateFilenamePatterns(Set<String> variations) {
-        Set<String> filenamePatterns = new HashSet<>();
+        Set<String> filenamePatterns = new LinkedHashSet<>();
         
         for (String variation : variations) {
             // Add clean prefixed filename (e.g., "test:Person.html")
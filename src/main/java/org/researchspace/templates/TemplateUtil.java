@@ -226,7 +226,12 @@ public class TemplateUtil {
                         logger.trace("Found the following handlebar tags {} in template: {}",
                                 template.collect(TagType.values()), location);
                     }
-                    return Optional.ofNullable(template.apply(tc));
+                    tc.prefetchQueries(template);
+                    try {
+                        return Optional.ofNullable(template.apply(tc));
+                    } finally {
+                        tc.cancelPrefetchedQueries();
+                    }
                 }
             }
         } catch (Exception e) {
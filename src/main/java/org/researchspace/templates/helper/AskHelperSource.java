@@ -21,6 +21,8 @@ package org.researchspace.templates.helper;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Optional;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.query.BooleanQuery;
@@ -30,6 +32,7 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.researchspace.api.sparql.SparqlOperationBuilder;
 import org.researchspace.templates.TemplateContext;
+import org.researchspace.templates.TemplateQueryPrefetcher;
 
 import com.github.jknack.handlebars.Options;
 import com.github.jknack.handlebars.helper.IfHelper;
@@ -64,6 +67,12 @@ public class AskHelperSource {
     public String ask(String param0, Options options) {
         TemplateContext context = (TemplateContext) options.context.model();
         String queryString = checkNotNull(param0);
+        // the answer does not reveal the resources it depends on
+        context.setNotCacheable();
+        Optional<Boolean> prefetched = TemplateQueryPrefetcher.getAskResult(context, queryString);
+        if (prefetched.isPresent()) {
+            return prefetched.get() ? "true" : "";
+        }
         try (RepositoryConnection con = context.getRepository().getConnection()) {
             SparqlOperationBuilder<BooleanQuery> tqb = HelperUtil.contextualizeSparqlOperation(
                     SparqlOperationBuilder.<BooleanQuery>create(queryString, BooleanQuery.class), context);
@@ -22,6 +22,8 @@ package org.researchspace.templates.helper;
 import java.util.Date;
 import java.text.SimpleDateFormat;
 
+import org.researchspace.templates.TemplateContext;
+
 import com.github.jknack.handlebars.Options;
 
 public class DateTimeHelperSource {
@@ -39,6 +41,11 @@ public class DateTimeHelperSource {
      * </pre>
      */
     public String currentDateTime(Options options) {
+        // the output changes with each rendering
+        Object root = options.context.data("root");
+        if (root instanceof TemplateContext) {
+            ((TemplateContext) root).setNotCacheable();
+        }
         String format = options.hash("format", "dd.MM.yyyy HH:mm:ss.SSS");
         SimpleDateFormat dateFormat = new SimpleDateFormat(format);
         Date date = new Date();
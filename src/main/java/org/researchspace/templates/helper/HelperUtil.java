@@ -22,6 +22,7 @@ package org.researchspace.templates.helper;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.logging.log4j.Logger;
@@ -39,6 +40,7 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.researchspace.api.sparql.SparqlOperationBuilder;
 import org.researchspace.templates.TemplateContext;
+import org.researchspace.templates.TemplateQueryPrefetcher;
 
 import com.github.jknack.handlebars.Options;
 
@@ -89,6 +91,12 @@ public class HelperUtil {
             Repository repository) {
         TemplateContext context = (TemplateContext) options.context.model();
         String queryString = checkNotNull(param0, "Query string must not be null.");
+        Optional<QueryResult> prefetched = TemplateQueryPrefetcher.getSelectResult(context, repository, queryString);
+        // results may change with any update, i.e. the dependencies are not known
+        context.setNotCacheable();
+        if (prefetched.isPresent()) {
+            return prefetched.get();
+        }
         try (RepositoryConnection con = repository.getConnection()) {
             SparqlOperationBuilder<Operation> tqb = HelperUtil
                     .contextualizeSparqlOperation(SparqlOperationBuilder.create(queryString), context);
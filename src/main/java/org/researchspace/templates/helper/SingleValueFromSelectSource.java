@@ -22,11 +22,14 @@ package org.researchspace.templates.helper;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.MalformedQueryException;
@@ -38,6 +41,8 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.researchspace.api.sparql.SparqlOperationBuilder;
 import org.researchspace.templates.TemplateContext;
+import org.researchspace.templates.TemplateQueryPrefetcher;
+import org.researchspace.templates.helper.HelperUtil.QueryResult;
 
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Options;
@@ -56,6 +61,14 @@ public class SingleValueFromSelectSource {
         String queryString = checkNotNull(param0, "Query string must not be null.");
         String bindingVariable = options.hash("binding");
 
+        Optional<QueryResult> prefetched = TemplateQueryPrefetcher.getSelectResult(context, context.getRepository(),
+                queryString);
+        // results may change with any update, i.e. the dependencies are not known
+        context.setNotCacheable();
+        if (prefetched.isPresent()) {
+            return getSingleValue(prefetched.get().bindingNames, prefetched.get().bindings, bindingVariable);
+        }
+
         try (RepositoryConnection con = context.getRepository().getConnection()) {
             SparqlOperationBuilder<Operation> tqb = HelperUtil
                     .contextualizeSparqlOperation(SparqlOperationBuilder.create(queryString), context);
@@ -67,32 +80,13 @@ public class SingleValueFromSelectSource {
 
             logger.trace("Evaluating SPARQL SELECT in {} Template Helper: {}", options.helperName, queryString);
             try (TupleQueryResult tqr = ((TupleQuery) op).evaluate()) {
-                if (!StringUtils.isEmpty(bindingVariable) && !tqr.getBindingNames().contains(bindingVariable)) {
-                    throw new IllegalArgumentException(
-                            "Binding variable " + bindingVariable + " does not exist in query result.");
-                }
-                if (StringUtils.isEmpty(bindingVariable)) {
-                    bindingVariable = tqr.getBindingNames().get(0);
-                }
-
                 // workaround, we need to iterate over the result entirely otherwise sesame will
                 // throw exception
                 // info.aduna.io.UncloseableInputStream.doClose(UncloseableInputStream.java:45)
                 // at
                 // org.eclipse.rdf4j.query.resultio.sparqlxml.AbstractSPARQLXMLParser.parseQueryResultInternal(AbstractSPARQLXMLParser.java:155)
-                String stringValue = null;
-                while (tqr.hasNext()) {
-                    BindingSet b = tqr.next();
-
-                    Value v = b.getValue(bindingVariable);
-                    if (v != null && stringValue == null) {
-                        // TODO check whether this is safe enough or even to restrictive
-                        stringValue = new Handlebars.SafeString(StringEscapeUtils.escapeHtml4(v.stringValue()))
-                                .toString();
-                    }
-
-                }
-                return stringValue != null ? stringValue : "";
+                List<BindingSet> bindings = Iterations.asList(tqr);
+                return getSingleValue(tqr.getBindingNames(), bindings, bindingVariable);
             }
         } catch (RepositoryException e) {
             throw new RuntimeException("Repository Exception while evaluating query in \"" + options.helperName
@@ -106,4 +100,25 @@ public class SingleValueFromSelectSource {
                     e);
         }
     }
+
+    private static String getSingleValue(List<String> bindingNames, List<BindingSet> bindings,
+            String bindingVariable) {
+        if (!StringUtils.isEmpty(bindingVariable) && !bindingNames.contains(bindingVariable)) {
+            throw new IllegalArgumentException(
+                    "Binding variable " + bindingVariable + " does not exist in query result.");
+        }
+        if (StringUtils.isEmpty(bindingVariable)) {
+            bindingVariable = bindingNames.get(0);
+        }
+
+        String stringValue = null;
+        for (BindingSet b : bindings) {
+            Value v = b.getValue(bindingVariable);
+            if (v != null && stringValue == null) {
+                // TODO check whether this is safe enough or even to restrictive
+                stringValue = new Handlebars.SafeString(StringEscapeUtils.escapeHtml4(v.stringValue())).toString();
+            }
+        }
+        return stringValue != null ? stringValue : "";
+    }
 }
\ No newline at end of file
@@ -50,55 +50,8 @@ public class DefaultThumbnailService implements ThumbnailService {
 
     private Configuration config;
     private NamespaceRegistry namespaceRegistry;
-    private final CacheManager cacheManager;
-
-    private ResourcePropertyCache<IRI, Value> cache = new ResourcePropertyCache<IRI, Value>(
-            DEFAULT_THUMBNAIL_SERVICE_CACHE_ID) {
-        @Override
-        protected IRI keyToIri(IRI iri) {
-            return iri;
-        }
-
-        @Override
-        protected java.util.Optional<CacheManager> cacheManager() {
-            return Optional.of(cacheManager);
-        };
-
-        @Override
-        protected Map<IRI, Optional<Value>> queryAll(Repository repository, Iterable<? extends IRI> iris) {
-            if (Iterables.isEmpty(iris)) {
-                return Collections.emptyMap();
-            }
-
-            List<String> preferredThumbnails = config.getUiConfig().getPreferredThumbnails();
-            try {
-                List<PropertyPattern> thumbnailPatterns = preferredThumbnails.stream()
-                        .map(pattern -> PropertyPattern.parse(pattern, namespaceRegistry)).collect(Collectors.toList());
-
-                String query = constructPropertyQuery(iris, thumbnailPatterns);
-
-                Map<IRI, List<List<Value>>> iriToPredicateToThumbnail = queryAndExtractProperties(repository, query,
-                        thumbnailPatterns.size(), value -> {
-                            if (value != null) {
-                                return Optional.of(value);
-                            } else {
-                                return Optional.empty();
-                            }
-                        });
-
-                Map<IRI, Optional<Value>> thumbnails = new HashMap<>();
-                for (IRI iri : iris) {
-                    Optional<Value> thumbnail = flattenProperties(iriToPredicateToThumbnail.get(iri)).stream()
-                            .findFirst();
-                    thumbnails.put(iri, thumbnail);
-                }
 
-                return thumbnails;
-            } catch (Exception ex) {
-                throw new RuntimeException("Failed to query for thumbnails of IRI(s).", ex);
-            }
-        }
-    };
+    private final ResourcePropertyCache<IRI, Value> cache;
 
     @Inject
     public DefaultThumbnailService(Configuration config, NamespaceRegistry namespaceRegistry,
@@ -106,10 +59,55 @@ public class DefaultThumbnailService implements ThumbnailService {
         this.config = config;
         this.namespaceRegistry = namespaceRegistry;
         thumbnailServiceRegistry.register(this);
-        this.cacheManager = cacheManager;
+        this.cache = createCache(cacheManager);
         cacheManager.register(cache);
     }
 
+    private ResourcePropertyCache<IRI, Value> createCache(CacheManager cacheManager) {
+        return new ResourcePropertyCache<IRI, Value>(DEFAULT_THUMBNAIL_SERVICE_CACHE_ID, cacheManager) {
+            @Override
+            protected IRI keyToIri(IRI iri) {
+                return iri;
+            }
+
+            @Override
+            protected Map<IRI, Optional<Value>> queryAll(Repository repository, Iterable<? extends IRI> iris) {
+                if (Iterables.isEmpty(iris)) {
+                    return Collections.emptyMap();
+                }
+
+                List<String> preferredThumbnails = config.getUiConfig().getPreferredThumbnails();
+                try {
+                    List<PropertyPattern> thumbnailPatterns = preferredThumbnails.stream()
+                            .map(pattern -> PropertyPattern.parse(pattern, namespaceRegistry))
+                            .collect(Collectors.toList());
+
+                    String query = constructPropertyQuery(iris, thumbnailPatterns);
+
+                    Map<IRI, List<List<Value>>> iriToPredicateToThumbnail = queryAndExtractProperties(repository, query,
+                            thumbnailPatterns.size(), value -> {
+                                if (value != null) {
+                                    return Optional.of(value);
+                                } else {
+                                    return Optional.empty();
+                                }
+                            });
+
+                    Map<IRI, Optional<Value>> thumbnails = new HashMap<>();
+                    for (IRI iri : iris) {
+                        Optional<Value> thumbnail = flattenProperties(iriToPredicateToThumbnail.get(iri)).stream()
+                                .findFirst();
+                        thumbnails.put(iri, thumbnail);
+                    }
+
+                    return thumbnails;
+                } catch (Exception ex) {
+                    throw new RuntimeException("Failed to query for thumbnails of IRI(s).", ex);
+                }
+            }
+        };
+    }
+
     @Override
     public String getThumbnailServiceName() {
         return "default";
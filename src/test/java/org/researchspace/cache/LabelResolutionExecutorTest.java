@@ -0,0 +1,133 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.researchspace.config.Configuration;
+import org.researchspace.config.groups.EnvironmentConfiguration;
+
+/**
+ * Test cases for the per-repository permits of {@link LabelResolutionExecutor}.
+ */
+public class LabelResolutionExecutorTest {
+
+    private final Repository repository = Mockito.mock(Repository.class);
+
+    private final LabelResolutionExecutor executor = executor(1, 2);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPermitsAreReleasedAfterTimeout() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        // three batches: the first one blocks the only thread, the second one is
+        // queued and the third one waits for a permit
+        List<List<Integer>> batches = Arrays.asList(Collections.singletonList(1), Collections.singletonList(2),
+                Collections.singletonList(3));
+        try {
+            executor.invokeAll(repository, batches, batch -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+                return Collections.emptyMap();
+            }, 200, TimeUnit.MILLISECONDS);
+            Assert.fail("Expected timeout");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Timeout"));
+        }
+
+        awaitAvailablePermits(2);
+
+        // the repository can still be queried
+        Map<Integer, String> result = executor.invokeAll(repository, batches,
+                batch -> Collections.<Integer, String>singletonMap(batch.get(0), "label " + batch.get(0)), 10,
+                TimeUnit.SECONDS);
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(2, executor.getAvailablePermits(repository));
+    }
+
+    @Test
+    public void testCancelledBatchesKeepTheirPermitWhileRunning() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            executor.invokeAll(repository, Collections.singletonList(Collections.singletonList(1)), batch -> {
+                started.countDown();
+                // keeps using the repository although it has been cancelled
+                boolean interrupted = false;
+                while (blocked.getCount() > 0) {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return Collections.emptyMap();
+            }, 200, TimeUnit.MILLISECONDS);
+            Assert.fail("Expected timeout");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Timeout"));
+        }
+
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, executor.getAvailablePermits(repository));
+
+        blocked.countDown();
+        awaitAvailablePermits(2);
+    }
+
+    private void awaitAvailablePermits(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getAvailablePermits(repository) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, executor.getAvailablePermits(repository));
+    }
+
+    private static LabelResolutionExecutor executor(int threads, int maxConcurrencyPerRepository) {
+        Configuration config = Mockito.mock(Configuration.class);
+        EnvironmentConfiguration envConfig = Mockito.mock(EnvironmentConfiguration.class);
+        Mockito.when(config.getEnvironmentConfig()).thenReturn(envConfig);
+        Mockito.when(envConfig.getLabelsResolutionThreads()).thenReturn(threads);
+        Mockito.when(envConfig.getLabelsResolutionMaxConcurrencyPerRepository())
+                .thenReturn(maxConcurrencyPerRepository);
+        return new LabelResolutionExecutor(config);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.google.common.collect.Sets;
+
+/**
+ * Test cases for {@link PlatformCacheStatsCounter} and
+ * {@link PlatformCacheStatistics}.
+ */
+public class PlatformCacheStatsCounterTest {
+
+    @Test
+    public void testLoadLatencyPercentiles() {
+        PlatformCacheStatsCounter counter = new PlatformCacheStatsCounter();
+        Assert.assertEquals(-1, counter.getLoadLatencyPercentileMillis(0.5));
+
+        for (int i = 0; i < 90; i++) {
+            counter.recordLoadSuccess(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        for (int i = 0; i < 10; i++) {
+            counter.recordLoadSuccess(TimeUnit.MILLISECONDS.toNanos(150));
+        }
+
+        Assert.assertEquals(5, counter.getLoadLatencyPercentileMillis(0.5));
+        Assert.assertEquals(5, counter.getLoadLatencyPercentileMillis(0.9));
+        Assert.assertEquals(200, counter.getLoadLatencyPercentileMillis(0.99));
+        Assert.assertEquals(100, counter.snapshot().loadSuccessCount());
+    }
+
+    @Test
+    public void testStatisticsOfManagedCache() {
+        CacheManager cacheManager = new CacheManager();
+        Cache<String, String> cache = cacheManager
+                .newBuilder("test.Cache", builder -> builder.maximumSize(10).executor(Runnable::run)).build();
+
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.getIfPresent("a");
+        cache.getIfPresent("a");
+        cache.getIfPresent("c");
+
+        PlatformCacheStatistics statistics = PlatformCacheStatistics.of("test.Cache",
+                cacheManager.getStatsCounter("test.Cache"), Collections.singletonList(cache), 1);
+        Assert.assertEquals(2, statistics.getSize());
+        Assert.assertEquals(2, statistics.getHitCount());
+        Assert.assertEquals(1, statistics.getMissCount());
+        Assert.assertEquals(1, statistics.getHotKeys().size());
+    }
+
+    @Test
+    public void testStatisticsOfConfiguredCacheRecordingStats() {
+        CacheManager cacheManager = new CacheManager() {
+            @Override
+            public String getCacheSpec(String cacheId) {
+                return "maximumSize=10, recordStats";
+            }
+        };
+        Cache<String, String> cache = cacheManager.newBuilder("test.Cache").executor(Runnable::run).build();
+
+        cache.put("a", "1");
+        cache.getIfPresent("a");
+        cache.getIfPresent("b");
+
+        Assert.assertEquals(1, cacheManager.getStatsCounter("test.Cache").snapshot().hitCount());
+        Assert.assertEquals(1, cacheManager.getStatsCounter("test.Cache").snapshot().missCount());
+    }
+
+    @Test
+    public void testHotKeysOfAllCaches() {
+        CacheManager cacheManager = new CacheManager();
+        Cache<String, String> first = cacheManager
+                .newBuilder("test.Cache", builder -> builder.maximumSize(10).executor(Runnable::run)).build();
+        Cache<String, String> second = cacheManager
+                .newBuilder("test.Cache", builder -> builder.maximumSize(10).executor(Runnable::run)).build();
+        first.put("a", "1");
+        first.put("b", "2");
+        second.put("c", "3");
+
+        PlatformCacheStatistics statistics = PlatformCacheStatistics.of("test.Cache",
+                cacheManager.getStatsCounter("test.Cache"), Arrays.asList(first, second), 2);
+        Assert.assertEquals(3, statistics.getSize());
+        Assert.assertEquals(2, statistics.getHotKeys().size());
+        Assert.assertTrue(statistics.getHotKeys().contains("c"));
+
+        statistics = PlatformCacheStatistics.of("test.Cache", cacheManager.getStatsCounter("test.Cache"),
+                Arrays.asList(first, second), 10);
+        Assert.assertEquals(Sets.newHashSet("a", "b", "c"), Sets.newHashSet(statistics.getHotKeys()));
+    }
+
+    @Test
+    public void testCachesWithoutStatisticsAreSkipped() {
+        CacheManager cacheManager = new CacheManager();
+        cacheManager.register(new PlatformCache() {
+            @Override
+            public void invalidate() {
+            }
+
+            @Override
+            public void invalidate(Set<IRI> iris) {
+            }
+
+            @Override
+            public String getId() {
+                return "test.NoStatistics";
+            }
+        });
+        Assert.assertTrue(cacheManager.getStatistics(10).isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.researchspace.services.storage.api.ObjectKind;
+import org.researchspace.services.storage.api.PlatformStorage;
+import org.researchspace.services.storage.api.StorageChangeListener;
+import org.researchspace.services.storage.api.StoragePath;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Test cases for the invalidation of {@link RenderedPageCache}.
+ */
+public class RenderedPageCacheTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final PlatformStorage storage = Mockito.mock(PlatformStorage.class);
+
+    private RenderedPageCache cache;
+
+    private StorageChangeListener storageListener;
+
+    @Before
+    public void setUp() {
+        ArgumentCaptor<StorageChangeListener> listener = ArgumentCaptor.forClass(StorageChangeListener.class);
+        Mockito.when(storage.addChangeListener(listener.capture())).thenReturn(true);
+        cache = new RenderedPageCache(new CacheManager() {
+            @Override
+            public String getCacheSpec(String cacheId) {
+                return RenderedPageCache.CACHE_ID.equals(cacheId) ? "maximumSize=100" : null;
+            }
+        }, storage);
+        storageListener = listener.getValue();
+    }
+
+    @Test
+    public void testPagesAreOnlyCachedIfConfigured() {
+        RenderedPageCache unconfigured = new RenderedPageCache(new CacheManager(), storage);
+        Assert.assertFalse(unconfigured.isEnabled());
+        unconfigured.put(key(1), "page1", Sets.newHashSet(iri(1)), unconfigured.getGeneration());
+        Assert.assertEquals(Optional.empty(), unconfigured.getIfPresent(key(1)));
+
+        Assert.assertTrue(cache.isEnabled());
+        cache.put(key(1), "page1", Sets.newHashSet(iri(1)), cache.getGeneration());
+        Assert.assertEquals(Optional.of("page1"), cache.getIfPresent(key(1)));
+    }
+
+    @Test
+    public void testInvalidateDependentResources() {
+        cache.put(key(1), "page1", Sets.newHashSet(iri(1), iri(10)), cache.getGeneration());
+        cache.put(key(2), "page2", Sets.newHashSet(iri(2), iri(10)), cache.getGeneration());
+        cache.put(key(3), "page3", Sets.newHashSet(iri(3)), cache.getGeneration());
+
+        cache.invalidate(Sets.newHashSet(iri(10)));
+
+        Assert.assertEquals(Optional.empty(), cache.getIfPresent(key(1)));
+        Assert.assertEquals(Optional.empty(), cache.getIfPresent(key(2)));
+        Assert.assertEquals(Optional.of("page3"), cache.getIfPresent(key(3)));
+    }
+
+    @Test
+    public void testTemplateChangeInvalidatesAllPages() {
+        cache.put(key(1), "page1", Sets.newHashSet(iri(1)), cache.getGeneration());
+
+        storageListener.objectChanged(PlatformStorage.DEVELOPMENT_RUNTIME_STORAGE_KEY,
+                ObjectKind.CONFIG.resolve("ui.prop"));
+        Assert.assertEquals(Optional.of("page1"), cache.getIfPresent(key(1)));
+
+        StoragePath templatePath = ObjectKind.TEMPLATE.resolve("http%3A%2F%2Fexample.org%2FPerson.html");
+        storageListener.objectChanged(PlatformStorage.DEVELOPMENT_RUNTIME_STORAGE_KEY, templatePath);
+        Assert.assertEquals(Optional.empty(), cache.getIfPresent(key(1)));
+    }
+
+    @Test
+    public void testPagesRenderedDuringInvalidationAreNotCached() {
+        long generation = cache.getGeneration();
+        cache.invalidate(Sets.newHashSet(iri(10)));
+        cache.put(key(1), "page1", Sets.newHashSet(iri(1)), generation);
+        Assert.assertEquals(Optional.empty(), cache.getIfPresent(key(1)));
+
+        cache.put(key(1), "page1", Sets.newHashSet(iri(1)), cache.getGeneration());
+        Assert.assertEquals(Optional.of("page1"), cache.getIfPresent(key(1)));
+    }
+
+    private static List<Object> key(int i) {
+        return Arrays.asList(iri(i), "default", "admin");
+    }
+
+    private static IRI iri(int i) {
+        return vf.createIRI("http://example.org/s" + i);
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.Repository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Sets;
+
+/**
+ * Test cases for the request coalescing of {@link ResourcePropertyCache}.
+ */
+public class ResourcePropertyCacheTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final Repository repository = Mockito.mock(Repository.class);
+
+    private final AtomicInteger queryCount = new AtomicInteger();
+
+    private final Map<IRI, AtomicInteger> keyLoadCount = new ConcurrentHashMap<>();
+
+    private final ResourcePropertyCache<IRI, String> cache = new ResourcePropertyCache<IRI, String>("test.Cache") {
+        @Override
+        protected IRI keyToIri(IRI key) {
+            return key;
+        }
+
+        @Override
+        protected long getCoalescingWindowMillis() {
+            return 50;
+        }
+
+        @Override
+        protected Map<IRI, Optional<String>> queryAll(Repository repository, Iterable<? extends IRI> iris) {
+            queryCount.incrementAndGet();
+            Map<IRI, Optional<String>> result = new HashMap<>();
+            for (IRI iri : iris) {
+                keyLoadCount.computeIfAbsent(iri, key -> new AtomicInteger()).incrementAndGet();
+                result.put(iri, Optional.of(iri.getLocalName()));
+            }
+            return result;
+        }
+    };
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        int numberOfCallers = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfCallers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<IRI, Optional<String>>>> futures = new ArrayList<>();
+        try {
+            for (int caller = 0; caller < numberOfCallers; caller++) {
+                // overlapping key sets: caller i asks for s(i) ... s(i + 9)
+                List<IRI> keys = new ArrayList<>();
+                for (int i = caller; i < caller + 10; i++) {
+                    keys.add(iri(i));
+                }
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.getAll(repository, keys);
+                }));
+            }
+            start.countDown();
+
+            for (int caller = 0; caller < numberOfCallers; caller++) {
+                Map<IRI, Optional<String>> result = futures.get(caller).get(10, TimeUnit.SECONDS);
+                Assert.assertEquals(10, result.size());
+                Assert.assertEquals(Optional.of("s" + caller), result.get(iri(caller)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertTrue("Expected coalesced queries, but got " + queryCount.get(),
+                queryCount.get() < numberOfCallers);
+        keyLoadCount.forEach((key, count) -> Assert.assertEquals("Key loaded more than once: " + key, 1, count.get()));
+    }
+
+    @Test
+    public void testIsolatedMissesDoNotWaitForTheWindow() throws Exception {
+        ResourcePropertyCache<IRI, String> slowWindowCache = new ResourcePropertyCache<IRI, String>("test.Window") {
+            @Override
+            protected IRI keyToIri(IRI key) {
+                return key;
+            }
+
+            @Override
+            protected long getCoalescingWindowMillis() {
+                return 10000;
+            }
+
+            @Override
+            protected Map<IRI, Optional<String>> queryAll(Repository repository, Iterable<? extends IRI> iris) {
+                Map<IRI, Optional<String>> result = new HashMap<>();
+                for (IRI iri : iris) {
+                    result.put(iri, Optional.of(iri.getLocalName()));
+                }
+                return result;
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Optional.of("s" + i),
+                    slowWindowCache.getAll(repository, Collections.singletonList(iri(i))).get(iri(i)));
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+    }
+
+    @Test
+    public void testCachedValuesAreNotQueriedAgain() throws Exception {
+        cache.getAll(repository, Sets.newHashSet(iri(1), iri(2)));
+        Assert.assertEquals(1, queryCount.get());
+
+        Map<IRI, Optional<String>> result = cache.getAll(repository, Sets.newHashSet(iri(1), iri(2), iri(3)));
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(2, queryCount.get());
+        Assert.assertEquals(1, keyLoadCount.get(iri(1)).get());
+        Assert.assertEquals(1, keyLoadCount.get(iri(3)).get());
+    }
+
+    @Test
+    public void testInvalidateResources() throws Exception {
+        cache.getAll(repository, Sets.newHashSet(iri(1), iri(2), iri(3)));
+        Assert.assertEquals(1, queryCount.get());
+
+        cache.invalidate(Sets.newHashSet(iri(2), iri(4)));
+
+        cache.getAll(repository, Sets.newHashSet(iri(1), iri(2), iri(3)));
+        Assert.assertEquals(2, queryCount.get());
+        Assert.assertEquals(1, keyLoadCount.get(iri(1)).get());
+        Assert.assertEquals(2, keyLoadCount.get(iri(2)).get());
+        Assert.assertEquals(1, keyLoadCount.get(iri(3)).get());
+
+        // invalidated keys are re-indexed after loading
+        cache.invalidate(Sets.newHashSet(iri(2)));
+        cache.getAll(repository, Sets.newHashSet(iri(2)));
+        Assert.assertEquals(3, keyLoadCount.get(iri(2)).get());
+    }
+
+    @Test
+    public void testConcurrentlyReloadedKeysAreInvalidated() throws Exception {
+        ResourcePropertyCache<IRI, String> smallCache = new ResourcePropertyCache<IRI, String>("test.SmallCache") {
+            @Override
+            protected IRI keyToIri(IRI key) {
+                return key;
+            }
+
+            @Override
+            protected long getCoalescingWindowMillis() {
+                return 0;
+            }
+
+            @Override
+            protected Caffeine<Object, Object> createCacheBuilder() {
+                return Caffeine.newBuilder().maximumSize(10);
+            }
+
+            @Override
+            protected Map<IRI, Optional<String>> queryAll(Repository repository, Iterable<? extends IRI> iris) {
+                Map<IRI, Optional<String>> result = new HashMap<>();
+                for (IRI iri : iris) {
+                    result.put(iri, Optional.of(iri.getLocalName()));
+                }
+                return result;
+            }
+        };
+
+        // keys are constantly evicted and re-loaded while their removal is
+        // notified asynchronously
+        int numberOfCallers = 8;
+        int numberOfKeys = 30;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfCallers);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int caller = 0; caller < numberOfCallers; caller++) {
+                int offset = caller;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        smallCache.getAll(repository, Collections.singletonList(iri((offset + i * 7) % numberOfKeys)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+
+        Set<IRI> allIris = new HashSet<>();
+        for (int i = 0; i < numberOfKeys; i++) {
+            allIris.add(iri(i));
+        }
+        smallCache.invalidate(allIris);
+        Assert.assertEquals("Keys missing from the IRI index", 0, smallCache.getStatistics(0).getSize());
+    }
+
+    private static IRI iri(int i) {
+        return vf.createIRI("http://example.org/s" + i);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.federation.repository;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.researchspace.federation.repository.FederationStatistics.PatternShape;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Test cases for the estimates and the persistence of
+ * {@link FederationStatistics}.
+ */
+public class FederationStatisticsTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final IRI PREDICATE = vf.createIRI("http://example.org/p");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMovingAverages() throws Exception {
+        FederationStatistics statistics = new FederationStatistics(null);
+        Assert.assertFalse(statistics.getCardinality("member", PREDICATE).isPresent());
+
+        statistics.recordCardinality("member", PREDICATE, 100);
+        Assert.assertEquals(100, statistics.getCardinality("member", PREDICATE).getAsDouble(), 0.001);
+
+        statistics.recordCardinality("member", PREDICATE, 200);
+        Assert.assertEquals(100 + FederationStatistics.SMOOTHING_FACTOR * 100,
+                statistics.getCardinality("member", PREDICATE).getAsDouble(), 0.001);
+        Assert.assertFalse(statistics.getCardinality("other", PREDICATE).isPresent());
+
+        statistics.recordLatency("member", TimeUnit.MILLISECONDS.toNanos(250));
+        Assert.assertEquals(250, statistics.getLatencyMillis("member").getAsDouble(), 0.001);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(folder.getRoot(), "statistics.tsv");
+        FederationStatistics statistics = new FederationStatistics(file);
+        statistics.recordCardinality("member", PREDICATE, 42);
+        statistics.recordLatency("http://example.org/sparql", TimeUnit.MILLISECONDS.toNanos(10));
+        statistics.recordResults("http://example.org/sparql", 7);
+        statistics.save();
+
+        FederationStatistics loaded = new FederationStatistics(file);
+        Assert.assertEquals(42, loaded.getCardinality("member", PREDICATE).getAsDouble(), 0.001);
+        Assert.assertEquals(10, loaded.getLatencyMillis("http://example.org/sparql").getAsDouble(), 0.001);
+        Assert.assertEquals(7, loaded.getResultsPerRequest("http://example.org/sparql").getAsDouble(), 0.001);
+        Assert.assertEquals(ImmutableSet.of(PREDICATE), loaded.getPredicates("member"));
+        Assert.assertFalse(loaded.getLatencyMillis("member").isPresent());
+    }
+
+    @Test
+    public void testBoundPatternsAndProbesAreKeptApart() throws Exception {
+        File file = new File(folder.getRoot(), "statistics.tsv");
+        FederationStatistics statistics = new FederationStatistics(file);
+        statistics.recordCardinality("member", PREDICATE, 1000);
+        statistics.recordCardinality("member", PREDICATE, PatternShape.SUBJECT_BOUND, 2.5);
+        statistics.recordLatency("member", TimeUnit.MILLISECONDS.toNanos(20));
+        statistics.recordProbeLatency("member", TimeUnit.MILLISECONDS.toNanos(3000));
+        statistics.save();
+
+        FederationStatistics loaded = new FederationStatistics(file);
+        Assert.assertEquals(1000, loaded.getCardinality("member", PREDICATE).getAsDouble(), 0.001);
+        Assert.assertEquals(2.5,
+                loaded.getCardinality("member", PREDICATE, PatternShape.SUBJECT_BOUND).getAsDouble(), 0.001);
+        Assert.assertFalse(loaded.getCardinality("member", PREDICATE, PatternShape.OBJECT_BOUND).isPresent());
+        Assert.assertEquals(20, loaded.getLatencyMillis("member").getAsDouble(), 0.001);
+        Assert.assertEquals(3000, loaded.getProbeLatencyMillis("member").getAsDouble(), 0.001);
+    }
+}
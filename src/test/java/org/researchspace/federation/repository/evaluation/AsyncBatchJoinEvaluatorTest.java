@@ -0,0 +1,81 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Service;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test cases for the grouping of block results by {@link AsyncBatchJoinEvaluator}.
+ */
+public class AsyncBatchJoinEvaluatorTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    @Test
+    public void testResultsAreGroupedByKey() throws Exception {
+        MpFederationStrategy strategy = Mockito.mock(MpFederationStrategy.class);
+        Service service = Mockito.mock(Service.class);
+        List<BindingSet> keys = Arrays.asList(key(1), key(2), key(3));
+        Mockito.when(strategy.evaluateUsingBoundJoin(service, keys))
+                .thenReturn(new CollectionIteration<BindingSet, QueryEvaluationException>(
+                        Arrays.asList(result(1, "a"), result(2, "b"), result(1, "c"))));
+
+        Map<BindingSet, List<BindingSet>> results = new AsyncBatchJoinEvaluator(strategy, service, keys,
+                new BoundJoinBlockSizer()).call();
+
+        Assert.assertEquals(Arrays.asList(result(1, "a"), result(1, "c")), results.get(key(1)));
+        Assert.assertEquals(Arrays.asList(result(2, "b")), results.get(key(2)));
+        Assert.assertNull(results.get(key(3)));
+    }
+
+    @Test
+    public void testBlocksWithTooManyResultsAreNotGrouped() throws Exception {
+        MpFederationStrategy strategy = Mockito.mock(MpFederationStrategy.class);
+        Service service = Mockito.mock(Service.class);
+        List<BindingSet> keys = Arrays.asList(key(1), key(2));
+        Mockito.when(strategy.evaluateUsingBoundJoin(service, keys))
+                .thenReturn(new CollectionIteration<BindingSet, QueryEvaluationException>(
+                        Arrays.asList(result(1, "a"), result(2, "b"), result(1, "c"))));
+        BoundJoinBlockSizer blockSizer = new BoundJoinBlockSizer(1, 10, 20000, 1000, 2);
+
+        Assert.assertNull(new AsyncBatchJoinEvaluator(strategy, service, keys, blockSizer).call());
+    }
+
+    private static BindingSet key(int i) {
+        return new ListBindingSet(Arrays.asList("x"), vf.createIRI("http://example.org/s" + i));
+    }
+
+    private static BindingSet result(int i, String label) {
+        return new ListBindingSet(Arrays.asList("x", "label"), vf.createIRI("http://example.org/s" + i),
+                vf.createLiteral(label));
+    }
+}
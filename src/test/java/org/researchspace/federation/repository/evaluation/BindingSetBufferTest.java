@@ -0,0 +1,142 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Test cases for the encoding and spilling of {@link BindingSetBuffer}.
+ */
+public class BindingSetBufferTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    @Test
+    public void testRowsAreReturnedInInsertionOrder() throws Exception {
+        List<BindingSet> rows = rows(100);
+        try (BindingSetBuffer buffer = new BindingSetBuffer()) {
+            rows.forEach(buffer::add);
+
+            Assert.assertFalse(buffer.isSpilled());
+            Assert.assertEquals(rows, Lists.newArrayList(buffer));
+            Assert.assertEquals(Sets.newHashSet("s", "label", "type"), buffer.getBindingNames());
+        }
+    }
+
+    @Test
+    public void testRowsExceedingTheBudgetAreSpilled() throws Exception {
+        List<BindingSet> rows = rows(1000);
+        try (BindingSetBuffer buffer = new BindingSetBuffer(1024)) {
+            rows.forEach(buffer::add);
+
+            Assert.assertTrue(buffer.isSpilled());
+            Assert.assertEquals(1000, buffer.size());
+            Assert.assertEquals(rows, Lists.newArrayList(buffer));
+            Assert.assertEquals(rows.get(999), buffer.get(999));
+        }
+    }
+
+    @Test
+    public void testHashJoinOverBuffers() throws Exception {
+        BindingSetBuffer left = new BindingSetBuffer();
+        BindingSetBuffer right = new BindingSetBuffer(0);
+        for (BindingSet row : rows(10)) {
+            left.add(row);
+        }
+        for (int i = 0; i < 20; i++) {
+            right.add(new ListBindingSet(Arrays.asList("s", "count"), iri("s" + (i % 5)), vf.createLiteral(i)));
+        }
+        // joins with every row of the left input
+        right.add(new ListBindingSet(Arrays.asList("count"), vf.createLiteral(-1)));
+
+        List<BindingSet> results = new ArrayList<>();
+        try (BufferHashJoinIteration join = new BufferHashJoinIteration(left, right)) {
+            while (join.hasNext()) {
+                results.add(join.next());
+            }
+        }
+
+        Assert.assertEquals(5 * 4 + 10, results.size());
+        for (BindingSet result : results) {
+            Assert.assertTrue(result.hasBinding("label"));
+            Assert.assertTrue(result.hasBinding("count"));
+        }
+    }
+
+    @Test
+    public void testHashJoinStreamsTheLeftInput() throws Exception {
+        List<BindingSet> left = rows(10);
+        AtomicInteger builds = new AtomicInteger();
+        List<BindingSet> results = new ArrayList<>();
+        try (BufferHashJoinIteration join = new BufferHashJoinIteration(
+                new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(left.iterator()),
+                Sets.newHashSet("s", "label", "type"), () -> {
+                    builds.incrementAndGet();
+                    BindingSetBuffer right = new BindingSetBuffer();
+                    for (int i = 0; i < 20; i++) {
+                        right.add(new ListBindingSet(Arrays.asList("s", "count"), iri("s" + (i % 5)),
+                                vf.createLiteral(i)));
+                    }
+                    return right;
+                })) {
+            // the right input is only materialized on demand
+            Assert.assertEquals(0, builds.get());
+            while (join.hasNext()) {
+                results.add(join.next());
+            }
+        }
+
+        Assert.assertEquals(1, builds.get());
+        Assert.assertEquals(5 * 4, results.size());
+    }
+
+    private static List<BindingSet> rows(int count) {
+        List<BindingSet> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (i % 3 == 0) {
+                // row without the type binding
+                rows.add(new ListBindingSet(Arrays.asList("s", "label"), iri("s" + i), vf.createLiteral("label " + i)));
+            } else {
+                rows.add(new ListBindingSet(Arrays.asList("s", "label", "type"), iri("s" + i),
+                        vf.createLiteral("label " + i), iri("Type" + (i % 2))));
+            }
+        }
+        return rows;
+    }
+
+    private static IRI iri(String localName) {
+        return vf.createIRI("http://example.org/", localName);
+    }
+}
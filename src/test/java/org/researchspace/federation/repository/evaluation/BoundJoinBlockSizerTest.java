@@ -0,0 +1,96 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.researchspace.federation.repository.MpFederation;
+
+public class BoundJoinBlockSizerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(5000);
+
+    @Test
+    public void testGrowsUpToMaxBlockSize() {
+        BoundJoinBlockSizer sizer = new BoundJoinBlockSizer(3, 100, 0, 1000, 0);
+        Assert.assertEquals(3, sizer.getBlockSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.recordLatency(sizer.getBlockSize(), FAST);
+        }
+        Assert.assertEquals(100, sizer.getBlockSize());
+    }
+
+    @Test
+    public void testPartialBlocksDoNotGrow() {
+        BoundJoinBlockSizer sizer = new BoundJoinBlockSizer(10, 100, 0, 1000, 0);
+        sizer.recordLatency(2, FAST);
+        Assert.assertEquals(10, sizer.getBlockSize());
+    }
+
+    @Test
+    public void testShrinksOnSlowResponses() {
+        BoundJoinBlockSizer sizer = new BoundJoinBlockSizer(3, 100, 0, 1000, 0);
+        for (int i = 0; i < 10; i++) {
+            sizer.recordLatency(sizer.getBlockSize(), FAST);
+        }
+        sizer.recordLatency(100, SLOW);
+        Assert.assertEquals(50, sizer.getBlockSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.recordLatency(sizer.getBlockSize(), SLOW);
+        }
+        Assert.assertEquals(3, sizer.getBlockSize());
+    }
+
+    @Test
+    public void testShrinksOnLargeResults() {
+        BoundJoinBlockSizer sizer = new BoundJoinBlockSizer(3, 100, 0, 1000, 1000);
+        for (int i = 0; i < 10; i++) {
+            sizer.recordLatency(sizer.getBlockSize(), FAST);
+        }
+        sizer.recordResults(100, 4000);
+        Assert.assertEquals(25, sizer.getBlockSize());
+    }
+
+    @Test
+    public void testQueryLength() {
+        BoundJoinBlockSizer sizer = new BoundJoinBlockSizer(3, 100, 1000, 1000, 0);
+        Assert.assertTrue(sizer.fitsQueryLength(900, 100, 5));
+        Assert.assertFalse(sizer.fitsQueryLength(901, 100, 5));
+        // the first row is always accepted
+        Assert.assertTrue(sizer.fitsQueryLength(2000, 100, 0));
+    }
+
+    @Test
+    public void testBlockSizesAreLearnedPerMember() {
+        MpFederation federation = new MpFederation("default", Collections.emptyMap());
+        BoundJoinBlockSizer fast = federation.getBoundJoinBlockSizer("fast");
+        BoundJoinBlockSizer slow = federation.getBoundJoinBlockSizer("slow");
+        fast.recordLatency(fast.getBlockSize(), FAST);
+        slow.recordLatency(slow.getBlockSize(), SLOW);
+
+        // later joins continue with the block size learned for the member
+        Assert.assertSame(fast, federation.getBoundJoinBlockSizer("fast"));
+        Assert.assertTrue(federation.getBoundJoinBlockSizer("fast").getBlockSize() > slow.getBlockSize());
+        Assert.assertNotSame(federation.getBoundJoinBlockSizer(null), federation.getBoundJoinBlockSizer(null));
+    }
+}
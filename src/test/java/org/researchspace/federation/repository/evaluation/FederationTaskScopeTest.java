@@ -0,0 +1,233 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases for the per-query budget and cancellation of
+ * {@link FederationTaskScope}.
+ */
+public class FederationTaskScopeTest {
+
+    private final FederationExecutor executor = new FederationExecutor("test-federation", 10, 10, 100);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRequestsAreLimitedPerQuery() throws Exception {
+        FederationTaskScope scope = new FederationTaskScope(executor, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            requests.add(scope.supplyAsync(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return value;
+            }));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Integer.valueOf(i), requests.get(i).get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue("Too many concurrent requests: " + maxRunning.get(), maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testNestedRequestsDoNotWaitForTheBudgetOfTheirParents() throws Exception {
+        FederationExecutor large = new FederationExecutor("test-nested", 2, 50, 100);
+        try {
+            FederationTaskScope scope = new FederationTaskScope(large, 2);
+            List<CompletableFuture<Integer>> requests = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                requests.add(scope.supplyAsync(() -> evaluateNested(scope, 3)));
+            }
+            for (CompletableFuture<Integer> request : requests) {
+                Assert.assertEquals(Integer.valueOf(8), request.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            large.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for two nested requests like a nested join, one submitted directly
+     * and one by a join driver.
+     */
+    private static Integer evaluateNested(FederationTaskScope scope, int depth) throws Exception {
+        if (depth == 0) {
+            return 1;
+        }
+        CompletableFuture<Integer> direct = scope.supplyAsync(() -> evaluateNested(scope, depth - 1));
+        CompletableFuture<Integer> viaDriver = new CompletableFuture<>();
+        scope.execute(() -> {
+            try {
+                viaDriver.complete(scope.supplyAsync(() -> evaluateNested(scope, depth - 1)).get());
+            } catch (Exception e) {
+                viaDriver.completeExceptionally(e);
+            }
+        });
+        return direct.get() + viaDriver.get();
+    }
+
+    @Test
+    public void testCancelStopsRunningAndQueuedRequests() throws Exception {
+        FederationTaskScope scope = new FederationTaskScope(executor, 1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        CompletableFuture<Object> running = scope.supplyAsync(() -> {
+            started.countDown();
+            Thread.sleep(60000);
+            return null;
+        });
+        CompletableFuture<Object> queued = scope.supplyAsync(() -> null);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        scope.cancel();
+
+        assertFailed(running);
+        assertFailed(queued);
+        Assert.assertTrue(scope.isCancelled());
+    }
+
+    @Test
+    public void testRequestsAreQueuedWithoutBlockingTheSubmitter() throws Exception {
+        FederationExecutor small = new FederationExecutor("test-queue", 1, 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            FederationTaskScope scope = new FederationTaskScope(small, 10);
+            List<CompletableFuture<Boolean>> requests = new ArrayList<>();
+            // one running and two queued requests
+            for (int i = 0; i < 3; i++) {
+                requests.add(scope.supplyAsync(() -> release.await(10, TimeUnit.SECONDS)));
+            }
+            try {
+                scope.supplyAsync(() -> true);
+                Assert.fail("Expected the request to be rejected");
+            } catch (QueryEvaluationException e) {
+                Assert.assertEquals(1, small.getRejectedTaskCount());
+            }
+
+            release.countDown();
+            for (CompletableFuture<Boolean> request : requests) {
+                Assert.assertTrue(request.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            release.countDown();
+            small.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDriversDoNotOccupyRequestThreads() throws Exception {
+        FederationExecutor small = new FederationExecutor("test-drivers", 1, 2, 10);
+        try {
+            FederationTaskScope scope = new FederationTaskScope(small, 10);
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            // the drivers wait for their requests, which need the only request thread
+            for (int i = 0; i < 2; i++) {
+                scope.execute(() -> {
+                    try {
+                        result.complete(scope.supplyAsync(() -> 1).get());
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            }
+            Assert.assertEquals(Integer.valueOf(1), result.get(10, TimeUnit.SECONDS));
+
+            try {
+                CountDownLatch release = new CountDownLatch(1);
+                try {
+                    for (int i = 0; i < 3; i++) {
+                        scope.execute(() -> {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+                    }
+                } finally {
+                    release.countDown();
+                }
+                Assert.fail("Expected the driver to be rejected");
+            } catch (QueryEvaluationException e) {
+                Assert.assertEquals(1, small.getRejectedTaskCount());
+            }
+        } finally {
+            small.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testScheduledTasksSubmitAtTheDepthOfTheirCaller() throws Exception {
+        FederationTaskScope scope = new FederationTaskScope(executor, 1);
+        CompletableFuture<Integer> nested = new CompletableFuture<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        // occupies the only slot of the first level while the scheduled task submits a
+        // nested request
+        CompletableFuture<Object> parent = scope.supplyAsync(() -> {
+            scope.schedule(() -> {
+                try {
+                    scope.supplyAsync(() -> 1).thenAccept(nested::complete);
+                } catch (QueryEvaluationException e) {
+                    nested.completeExceptionally(e);
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+            return release.await(10, TimeUnit.SECONDS);
+        });
+
+        Assert.assertEquals(Integer.valueOf(1), nested.get(10, TimeUnit.SECONDS));
+        release.countDown();
+        parent.get(10, TimeUnit.SECONDS);
+    }
+
+    private static void assertFailed(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected the request to be cancelled");
+        } catch (ExecutionException | CancellationException e) {
+            // expected
+        } catch (TimeoutException e) {
+            Assert.fail("Request was not cancelled");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Count;
+import org.eclipse.rdf4j.query.algebra.Extension;
+import org.eclipse.rdf4j.query.algebra.ExtensionElem;
+import org.eclipse.rdf4j.query.algebra.Group;
+import org.eclipse.rdf4j.query.algebra.GroupElem;
+import org.eclipse.rdf4j.query.algebra.Order;
+import org.eclipse.rdf4j.query.algebra.OrderElem;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.ProjectionElem;
+import org.eclipse.rdf4j.query.algebra.ProjectionElemList;
+import org.eclipse.rdf4j.query.algebra.SingletonSet;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.ValueExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Test cases for the streaming and spilling aggregation of
+ * {@link MpGroupIterator}.
+ */
+public class MpGroupIteratorTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final int NUMBER_OF_GROUPS = 50;
+
+    private final MpFederationStrategy strategy = Mockito.mock(MpFederationStrategy.class);
+
+    @Test
+    public void testGroupsInMemory() throws Exception {
+        List<BindingSet> rows = rows();
+        Collections.shuffle(rows);
+        assertCounts(evaluate(group(new SingletonSet(), "g"), rows, MpGroupIterator.DEFAULT_MEMORY_BUDGET_BYTES));
+    }
+
+    @Test
+    public void testGroupsBeyondMemoryBudgetAreSpilled() throws Exception {
+        List<BindingSet> rows = rows();
+        Collections.shuffle(rows);
+        assertCounts(evaluate(group(new SingletonSet(), "g"), rows, 1));
+    }
+
+    @Test
+    public void testSortedInputIsStreamed() throws Exception {
+        Order order = new Order(new SingletonSet(), new OrderElem(new Var("g")));
+        assertCounts(evaluate(group(order, "g"), rows(), 1));
+    }
+
+    @Test
+    public void testOrderedSubSelectIsStreamed() throws Exception {
+        Order order = new Order(new SingletonSet(), new OrderElem(new Var("h")));
+        Projection projection = new Projection(order,
+                new ProjectionElemList(new ProjectionElem("h", "g"), new ProjectionElem("x")));
+        assertCounts(evaluate(group(projection, "g"), rows(), 1));
+    }
+
+    @Test
+    public void testOrderOfRebindingInputIsNotTrusted() throws Exception {
+        List<BindingSet> rows = rows();
+        Collections.shuffle(rows);
+        Order order = new Order(new SingletonSet(), new OrderElem(new Var("g")));
+        Extension extension = new Extension(order, new ExtensionElem(new Var("x"), "g"));
+        assertCounts(evaluate(group(extension, "g"), rows, MpGroupIterator.DEFAULT_MEMORY_BUDGET_BYTES));
+    }
+
+    @Test
+    public void testEmptyInputProducesZeroCount() throws Exception {
+        List<BindingSet> results = evaluate(group(new SingletonSet()), Collections.emptyList(), 1);
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(0, ((Literal) results.get(0).getValue("count")).intValue());
+    }
+
+    private static Group group(TupleExpr arg, String... groupNames) {
+        Group group = new Group(arg, Sets.newHashSet(groupNames));
+        group.addGroupElement(new GroupElem("count", new Count(new Var("x"))));
+        return group;
+    }
+
+    private List<BindingSet> evaluate(Group group, List<BindingSet> rows, long memoryBudgetBytes) throws Exception {
+        Mockito.when(strategy.evaluate(Matchers.eq(group.getArg()), Matchers.any(BindingSet.class)))
+                .thenReturn(new CollectionIteration<BindingSet, QueryEvaluationException>(rows));
+        Mockito.when(strategy.evaluate(Matchers.any(ValueExpr.class), Matchers.any(BindingSet.class)))
+                .thenAnswer(invocation -> {
+                    Var var = (Var) invocation.getArguments()[0];
+                    BindingSet bindings = (BindingSet) invocation.getArguments()[1];
+                    return bindings.getValue(var.getName());
+                });
+
+        try (MpGroupIterator iterator = new MpGroupIterator(strategy, group, EmptyBindingSet.getInstance(), 0,
+                memoryBudgetBytes)) {
+            return Iterations.asList(iterator);
+        }
+    }
+
+    private static List<BindingSet> rows() {
+        List<BindingSet> rows = new ArrayList<>();
+        for (int g = 0; g < NUMBER_OF_GROUPS; g++) {
+            for (int x = 0; x <= g; x++) {
+                rows.add(new ListBindingSet(Arrays.asList("g", "x"), vf.createLiteral(g), vf.createLiteral(x)));
+            }
+        }
+        return rows;
+    }
+
+    private static void assertCounts(List<BindingSet> results) {
+        Assert.assertEquals(NUMBER_OF_GROUPS, results.size());
+        Map<Value, Integer> counts = new HashMap<>();
+        for (BindingSet result : results) {
+            counts.put(result.getValue("g"), ((Literal) result.getValue("count")).intValue());
+        }
+        for (int g = 0; g < NUMBER_OF_GROUPS; g++) {
+            Assert.assertEquals(Integer.valueOf(g + 1), counts.get(vf.createLiteral(g)));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.repository.evaluation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Test cases for the de-duplication of probes by {@link ProbeResultCache}.
+ */
+public class ProbeResultCacheTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final AtomicInteger probeCount = new AtomicInteger();
+
+    @Test
+    public void testRepeatedKeysAreProbedOnce() throws Exception {
+        ProbeResultCache cache = new ProbeResultCache(100, 10);
+        CompletableFuture<ProbeResult> pending = new CompletableFuture<>();
+
+        CompletableFuture<ProbeResult> first = cache.get(key(1), key -> probe(pending));
+        CompletableFuture<ProbeResult> inFlight = cache.get(key(1), key -> probe(pending));
+        Assert.assertFalse(inFlight.isDone());
+
+        pending.complete(ProbeResult.memoized(Collections.singletonList(key(42))));
+        CompletableFuture<ProbeResult> completed = cache.get(key(1), key -> probe(pending));
+
+        Assert.assertEquals(1, probeCount.get());
+        Assert.assertSame(first.get(1, TimeUnit.SECONDS), completed.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getInFlightHitCount());
+        Assert.assertEquals(1, cache.getHitCount());
+
+        cache.get(key(2), key -> probe(answer(Collections.emptyList())));
+        Assert.assertEquals(2, probeCount.get());
+        Assert.assertEquals(0.5, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testFailedProbesAreRetried() throws Exception {
+        ProbeResultCache cache = new ProbeResultCache(100, 10);
+        CompletableFuture<ProbeResult> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("endpoint unavailable"));
+
+        Assert.assertTrue(cache.get(key(1), key -> probe(failed)).isCompletedExceptionally());
+        Assert.assertFalse(
+                cache.get(key(1), key -> probe(answer(Collections.emptyList()))).isCompletedExceptionally());
+        Assert.assertEquals(2, probeCount.get());
+    }
+
+    @Test
+    public void testSharedResultsAreReusedAcrossJoins() throws Exception {
+        Cache<Object, List<BindingSet>> shared = Caffeine.newBuilder().build();
+        List<BindingSet> result = Collections.singletonList(key(42));
+
+        ProbeResultCache firstJoin = new ProbeResultCache(100, 10, shared, "scope");
+        firstJoin.get(key(1), key -> probe(answer(result)));
+
+        ProbeResultCache secondJoin = new ProbeResultCache(100, 10, shared, "scope");
+        Assert.assertEquals(result,
+                secondJoin.get(key(1), key -> probe(null)).get(1, TimeUnit.SECONDS).getResults());
+        Assert.assertEquals(1, secondJoin.getSharedHitCount());
+
+        ProbeResultCache otherScope = new ProbeResultCache(100, 10, shared, "other");
+        otherScope.get(key(1), key -> probe(answer(result)));
+        Assert.assertEquals(2, probeCount.get());
+    }
+
+    @Test
+    public void testLargeResultsAreNotMemoized() throws Exception {
+        Cache<Object, List<BindingSet>> shared = Caffeine.newBuilder().build();
+        ProbeResultCache cache = new ProbeResultCache(100, 2, shared, "scope");
+        List<BindingSet> large = Arrays.asList(key(1), key(2), key(3));
+
+        cache.get(key(1), key -> probe(answer(large)));
+        ProbeResult streamed = ProbeResult.streamed(new CollectionIteration<>(large));
+        CompletableFuture<ProbeResult> result = cache.get(key(2),
+                key -> probe(CompletableFuture.completedFuture(streamed)));
+        Assert.assertNotNull(result.get(1, TimeUnit.SECONDS).takeStream());
+        Assert.assertNull("Streamed results are handed to a single consumer", streamed.takeStream());
+
+        cache.get(key(1), key -> probe(answer(large)));
+        cache.get(key(2), key -> probe(answer(large)));
+        Assert.assertEquals(4, probeCount.get());
+        Assert.assertEquals(4, cache.getStreamedCount());
+        Assert.assertEquals(0, shared.estimatedSize());
+    }
+
+    @Test
+    public void testMemoIsBoundedByTheNumberOfResults() throws Exception {
+        ProbeResultCache cache = new ProbeResultCache(10, 10, null, null);
+        List<BindingSet> results = Arrays.asList(key(1), key(2), key(3), key(4), key(5));
+        for (int i = 0; i < 10; i++) {
+            cache.get(key(i), key -> probe(answer(results)));
+        }
+
+        int memoized = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cache.get(key(i), key -> probe(new CompletableFuture<>())).isDone()) {
+                memoized++;
+            }
+        }
+        Assert.assertTrue("Too many memoized results: " + memoized, memoized <= 2);
+    }
+
+    private static CompletableFuture<ProbeResult> answer(List<BindingSet> results) {
+        return CompletableFuture.completedFuture(ProbeResult.memoized(results));
+    }
+
+    private CompletableFuture<ProbeResult> probe(CompletableFuture<ProbeResult> response) {
+        probeCount.incrementAndGet();
+        return response;
+    }
+
+    private static BindingSet key(int i) {
+        return new ListBindingSet(Collections.singletonList("x"), vf.createIRI("http://example.org/s" + i));
+    }
+}
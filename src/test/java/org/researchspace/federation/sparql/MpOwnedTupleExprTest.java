@@ -0,0 +1,86 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.federation.sparql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.algebra.SingletonSet;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+/**
+ * Tests that evaluations of a {@link MpOwnedTupleExpr} against the same owner
+ * are not serialized.
+ */
+public class MpOwnedTupleExprTest {
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        int numberOfProbes = 4;
+        // every remote request waits until all probes have issued their request,
+        // i.e. the test only completes if the probes run concurrently
+        CyclicBarrier barrier = new CyclicBarrier(numberOfProbes);
+
+        RepositoryConnection owner = Mockito.mock(RepositoryConnection.class);
+        Mockito.when(owner.getValueFactory()).thenReturn(SimpleValueFactory.getInstance());
+        Mockito.when(owner.prepareQuery(Matchers.any(QueryLanguage.class), Matchers.anyString()))
+                .thenAnswer(invocation -> {
+                    TupleQuery query = Mockito.mock(TupleQuery.class);
+                    Mockito.when(query.evaluate()).thenAnswer(evaluation -> {
+                        barrier.await(10, TimeUnit.SECONDS);
+                        return new IteratingTupleQueryResult(Collections.emptyList(), Collections.emptyList());
+                    });
+                    return query;
+                });
+
+        MpOwnedTupleExpr expr = new MpOwnedTupleExpr(owner, new SingletonSet());
+        expr.prepare(QueryLanguage.SPARQL, "SELECT * WHERE { ?s ?p ?o }", Collections.emptyMap());
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfProbes);
+        List<Future<CloseableIteration<BindingSet, QueryEvaluationException>>> probes = new ArrayList<>();
+        try {
+            for (int i = 0; i < numberOfProbes; i++) {
+                probes.add(executor.submit(() -> expr.evaluate(null, EmptyBindingSet.getInstance())));
+            }
+            for (Future<CloseableIteration<BindingSet, QueryEvaluationException>> probe : probes) {
+                Assert.assertFalse(probe.get(20, TimeUnit.SECONDS).hasNext());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
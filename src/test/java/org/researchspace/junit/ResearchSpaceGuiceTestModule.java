@@ -31,6 +31,8 @@ import javax.inject.Named;
 import org.apache.commons.io.FileUtils;
 import org.researchspace.cache.CacheManager;
 import org.researchspace.cache.LabelCache;
+import org.researchspace.cache.LabelResolutionExecutor;
+import org.researchspace.cache.RenderedPageCache;
 import org.researchspace.cache.TemplateIncludeCache;
 import org.researchspace.config.Configuration;
 import org.researchspace.config.NamespaceRegistry;
@@ -43,6 +45,8 @@ import org.researchspace.secrets.SecretResolver;
 import org.researchspace.secrets.SecretsStore;
 import org.researchspace.services.storage.api.PlatformStorage;
 import org.researchspace.servlet.SparqlServlet;
+import org.researchspace.templates.ResearchSpaceHandlebars;
+import org.researchspace.templates.TemplateQueryPrefetcher;
 import org.researchspace.thumbnails.DefaultThumbnailService;
 import org.researchspace.thumbnails.ThumbnailServiceRegistry;
 import org.researchspace.ui.templates.MainTemplate;
@@ -99,7 +103,11 @@ public class ResearchSpaceGuiceTestModule extends AbstractModule {
         bind(QueryCatalogRESTServiceRegistry.class).in(Singleton.class);
         bind(CacheManager.class).in(Singleton.class);
         bind(LabelCache.class).in(Singleton.class);
+        bind(LabelResolutionExecutor.class).in(Singleton.class);
         bind(TemplateIncludeCache.class).in(Singleton.class);
+        bind(RenderedPageCache.class).in(Singleton.class);
+        bind(TemplateQueryPrefetcher.class).in(Singleton.class);
+        bind(ResearchSpaceHandlebars.class).in(Singleton.class);
         bind(SparqlServlet.class).in(Singleton.class);
         bind(ThumbnailServiceRegistry.class).in(Singleton.class);
         bind(DefaultThumbnailService.class).asEagerSingleton();
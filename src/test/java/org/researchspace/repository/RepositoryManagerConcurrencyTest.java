@@ -0,0 +1,126 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.researchspace.junit.AbstractRepositoryBackedIntegrationTest;
+
+/**
+ * Tests that repository lookups in {@link RepositoryManager} are not blocked by
+ * concurrent lifecycle operations.
+ */
+public class RepositoryManagerConcurrencyTest extends AbstractRepositoryBackedIntegrationTest {
+
+    @Test
+    public void testLookupIsNotBlockedByLifecycleOperations() throws Exception {
+        RepositoryManager repositoryManager = repositoryRule.getRepositoryManager();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // simulate a long running lifecycle operation holding the monitor
+            executor.submit(() -> {
+                synchronized (repositoryManager) {
+                    locked.countDown();
+                    release.await();
+                }
+                return null;
+            });
+            Assert.assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+            Future<Repository> lookup = executor
+                    .submit(() -> repositoryManager.getRepository(RepositoryManager.DEFAULT_REPOSITORY_ID));
+            Assert.assertSame(repositoryRule.getRepository(), lookup.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVersionIsIncrementedOnChange() throws Exception {
+        RepositoryManager repositoryManager = repositoryRule.getRepositoryManager();
+        long version = repositoryManager.getRepositoriesVersion();
+
+        repositoryManager.setForTests(repositoryRule.getRepository(), repositoryRule.getAssetRepository(),
+                repositoryRule.getTestRepository());
+
+        Assert.assertTrue(repositoryManager.getRepositoriesVersion() > version);
+        Assert.assertSame(repositoryRule.getRepository(), repositoryManager.getDefault());
+    }
+
+    /**
+     * Measures the throughput of concurrent lookups while the manager is
+     * periodically locked by lifecycle operations. With the previously
+     * synchronized lookup every reader stalled for the full duration of the
+     * lifecycle operation.
+     */
+    @Test
+    @Ignore
+    public void testLookupContention() throws Exception {
+        RepositoryManager repositoryManager = repositoryRule.getRepositoryManager();
+        int numberOfReaders = 16;
+        long durationMillis = 5000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfReaders + 1);
+        List<Future<Long>> readers = new ArrayList<>();
+        long end = System.currentTimeMillis() + durationMillis;
+        try {
+            executor.submit(() -> {
+                while (System.currentTimeMillis() < end) {
+                    synchronized (repositoryManager) {
+                        Thread.sleep(50);
+                    }
+                    Thread.sleep(50);
+                }
+                return null;
+            });
+            for (int i = 0; i < numberOfReaders; i++) {
+                readers.add(executor.submit(() -> {
+                    long lookups = 0;
+                    while (System.currentTimeMillis() < end) {
+                        repositoryManager.getRepository(RepositoryManager.DEFAULT_REPOSITORY_ID);
+                        lookups++;
+                    }
+                    return lookups;
+                }));
+            }
+
+            long total = 0;
+            for (Future<Long> reader : readers) {
+                total += reader.get();
+            }
+            System.out.println("Lookups per second with " + numberOfReaders + " readers: "
+                    + (total * 1000 / durationMillis));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.rest.filters;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+/**
+ * Test cases for {@link ResponseCacheFilter} against a local stub HTTP server.
+ */
+public class ResponseCacheFilterTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort());
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final List<Client> clients = new ArrayList<>();
+    private final List<ResponseCacheFilter> filters = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        clients.forEach(Client::close);
+        filters.forEach(ResponseCacheFilter::close);
+    }
+
+    @Test
+    public void testResponsesAreCached() throws Exception {
+        stub("/items", "[1, 2, 3]", null, 0);
+        ResponseCacheFilter cache = new ResponseCacheFilter(60000, 10, null);
+        Client client = createClient(cache);
+
+        Assert.assertEquals("[1, 2, 3]", request(client, "/items?q=a"));
+        Assert.assertEquals("[1, 2, 3]", request(client, "/items?q=a"));
+        Assert.assertEquals("[1, 2, 3]", request(client, "/items?q=b"));
+
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/items")));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testCacheHeadersAreHonored() throws Exception {
+        stub("/no-store", "a", "no-store", 0);
+        stub("/expired", "b", "public, max-age=0", 0);
+        Client client = createClient(new ResponseCacheFilter(60000, 10, null));
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals("a", request(client, "/no-store"));
+            Assert.assertEquals("b", request(client, "/expired"));
+        }
+
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/no-store")));
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/expired")));
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        stub("/slow", "slow", null, 500);
+        ResponseCacheFilter cache = new ResponseCacheFilter(60000, 10, null);
+        Client client = createClient(cache);
+
+        int numberOfCallers = 5;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfCallers);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < numberOfCallers; i++) {
+                futures.add(executor.submit(() -> request(client, "/slow")));
+            }
+            for (Future<String> future : futures) {
+                Assert.assertEquals("slow", future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        wireMockRule.verify(1, getRequestedFor(urlPathEqualTo("/slow")));
+        Assert.assertEquals(numberOfCallers - 1, cache.getHitCount() + cache.getCoalescedCount());
+    }
+
+    @Test
+    public void testFailedRequestsDoNotBlockIdenticalRequests() throws Exception {
+        wireMockRule.stubFor(get(urlPathEqualTo("/flaky"))
+                .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+        ResponseCacheFilter cache = new ResponseCacheFilter(60000, 10, null);
+        Client client = createClient(cache);
+
+        try {
+            request(client, "/flaky");
+            Assert.fail("Expected the request to fail without a response");
+        } catch (ProcessingException e) {
+            // expected
+        } finally {
+            cache.requestFinished();
+        }
+
+        stub("/flaky", "recovered", null, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> retry = executor.submit(() -> request(client, "/flaky"));
+            Assert.assertEquals("recovered", retry.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/flaky")));
+    }
+
+    @Test
+    public void testPersistentResponses() throws Exception {
+        stub("/items", "[1, 2, 3]", null, 0);
+        File file = new File(tempFolder.getRoot(), "responses.db");
+
+        ResponseCacheFilter cache = new ResponseCacheFilter(60000, 10, file);
+        Assert.assertEquals("[1, 2, 3]", request(createClient(cache), "/items"));
+        cache.close();
+
+        ResponseCacheFilter reloaded = new ResponseCacheFilter(60000, 10, file);
+        Assert.assertEquals("[1, 2, 3]", request(createClient(reloaded), "/items"));
+
+        wireMockRule.verify(1, getRequestedFor(urlPathEqualTo("/items")));
+        Assert.assertEquals(1, reloaded.getHitCount());
+    }
+
+    private void stub(String path, String body, String cacheControl, int delayMillis) {
+        var response = aResponse().withStatus(200).withHeader("Content-Type", MediaType.APPLICATION_JSON)
+                .withBody(body).withFixedDelay(delayMillis);
+        if (cacheControl != null) {
+            response = response.withHeader("Cache-Control", cacheControl);
+        }
+        wireMockRule.stubFor(get(urlPathEqualTo(path)).willReturn(response));
+    }
+
+    private Client createClient(ResponseCacheFilter cache) {
+        filters.add(cache);
+        Client client = ClientBuilder.newBuilder().register(cache).build();
+        clients.add(client);
+        return client;
+    }
+
+    private String request(Client client, String path) {
+        return client.target("http://localhost:" + wireMockRule.port() + path).request(MediaType.APPLICATION_JSON)
+                .get(String.class);
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.sail.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Test cases for the conversion of JSON items with precompiled paths in
+ * {@link JsonBindingSetConverter}.
+ */
+public class JsonBindingSetConverterTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final JsonBindingSetConverter converter = new JsonBindingSetConverter(
+            RESTSail.getOutputJsonPathConfig())
+                    .addOutput("id", RDFS.RESOURCE, JsonPath.compile("$.uri"))
+                    .addOutput("label", XSD.STRING, JsonPath.compile("$.names.label"))
+                    .addOutput("count", XSD.INTEGER, JsonPath.compile("$.count"));
+
+    @Test
+    public void testConvert() throws Exception {
+        BindingSet bindings = converter.convert(item(1));
+
+        Assert.assertEquals(vf.createIRI("http://example.org/item/1"), bindings.getValue("id"));
+        Assert.assertEquals(vf.createLiteral("Item 1", XSD.STRING), bindings.getValue("label"));
+        Assert.assertEquals(vf.createLiteral("1", XSD.INTEGER), bindings.getValue("count"));
+    }
+
+    @Test
+    public void testMissingValuesAreUnbound() throws Exception {
+        BindingSet bindings = converter.convert(ImmutableMap.of("uri", "http://example.org/item/2"));
+
+        Assert.assertEquals(1, bindings.size());
+        Assert.assertFalse(bindings.hasBinding("label"));
+        Assert.assertFalse(bindings.hasBinding("count"));
+    }
+
+    private static Map<String, Object> item(int i) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("uri", "http://example.org/item/" + i);
+        item.put("names", ImmutableMap.of("label", "Item " + i));
+        item.put("count", i);
+        return item;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.sail.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.PathNotFoundException;
+
+/**
+ * Test cases for the streaming evaluation of simple root JSON paths in
+ * {@link JsonRootPathReader}.
+ */
+public class JsonRootPathReaderTest {
+
+    private static final String DOCUMENT = "{\"meta\": {\"count\": 3, \"tags\": [1, 2]},"
+            + " \"data\": {\"items\": [{\"id\": 1}, null, {\"id\": 2}, {\"id\": 3}],"
+            + " \"byId\": {\"a\": {\"id\": \"a\"}, \"b\": {\"id\": \"b\"}}}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testIsStreamable() {
+        Assert.assertTrue(JsonRootPathReader.isStreamable("$"));
+        Assert.assertTrue(JsonRootPathReader.isStreamable("$.data.items"));
+        Assert.assertTrue(JsonRootPathReader.isStreamable("$['data'].items[*]"));
+        Assert.assertFalse(JsonRootPathReader.isStreamable("$..id"));
+        Assert.assertFalse(JsonRootPathReader.isStreamable("$.data.*"));
+        Assert.assertFalse(JsonRootPathReader.isStreamable("$.data.items[0]"));
+        Assert.assertFalse(JsonRootPathReader.isStreamable("$.data.items[?(@.id > 1)]"));
+    }
+
+    @Test
+    public void testArrayElements() throws Exception {
+        List<Object> items = readAll("$.data.items");
+        Assert.assertEquals(3, items.size());
+        Assert.assertEquals(1, ((Map<?, ?>) items.get(0)).get("id"));
+        Assert.assertEquals(3, ((Map<?, ?>) items.get(2)).get("id"));
+
+        Assert.assertEquals(items, readAll("$['data'].items[*]"));
+    }
+
+    @Test
+    public void testObject() throws Exception {
+        List<Object> items = readAll("$.data.byId");
+        Assert.assertEquals(1, items.size());
+        Assert.assertEquals(2, ((Map<?, ?>) items.get(0)).size());
+
+        items = readAll("$.data.byId[*]");
+        Assert.assertEquals(2, items.size());
+        Assert.assertEquals("b", ((Map<?, ?>) items.get(1)).get("id"));
+    }
+
+    @Test
+    public void testScalarIsEmpty() throws Exception {
+        Assert.assertTrue(readAll("$.meta.count").isEmpty());
+    }
+
+    @Test
+    public void testStopsReadingEarly() throws Exception {
+        // the remainder of the document is never parsed
+        String truncated = "[{\"id\": 1}, {\"id\": 2}, {\"id\": ";
+        try (JsonRootPathReader reader = JsonRootPathReader.open(stream(truncated), "$", objectMapper)) {
+            Assert.assertTrue(reader.hasNext());
+            Assert.assertEquals(1, ((Map<?, ?>) reader.next()).get("id"));
+            Assert.assertTrue(reader.hasNext());
+            Assert.assertEquals(2, ((Map<?, ?>) reader.next()).get("id"));
+        }
+    }
+
+    @Test(expected = PathNotFoundException.class)
+    public void testMissingPath() throws Exception {
+        readAll("$.data.missing");
+    }
+
+    private List<Object> readAll(String rootPath) throws Exception {
+        List<Object> items = new ArrayList<>();
+        try (JsonRootPathReader reader = JsonRootPathReader.open(stream(DOCUMENT), rootPath, objectMapper)) {
+            while (reader.hasNext()) {
+                items.add(reader.next());
+            }
+        }
+        return items;
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2021, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.researchspace.sail.rest;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.parser.QueryParserUtil;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+/**
+ * Test cases for
+ * {@link AbstractServiceWrappingSailConnection#evaluateBatch(TupleExpr, org.eclipse.rdf4j.query.Dataset, List)}
+ * using the recorded OSM Nominatim responses (see {@link OsmSailTest}).
+ */
+public class ServiceWrappingBatchEvaluationTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final String QUERY = "PREFIX osm: <http://www.researchspace.org/resource/system/services/osm/>\n"
+            + "SELECT * WHERE { ?subject osm:q ?q; osm:display_name ?label; osm:geotext ?geotext; "
+            + "osm:wikidata ?wikidataId. }";
+
+    @ClassRule
+    public static WireMockRule wireMockRule = new WireMockRule(
+            options().dynamicPort().usingFilesUnderClasspath("org/researchspace/sail/rest"));
+
+    private static SailRepository osmRepo;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        osmRepo = (SailRepository) RESTSailTestUtils.createRestSailRepo(
+                "/org/researchspace/apps/default/config/services/osm-nominatim-search.ttl", wireMockRule.port(),
+                "/search", "GET");
+        osmRepo.init();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        osmRepo.shutDown();
+    }
+
+    @Test
+    public void testResultsAreMergedWithInputsInOrder() throws Exception {
+        TupleExpr tupleExpr = QueryParserUtil.parseTupleQuery(QueryLanguage.SPARQL, QUERY, null).getTupleExpr();
+        List<BindingSet> inputs = Arrays.asList(input(1), input(2));
+
+        List<BindingSet> results;
+        try (AbstractServiceWrappingSailConnection<?> connection = (AbstractServiceWrappingSailConnection<?>) osmRepo
+                .getSail().getConnection()) {
+            results = Iterations.asList(connection.evaluateBatch(tupleExpr, null, inputs));
+        }
+
+        assertEquals(8, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            BindingSet result = results.get(i);
+            assertEquals(i < 4 ? "1" : "2", result.getValue("row").stringValue());
+            assertEquals("British Museum", result.getValue("q").stringValue());
+        }
+        assertEquals(
+                "British Museum, Great Russell Street, St Giles, Bloomsbury, London Borough of Camden, London, Greater London, England, WC1B 3DG, United Kingdom",
+                results.get(0).getValue("label").stringValue());
+    }
+
+    private static BindingSet input(int row) {
+        QueryBindingSet bindings = new QueryBindingSet();
+        bindings.addBinding("q", vf.createLiteral("British Museum"));
+        bindings.addBinding("row", vf.createLiteral(row));
+        return bindings;
+    }
+}
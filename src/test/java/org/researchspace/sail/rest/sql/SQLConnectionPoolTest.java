@@ -0,0 +1,189 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.sail.rest.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.researchspace.sail.rest.sql.SQLConnectionPool.PooledConnection;
+
+/**
+ * Test cases for the connection reuse, statement caching and health checks of
+ * {@link SQLConnectionPool}, against mocked connections and an embedded H2
+ * database.
+ */
+public class SQLConnectionPoolTest {
+
+    private static final String H2_URL = "jdbc:h2:mem:connection-pool-test;DB_CLOSE_DELAY=-1";
+
+    private final List<Connection> connections = new ArrayList<>();
+
+    private Connection createConnection() throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        Mockito.when(connection.prepareStatement(Mockito.anyString()))
+                .thenAnswer(invocation -> Mockito.mock(PreparedStatement.class));
+        Mockito.when(connection.isValid(Mockito.anyInt())).thenReturn(true);
+        connections.add(connection);
+        return connection;
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        SQLConnectionPool pool = new SQLConnectionPool(this::createConnection, 2, 1000, 10, 60000);
+
+        PooledConnection first = pool.borrow();
+        Connection physical = first.getConnection();
+        first.close();
+        // closing twice must not release the connection twice
+        first.close();
+
+        try (PooledConnection second = pool.borrow()) {
+            Assert.assertSame(physical, second.getConnection());
+            Assert.assertEquals(1, pool.getActiveCount());
+        }
+        Assert.assertEquals(1, pool.getCreatedCount());
+        Assert.assertEquals(2, pool.getBorrowedCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertEquals(0, pool.getActiveCount());
+
+        pool.close();
+        Mockito.verify(physical).close();
+    }
+
+    @Test
+    public void testStatementsAreCachedByQueryId() throws Exception {
+        SQLConnectionPool pool = new SQLConnectionPool(this::createConnection, 1, 1000, 1, 60000);
+
+        try (PooledConnection connection = pool.borrow()) {
+            PreparedStatement first = connection.prepareStatement("q1", "SELECT 1");
+            Assert.assertSame(first, connection.prepareStatement("q1", "SELECT 1"));
+            Mockito.verify(first).clearParameters();
+
+            // the cache holds a single statement, q1 is evicted and closed
+            connection.prepareStatement("q2", "SELECT 2");
+            Mockito.verify(first).close();
+            Assert.assertNotSame(first, connection.prepareStatement("q1", "SELECT 1"));
+        }
+        Assert.assertEquals(0.25, pool.getStatementCacheHitRate(), 0.001);
+    }
+
+    @Test
+    public void testPoolIsBounded() throws Exception {
+        SQLConnectionPool pool = new SQLConnectionPool(this::createConnection, 1, 50, 10, 60000);
+
+        try (PooledConnection connection = pool.borrow()) {
+            try {
+                pool.borrow();
+                Assert.fail("Expected timeout");
+            } catch (SQLTransientConnectionException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, pool.getAcquireTimeoutCount());
+        pool.borrow().close();
+        Assert.assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testBrokenAndInvalidConnectionsAreDiscarded() throws Exception {
+        SQLConnectionPool pool = new SQLConnectionPool(this::createConnection, 1, 1000, 10, 0);
+
+        PooledConnection connection = pool.borrow();
+        connection.markBroken();
+        connection.close();
+        Mockito.verify(connections.get(0)).close();
+
+        connection = pool.borrow();
+        Mockito.when(connection.getConnection().isValid(Mockito.anyInt())).thenReturn(false);
+        connection.close();
+
+        // the idle connection fails validation and is replaced
+        try (PooledConnection replacement = pool.borrow()) {
+            Assert.assertSame(connections.get(2), replacement.getConnection());
+        }
+        Assert.assertEquals(3, pool.getCreatedCount());
+        Assert.assertEquals(2, pool.getDiscardedCount());
+    }
+
+    @Test
+    public void testDatabaseConnectionsAndStatementsAreReused() throws Exception {
+        try (SQLConnectionPool pool = new SQLConnectionPool(() -> DriverManager.getConnection(H2_URL), 2, 1000, 10,
+                60000)) {
+            Connection physical;
+            PreparedStatement statement;
+            try (PooledConnection connection = pool.borrow()) {
+                physical = connection.getConnection();
+                statement = connection.prepareStatement("q1", "SELECT CAST(? AS INT) + 1");
+                Assert.assertEquals(42, query(statement, 41));
+            }
+
+            try (PooledConnection connection = pool.borrow()) {
+                Assert.assertSame(physical, connection.getConnection());
+                Assert.assertSame(statement, connection.prepareStatement("q1", "SELECT CAST(? AS INT) + 1"));
+                Assert.assertEquals(2, query(statement, 1));
+            }
+            Assert.assertEquals(1, pool.getCreatedCount());
+            Assert.assertEquals(0.5, pool.getStatementCacheHitRate(), 0.001);
+            Assert.assertEquals(1L, pool.getStatistics().get("createdCount"));
+        }
+    }
+
+    @Test
+    public void testClosedDatabaseConnectionsAndEvictedStatementsAreDiscarded() throws Exception {
+        try (SQLConnectionPool pool = new SQLConnectionPool(() -> DriverManager.getConnection(H2_URL), 1, 1000, 1,
+                0)) {
+            Connection physical;
+            try (PooledConnection connection = pool.borrow()) {
+                physical = connection.getConnection();
+                PreparedStatement first = connection.prepareStatement("q1", "SELECT 1");
+                // the cache holds a single statement, q1 is evicted and closed
+                connection.prepareStatement("q2", "SELECT 2");
+                Assert.assertTrue(first.isClosed());
+            }
+
+            // the idle connection is closed behind the pool's back and fails validation
+            physical.close();
+            try (PooledConnection connection = pool.borrow()) {
+                Assert.assertNotSame(physical, connection.getConnection());
+                Assert.assertEquals(2, query(connection.prepareStatement("q1", "SELECT CAST(? AS INT) + 1"), 1));
+            }
+            Assert.assertEquals(2, pool.getCreatedCount());
+            Assert.assertEquals(1, pool.getDiscardedCount());
+            Assert.assertEquals(1, pool.getIdleCount());
+        }
+    }
+
+    private static int query(PreparedStatement statement, int parameter) throws SQLException {
+        statement.setInt(1, parameter);
+        try (ResultSet result = statement.executeQuery()) {
+            Assert.assertTrue(result.next());
+            return result.getInt(1);
+        }
+    }
+}
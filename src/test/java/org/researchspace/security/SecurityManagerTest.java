@@ -59,7 +59,7 @@ public class SecurityManagerTest {
     // @Inject TODO use injection instead of test implementation
     public CacheManager cacheService = new CacheManager() {
         @Override
-        protected String getCacheSpec(String cacheId) {
+        public String getCacheSpec(String cacheId) {
             // configure special retention on the cache for the test
             // => keep only two items at maximum
             if (PlatformSecurityManager.AUTH_CACHE_NAME.equals(cacheId)) {
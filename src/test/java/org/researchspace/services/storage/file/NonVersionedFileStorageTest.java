@@ -0,0 +1,122 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.services.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.researchspace.services.storage.api.ObjectChangeListener;
+import org.researchspace.services.storage.api.PathMapping;
+import org.researchspace.services.storage.api.StoragePath;
+
+/**
+ * Test cases for the external change notifications of
+ * {@link NonVersionedFileStorage}.
+ */
+public class NonVersionedFileStorageTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final BlockingQueue<StoragePath> changedObjects = new LinkedBlockingQueue<>();
+
+    private NonVersionedFileStorage storage;
+
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = tempFolder.getRoot().toPath();
+        Files.createDirectories(root.resolve("data/templates"));
+        Files.createDirectories(root.resolve("logs"));
+
+        storage = new NonVersionedFileStorage(new PathMapping.Default(), new NonVersionedFileStorage.Config(root));
+        assertTrue(storage.addExternalChangeListener(new ObjectChangeListener() {
+            @Override
+            public void objectChanged(StoragePath path) {
+                changedObjects.add(path);
+            }
+
+            @Override
+            public void allObjectsChanged() {
+                changedObjects.add(StoragePath.EMPTY);
+            }
+        }));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.close();
+    }
+
+    @Test
+    public void testModifiedFileIsReported() throws Exception {
+        write("data/templates/foo.html");
+
+        assertEquals(StoragePath.parse("data/templates/foo.html"), nextChange());
+    }
+
+    @Test
+    public void testFileInCreatedDirectoryIsReported() throws Exception {
+        Files.createDirectories(root.resolve("config/ui"));
+        write("config/ui/page.prop");
+
+        StoragePath change;
+        do {
+            change = nextChange();
+        } while (!StoragePath.parse("config/ui/page.prop").equals(change));
+    }
+
+    @Test
+    public void testFilesOutsideOfObjectKindsAreIgnored() throws Exception {
+        write("logs/platform.log");
+        write("data/templates/foo.html");
+
+        // the only reported changes are the ones of the template
+        StoragePath change = nextChange();
+        do {
+            assertEquals(StoragePath.parse("data/templates/foo.html"), change);
+            change = changedObjects.poll(500, TimeUnit.MILLISECONDS);
+        } while (change != null);
+    }
+
+    private void write(String file) throws Exception {
+        Files.write(root.resolve(file), "content".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private StoragePath nextChange() throws InterruptedException {
+        // polling file system watchers (e.g. on macOS) report changes after seconds
+        StoragePath change = changedObjects.poll(30, TimeUnit.SECONDS);
+        assertTrue("Expected the change to be reported", change != null);
+        return change;
+    }
+}
@@ -24,13 +24,20 @@ import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.junit.Test;
 import org.junit.Before;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.researchspace.config.NamespaceRegistry;
 import org.researchspace.services.storage.api.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
+import com.github.jknack.handlebars.Template;
+import com.github.jknack.handlebars.io.TemplateSource;
+
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
@@ -208,4 +215,55 @@ public class TemplateByIriLoaderTest {
         assertTrue(result.toString().endsWith(".html"));
         assertTrue(result.toString().contains("Template%3Ahttp%3A%2F%2Fexample.org%2Fresource%2FTest"));
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testSourceAt_ResolutionCachedUntilStorageChange() throws Exception {
+        ArgumentCaptor<StorageChangeListener> listener = ArgumentCaptor.forClass(StorageChangeListener.class);
+        when(storage.addChangeListener(listener.capture())).thenReturn(true);
+        StorageLocation location = mock(StorageLocation.class);
+        StoragePath path = TemplateByIriLoader.templatePathFromIri(vf.createIRI("http://example.org/resource/Test"));
+        when(storage.findObject(any(StoragePath.class))).thenReturn(Optional.of(
+            new PlatformStorage.FindResult("test", new ObjectRecord(location, path, "1", new ObjectMetadata()))));
+        loader = new TemplateByIriLoader(storage, namespaceRegistry);
+        
+        TemplateSource source = loader.sourceAt("http://example.org/resource/Test");
+        assertTrue(source instanceof FromStorageLoader.StorageTemplateSource);
+        verify(storage, times(1)).findObject(any(StoragePath.class));
+        
+        loader.sourceAt("http://example.org/resource/Test");
+        verify(storage, times(1)).findObject(any(StoragePath.class));
+        
+        listener.getValue().objectChanged("test", path);
+        loader.sourceAt("http://example.org/resource/Test");
+        verify(storage, times(2)).findObject(any(StoragePath.class));
+    }
+    
+    @Test
+    public void testCompiledTemplateCache_RecompiledOnStorageChange() throws Exception {
+        ArgumentCaptor<StorageChangeListener> listeners = ArgumentCaptor.forClass(StorageChangeListener.class);
+        when(storage.addChangeListener(listeners.capture())).thenReturn(true);
+        StorageLocation location = mock(StorageLocation.class);
+        when(location.readContent()).thenAnswer(invocation -> content("First"));
+        StoragePath path = TemplateByIriLoader.templatePathFromIri(vf.createIRI("http://example.org/resource/Test"));
+        when(storage.findObject(any(StoragePath.class))).thenReturn(Optional.of(
+            new PlatformStorage.FindResult("test", new ObjectRecord(location, path, "1", new ObjectMetadata()))));
+        ResearchSpaceHandlebars handlebars = new ResearchSpaceHandlebars(storage, namespaceRegistry,
+            mock(HandlebarsHelperRegistry.class));
+        
+        Template template = handlebars.compile("http://example.org/resource/Test");
+        assertEquals("First", template.apply(null));
+        assertSame(template, handlebars.compile("Template:http://example.org/resource/Test"));
+        verify(location, times(1)).readContent();
+        
+        when(location.readContent()).thenAnswer(invocation -> content("Second"));
+        for (StorageChangeListener listener : listeners.getAllValues()) {
+            listener.objectChanged("test", path);
+        }
+        assertEquals("Second", handlebars.compile("http://example.org/resource/Test").apply(null));
+        verify(location, times(2)).readContent();
+    }
+    
+    private static InputStream content(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
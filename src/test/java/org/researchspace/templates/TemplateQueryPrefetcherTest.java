@@ -0,0 +1,247 @@
+/**
+ * ResearchSpace
+ * Copyright (C) 2020, © Trustees of the British Museum
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.researchspace.templates;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.FOAF;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.sail.SailRepositoryConnection;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.researchspace.config.Configuration;
+import org.researchspace.config.groups.EnvironmentConfiguration;
+import org.researchspace.templates.TemplateQueryPrefetcher.HelperCall;
+import org.researchspace.templates.helper.AskHelperSource;
+import org.researchspace.templates.helper.JsonFromSparqlSelectSource;
+import org.researchspace.templates.helper.SingleValueFromSelectSource;
+
+import com.github.jknack.handlebars.Template;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Test cases for the concurrent evaluation of template helper queries by
+ * {@link TemplateQueryPrefetcher}.
+ */
+public class TemplateQueryPrefetcherTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final IRI JOE = vf.createIRI("http://example.org/joe");
+
+    private static final String TEMPLATE = "[[singleValueFromSelect \"SELECT ?name WHERE { ?? <" + FOAF.NAME
+            + "> ?name }\"]]|[[#if (ask \"ASK { ?? a <" + FOAF.PERSON + "> }\")]]person[[/if]]|"
+            + "[[jsonArrayFromSelect 'SELECT ?knows WHERE { ?? <" + FOAF.KNOWS + "> ?knows } ORDER BY ?knows']]";
+
+    private final List<String> connectionThreads = Lists.newCopyOnWriteArrayList();
+
+    private SailRepository repository;
+
+    private ResearchSpaceHandlebars handlebars;
+
+    @Before
+    public void setup() throws Exception {
+        repository = new SailRepository(new MemoryStore()) {
+            @Override
+            public SailRepositoryConnection getConnection() {
+                connectionThreads.add(Thread.currentThread().getName());
+                return super.getConnection();
+            }
+        };
+        repository.init();
+        try (RepositoryConnection con = repository.getConnection()) {
+            con.add(JOE, RDF.TYPE, FOAF.PERSON);
+            con.add(JOE, FOAF.NAME, vf.createLiteral("Joe"));
+            con.add(JOE, FOAF.KNOWS, vf.createIRI("http://example.org/alice"));
+            con.add(JOE, FOAF.KNOWS, vf.createIRI("http://example.org/bob"));
+        }
+        connectionThreads.clear();
+
+        HandlebarsHelperRegistry helperRegistry = Mockito.mock(HandlebarsHelperRegistry.class);
+        Mockito.when(helperRegistry.getHelpers()).thenReturn(ImmutableList.of(new AskHelperSource(),
+                new SingleValueFromSelectSource(), new JsonFromSparqlSelectSource()));
+        handlebars = new ResearchSpaceHandlebars(null, helperRegistry);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.shutDown();
+    }
+
+    @Test
+    public void testFindQueryHelperCalls() throws Exception {
+        List<HelperCall> calls = TemplateQueryPrefetcher.findQueryHelperCalls(
+                "<p>[[singleValueFromSelect \"SELECT ?a WHERE { ?? ?b \\\"x\\\" }\" binding=\"a\"]]</p>"
+                        + "[[#if (ask 'ASK { ?? a ?type }')]]yes[[/if]]"
+                        + "[[#each (jsonObjectArrayFromSelect \"SELECT * WHERE { ?? ?p [ ?q [ ?r ?s ]] }\")]][[/each]]"
+                        + "[[!-- [[ask \"ASK { ?a ?b ?c }\"]] --]]"
+                        + "[[ask (concat \"ASK {\" \"}\")]]"
+                        + "[[otherHelper ask \"ASK {}\"]]"
+                        + "[[~jsonArrayFromSelect \"SELECT ?x WHERE { ?x ?y ?z }\"~]]");
+
+        Assert.assertEquals(4, calls.size());
+        Assert.assertFalse(calls.get(0).isAsk());
+        Assert.assertEquals("SELECT ?a WHERE { ?? ?b \"x\" }", calls.get(0).getQuery());
+        Assert.assertTrue(calls.get(1).isAsk());
+        Assert.assertEquals("ASK { ?? a ?type }", calls.get(1).getQuery());
+        Assert.assertEquals("SELECT * WHERE { ?? ?p [ ?q [ ?r ?s ]] }", calls.get(2).getQuery());
+        Assert.assertEquals("SELECT ?x WHERE { ?x ?y ?z }", calls.get(3).getQuery());
+    }
+
+    @Test
+    public void testQueriesInConditionalBlocksAreNotPrefetched() throws Exception {
+        List<HelperCall> calls = TemplateQueryPrefetcher.findQueryHelperCalls(
+                "[[#if (ask \"ASK { ?? a ?type }\")]]"
+                        + "[[#each (jsonArrayFromSelect \"SELECT ?a WHERE { ?? ?p ?a }\")]][[/each]]"
+                        + "[[else]][[ask \"ASK { ?? ?p ?o }\"]][[/if]]"
+                        + "[[~#unless x~]][[singleValueFromSelect \"SELECT ?b WHERE { ?? ?p ?b }\"]][[~/unless~]]"
+                        + "[[#each items]][[singleValueFromSelect \"SELECT ?c WHERE { ?? ?p ?c }\"]][[/each]]");
+
+        Assert.assertEquals(Lists.newArrayList("ASK { ?? a ?type }", "SELECT ?c WHERE { ?? ?p ?c }"),
+                calls.stream().map(HelperCall::getQuery).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testHelpersUsePrefetchedResults() throws Exception {
+        TemplateContext tc = new TemplateContext(JOE, repository, null, null);
+        tc.setQueryPrefetcher(prefetcher(4));
+        Template template = handlebars.compileInline(TEMPLATE);
+
+        tc.prefetchQueries(template);
+        // wait until the prefetch threads evaluated all queries
+        Stopwatch watch = Stopwatch.createStarted();
+        while (connectionThreads.size() < 3 && watch.elapsed(TimeUnit.SECONDS) < 10) {
+            Thread.sleep(10);
+        }
+        String result = template.apply(tc);
+        tc.cancelPrefetchedQueries();
+
+        Assert.assertTrue(result, result.startsWith("Joe|person|["));
+        Assert.assertEquals(3, connectionThreads.size());
+        connectionThreads
+                .forEach(thread -> Assert.assertTrue(thread, thread.startsWith("template-query-prefetch-")));
+        Assert.assertFalse(tc.isCacheable());
+        Assert.assertEquals(render(0), result);
+    }
+
+    @Test
+    public void testQueriesAreEvaluatedOnce() throws Exception {
+        String withPrefetching = render(4);
+        Assert.assertEquals(3, connectionThreads.size());
+
+        connectionThreads.clear();
+        Assert.assertEquals(withPrefetching, render(0));
+        Assert.assertEquals(3, connectionThreads.size());
+        Assert.assertEquals(Sets.newHashSet(Thread.currentThread().getName()), Sets.newHashSet(connectionThreads));
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        int numberOfPersons = 5000;
+        try (RepositoryConnection con = repository.getConnection()) {
+            for (int i = 0; i < numberOfPersons; i++) {
+                IRI person = vf.createIRI("http://example.org/person" + i);
+                con.add(person, RDF.TYPE, FOAF.PERSON);
+                con.add(person, FOAF.NAME, vf.createLiteral("Person " + i));
+                con.add(person, FOAF.AGE, vf.createLiteral(BigInteger.valueOf(i % 100)));
+                for (int k = 1; k <= 5; k++) {
+                    IRI friend = vf.createIRI("http://example.org/person" + ((i * 7 + k) % numberOfPersons));
+                    con.add(person, FOAF.KNOWS, friend);
+                }
+            }
+        }
+
+        // ten helpers with independent (and not too cheap) queries
+        AtomicInteger n = new AtomicInteger();
+        String template = Lists.newArrayList(20, 30, 40, 50, 60).stream()
+                .map(age -> "[[singleValueFromSelect \"SELECT (COUNT(*) AS ?c) WHERE { ?a <" + FOAF.AGE + "> " + age
+                        + " . ?a <" + FOAF.KNOWS + "> ?b . ?b <" + FOAF.KNOWS + "> ?c }\"]]\n"
+                        + "[[jsonArrayFromSelect \"SELECT ?name WHERE { ?a <" + FOAF.AGE + "> ?age . ?a <"
+                        + FOAF.NAME + "> ?name FILTER(?age > " + age + ") } ORDER BY DESC(?name) LIMIT "
+                        + n.incrementAndGet() + "\"]]")
+                .collect(Collectors.joining("\n"));
+
+        System.out.println("Benchmark with " + numberOfPersons + " persons and 10 helper queries");
+        for (int threads : Lists.newArrayList(0, 2, 4, 8)) {
+            TemplateQueryPrefetcher prefetcher = prefetcher(threads);
+            try {
+                // warm up
+                render(template, prefetcher);
+
+                Stopwatch watch = Stopwatch.createStarted();
+                int iterations = 20;
+                for (int i = 0; i < iterations; i++) {
+                    render(template, prefetcher);
+                }
+                System.out.println("Duration [" + threads + " prefetch threads]: "
+                        + watch.elapsed(TimeUnit.MILLISECONDS) / iterations + "ms per render");
+            } finally {
+                prefetcher.shutdown();
+            }
+        }
+    }
+
+    private String render(int prefetchThreads) throws Exception {
+        TemplateQueryPrefetcher prefetcher = prefetcher(prefetchThreads);
+        try {
+            return render(TEMPLATE, prefetcher);
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    private String render(String templateString, TemplateQueryPrefetcher prefetcher) throws Exception {
+        TemplateContext tc = new TemplateContext(JOE, repository, null, null);
+        tc.setQueryPrefetcher(prefetcher);
+        Template template = handlebars.compileInline(templateString);
+        tc.prefetchQueries(template);
+        try {
+            return template.apply(tc);
+        } finally {
+            tc.cancelPrefetchedQueries();
+        }
+    }
+
+    private static TemplateQueryPrefetcher prefetcher(int threads) {
+        Configuration config = Mockito.mock(Configuration.class);
+        EnvironmentConfiguration envConfig = Mockito.mock(EnvironmentConfiguration.class);
+        Mockito.when(config.getEnvironmentConfig()).thenReturn(envConfig);
+        Mockito.when(envConfig.getTemplateQueryPrefetchThreads()).thenReturn(threads);
+        return new TemplateQueryPrefetcher(config);
+    }
+}
@@ -24,6 +24,7 @@ import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.junit.Test;
 import org.junit.Before;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.researchspace.config.NamespaceRegistry;
@@ -292,4 +293,47 @@ public class TemplateResolverTest {
         assertTrue(result.isPresent());
         assertEquals(findResult, result.get());
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testResolve_IndexedSearchScansStorageOnce() throws Exception {
+        when(storage.addChangeListener(any(StorageChangeListener.class))).thenReturn(true);
+        when(storage.findObject(any(StoragePath.class))).thenReturn(Optional.empty());
+        
+        Map<StoragePath, PlatformStorage.FindResult> allTemplates = new HashMap<>();
+        allTemplates.put(ObjectKind.TEMPLATE.resolve("subfolder/test:Person.html"), findResult);
+        when(storage.findAll(ObjectKind.TEMPLATE)).thenReturn(allTemplates);
+        
+        assertEquals(findResult, resolver.resolve("test:Person", namespaceRegistry, storage).get());
+        assertEquals(findResult, resolver.resolve("Template:test:Person", namespaceRegistry, storage).get());
+        assertFalse(resolver.resolve("test:Actor", namespaceRegistry, storage).isPresent());
+        
+        verify(storage, times(1)).findAll(ObjectKind.TEMPLATE);
+    }
+    
+    @Test
+    public void testResolve_IndexUpdatedOnStorageChange() throws Exception {
+        ArgumentCaptor<StorageChangeListener> listener = ArgumentCaptor.forClass(StorageChangeListener.class);
+        when(storage.addChangeListener(listener.capture())).thenReturn(true);
+        when(storage.findObject(any(StoragePath.class))).thenReturn(Optional.empty());
+        when(storage.findAll(ObjectKind.TEMPLATE)).thenReturn(new HashMap<>());
+        
+        assertFalse(resolver.resolve("test:Actor", namespaceRegistry, storage).isPresent());
+        
+        // template added to a subfolder
+        StoragePath templatePath = ObjectKind.TEMPLATE.resolve("forms/test:Actor.html");
+        when(storage.findObject(templatePath)).thenReturn(Optional.of(findResult));
+        listener.getValue().objectChanged(PlatformStorage.DEVELOPMENT_RUNTIME_STORAGE_KEY, templatePath);
+        assertEquals(findResult, resolver.resolve("test:Actor", namespaceRegistry, storage).get());
+        
+        // template deleted
+        when(storage.findObject(templatePath)).thenReturn(Optional.empty());
+        listener.getValue().objectChanged(PlatformStorage.DEVELOPMENT_RUNTIME_STORAGE_KEY, templatePath);
+        assertFalse(resolver.resolve("test:Actor", namespaceRegistry, storage).isPresent());
+        verify(storage, times(1)).findAll(ObjectKind.TEMPLATE);
+        
+        // index is rebuilt after external changes
+        listener.getValue().allObjectsChanged();
+        assertFalse(resolver.resolve("test:Actor", namespaceRegistry, storage).isPresent());
+        verify(storage, times(2)).findAll(ObjectKind.TEMPLATE);
+    }
+}